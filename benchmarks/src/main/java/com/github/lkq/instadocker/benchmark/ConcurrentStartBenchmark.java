@@ -0,0 +1,65 @@
+package com.github.lkq.instadocker.benchmark;
+
+import com.github.lkq.instadocker.InstaDocker;
+import com.github.lkq.instadocker.docker.ImagePullCoordinator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * clean starts of a container per thread against one shared daemon and pull coordinator,
+ * shows the contention in the process wide parts, e.g. the pull coordinator and the log streaming service
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class ConcurrentStartBenchmark {
+
+    private static final AtomicInteger containerCount = new AtomicInteger();
+
+    @State(Scope.Benchmark)
+    public static class Daemon {
+        final FakeDockerClient daemon = new FakeDockerClient().image(LifecycleBenchmark.IMAGE);
+        final ImagePullCoordinator pullCoordinator = new ImagePullCoordinator(TimeUnit.MINUTES.toMillis(5));
+    }
+
+    @State(Scope.Thread)
+    public static class Container {
+        InstaDocker instaDocker;
+
+        @Setup(Level.Trial)
+        public void setUp(Daemon daemon) {
+            instaDocker = new InstaDocker(LifecycleBenchmark.IMAGE, "bench-concurrent-" + containerCount.incrementAndGet())
+                    .dockerClient(daemon.daemon.client())
+                    .pullCoordinator(daemon.pullCoordinator)
+                    .init();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void cleanStart1Thread(Container container) {
+        container.instaDocker.start(true, 10);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void cleanStart4Threads(Container container) {
+        container.instaDocker.start(true, 10);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void cleanStart16Threads(Container container) {
+        container.instaDocker.start(true, 10);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void cleanStart64Threads(Container container) {
+        container.instaDocker.start(true, 10);
+    }
+}
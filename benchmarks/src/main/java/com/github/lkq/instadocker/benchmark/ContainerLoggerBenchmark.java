@@ -0,0 +1,77 @@
+package com.github.lkq.instadocker.benchmark;
+
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import com.github.lkq.instadocker.docker.ContainerLogger;
+import com.github.lkq.instadocker.docker.log.OverflowPolicy;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * frames/s through {@link ContainerLogger#onNext(Frame)}, bytes/s is frames/s times lineBytes times linesPerFrame.
+ * run with -prof gc for the bytes allocated per frame (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContainerLoggerBenchmark {
+
+    @Param({"80", "1024"})
+    private int lineBytes;
+
+    @Param({"1", "16"})
+    private int linesPerFrame;
+
+    @Param({"DROP_OLDEST", "BLOCK"})
+    private OverflowPolicy overflowPolicy;
+
+    private final LongAdder written = new LongAdder();
+    private ContainerLogger containerLogger;
+    private Frame frame;
+    private Frame firstHalf;
+    private Frame secondHalf;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        containerLogger = new ContainerLogger("bench-logs", null)
+                .overflowPolicy(overflowPolicy)
+                .sink((containerName, batch) -> written.add(batch.size()));
+        byte[] line = new byte[lineBytes];
+        Arrays.fill(line, (byte) 'x');
+        line[lineBytes - 1] = '\n';
+        byte[] payload = new byte[lineBytes * linesPerFrame];
+        for (int i = 0; i < linesPerFrame; i++) {
+            System.arraycopy(line, 0, payload, i * lineBytes, lineBytes);
+        }
+        frame = new Frame(StreamType.STDOUT, payload);
+        firstHalf = new Frame(StreamType.STDOUT, Arrays.copyOfRange(line, 0, lineBytes / 2));
+        secondHalf = new Frame(StreamType.STDOUT, Arrays.copyOfRange(line, lineBytes / 2, lineBytes));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        containerLogger.onComplete();
+    }
+
+    @Benchmark
+    public void onNext() {
+        containerLogger.onNext(frame);
+    }
+
+    /**
+     * a line split across two frames, as happens with long lines or a busy stream
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void onNextSplitLine() {
+        containerLogger.onNext(firstHalf);
+        containerLogger.onNext(secondHalf);
+    }
+}
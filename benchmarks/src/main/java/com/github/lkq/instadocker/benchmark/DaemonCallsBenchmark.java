@@ -0,0 +1,70 @@
+package com.github.lkq.instadocker.benchmark;
+
+import com.github.lkq.instadocker.InstaDocker;
+import com.github.lkq.instadocker.docker.DaemonCallCounter;
+import com.github.lkq.instadocker.docker.ImagePullCoordinator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * daemon calls issued by each lifecycle operation. the counters are reported as calls/s next to the operations/s,
+ * divide one by the other to get the calls per operation, which should only change when a release changes the call pattern.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DaemonCallsBenchmark {
+
+    private FakeDockerClient daemon;
+    private InstaDocker instaDocker;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Calls {
+        public long total;
+        public long inspectImage;
+        public long inspectContainer;
+        public long createContainer;
+        public long startContainer;
+        public long removeContainer;
+
+        void add(DaemonCallCounter counter) {
+            total += counter.total();
+            inspectImage += counter.count("inspectImage");
+            inspectContainer += counter.count("inspectContainer");
+            createContainer += counter.count("createContainer");
+            startContainer += counter.count("startContainer");
+            removeContainer += counter.count("removeContainer");
+            counter.reset();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        daemon = new FakeDockerClient().image(LifecycleBenchmark.IMAGE);
+        instaDocker = new InstaDocker(LifecycleBenchmark.IMAGE, "bench-daemon-calls")
+                .dockerClient(daemon.client())
+                .pullCoordinator(new ImagePullCoordinator(0))
+                .init();
+        // restart needs an existing container to stop, cleanStart replaces it anyway
+        instaDocker.start(true, 10);
+        instaDocker.daemonCalls().reset();
+    }
+
+    @Benchmark
+    public void cleanStart(Calls calls) {
+        instaDocker.start(true, 10);
+        calls.add(instaDocker.daemonCalls());
+    }
+
+    @Benchmark
+    public void restart(Calls calls) {
+        instaDocker.container().ensureStopped(10);
+        instaDocker.start(false, 10);
+        calls.add(instaDocker.daemonCalls());
+    }
+}
@@ -0,0 +1,197 @@
+package com.github.lkq.instadocker.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.*;
+import com.github.dockerjava.api.exception.ConflictException;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.exception.NotModifiedException;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.PullResponseItem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * an in-process docker daemon behind the {@link DockerClient} interface, with just enough state for the image and
+ * container lifecycle, so benchmarks measure insta-docker rather than the daemon and are reproducible anywhere
+ */
+public class FakeDockerClient {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Set<String> images = ConcurrentHashMap.newKeySet();
+    private final Map<String, FakeContainer> containers = new ConcurrentHashMap<>();
+    private final PullResponseItem pullSucceeded = read("{\"status\":\"Status: Downloaded newer image\"}", PullResponseItem.class);
+
+    private final DockerClient client = (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+            new Class<?>[]{DockerClient.class}, (proxy, method, args) -> dispatch(proxy, method, args));
+
+    public DockerClient client() {
+        return client;
+    }
+
+    public FakeDockerClient image(String image) {
+        images.add(image);
+        return this;
+    }
+
+    /**
+     * forget all images and containers
+     */
+    public void reset() {
+        images.clear();
+        containers.clear();
+    }
+
+    private Object dispatch(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "inspectImageCmd":
+                return command(InspectImageCmd.class, (params, execArgs) -> {
+                    if (!images.contains((String) args[0])) {
+                        throw new NotFoundException("image not found");
+                    }
+                    return new InspectImageResponse().withId("sha256:" + args[0]);
+                });
+            case "pullImageCmd":
+                return command(PullImageCmd.class, (params, execArgs) -> {
+                    @SuppressWarnings("unchecked")
+                    ResultCallback<PullResponseItem> callback = (ResultCallback<PullResponseItem>) execArgs[0];
+                    images.add((String) args[0]);
+                    callback.onStart(() -> {
+                    });
+                    callback.onNext(pullSucceeded);
+                    callback.onComplete();
+                    return callback;
+                });
+            case "inspectContainerCmd":
+                return command(InspectContainerCmd.class, (params, execArgs) -> container((String) args[0]).inspect());
+            case "createContainerCmd":
+                return command(CreateContainerCmd.class, (params, execArgs) -> {
+                    String name = (String) params.get("withName");
+                    FakeContainer container = new FakeContainer(name);
+                    if (containers.putIfAbsent(name, container) != null) {
+                        throw new ConflictException("container name already in use");
+                    }
+                    CreateContainerResponse response = new CreateContainerResponse();
+                    response.setId(container.id);
+                    return response;
+                });
+            case "startContainerCmd":
+                return command(StartContainerCmd.class, (params, execArgs) -> {
+                    container((String) args[0]).running = true;
+                    return null;
+                });
+            case "stopContainerCmd":
+                return command(StopContainerCmd.class, (params, execArgs) -> {
+                    FakeContainer container = container((String) args[0]);
+                    if (!container.running) {
+                        throw new NotModifiedException("container already stopped");
+                    }
+                    container.running = false;
+                    return null;
+                });
+            case "removeContainerCmd":
+                return command(RemoveContainerCmd.class, (params, execArgs) -> {
+                    if (containers.remove((String) args[0]) == null) {
+                        throw new NotFoundException("container not found");
+                    }
+                    return null;
+                });
+            case "logContainerCmd":
+                return command(LogContainerCmd.class, (params, execArgs) -> execArgs[0]);
+            case "close":
+                return null;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "FakeDockerClient";
+            default:
+                throw new UnsupportedOperationException("not supported by the fake daemon: " + method.getName());
+        }
+    }
+
+    private FakeContainer container(String name) {
+        FakeContainer container = containers.get(name);
+        if (container == null) {
+            throw new NotFoundException("container not found");
+        }
+        return container;
+    }
+
+    /**
+     * a command whose fluent setters are recorded and return the command itself
+     */
+    private static <T> T command(Class<T> type, BiFunction<Map<String, Object>, Object[], Object> exec) {
+        Map<String, Object> params = new HashMap<>();
+        Object command = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.equals("exec")) {
+                return exec.apply(params, args);
+            }
+            if (name.equals("getHostConfig")) {
+                return params.computeIfAbsent("hostConfig", key -> new HostConfig());
+            }
+            if (name.startsWith("with") && args != null && args.length == 1) {
+                params.put(name, args[0]);
+            }
+            if (method.getReturnType().isInstance(proxy)) {
+                return proxy;
+            }
+            return defaultValue(method.getReturnType());
+        });
+        return type.cast(command);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    private static <T> T read(String json, Class<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class FakeContainer {
+        private final String id = UUID.randomUUID().toString().replace("-", "");
+        private final InspectContainerResponse runningResponse;
+        private final InspectContainerResponse stoppedResponse;
+        private volatile boolean running = false;
+
+        private FakeContainer(String name) {
+            this.runningResponse = read(inspectJson(name, true), InspectContainerResponse.class);
+            this.stoppedResponse = read(inspectJson(name, false), InspectContainerResponse.class);
+        }
+
+        private String inspectJson(String name, boolean running) {
+            return "{\"Id\":\"" + id + "\",\"Name\":\"/" + name + "\",\"State\":{\"Running\":" + running + "}}";
+        }
+
+        private InspectContainerResponse inspect() {
+            return running ? runningResponse : stoppedResponse;
+        }
+    }
+}
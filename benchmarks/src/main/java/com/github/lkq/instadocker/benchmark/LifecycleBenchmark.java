@@ -0,0 +1,89 @@
+package com.github.lkq.instadocker.benchmark;
+
+import com.github.lkq.instadocker.InstaDocker;
+import com.github.lkq.instadocker.docker.DockerContainer;
+import com.github.lkq.instadocker.docker.ImagePullCoordinator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * latency of the lifecycle operations against the fake daemon, i.e. the overhead insta-docker adds on top of the daemon
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LifecycleBenchmark {
+
+    static final String IMAGE = "postgres:latest";
+
+    /**
+     * image missing and no container, every start pulls the image and creates the container
+     */
+    @State(Scope.Thread)
+    public static class ColdStart {
+        FakeDockerClient daemon;
+        InstaDocker instaDocker;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            daemon = new FakeDockerClient();
+            instaDocker = new InstaDocker(IMAGE, "bench-cold-start")
+                    .dockerClient(daemon.client())
+                    .pullCoordinator(new ImagePullCoordinator(0))
+                    .init();
+        }
+
+        @Setup(Level.Invocation)
+        public void forgetImageAndContainer() {
+            daemon.reset();
+        }
+    }
+
+    /**
+     * image and container already there, the container is running
+     */
+    @State(Scope.Thread)
+    public static class WarmStart {
+        InstaDocker instaDocker;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            instaDocker = new InstaDocker(IMAGE, "bench-warm-start")
+                    .dockerClient(new FakeDockerClient().image(IMAGE).client())
+                    .pullCoordinator(new ImagePullCoordinator(TimeUnit.MINUTES.toMillis(5)))
+                    .init();
+            instaDocker.start(true, 10);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Container {
+        DockerContainer container;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            container = new DockerContainer(new FakeDockerClient().image(IMAGE).client(), IMAGE, "bench-create-or-replace", null);
+            container.createOrReplace();
+        }
+    }
+
+    @Benchmark
+    public long coldStart(ColdStart state) {
+        state.instaDocker.start(false, 10);
+        return state.instaDocker.lastStartDaemonCalls();
+    }
+
+    @Benchmark
+    public long warmStart(WarmStart state) {
+        state.instaDocker.start(false, 10);
+        return state.instaDocker.lastStartDaemonCalls();
+    }
+
+    @Benchmark
+    public boolean createOrReplace(Container state) {
+        return state.container.createOrReplace();
+    }
+}
@@ -0,0 +1,203 @@
+package com.github.lkq.instadocker.maven;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.InternetProtocol;
+import com.github.lkq.instadocker.InstaDocker;
+import com.github.lkq.instadocker.docker.DockerContainer;
+import com.github.lkq.instadocker.docker.ImageTarCache;
+import com.github.lkq.instadocker.docker.entity.PortBinding;
+import com.github.lkq.instadocker.docker.probe.HealthCheckProbe;
+import com.github.lkq.instadocker.docker.probe.LogPatternProbe;
+import com.github.lkq.instadocker.docker.probe.ReadinessProbe;
+import com.github.lkq.instadocker.util.Assert;
+
+import java.util.*;
+
+/**
+ * a container of the plugin configuration, mapped to the same {@link InstaDocker} and {@link DockerContainer} definition
+ * the tests would build, e.g.
+ * <pre>
+ * &lt;container&gt;
+ *     &lt;name&gt;db&lt;/name&gt;
+ *     &lt;image&gt;postgres:11&lt;/image&gt;
+ *     &lt;ports&gt;&lt;port&gt;5432&lt;/port&gt;&lt;/ports&gt;
+ *     &lt;environment&gt;&lt;POSTGRES_PASSWORD&gt;secret&lt;/POSTGRES_PASSWORD&gt;&lt;/environment&gt;
+ *     &lt;readyLogPattern&gt;.*ready to accept connections.*&lt;/readyLogPattern&gt;
+ * &lt;/container&gt;
+ * </pre>
+ */
+public class ContainerDefinition {
+
+    private String name;
+    private String image;
+    private String containerName;
+    private String hostName;
+    private String network;
+    /**
+     * [hostPort:]containerPort[/protocol], any free host port if not given
+     */
+    private List<String> ports = new ArrayList<>();
+    private Map<String, String> environment = new LinkedHashMap<>();
+    private List<String> commands = new ArrayList<>();
+    /**
+     * hostPath:containerPath
+     */
+    private List<String> volumes = new ArrayList<>();
+    private Map<String, String> labels = new LinkedHashMap<>();
+    private List<String> dependsOn = new ArrayList<>();
+    private String readyLogPattern;
+    private boolean healthCheck = false;
+
+    /**
+     * @param imageCache the archives to load the image from instead of pulling it, null to always pull
+     * @return the definition as an initialized instance
+     * @throws IllegalArgumentException if the definition is invalid
+     */
+    public InstaDocker toInstaDocker(ImageTarCache imageCache) {
+        return toInstaDocker(imageCache, null);
+    }
+
+    /**
+     * @param imageCache   the archives to load the image from instead of pulling it, null to always pull
+     * @param dockerClient the client of the container, null to use the shared one
+     * @return the definition as an initialized instance
+     * @throws IllegalArgumentException if the definition is invalid
+     */
+    InstaDocker toInstaDocker(ImageTarCache imageCache, DockerClient dockerClient) {
+        Assert.requiresNotBlank(name, "container name is required");
+        Assert.requiresNotBlank(image, "image is required, name=" + name);
+        List<PortBinding> portBindings = portBindings();
+        Map<String, String> volumeBindings = volumeBindings();
+        List<ReadinessProbe> probes = new ArrayList<>();
+        if (readyLogPattern != null) {
+            probes.add(new LogPatternProbe(readyLogPattern));
+        }
+        if (healthCheck) {
+            probes.add(new HealthCheckProbe());
+        }
+        // everything that can be invalid is checked above, init() acquires the shared client
+        InstaDocker instaDocker = new InstaDocker(image, containerName())
+                .dockerClient(dockerClient)
+                .imageCache(imageCache)
+                .init();
+        DockerContainer container = instaDocker.container();
+        if (hostName != null) {
+            container.hostName(hostName);
+        }
+        if (network != null) {
+            container.network(network);
+        }
+        container.portBindings(portBindings);
+        List<String> variables = new ArrayList<>();
+        environment.forEach((key, value) -> variables.add(key + "=" + (value == null ? "" : value)));
+        container.environmentVariables(variables);
+        container.commands(commands);
+        volumeBindings.forEach(container::volumeBinding);
+        labels.forEach(container::label);
+        probes.forEach(container::readinessProbe);
+        return instaDocker;
+    }
+
+    /**
+     * @return the container ports, whose host ports are exposed to the tests
+     * @throws IllegalArgumentException if a port is invalid
+     */
+    public List<Integer> containerPorts() {
+        List<Integer> containerPorts = new ArrayList<>();
+        for (PortBinding portBinding : portBindings()) {
+            containerPorts.add(portBinding.containerPort());
+        }
+        return containerPorts;
+    }
+
+    /**
+     * @return the port bindings, with {@link PortBinding#ANY_HOST_PORT} if the host port is not given
+     * @throws IllegalArgumentException if a port is invalid
+     */
+    public List<PortBinding> portBindings() {
+        List<PortBinding> portBindings = new ArrayList<>();
+        for (String port : ports) {
+            PortSpec spec = PortSpec.parse(port);
+            portBindings.add(new PortBinding(spec.protocol, spec.containerPort, spec.hostPort));
+        }
+        return portBindings;
+    }
+
+    /**
+     * @return container path to host path
+     * @throws IllegalArgumentException if a volume is invalid
+     */
+    private Map<String, String> volumeBindings() {
+        Map<String, String> volumeBindings = new LinkedHashMap<>();
+        for (String volume : volumes) {
+            int separator = volume.lastIndexOf(':');
+            Assert.requiresTrue(separator > 0, "volume must be hostPath:containerPath, volume=" + volume);
+            volumeBindings.put(volume.substring(separator + 1), volume.substring(0, separator));
+        }
+        return volumeBindings;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the docker container name, insta-&lt;name&gt; if not given
+     */
+    public String containerName() {
+        return containerName != null ? containerName : "insta-" + name;
+    }
+
+    public List<String> dependsOn() {
+        return dependsOn;
+    }
+
+    /**
+     * [hostPort:]containerPort[/protocol], the protocol is tcp or udp in any case, tcp if not given
+     */
+    private static class PortSpec {
+        private final int hostPort;
+        private final int containerPort;
+        private final String protocol;
+
+        private PortSpec(int hostPort, int containerPort, String protocol) {
+            this.hostPort = hostPort;
+            this.containerPort = containerPort;
+            this.protocol = protocol;
+        }
+
+        private static PortSpec parse(String port) {
+            Assert.requiresNotBlank(port, "port must not be blank");
+            String ports = port.trim();
+            String protocol = InternetProtocol.TCP.name();
+            int protocolSeparator = ports.indexOf('/');
+            if (protocolSeparator > 0) {
+                protocol = ports.substring(protocolSeparator + 1).trim().toUpperCase(Locale.ROOT);
+                Assert.requiresTrue(InternetProtocol.TCP.name().equals(protocol) || InternetProtocol.UDP.name().equals(protocol),
+                        "port protocol must be tcp or udp, port=" + port);
+                ports = ports.substring(0, protocolSeparator);
+            }
+            try {
+                int hostSeparator = ports.indexOf(':');
+                int hostPort = hostSeparator > 0 ? Integer.parseInt(ports.substring(0, hostSeparator).trim()) : 0;
+                int containerPort = Integer.parseInt(ports.substring(hostSeparator + 1).trim());
+                Assert.requiresTrue(containerPort > 0 && containerPort <= 65535 && hostPort >= 0 && hostPort <= 65535,
+                        "port numbers must be between 1 and 65535, port=" + port);
+                return new PortSpec(hostPort, containerPort, protocol);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("port must be [hostPort:]containerPort[/protocol], port=" + port, e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"name\":\"" + name + "\"" +
+                ", \"image\":\"" + image + "\"" +
+                ", \"containerName\":\"" + containerName() + "\"" +
+                ", \"ports\":" + ports +
+                ", \"dependsOn\":" + dependsOn +
+                '}';
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.lkq.instadocker.maven;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.InternetProtocol;
+import com.github.lkq.instadocker.InstaDocker;
+import com.github.lkq.instadocker.InstaEnvironment;
+import com.github.lkq.instadocker.StartMode;
+import com.github.lkq.instadocker.docker.ImageTarCache;
+import com.github.lkq.instadocker.docker.entity.PortBinding;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * pull all images in parallel and optionally start the containers before the integration tests, so neither counts
+ * against the test timeouts, nor is repeated in every test fork.
+ * the host and ports of the started containers are passed to the tests as system properties:
+ * &lt;prefix&gt;.&lt;name&gt;.host, &lt;prefix&gt;.&lt;name&gt;.containerName and &lt;prefix&gt;.&lt;name&gt;.port.&lt;containerPort&gt;,
+ * udp ports as &lt;prefix&gt;.&lt;name&gt;.port.&lt;containerPort&gt;.udp
+ */
+@Mojo(name = "start", defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST, threadSafe = true)
+public class StartMojo extends AbstractMojo {
+
+    static final String ENVIRONMENT_KEY = "insta-docker.environment";
+    static final String CONTAINERS_KEY = "insta-docker.containers";
+
+    @Parameter(defaultValue = "${project}", readonly = true)
+    private MavenProject project;
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private MavenSession session;
+
+    @Parameter
+    private List<ContainerDefinition> containers = new ArrayList<>();
+
+    /**
+     * false to only pull the images, the tests then start the containers
+     */
+    @Parameter(property = "insta-docker.startContainers", defaultValue = "true")
+    private boolean startContainers;
+
+    @Parameter(property = "insta-docker.startMode", defaultValue = "REUSE_IF_IDENTICAL")
+    private StartMode startMode;
+
+    /**
+     * max number of images pulled or containers started at the same time
+     */
+    @Parameter(property = "insta-docker.parallelism", defaultValue = "4")
+    private int parallelism;
+
+    /**
+     * timeout of pulling each image and waiting for each container to be ready
+     */
+    @Parameter(property = "insta-docker.timeoutInSeconds", defaultValue = "300")
+    private int timeoutInSeconds;
+
+    @Parameter(property = "insta-docker.propertyPrefix", defaultValue = "insta-docker")
+    private String propertyPrefix;
+
+    /**
+     * directory of image archives loaded instead of pulled, see {@link ImageTarCache}, images are always pulled if not given
+     */
+    @Parameter(property = "insta-docker.imageCacheDirectory")
+    private File imageCacheDirectory;
+
+    @Parameter(property = "insta-docker.imageCacheBytes", defaultValue = "10737418240")
+    private long imageCacheBytes;
+
+    @Parameter(property = "insta-docker.skip", defaultValue = "false")
+    private boolean skip;
+
+    /**
+     * the client of the containers, the shared one if not set
+     */
+    DockerClient dockerClient;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip || containers.isEmpty()) {
+            getLog().info("insta-docker start skipped");
+            return;
+        }
+        ImageTarCache imageCache = imageCacheDirectory == null ? null : new ImageTarCache(imageCacheDirectory.toPath(), imageCacheBytes);
+        InstaEnvironment environment = new InstaEnvironment(parallelism);
+        Map<String, InstaDocker> instances = new LinkedHashMap<>();
+        try {
+            for (ContainerDefinition definition : containers) {
+                InstaDocker instaDocker = definition.toInstaDocker(imageCache, dockerClient);
+                instances.put(definition.name(), instaDocker);
+                environment.add(definition.name(), instaDocker, definition.dependsOn().toArray(new String[0]));
+            }
+        } catch (IllegalArgumentException e) {
+            instances.values().forEach(InstaDocker::close);
+            throw new MojoExecutionException("invalid insta-docker container definition: " + e.getMessage(), e);
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            if (startContainers) {
+                environment.start(startMode, timeoutInSeconds);
+            } else {
+                environment.pull(timeoutInSeconds);
+            }
+        } catch (RuntimeException e) {
+            instances.values().forEach(InstaDocker::close);
+            throw new MojoExecutionException("failed to " + (startContainers ? "start" : "pull") + " insta-docker containers", e);
+        }
+        getLog().info("insta-docker " + (startContainers ? "started" : "pulled") + " " + instances.keySet()
+                + " in " + (System.currentTimeMillis() - start) + "ms");
+
+        if (!startContainers) {
+            // nothing for the stop goal to tear down, the tests create the containers
+            instances.values().forEach(InstaDocker::close);
+            return;
+        }
+        try {
+            exposeProperties(instances);
+        } catch (RuntimeException e) {
+            try {
+                environment.stop(timeoutInSeconds);
+            } catch (RuntimeException stopFailure) {
+                e.addSuppressed(stopFailure);
+            } finally {
+                instances.values().forEach(InstaDocker::close);
+            }
+            throw new MojoExecutionException("failed to expose the ports of the insta-docker containers", e);
+        }
+        Map<String, Object> pluginContext = pluginContext();
+        pluginContext.put(ENVIRONMENT_KEY, environment);
+        pluginContext.put(CONTAINERS_KEY, instances);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> pluginContext() {
+        return (Map<String, Object>) getPluginContext();
+    }
+
+    private void exposeProperties(Map<String, InstaDocker> instances) {
+        String host = dockerHostName();
+        for (ContainerDefinition definition : containers) {
+            InstaDocker instaDocker = instances.get(definition.name());
+            String prefix = propertyPrefix + "." + definition.name() + ".";
+            setProperty(prefix + "host", host);
+            setProperty(prefix + "containerName", definition.containerName());
+            for (PortBinding portBinding : definition.portBindings()) {
+                String suffix = InternetProtocol.TCP.name().equals(portBinding.protocol()) ? "" : "." + portBinding.protocol().toLowerCase(Locale.ROOT);
+                setProperty(prefix + "port." + portBinding.containerPort() + suffix, String.valueOf(instaDocker.container().hostPort(portBinding)));
+            }
+        }
+    }
+
+    /**
+     * project properties are available to the pom, e.g. in surefire systemPropertyVariables, user properties are passed
+     * to the forked test jvms as system properties
+     */
+    private void setProperty(String key, String value) {
+        getLog().info("insta-docker property " + key + "=" + value);
+        project.getProperties().setProperty(key, value);
+        session.getUserProperties().setProperty(key, value);
+    }
+
+    /**
+     * @return the host of a tcp docker daemon, localhost for a local socket
+     */
+    private static String dockerHostName() {
+        String dockerHost = System.getenv("DOCKER_HOST");
+        if (dockerHost != null && dockerHost.startsWith("tcp://")) {
+            String host = URI.create(dockerHost).getHost();
+            if (host != null) {
+                return host;
+            }
+        }
+        return "localhost";
+    }
+}
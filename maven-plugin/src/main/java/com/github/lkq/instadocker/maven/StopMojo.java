@@ -0,0 +1,66 @@
+package com.github.lkq.instadocker.maven;
+
+import com.github.lkq.instadocker.InstaDocker;
+import com.github.lkq.instadocker.InstaEnvironment;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * stop the containers started by the start goal after the integration tests, each container after the ones depending on it
+ */
+@Mojo(name = "stop", defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST, threadSafe = true)
+public class StopMojo extends AbstractMojo {
+
+    @Parameter(property = "insta-docker.stopTimeoutInSeconds", defaultValue = "10")
+    private int stopTimeoutInSeconds;
+
+    /**
+     * true to also remove the containers, false to keep them to be reused by the next build
+     */
+    @Parameter(property = "insta-docker.remove", defaultValue = "false")
+    private boolean remove;
+
+    @Parameter(property = "insta-docker.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void execute() throws MojoExecutionException {
+        InstaEnvironment environment = (InstaEnvironment) getPluginContext().remove(StartMojo.ENVIRONMENT_KEY);
+        Map<String, InstaDocker> instances = (Map<String, InstaDocker>) getPluginContext().remove(StartMojo.CONTAINERS_KEY);
+        if (skip || environment == null) {
+            getLog().info("insta-docker stop skipped, no containers started");
+            return;
+        }
+        List<String> failures = new ArrayList<>();
+        try {
+            environment.stop(stopTimeoutInSeconds);
+        } catch (RuntimeException e) {
+            getLog().warn("failed to stop insta-docker containers", e);
+            failures.add(e.getMessage());
+        }
+        for (Map.Entry<String, InstaDocker> entry : instances.entrySet()) {
+            try {
+                if (remove && !entry.getValue().container().ensureNotExists()) {
+                    failures.add("failed to remove container: " + entry.getKey());
+                }
+            } catch (RuntimeException e) {
+                getLog().warn("failed to remove insta-docker container " + entry.getKey(), e);
+                failures.add(e.getMessage());
+            } finally {
+                entry.getValue().close();
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new MojoExecutionException("failed to tear down insta-docker containers: " + failures);
+        }
+        getLog().info("insta-docker " + (remove ? "removed " : "stopped ") + instances.keySet());
+    }
+}
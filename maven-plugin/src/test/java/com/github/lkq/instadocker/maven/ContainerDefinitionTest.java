@@ -0,0 +1,80 @@
+package com.github.lkq.instadocker.maven;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.lkq.instadocker.InstaDocker;
+import com.github.lkq.instadocker.docker.FakeDockerEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContainerDefinitionTest {
+
+    private final FakeDockerEngine engine = new FakeDockerEngine().image("postgres:11");
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    void bindsPortsWithProtocolInAnyCase() {
+        ContainerDefinition definition = definition("5432", "15433:5433/udp", "5434/TCP");
+
+        InstaDocker instaDocker = definition.toInstaDocker(null, engine.client());
+        assertTrue(instaDocker.container().createOrReplace());
+
+        JsonNode portBindings = engine.hostConfig("insta-db").path("PortBindings");
+        assertEquals("", portBindings.path("5432/tcp").path(0).path("HostPort").asText());
+        assertEquals("15433", portBindings.path("5433/udp").path(0).path("HostPort").asText());
+        assertTrue(portBindings.has("5434/tcp"));
+        assertEquals(Arrays.asList(5432, 5433, 5434), definition.containerPorts());
+    }
+
+    @Test
+    void rejectsUnknownProtocolBeforeCreatingTheContainer() {
+        ContainerDefinition definition = definition("5432/sctp");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> definition.toInstaDocker(null, engine.client()));
+
+        assertTrue(e.getMessage().contains("5432/sctp"), e.getMessage());
+        assertEquals(0, engine.requests());
+    }
+
+    @Test
+    void rejectsInvalidVolumeAndLogPatternBeforeCreatingTheContainer() {
+        ContainerDefinition invalidVolume = Fields.set(definition(), "volumes", Collections.singletonList("/data"));
+        ContainerDefinition invalidPattern = Fields.set(definition(), "readyLogPattern", "ready(");
+
+        assertThrows(IllegalArgumentException.class, () -> invalidVolume.toInstaDocker(null, engine.client()));
+        assertThrows(IllegalArgumentException.class, () -> invalidPattern.toInstaDocker(null, engine.client()));
+        assertEquals(0, engine.requests());
+    }
+
+    @Test
+    void rejectsInvalidPortNumbers() {
+        assertThrows(IllegalArgumentException.class, () -> definition("db").containerPorts());
+        assertThrows(IllegalArgumentException.class, () -> definition("70000").containerPorts());
+        assertThrows(IllegalArgumentException.class, () -> definition("x:5432").containerPorts());
+    }
+
+    @Test
+    void namesContainerAfterDefinition() {
+        ContainerDefinition definition = definition();
+
+        assertEquals("insta-db", definition.containerName());
+        assertEquals("custom", Fields.set(definition, "containerName", "custom").containerName());
+    }
+
+    static ContainerDefinition definition(String... ports) {
+        ContainerDefinition definition = new ContainerDefinition();
+        Fields.set(definition, "name", "db");
+        Fields.set(definition, "image", "postgres:11");
+        Fields.set(definition, "ports", ports.length == 0 ? Collections.emptyList() : Arrays.asList(ports));
+        return definition;
+    }
+}
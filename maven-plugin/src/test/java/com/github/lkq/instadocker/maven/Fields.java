@@ -0,0 +1,20 @@
+package com.github.lkq.instadocker.maven;
+
+import java.lang.reflect.Field;
+
+/**
+ * sets the fields maven injects from the plugin configuration
+ */
+class Fields {
+
+    static <T> T set(T target, String name, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+            return target;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("failed to set " + name, e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.lkq.instadocker.maven;
+
+import com.github.lkq.instadocker.StartMode;
+import com.github.lkq.instadocker.docker.FakeDockerEngine;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StartStopMojoTest {
+
+    private final FakeDockerEngine engine = new FakeDockerEngine().image("postgres:11");
+    private final MavenProject project = new MavenProject();
+    @SuppressWarnings("deprecation")
+    private final MavenSession session = new MavenSession(null, null, new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+    private final Map<Object, Object> pluginContext = new HashMap<>();
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    void startsContainersAndExposesTheirPorts() throws MojoExecutionException {
+        startMojo(true).execute();
+
+        assertTrue(engine.containerRunning("insta-db"));
+        assertEquals("insta-db", session.getUserProperties().getProperty("insta-docker.db.containerName"));
+        String hostPort = project.getProperties().getProperty("insta-docker.db.port.5432");
+        assertNotNull(hostPort);
+        assertEquals(hostPort, session.getUserProperties().getProperty("insta-docker.db.port.5432"));
+
+        stopMojo(true).execute();
+
+        assertFalse(engine.containerExists("insta-db"));
+        assertTrue(pluginContext.isEmpty());
+    }
+
+    @Test
+    void exposesUdpPortsByProtocol() throws MojoExecutionException {
+        StartMojo mojo = startMojo(true);
+        Fields.set(mojo, "containers", Collections.singletonList(ContainerDefinitionTest.definition("5432", "5433/udp")));
+
+        mojo.execute();
+
+        assertNotNull(project.getProperties().getProperty("insta-docker.db.port.5432"));
+        assertNotNull(project.getProperties().getProperty("insta-docker.db.port.5433.udp"));
+        assertNull(project.getProperties().getProperty("insta-docker.db.port.5433"));
+
+        stopMojo(true).execute();
+    }
+
+    @Test
+    void stopKeepsContainersUnlessRemoved() throws MojoExecutionException {
+        startMojo(true).execute();
+
+        stopMojo(false).execute();
+
+        assertTrue(engine.containerExists("insta-db"));
+        assertFalse(engine.containerRunning("insta-db"));
+    }
+
+    @Test
+    void pullOnlyLeavesNothingToStop() throws MojoExecutionException {
+        startMojo(false).execute();
+
+        assertFalse(engine.containerExists("insta-db"));
+        assertTrue(pluginContext.isEmpty());
+
+        stopMojo(true).execute();
+    }
+
+    @Test
+    void failsOnInvalidDefinition() {
+        StartMojo mojo = startMojo(true);
+        Fields.set(mojo, "containers", Collections.singletonList(ContainerDefinitionTest.definition("5432/sctp")));
+
+        assertThrows(MojoExecutionException.class, mojo::execute);
+        assertEquals(0, engine.requests());
+    }
+
+    private StartMojo startMojo(boolean startContainers) {
+        StartMojo mojo = new StartMojo();
+        mojo.dockerClient = engine.client();
+        mojo.setPluginContext(pluginContext);
+        Fields.set(mojo, "project", project);
+        Fields.set(mojo, "session", session);
+        Fields.set(mojo, "containers", Collections.singletonList(ContainerDefinitionTest.definition("5432")));
+        Fields.set(mojo, "startContainers", startContainers);
+        Fields.set(mojo, "startMode", StartMode.REUSE_IF_IDENTICAL);
+        Fields.set(mojo, "parallelism", 2);
+        Fields.set(mojo, "timeoutInSeconds", 10);
+        Fields.set(mojo, "propertyPrefix", "insta-docker");
+        return mojo;
+    }
+
+    private StopMojo stopMojo(boolean remove) {
+        StopMojo mojo = new StopMojo();
+        mojo.setPluginContext(pluginContext);
+        Fields.set(mojo, "stopTimeoutInSeconds", 1);
+        Fields.set(mojo, "remove", remove);
+        return mojo;
+    }
+}
@@ -1,12 +1,24 @@
 package com.github.lkq.instadocker;
 
 import com.github.dockerjava.api.DockerClient;
+import com.github.lkq.instadocker.docker.DaemonCallCounter;
 import com.github.lkq.instadocker.docker.DockerClientFactory;
 import com.github.lkq.instadocker.docker.DockerContainer;
 import com.github.lkq.instadocker.docker.DockerImage;
+import com.github.lkq.instadocker.docker.ImagePullCoordinator;
+import com.github.lkq.instadocker.docker.ImageTarCache;
+import com.github.lkq.instadocker.docker.TeardownManager;
+import com.github.lkq.instadocker.metrics.Instrumentation;
+import com.github.lkq.instadocker.metrics.Instrumentations;
 import com.github.lkq.instadocker.util.Assert;
+import com.github.lkq.instadocker.util.InstaExecutors;
 import org.slf4j.Logger;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 import static org.slf4j.LoggerFactory.getLogger;
 
 public class InstaDocker {
@@ -15,6 +27,7 @@ public class InstaDocker {
     private boolean initialized = false;
 
     private DockerClient dockerClient;
+    private boolean sharedClient = false;
 
     private String imageName;
     private String containerName;
@@ -22,6 +35,14 @@ public class InstaDocker {
     private DockerImage dockerImage;
     private Logger dockerLogger;
     private DockerContainer dockerContainer;
+    private ImagePullCoordinator pullCoordinator = ImagePullCoordinator.shared();
+    private Executor asyncExecutor;
+    private TeardownManager teardownManager;
+    private ImageTarCache imageCache;
+    private Instrumentation instrumentation = Instrumentations.defaultInstrumentation();
+
+    private final DaemonCallCounter daemonCalls = new DaemonCallCounter();
+    private long lastStartDaemonCalls;
 
     public InstaDocker(String imageName, String containerName) {
         Assert.requiresNotBlank(imageName, "image name is required");
@@ -33,17 +54,38 @@ public class InstaDocker {
     public InstaDocker init() {
         Assert.requiresTrue(!initialized, "instance already initialized");
         if (dockerClient == null) {
-            dockerClient = DockerClientFactory.defaultClient();
+            dockerClient = DockerClientFactory.acquireShared();
+            sharedClient = true;
         }
         if (dockerLogger == null) {
             dockerLogger = logger;
         }
-        dockerImage = new DockerImage(dockerClient, imageName);
-        dockerContainer = new DockerContainer(dockerClient, imageName, containerName, dockerLogger);
+        dockerImage = new DockerImage(dockerClient, imageName, daemonCalls, pullCoordinator)
+                .instrumentation(instrumentation, containerName)
+                .imageCache(imageCache);
+        dockerContainer = new DockerContainer(dockerClient, imageName, containerName, dockerLogger, daemonCalls)
+                .instrumentation(instrumentation);
+        if (teardownManager != null) {
+            teardownManager.register(dockerContainer);
+        }
         initialized = true;
         return this;
     }
 
+    /**
+     * release the shared docker client acquired by {@link #init()}, a client provided by {@link #dockerClient(DockerClient)}
+     * is left to the caller. the logs, stats and events of the container are no longer followed, the container is left running.
+     */
+    public void close() {
+        if (dockerContainer != null) {
+            dockerContainer.detach();
+        }
+        if (sharedClient) {
+            DockerClientFactory.releaseShared(dockerClient);
+            sharedClient = false;
+        }
+    }
+
     public InstaDocker dockerClient(DockerClient dockerClient) {
         this.dockerClient = dockerClient;
         return this;
@@ -54,27 +96,235 @@ public class InstaDocker {
         return this;
     }
 
+    /**
+     * @param pullCoordinator the coordinator for sharing image pulls, the process wide one is used if not provided
+     * @return this instance
+     */
+    public InstaDocker pullCoordinator(ImagePullCoordinator pullCoordinator) {
+        this.pullCoordinator = pullCoordinator;
+        return this;
+    }
+
+    /**
+     * @param instrumentation receives the timing of every daemon call and lifecycle phase, including the total start time,
+     *                        {@link Instrumentations#defaultInstrumentation()} if not provided
+     * @return this instance
+     */
+    public InstaDocker instrumentation(Instrumentation instrumentation) {
+        Objects.requireNonNull(instrumentation, "instrumentation is required");
+        this.instrumentation = instrumentation;
+        return this;
+    }
+
+    /**
+     * @param asyncExecutor the executor for {@link #startAsync(boolean, int)}, {@link InstaExecutors#defaultExecutor()} if not provided
+     * @return this instance
+     */
+    public InstaDocker asyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+        return this;
+    }
+
+    /**
+     * @param imageCache the local archives to load the image from instead of pulling it, the image is always pulled if not provided
+     * @return this instance
+     */
+    public InstaDocker imageCache(ImageTarCache imageCache) {
+        this.imageCache = imageCache;
+        return this;
+    }
+
+    /**
+     * @param teardownManager removes the container when the jvm exits, e.g. {@link TeardownManager#shared()},
+     *                        the container is kept if not provided
+     * @return this instance
+     */
+    public InstaDocker teardownManager(TeardownManager teardownManager) {
+        this.teardownManager = teardownManager;
+        return this;
+    }
+
     public DockerContainer container() {
         return dockerContainer;
     }
 
+    String imageName() {
+        return imageName;
+    }
+
+    String containerName() {
+        return containerName;
+    }
+
+    /**
+     * @return the counter of daemon calls issued by the image and container of this instance
+     */
+    public DaemonCallCounter daemonCalls() {
+        return daemonCalls;
+    }
+
+    /**
+     * @return number of daemon calls issued by the last {@link #start(boolean, int)}, or by the steps from create to
+     * ready of the last start in an {@link InstaEnvironment}, which pulls the images up front
+     */
+    public long lastStartDaemonCalls() {
+        return lastStartDaemonCalls;
+    }
+
     public void start(boolean cleanStart, int timeoutInSeconds) {
+        start(StartMode.of(cleanStart), timeoutInSeconds);
+    }
+
+    /**
+     * pull the image if missing, then create, start and wait for the container to be ready
+     *
+     * @param startMode        what to do with an existing container
+     * @param timeoutInSeconds timeout of the pull and of the container to become ready
+     */
+    public void start(StartMode startMode, int timeoutInSeconds) {
+        Assert.requiresTrue(initialized, "instance haven't been initialized, forget to call init()?");
+        Objects.requireNonNull(startMode, "startMode is required");
+
+        timeStart(() -> {
+            ensureImage(timeoutInSeconds);
+            doStartContainer(startMode, timeoutInSeconds);
+        });
+    }
+
+    /**
+     * time the steps as the total phase of a start and count their daemon calls, see {@link #lastStartDaemonCalls()}
+     */
+    private void timeStart(Runnable steps) {
+        long callsBeforeStart = daemonCalls.total();
+        try {
+            instrumentation.time(Instrumentation.PHASE, totalTags(), () -> {
+                steps.run();
+                return true;
+            });
+        } finally {
+            lastStartDaemonCalls = daemonCalls.total() - callsBeforeStart;
+            logger.debug("daemon calls for start: {}, containerName={}", lastStartDaemonCalls, containerName);
+        }
+    }
+
+    /**
+     * asynchronous version of {@link #start(boolean, int)}, the image pull doesn't block any thread,
+     * the container steps run on the async executor
+     *
+     * @param cleanStart       true to replace the existing container
+     * @param timeoutInSeconds timeout of the pull and of the container to become ready
+     * @return future completed when the container is running and ready, or failed with {@link IllegalStateException}
+     */
+    public CompletableFuture<Void> startAsync(boolean cleanStart, int timeoutInSeconds) {
+        return startAsync(StartMode.of(cleanStart), timeoutInSeconds);
+    }
+
+    /**
+     * asynchronous version of {@link #start(StartMode, int)}
+     *
+     * @param startMode        what to do with an existing container
+     * @param timeoutInSeconds timeout of the pull and of the container to become ready
+     * @return future completed when the container is running and ready, or failed with {@link IllegalStateException}
+     */
+    public CompletableFuture<Void> startAsync(StartMode startMode, int timeoutInSeconds) {
         Assert.requiresTrue(initialized, "instance haven't been initialized, forget to call init()?");
+        Objects.requireNonNull(startMode, "startMode is required");
+        Executor executor = asyncExecutor != null ? asyncExecutor : InstaExecutors.defaultExecutor();
+
+        long callsBeforeStart = daemonCalls.total();
+        long start = System.nanoTime();
+        return dockerImage.ensureExistsAsync(timeoutInSeconds, executor)
+                .thenCompose(pulled -> {
+                    if (!pulled) {
+                        throw new IllegalStateException("failed to pull image: " + dockerImage);
+                    }
+                    return dockerContainer.resolveSnapshotAsync(executor);
+                })
+                .thenCompose(fromSnapshot -> {
+                    switch (startMode) {
+                        case REPLACE:
+                            return dockerContainer.createOrReplaceAsync(executor);
+                        case REUSE_IF_IDENTICAL:
+                            return dockerContainer.reuseIfIdenticalAsync(executor);
+                        default:
+                            return dockerContainer.ensureExistsAsync(executor);
+                    }
+                })
+                .thenCompose(created -> {
+                    if (!created) {
+                        throw new IllegalStateException("failed to create container: " + dockerContainer);
+                    }
+                    return dockerContainer.ensureRunningAsync(executor);
+                })
+                .thenCompose(running -> {
+                    if (!running) {
+                        throw new IllegalStateException("failed to run container: " + dockerContainer);
+                    }
+                    return dockerContainer.awaitReadyAsync(timeoutInSeconds, executor);
+                })
+                .thenCompose(ready -> {
+                    if (!ready) {
+                        throw new IllegalStateException("container not ready: " + dockerContainer.readinessResults());
+                    }
+                    return dockerContainer.ensureSeededAsync(executor);
+                })
+                .thenAccept(seeded -> {
+                    if (!seeded) {
+                        throw new IllegalStateException("failed to seed container: " + dockerContainer);
+                    }
+                })
+                .whenComplete((result, error) -> {
+                    instrumentation.record(Instrumentation.PHASE, totalTags(), System.nanoTime() - start, error == null);
+                    lastStartDaemonCalls = daemonCalls.total() - callsBeforeStart;
+                    logger.debug("daemon calls for start: {}, containerName={}", lastStartDaemonCalls, containerName);
+                });
+    }
 
+    private Map<String, String> totalTags() {
+        return Instrumentations.with(Instrumentations.tags(imageName, containerName), Instrumentation.TAG_PHASE, "total");
+    }
+
+    void ensureImage(int timeoutInSeconds) {
+        Assert.requiresTrue(initialized, "instance haven't been initialized, forget to call init()?");
         if (!dockerImage.ensureExists(timeoutInSeconds)) {
             throw new IllegalStateException("failed to pull image: " + dockerImage);
         }
-        if (cleanStart) {
-            if (!dockerContainer.createOrReplace()) {
-                throw new IllegalStateException("failed to create or replace container: " + dockerContainer);
-            }
-        } else {
-            if (!dockerContainer.ensureExists()) {
-                throw new IllegalStateException("failed to create container: " + dockerContainer);
-            }
+    }
+
+    /**
+     * start the container of an image pulled already, timed as the total phase of a start
+     */
+    void startContainer(StartMode startMode, int timeoutInSeconds) {
+        Assert.requiresTrue(initialized, "instance haven't been initialized, forget to call init()?");
+        timeStart(() -> doStartContainer(startMode, timeoutInSeconds));
+    }
+
+    private void doStartContainer(StartMode startMode, int timeoutInSeconds) {
+        dockerContainer.resolveSnapshot();
+        switch (startMode) {
+            case REPLACE:
+                if (!dockerContainer.createOrReplace()) {
+                    throw new IllegalStateException("failed to create or replace container: " + dockerContainer);
+                }
+                break;
+            case REUSE_IF_IDENTICAL:
+                if (!dockerContainer.reuseIfIdentical()) {
+                    throw new IllegalStateException("failed to reuse or replace container: " + dockerContainer);
+                }
+                break;
+            default:
+                if (!dockerContainer.ensureExists()) {
+                    throw new IllegalStateException("failed to create container: " + dockerContainer);
+                }
         }
         if (!dockerContainer.ensureRunning()) {
             throw new IllegalStateException("failed to run container: " + dockerContainer);
         }
+        if (!dockerContainer.awaitReady(timeoutInSeconds)) {
+            throw new IllegalStateException("container not ready: " + dockerContainer.readinessResults());
+        }
+        if (!dockerContainer.ensureSeeded()) {
+            throw new IllegalStateException("failed to seed container: " + dockerContainer);
+        }
     }
 }
@@ -0,0 +1,216 @@
+package com.github.lkq.instadocker;
+
+import com.github.lkq.instadocker.util.Assert;
+import org.slf4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * starts several containers as one environment. all images are pulled concurrently, then each container is created
+ * and started as soon as the containers it depends on are running, on a bounded number of threads,
+ * so the startup time is close to the longest dependency chain instead of the sum of all containers.
+ */
+public class InstaEnvironment {
+    private static final Logger logger = getLogger(InstaEnvironment.class);
+
+    private final int parallelism;
+    private final Map<String, InstaDocker> containers = new LinkedHashMap<>();
+    private final Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+
+    /**
+     * @param parallelism max number of images pulled or containers started at the same time
+     */
+    public InstaEnvironment(int parallelism) {
+        Assert.requiresTrue(parallelism > 0, "parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * add a container to the environment
+     *
+     * @param name        name of the container in this environment, used for dependsOn
+     * @param instaDocker the initialized container definition
+     * @param dependsOn   names of the containers which must be running before this one starts
+     * @return this environment
+     */
+    public InstaEnvironment add(String name, InstaDocker instaDocker, String... dependsOn) {
+        Assert.requiresNotBlank(name, "name is required");
+        Objects.requireNonNull(instaDocker, "instaDocker is required");
+        Assert.requiresTrue(instaDocker.container() != null, "instance haven't been initialized, forget to call init()? name=" + name);
+        Assert.requiresTrue(!containers.containsKey(name), "duplicated container name: " + name);
+        containers.put(name, instaDocker);
+        dependencies.put(name, new LinkedHashSet<>(Arrays.asList(dependsOn)));
+        return this;
+    }
+
+    public InstaDocker get(String name) {
+        InstaDocker instaDocker = containers.get(name);
+        Assert.requiresTrue(instaDocker != null, "unknown container: " + name);
+        return instaDocker;
+    }
+
+    /**
+     * pull all images, then create and start all containers following the dependencies
+     *
+     * @param cleanStart       true to replace existing containers
+     * @param timeoutInSeconds timeout of pulling each image and waiting for each container to be ready
+     */
+    public void start(boolean cleanStart, int timeoutInSeconds) {
+        start(StartMode.of(cleanStart), timeoutInSeconds);
+    }
+
+    /**
+     * pull all images, then create and start all containers following the dependencies.
+     * the total phase and {@link InstaDocker#lastStartDaemonCalls()} of each container cover its steps from create
+     * to ready, the images are timed in the pull phase
+     *
+     * @param startMode        what to do with existing containers
+     * @param timeoutInSeconds timeout of pulling each image and waiting for each container to be ready
+     */
+    public void start(StartMode startMode, int timeoutInSeconds) {
+        Objects.requireNonNull(startMode, "startMode is required");
+        List<String> order = startOrder();
+        ExecutorService executor = newExecutor();
+        try {
+            pullImages(executor, timeoutInSeconds);
+
+            Map<String, CompletableFuture<Void>> started = new LinkedHashMap<>();
+            for (String name : order) {
+                CompletableFuture<?>[] upstream = dependencies.get(name).stream().map(started::get).toArray(CompletableFuture[]::new);
+                started.put(name, CompletableFuture.allOf(upstream).thenRunAsync(() -> {
+                    logger.info("starting container in environment, name={}", name);
+                    containers.get(name).startContainer(startMode, timeoutInSeconds);
+                }, executor));
+            }
+            await(started, "failed to start container in environment");
+            logger.info("environment started, containers={}", order);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * pull all images concurrently without starting any container, e.g. to take the pulls out of the test timeouts
+     *
+     * @param timeoutInSeconds timeout of pulling each image
+     */
+    public void pull(int timeoutInSeconds) {
+        ExecutorService executor = newExecutor();
+        try {
+            pullImages(executor, timeoutInSeconds);
+            logger.info("environment images pulled, containers={}", containers.keySet());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * stop all containers, each container is stopped after the containers depending on it
+     *
+     * @param timeoutInSeconds stop timeout of each container
+     */
+    public void stop(int timeoutInSeconds) {
+        List<String> order = startOrder();
+        Collections.reverse(order);
+        ExecutorService executor = newExecutor();
+        try {
+            Map<String, CompletableFuture<Void>> stopped = new LinkedHashMap<>();
+            for (String name : order) {
+                CompletableFuture<?>[] downstream = dependents(name).stream().map(stopped::get).toArray(CompletableFuture[]::new);
+                stopped.put(name, CompletableFuture.allOf(downstream).thenRunAsync(() -> {
+                    if (!containers.get(name).container().ensureStopped(timeoutInSeconds)) {
+                        throw new IllegalStateException("failed to stop container: " + name);
+                    }
+                }, executor));
+            }
+            await(stopped, "failed to stop container in environment");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return container names ordered so that every container comes after its dependencies
+     * @throws IllegalArgumentException if a dependency is unknown or the dependencies are cyclic
+     */
+    List<String> startOrder() {
+        Map<String, Integer> pending = new LinkedHashMap<>();
+        dependencies.forEach((name, dependsOn) -> {
+            for (String dependency : dependsOn) {
+                Assert.requiresTrue(containers.containsKey(dependency), "unknown dependency: " + name + " depends on " + dependency);
+            }
+            pending.put(name, dependsOn.size());
+        });
+        Deque<String> ready = new ArrayDeque<>();
+        pending.forEach((name, count) -> {
+            if (count == 0) {
+                ready.add(name);
+            }
+        });
+        List<String> order = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            String name = ready.poll();
+            order.add(name);
+            for (String dependent : dependents(name)) {
+                if (pending.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        Assert.requiresTrue(order.size() == containers.size(), "cyclic dependencies between containers: " + dependencies);
+        return order;
+    }
+
+    private List<String> dependents(String name) {
+        List<String> dependents = new ArrayList<>();
+        dependencies.forEach((dependent, dependsOn) -> {
+            if (dependsOn.contains(name)) {
+                dependents.add(dependent);
+            }
+        });
+        return dependents;
+    }
+
+    private void pullImages(ExecutorService executor, int timeoutInSeconds) {
+        // containers sharing an image only pull it once
+        Map<String, CompletableFuture<Void>> pulls = new LinkedHashMap<>();
+        for (InstaDocker instaDocker : containers.values()) {
+            pulls.computeIfAbsent(instaDocker.imageName(),
+                    imageName -> CompletableFuture.runAsync(() -> instaDocker.ensureImage(timeoutInSeconds), executor));
+        }
+        await(pulls, "failed to pull image for environment");
+    }
+
+    private void await(Map<String, CompletableFuture<Void>> futures, String message) {
+        for (Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet()) {
+            try {
+                entry.getValue().join();
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                futures.values().forEach(future -> future.cancel(true));
+                throw new IllegalStateException(message + ": " + entry.getKey(), cause);
+            }
+        }
+    }
+
+    private ExecutorService newExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "insta-environment-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"parallelism\":" + parallelism +
+                ", \"dependencies\":" + dependencies +
+                '}';
+    }
+}
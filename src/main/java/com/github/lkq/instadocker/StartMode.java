@@ -0,0 +1,26 @@
+package com.github.lkq.instadocker;
+
+import com.github.lkq.instadocker.docker.DockerContainer;
+
+/**
+ * what to do with an existing container of the same name when starting
+ */
+public enum StartMode {
+    /**
+     * start the existing container whatever it was created with, see {@link DockerContainer#ensureExists()}
+     */
+    REUSE,
+    /**
+     * always remove the existing container and create a new one, see {@link DockerContainer#createOrReplace()}
+     */
+    REPLACE,
+    /**
+     * start the existing container if it was created from the same spec, replace it otherwise,
+     * see {@link DockerContainer#reuseIfIdentical()}
+     */
+    REUSE_IF_IDENTICAL;
+
+    static StartMode of(boolean cleanStart) {
+        return cleanStart ? REPLACE : REUSE;
+    }
+}
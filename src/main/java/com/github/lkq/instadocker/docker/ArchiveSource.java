@@ -0,0 +1,131 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.lkq.instadocker.util.Assert;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+
+/**
+ * a file, directory or in-memory content copied into a container, written as tar entries while the archive is streamed,
+ * see {@link DockerContainer#copyIn(String, ArchiveSource...)}
+ */
+public abstract class ArchiveSource {
+
+    /**
+     * @param path a file, or a directory copied with all its content, named as the last element of the path in the container
+     * @return the source
+     */
+    public static ArchiveSource path(Path path) {
+        Objects.requireNonNull(path, "path is required");
+        return new PathSource(path);
+    }
+
+    /**
+     * @param name    path of the file relative to the target directory
+     * @param content the file content
+     * @return the source
+     */
+    public static ArchiveSource bytes(String name, byte[] content) {
+        Objects.requireNonNull(content, "content is required");
+        return stream(name, content.length, () -> new ByteArrayInputStream(content));
+    }
+
+    /**
+     * @param name    path of the file relative to the target directory
+     * @param size    exact number of bytes of the content, tar entries are sized up front
+     * @param content opens the content when the entry is written, the stream is closed after
+     * @return the source
+     */
+    public static ArchiveSource stream(String name, long size, Callable<InputStream> content) {
+        Assert.requiresNotBlank(name, "name is required");
+        Assert.requiresTrue(size >= 0, "size must not be negative");
+        Objects.requireNonNull(content, "content is required");
+        return new StreamSource(name, size, content);
+    }
+
+    abstract void write(TarArchiveOutputStream tar) throws Exception;
+
+    private static class PathSource extends ArchiveSource {
+        private final Path path;
+
+        private PathSource(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        void write(TarArchiveOutputStream tar) throws IOException {
+            Path root = path.toAbsolutePath().normalize();
+            Path base = root.getParent() == null ? root : root.getParent();
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    tar.putArchiveEntry(new TarArchiveEntry(dir.toFile(), entryName(base, dir) + "/"));
+                    tar.closeArchiveEntry();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (!attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    tar.putArchiveEntry(new TarArchiveEntry(file.toFile(), entryName(base, file)));
+                    Files.copy(file, tar);
+                    tar.closeArchiveEntry();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        private static String entryName(Path base, Path path) {
+            return base.relativize(path).toString().replace('\\', '/');
+        }
+
+        @Override
+        public String toString() {
+            return "{" +
+                    "\"path\":\"" + path + "\"" +
+                    '}';
+        }
+    }
+
+    private static class StreamSource extends ArchiveSource {
+        private final String name;
+        private final long size;
+        private final Callable<InputStream> content;
+
+        private StreamSource(String name, long size, Callable<InputStream> content) {
+            this.name = name;
+            this.size = size;
+            this.content = content;
+        }
+
+        @Override
+        void write(TarArchiveOutputStream tar) throws Exception {
+            TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(size);
+            entry.setModTime(System.currentTimeMillis());
+            tar.putArchiveEntry(entry);
+            try (InputStream stream = content.call()) {
+                long copied = Tars.copy(stream, tar, size);
+                Assert.requiresTrue(copied == size, "content of " + name + " is shorter than its size, size=" + size + ", content=" + copied);
+            }
+            tar.closeArchiveEntry();
+        }
+
+        @Override
+        public String toString() {
+            return "{" +
+                    "\"name\":\"" + name + "\"" +
+                    ", \"size\":" + size +
+                    '}';
+        }
+    }
+}
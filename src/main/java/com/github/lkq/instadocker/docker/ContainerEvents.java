@@ -0,0 +1,147 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.core.command.EventsResultCallback;
+import com.github.lkq.instadocker.exception.InstaDockerException;
+import com.github.lkq.instadocker.util.Assert;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * follows the daemon event stream of a single container, and completes the futures waiting for its lifecycle transitions
+ */
+public class ContainerEvents extends EventsResultCallback {
+    private static final Logger logger = getLogger(ContainerEvents.class);
+
+    public static final String START = "start";
+    public static final String STOP = "stop";
+    public static final String DIE = "die";
+    public static final String DESTROY = "destroy";
+
+    private final String containerName;
+    private final List<Waiter> waiters = new CopyOnWriteArrayList<>();
+
+    private volatile boolean subscribed = false;
+    private volatile boolean closed = false;
+
+    public ContainerEvents(String containerName) {
+        Assert.requiresNotBlank(containerName, "containerName is required");
+        this.containerName = containerName;
+    }
+
+    /**
+     * subscribe to the event stream of the container, and wait for the stream to be opened,
+     * so that transitions caused by commands issued after this method returns will not be missed
+     *
+     * @param dockerClient     the docker-java api client
+     * @param timeoutInSeconds how long to wait for the event stream to open
+     * @return true if the event stream is opened
+     */
+    public boolean subscribe(DockerClient dockerClient, int timeoutInSeconds) {
+        if (subscribed) {
+            return true;
+        }
+        logger.debug("subscribing to container events, containerName={}", containerName);
+        dockerClient.eventsCmd()
+                .withContainerFilter(containerName)
+                .withEventFilter(START, STOP, DIE, DESTROY)
+                .exec(this);
+        try {
+            subscribed = awaitStarted(timeoutInSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!subscribed) {
+            logger.warn("container event stream not opened, containerName={}", containerName);
+        }
+        return subscribed;
+    }
+
+    public boolean subscribed() {
+        return subscribed && !closed;
+    }
+
+    /**
+     * expect the next event with any of the given actions, must be called before issuing the command that causes the event
+     *
+     * @param actions the event actions to wait for, e.g. {@link #START}
+     * @return future completed with the first matching event
+     */
+    public CompletableFuture<Event> next(String... actions) {
+        Waiter waiter = new Waiter(Arrays.asList(actions));
+        waiters.removeIf(pending -> pending.future.isDone());
+        if (closed) {
+            waiter.future.completeExceptionally(new InstaDockerException("container event stream closed, containerName=" + containerName));
+        } else {
+            waiters.add(waiter);
+        }
+        return waiter.future;
+    }
+
+    @Override
+    public void onNext(Event event) {
+        String action = event.getAction() != null ? event.getAction() : event.getStatus();
+        logger.debug("container event received, containerName={}, action={}", containerName, action);
+        for (Waiter waiter : waiters) {
+            if (waiter.actions.contains(action)) {
+                waiters.remove(waiter);
+                waiter.future.complete(event);
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        logger.warn("container event stream failed, containerName=" + containerName, throwable);
+        failWaiters(throwable);
+        super.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        logger.debug("container event stream completed, containerName={}", containerName);
+        failWaiters(new InstaDockerException("container event stream completed, containerName=" + containerName));
+        super.onComplete();
+    }
+
+    @Override
+    public void close() throws IOException {
+        failWaiters(new InstaDockerException("container event stream closed, containerName=" + containerName));
+        super.close();
+    }
+
+    private void failWaiters(Throwable cause) {
+        closed = true;
+        for (Waiter waiter : waiters) {
+            waiters.remove(waiter);
+            waiter.future.completeExceptionally(cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"containerName\":\"" + containerName + "\"" +
+                ", \"subscribed\":" + subscribed +
+                ", \"closed\":" + closed +
+                '}';
+    }
+
+    private static class Waiter {
+        private final List<String> actions;
+        private final CompletableFuture<Event> future = new CompletableFuture<>();
+
+        private Waiter(List<String> actions) {
+            this.actions = actions;
+        }
+    }
+}
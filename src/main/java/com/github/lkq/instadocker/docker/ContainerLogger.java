@@ -3,46 +3,262 @@ package com.github.lkq.instadocker.docker;
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.model.Frame;
 import com.github.dockerjava.core.command.LogContainerResultCallback;
+import com.github.lkq.instadocker.docker.log.LogPipeline;
+import com.github.lkq.instadocker.docker.log.LogRingBuffer;
+import com.github.lkq.instadocker.docker.log.LogSink;
+import com.github.lkq.instadocker.docker.log.LogStats;
+import com.github.lkq.instadocker.docker.log.LogStore;
+import com.github.lkq.instadocker.docker.log.OverflowPolicy;
+import com.github.lkq.instadocker.docker.log.Slf4jLogSink;
 import com.github.lkq.instadocker.util.Assert;
+import com.github.lkq.instadocker.util.InstaExecutors;
 import org.slf4j.Logger;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
- * redirect container log to slf4j
+ * redirect container log to slf4j, or any other {@link LogSink}, through a bounded asynchronous {@link LogPipeline}
  */
 public class ContainerLogger extends LogContainerResultCallback {
     private static final Logger logger = getLogger(ContainerLogger.class);
 
     private Logger redirectLogger;
     private String containerName;
+    private final List<Consumer<String>> lineListeners = new CopyOnWriteArrayList<>();
+
+    private LogSink sink;
+    private int bufferCapacity = LogPipeline.DEFAULT_CAPACITY;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private int sampleRate = 10;
+    private int batchSize = LogPipeline.DEFAULT_BATCH_SIZE;
+    private Executor executor = InstaExecutors.defaultExecutor();
+    private boolean timestamped = false;
+    private volatile LogPipeline pipeline;
+    private volatile Instant lastTimestamp;
+    private volatile LogStore logStore;
 
     public ContainerLogger(String containerName, Logger redirectedLogger) {
         Assert.requiresNotBlank(containerName, "containerName is required");
         this.containerName = containerName;
         this.redirectLogger = redirectedLogger != null ? redirectedLogger : logger;
+        this.sink = new Slf4jLogSink(this.redirectLogger);
+    }
+
+    /**
+     * @param sink where the container logs go, defaults to the redirect logger
+     * @return this
+     */
+    public ContainerLogger sink(LogSink sink) {
+        Objects.requireNonNull(sink, "sink is required");
+        this.sink = sink;
+        return this;
+    }
+
+    /**
+     * @param bufferCapacity max number of lines buffered between the log stream and the sink
+     * @return this
+     */
+    public ContainerLogger bufferCapacity(int bufferCapacity) {
+        Assert.requiresTrue(bufferCapacity > 0, "bufferCapacity must be positive");
+        this.bufferCapacity = bufferCapacity;
+        return this;
+    }
+
+    /**
+     * @param overflowPolicy what to do with new lines when the buffer is full, defaults to dropping the oldest lines
+     * @return this
+     */
+    public ContainerLogger overflowPolicy(OverflowPolicy overflowPolicy) {
+        Objects.requireNonNull(overflowPolicy, "overflowPolicy is required");
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    /**
+     * @param sampleRate keep one of every sampleRate lines while the buffer is full, used by {@link OverflowPolicy#SAMPLE}
+     * @return this
+     */
+    public ContainerLogger sampleRate(int sampleRate) {
+        Assert.requiresTrue(sampleRate > 0, "sampleRate must be positive");
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * @param batchSize max number of lines written to the sink at once
+     * @return this
+     */
+    public ContainerLogger batchSize(int batchSize) {
+        Assert.requiresTrue(batchSize > 0, "batchSize must be positive");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param executor writes the buffered lines to the sink, defaults to {@link InstaExecutors#defaultExecutor()}
+     * @return this
+     */
+    public ContainerLogger executor(Executor executor) {
+        Objects.requireNonNull(executor, "executor is required");
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * keep the container output in memory for assertions, see {@link LogStore}
+     *
+     * @param maxLines max number of lines kept, the oldest lines are dropped beyond that
+     * @return this
+     */
+    public ContainerLogger capture(int maxLines) {
+        this.logStore = new LogStore(maxLines);
+        return this;
+    }
+
+    /**
+     * @return the captured output, empty if capture is not enabled
+     */
+    public Optional<LogStore> captured() {
+        return Optional.ofNullable(logStore);
+    }
+
+    public String containerName() {
+        return containerName;
+    }
+
+    /**
+     * @param timestamped true if the frames start with the docker timestamp
+     */
+    void timestamped(boolean timestamped) {
+        this.timestamped = timestamped;
+        LogPipeline current = pipeline;
+        if (current != null) {
+            current.timestamped(timestamped);
+        }
+    }
+
+    /**
+     * @return docker timestamp of the last line received, also after the stream is closed, so a restarted container
+     * is followed from where it stopped, null if none
+     */
+    Instant lastTimestamp() {
+        LogPipeline current = pipeline;
+        Instant timestamp = current != null ? current.lastTimestamp() : null;
+        return timestamp != null ? timestamp : lastTimestamp;
+    }
+
+    /**
+     * follow the next stream after the given time, e.g. to skip the history of previous runs of a reused container.
+     * a stream which already got further is still resumed from its last line
+     */
+    synchronized void followAfter(Instant since) {
+        Instant last = lastTimestamp();
+        if (pipeline == null && (last == null || last.isBefore(since))) {
+            lastTimestamp = since;
+        }
+    }
+
+    /**
+     * prepare for the frames of a stream reconnected since the given time
+     */
+    void resumeAfter(Instant since) {
+        pipeline().resumeAfter(since);
     }
 
     @Override
     public void onNext(Frame frame) {
-        if (frame.getPayload().length > 0) {
-            redirectLogger.info("[{}] - {}", containerName, new String(frame.getPayload(), 0, frame.getPayload().length - 1).trim());
+        if (frame.getPayload() != null && frame.getPayload().length > 0) {
+            pipeline().accept(frame);
         }
     }
 
+    @Override
+    public void onError(Throwable throwable) {
+        closePipeline();
+        super.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        closePipeline();
+        super.onComplete();
+    }
+
+    /**
+     * @return lines/s, bytes/s and dropped lines of the log pipeline
+     */
+    public LogStats stats() {
+        LogPipeline current = pipeline;
+        return current != null ? current.stats() : new LogStats(0, 0, 0, 0, 0, 0);
+    }
+
+    private LogPipeline pipeline() {
+        LogPipeline current = pipeline;
+        if (current == null) {
+            synchronized (this) {
+                current = pipeline;
+                if (current == null) {
+                    current = new LogPipeline(containerName, new LogRingBuffer(bufferCapacity, overflowPolicy, sampleRate), sink, batchSize);
+                    current.timestamped(timestamped);
+                    current.tap(line -> {
+                        LogStore store = logStore;
+                        if (store != null) {
+                            store.append(line);
+                        }
+                        for (Consumer<String> listener : lineListeners) {
+                            listener.accept(line.line());
+                        }
+                    });
+                    current.start(executor);
+                    pipeline = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private synchronized void closePipeline() {
+        LogPipeline current = pipeline;
+        if (current != null) {
+            pipeline = null;
+            current.close();
+            Instant timestamp = current.lastTimestamp();
+            if (timestamp != null) {
+                lastTimestamp = timestamp;
+            }
+        }
+    }
+
+    /**
+     * @param listener notified with every log line received from the container, on the log streaming thread
+     */
+    public void addLineListener(Consumer<String> listener) {
+        Objects.requireNonNull(listener, "listener is required");
+        lineListeners.add(listener);
+    }
+
+    /**
+     * follow the container logs through the shared {@link LogStreamService}
+     *
+     * @param dockerClient the docker-java api client
+     */
     public void attach(DockerClient dockerClient) {
         logger.info("redirecting logs from container, containerName={}, logger={}", containerName, redirectLogger.getName());
-        new Thread(() -> {
-            try {
-                dockerClient.logContainerCmd(this.containerName)
-                        .withStdErr(true)
-                        .withStdOut(true)
-                        .withFollowStream(true)
-                        .withTailAll()
-                        .exec(this);
-            } catch (Exception e) {
-                redirectLogger.error("failed to redirect container log");
-            }
-        }).start();
+        LogStreamService.shared().attach(dockerClient, this);
+    }
+
+    /**
+     * stop following the container logs, the buffered lines are still written to the sink
+     */
+    public void detach() {
+        LogStreamService.shared().detach(containerName);
     }
 }
@@ -0,0 +1,399 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.lkq.instadocker.util.Assert;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * keeps a number of running and ready containers created from a template, so that a test can check out
+ * a fresh container without paying for create, start and readiness.
+ * containers are created in the background, returned containers are either reset and reused or recycled.
+ */
+public class ContainerPool implements Closeable {
+    private static final Logger logger = getLogger(ContainerPool.class);
+
+    public enum RefillPolicy {
+        /**
+         * keep the pool full, create a replacement as soon as a container leaves the pool for good: when it's checked out
+         * without a reset, as it won't come back, or when it's recycled after a failed reset. evicted containers are not
+         * replaced, see {@link #minIdle(int)}
+         */
+        EAGER,
+        /**
+         * create a replacement when a returned container is recycled, or when a checkout finds no idle container,
+         * checked out and evicted containers are not replaced
+         */
+        LAZY
+    }
+
+    private final String namePrefix;
+    private final Function<String, DockerContainer> template;
+
+    private int size = 1;
+    private int parallelism = 2;
+    private int readyTimeoutInSeconds = 60;
+    private long idleTimeoutMillis = 0;
+    private int minIdle = 0;
+    private RefillPolicy refillPolicy = RefillPolicy.EAGER;
+    private Predicate<DockerContainer> reset;
+
+    private final BlockingDeque<Idle> idle = new LinkedBlockingDeque<>();
+    private final Map<String, DockerContainer> checkedOut = new ConcurrentHashMap<>();
+    private final AtomicInteger creating = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong failedCreates = new AtomicLong();
+    private final AtomicLong checkouts = new AtomicLong();
+    private final AtomicLong waitedCheckouts = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    private ScheduledExecutorService executor;
+    private volatile boolean closed = false;
+
+    /**
+     * @param namePrefix prefix of the container names, containers are named prefix-1, prefix-2...
+     * @param template   creates the container definition for a given container name, the image must exist
+     */
+    public ContainerPool(String namePrefix, Function<String, DockerContainer> template) {
+        Assert.requiresNotBlank(namePrefix, "namePrefix is required");
+        Objects.requireNonNull(template, "template is required");
+        this.namePrefix = namePrefix;
+        this.template = template;
+    }
+
+    /**
+     * @param size number of idle containers to keep ready
+     * @return this pool
+     */
+    public ContainerPool size(int size) {
+        Assert.requiresTrue(size > 0, "size must be positive");
+        this.size = size;
+        return this;
+    }
+
+    /**
+     * @param parallelism number of containers created at the same time
+     * @return this pool
+     */
+    public ContainerPool parallelism(int parallelism) {
+        Assert.requiresTrue(parallelism > 0, "parallelism must be positive");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @param readyTimeoutInSeconds how long to wait for a new container to become ready
+     * @return this pool
+     */
+    public ContainerPool readyTimeout(int readyTimeoutInSeconds) {
+        Assert.requiresTrue(readyTimeoutInSeconds > 0, "readyTimeoutInSeconds must be positive");
+        this.readyTimeoutInSeconds = readyTimeoutInSeconds;
+        return this;
+    }
+
+    /**
+     * @param idleTimeoutMillis idle containers not checked out for longer than this are removed, 0 to keep them forever
+     * @return this pool
+     */
+    public ContainerPool idleTimeout(long idleTimeoutMillis) {
+        Assert.requiresTrue(idleTimeoutMillis >= 0, "idleTimeoutMillis must not be negative");
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param minIdle number of idle containers the idle timeout never evicts, capped by the size
+     * @return this pool
+     */
+    public ContainerPool minIdle(int minIdle) {
+        Assert.requiresTrue(minIdle >= 0, "minIdle must not be negative");
+        this.minIdle = minIdle;
+        return this;
+    }
+
+    public ContainerPool refillPolicy(RefillPolicy refillPolicy) {
+        Objects.requireNonNull(refillPolicy, "refillPolicy is required");
+        this.refillPolicy = refillPolicy;
+        return this;
+    }
+
+    /**
+     * @param reset resets a returned container to a clean state, e.g. by truncating tables, returns false if the
+     *              container can't be reused. returned containers are recycled if it's not provided.
+     * @return this pool
+     */
+    public ContainerPool reset(Predicate<DockerContainer> reset) {
+        this.reset = reset;
+        return this;
+    }
+
+    /**
+     * start creating containers in the background
+     *
+     * @return this pool
+     */
+    public synchronized ContainerPool start() {
+        Assert.requiresTrue(executor == null, "pool already started");
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-pool-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (idleTimeoutMillis > 0) {
+            long period = Math.max(1, idleTimeoutMillis / 2);
+            executor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < size; i++) {
+            createAsync();
+        }
+        logger.info("container pool started, namePrefix={}, size={}", namePrefix, size);
+        return this;
+    }
+
+    /**
+     * take a running and ready container out of the pool, waits for one to be created if the pool is empty
+     *
+     * @param timeoutMillis how long to wait for a container
+     * @return the container, which must be given back by {@link #release(DockerContainer)}
+     * @throws TimeoutException     if no container becomes available in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public DockerContainer checkout(long timeoutMillis) throws TimeoutException, InterruptedException {
+        Assert.requiresTrue(executor != null && !closed, "pool is not started or already closed");
+        Idle entry = idle.pollFirst();
+        if (entry == null) {
+            waitedCheckouts.incrementAndGet();
+            // make sure there is a container being created for every waiting checkout
+            if (creating.get() < waiting.incrementAndGet()) {
+                createAsync();
+            }
+            try {
+                entry = idle.pollFirst(timeoutMillis, TimeUnit.MILLISECONDS);
+            } finally {
+                waiting.decrementAndGet();
+            }
+            if (entry == null) {
+                throw new TimeoutException("no container available in pool after " + timeoutMillis + "ms, namePrefix=" + namePrefix);
+            }
+        }
+        checkouts.incrementAndGet();
+        checkedOut.put(entry.container.containerName(), entry.container);
+        if (refillPolicy == RefillPolicy.EAGER && reset == null) {
+            createAsync();
+        }
+        logger.debug("container checked out, containerName={}", entry.container.containerName());
+        return entry.container;
+    }
+
+    /**
+     * give a checked out container back, it's reset and reused if a reset is provided, otherwise removed.
+     * a reset container is removed as well if the pool is already full and no checkout is waiting, e.g. after waiting
+     * checkouts created extra ones
+     *
+     * @param container the container taken by {@link #checkout(long)}
+     */
+    public void release(DockerContainer container) {
+        Objects.requireNonNull(container, "container is required");
+        Assert.requiresTrue(checkedOut.remove(container.containerName()) != null, "container not checked out from this pool: " + container.containerName());
+        if (closed) {
+            remove(container);
+            return;
+        }
+        try {
+            executor.execute(() -> releaseNow(container));
+        } catch (RejectedExecutionException e) {
+            // closed after the check above, close() no longer sees the container as checked out
+            remove(container);
+        }
+    }
+
+    private void releaseNow(DockerContainer container) {
+        if (reset != null && resetQuietly(container)) {
+            resets.incrementAndGet();
+            if (waiting.get() > 0 || idle.size() + creating.get() < size) {
+                offer(new Idle(container), true);
+                logger.debug("container reset and returned to pool, containerName={}", container.containerName());
+            } else {
+                recycled.incrementAndGet();
+                remove(container);
+                logger.debug("pool is full, removed returned container, containerName={}", container.containerName());
+            }
+        } else {
+            recycled.incrementAndGet();
+            remove(container);
+            // the eager pool replaced the container at checkout if it wasn't expected back
+            if (refillPolicy == RefillPolicy.LAZY || reset != null) {
+                createAsync();
+            }
+        }
+    }
+
+    /**
+     * remove all containers of the pool, including the checked out ones
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        Idle entry;
+        while ((entry = idle.pollFirst()) != null) {
+            remove(entry.container);
+        }
+        checkedOut.values().forEach(this::remove);
+        checkedOut.clear();
+        logger.info("container pool closed: {}", this);
+    }
+
+    public int idleCount() {
+        return idle.size();
+    }
+
+    public int checkedOutCount() {
+        return checkedOut.size();
+    }
+
+    private void createAsync() {
+        if (closed) {
+            return;
+        }
+        creating.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    DockerContainer container = create();
+                    if (container != null) {
+                        offer(new Idle(container), false);
+                    }
+                } finally {
+                    creating.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed after the check above
+            creating.decrementAndGet();
+        }
+    }
+
+    /**
+     * put a container back into the idle queue, or remove it if the pool was closed meanwhile, as close() may have
+     * drained the queue already
+     */
+    private void offer(Idle entry, boolean first) {
+        if (first) {
+            idle.offerFirst(entry);
+        } else {
+            idle.offerLast(entry);
+        }
+        if (closed && idle.remove(entry)) {
+            remove(entry.container);
+        }
+    }
+
+    private DockerContainer create() {
+        String containerName = namePrefix + "-" + sequence.incrementAndGet();
+        DockerContainer container = null;
+        try {
+            container = template.apply(containerName);
+            if (container.createOrReplace() && container.ensureRunning() && container.awaitReady(readyTimeoutInSeconds)) {
+                created.incrementAndGet();
+                logger.debug("pooled container ready, containerName={}", containerName);
+                if (closed) {
+                    remove(container);
+                    return null;
+                }
+                return container;
+            }
+            logger.warn("failed to create pooled container, containerName={}", containerName);
+        } catch (RuntimeException e) {
+            logger.warn("failed to create pooled container, containerName=" + containerName, e);
+        }
+        failedCreates.incrementAndGet();
+        if (container != null) {
+            remove(container);
+        }
+        return null;
+    }
+
+    /**
+     * release idle capacity, evicted containers are not replaced, the pool grows again on demand
+     */
+    private void evictIdle() {
+        long now = System.nanoTime();
+        int keep = Math.min(minIdle, size);
+        Iterator<Idle> iterator = idle.iterator();
+        while (iterator.hasNext() && idle.size() > keep) {
+            Idle entry = iterator.next();
+            if (now - entry.since > TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis) && idle.remove(entry)) {
+                evicted.incrementAndGet();
+                logger.debug("evicting idle container, containerName={}", entry.container.containerName());
+                remove(entry.container);
+            }
+        }
+    }
+
+    private boolean resetQuietly(DockerContainer container) {
+        try {
+            return reset.test(container) && container.isRunning();
+        } catch (RuntimeException e) {
+            logger.warn("failed to reset pooled container, containerName=" + container.containerName(), e);
+            return false;
+        }
+    }
+
+    private void remove(DockerContainer container) {
+        try {
+            container.ensureNotExists();
+        } catch (RuntimeException e) {
+            logger.warn("failed to remove pooled container, containerName=" + container.containerName(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"namePrefix\":\"" + namePrefix + "\"" +
+                ", \"size\":" + size +
+                ", \"minIdle\":" + minIdle +
+                ", \"refillPolicy\":\"" + refillPolicy + "\"" +
+                ", \"idle\":" + idle.size() +
+                ", \"checkedOut\":" + checkedOut.size() +
+                ", \"created\":" + created.get() +
+                ", \"failedCreates\":" + failedCreates.get() +
+                ", \"checkouts\":" + checkouts.get() +
+                ", \"waitedCheckouts\":" + waitedCheckouts.get() +
+                ", \"resets\":" + resets.get() +
+                ", \"recycled\":" + recycled.get() +
+                ", \"evicted\":" + evicted.get() +
+                '}';
+    }
+
+    private static class Idle {
+        private final DockerContainer container;
+        private final long since = System.nanoTime();
+
+        private Idle(DockerContainer container) {
+            this.container = container;
+        }
+    }
+}
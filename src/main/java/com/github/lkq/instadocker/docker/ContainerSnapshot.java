@@ -0,0 +1,99 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.model.ContainerConfig;
+import com.github.lkq.instadocker.util.InstaUtils;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * point-in-time state of a container, taken from a single inspect call or derived from a command issued by {@link DockerContainer}
+ */
+class ContainerSnapshot {
+
+    static final ContainerSnapshot ABSENT = new ContainerSnapshot(null, false, null, Collections.emptyMap());
+
+    private final String containerId;
+    private final boolean running;
+    private final InspectContainerResponse inspectResponse;
+    private final Map<String, String> labels;
+
+    private ContainerSnapshot(String containerId, boolean running, InspectContainerResponse inspectResponse, Map<String, String> labels) {
+        this.containerId = containerId;
+        this.running = running;
+        this.inspectResponse = inspectResponse;
+        this.labels = labels;
+    }
+
+    static ContainerSnapshot of(InspectContainerResponse inspectResponse) {
+        InspectContainerResponse.ContainerState state = inspectResponse.getState();
+        boolean running = state != null && Boolean.TRUE.equals(state.getRunning());
+        Map<String, String> labels = Optional.ofNullable(inspectResponse.getConfig())
+                .map(ContainerConfig::getLabels)
+                .orElse(Collections.emptyMap());
+        return new ContainerSnapshot(inspectResponse.getId(), running, inspectResponse, labels);
+    }
+
+    static ContainerSnapshot created(String containerId, Map<String, String> labels) {
+        return new ContainerSnapshot(containerId, false, null, labels);
+    }
+
+    boolean exists() {
+        return InstaUtils.isNotBlank(containerId);
+    }
+
+    boolean running() {
+        return running;
+    }
+
+    Optional<String> containerId() {
+        return Optional.ofNullable(containerId);
+    }
+
+    Optional<InspectContainerResponse> inspectResponse() {
+        return Optional.ofNullable(inspectResponse);
+    }
+
+    /**
+     * @return when the current or last run of the container started, empty if it never ran or the state is not inspected
+     */
+    Optional<Instant> startedAt() {
+        return stateTime(inspectResponse == null || inspectResponse.getState() == null ? null : inspectResponse.getState().getStartedAt());
+    }
+
+    /**
+     * @return when the last run of the container finished, empty if it never finished or the state is not inspected
+     */
+    Optional<Instant> finishedAt() {
+        return stateTime(inspectResponse == null || inspectResponse.getState() == null ? null : inspectResponse.getState().getFinishedAt());
+    }
+
+    private static Optional<Instant> stateTime(String time) {
+        if (!InstaUtils.isNotBlank(time)) {
+            return Optional.empty();
+        }
+        try {
+            Instant instant = Instant.parse(time);
+            // the daemon reports 0001-01-01T00:00:00Z for a time not reached yet
+            return instant.getEpochSecond() > 0 ? Optional.of(instant) : Optional.empty();
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    Optional<String> label(String key) {
+        return Optional.ofNullable(labels.get(key));
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"containerId\":\"" + containerId + "\"" +
+                ", \"running\":" + running +
+                '}';
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.lkq.instadocker.docker;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * counts the docker daemon api calls issued by {@link DockerImage} and {@link DockerContainer}, per command
+ */
+public class DaemonCallCounter {
+
+    private final ConcurrentMap<String, AtomicLong> counts = new ConcurrentHashMap<>();
+
+    public void record(String command) {
+        counts.computeIfAbsent(command, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    public long total() {
+        return counts.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    public long count(String command) {
+        AtomicLong count = counts.get(command);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the call count of each command, ordered by command name
+     */
+    public Map<String, Long> counts() {
+        Map<String, Long> result = new TreeMap<>();
+        counts.forEach((command, count) -> result.put(command, count.get()));
+        return result;
+    }
+
+    public void reset() {
+        counts.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"total\":" + total() +
+                ", \"counts\":" + counts() +
+                '}';
+    }
+}
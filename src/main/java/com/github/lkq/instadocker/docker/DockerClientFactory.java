@@ -3,10 +3,100 @@ package com.github.lkq.instadocker.docker;
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.core.DefaultDockerClientConfig;
 import com.github.dockerjava.core.DockerClientBuilder;
+import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.util.Objects;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * creates docker clients. {@link #acquireShared()} hands out one reference counted client per jvm, so parallel
+ * instances share the connection pool instead of each opening their own, and the client is closed with the last release.
+ */
 public class DockerClientFactory {
+    private static final Logger logger = getLogger(DockerClientFactory.class);
+
+    private static DockerTransportConfig sharedConfig = DockerTransportConfig.defaults();
+    private static DockerClient sharedClient;
+    private static DockerClientMetrics sharedMetrics = new DockerClientMetrics();
+    private static int sharedReferences = 0;
+
+    /**
+     * @return a new client configured from the environment with the default transport, to be closed by the caller
+     */
     public static DockerClient defaultClient() {
+        return newClient(DockerTransportConfig.defaults(), new DockerClientMetrics());
+    }
+
+    /**
+     * @param transportConfig connection pool and timeouts
+     * @param metrics         receives the request latency and pool utilization of the client
+     * @return a new client, to be closed by the caller
+     */
+    public static DockerClient newClient(DockerTransportConfig transportConfig, DockerClientMetrics metrics) {
+        Objects.requireNonNull(transportConfig, "transportConfig is required");
+        Objects.requireNonNull(metrics, "metrics is required");
         DefaultDockerClientConfig.Builder configBuilder = DefaultDockerClientConfig.createDefaultConfigBuilder();
-        return DockerClientBuilder.getInstance(configBuilder.build()).build();
+        if (transportConfig.dockerHost() != null) {
+            configBuilder.withDockerHost(transportConfig.dockerHost());
+        }
+        return DockerClientBuilder.getInstance(configBuilder.build())
+                .withDockerCmdExecFactory(new MeteredDockerCmdExecFactory(transportConfig, metrics))
+                .build();
+    }
+
+    /**
+     * @param transportConfig transport of the shared client, only applied when the shared client is created
+     * @throws IllegalStateException if the shared client is in use
+     */
+    public static synchronized void configureShared(DockerTransportConfig transportConfig) {
+        Objects.requireNonNull(transportConfig, "transportConfig is required");
+        if (sharedClient != null) {
+            throw new IllegalStateException("shared docker client already in use, configure it before the first acquire");
+        }
+        sharedConfig = transportConfig;
+    }
+
+    /**
+     * @return the shared client, created on first use, every acquire must be paired with a {@link #releaseShared(DockerClient)}
+     */
+    public static synchronized DockerClient acquireShared() {
+        if (sharedClient == null) {
+            sharedMetrics = new DockerClientMetrics();
+            sharedClient = newClient(sharedConfig, sharedMetrics);
+            logger.info("shared docker client created, transport={}", sharedConfig);
+        }
+        sharedReferences++;
+        return sharedClient;
+    }
+
+    /**
+     * @param client the client returned by {@link #acquireShared()}, closed when the last reference is released
+     */
+    public static synchronized void releaseShared(DockerClient client) {
+        if (client == null || client != sharedClient) {
+            return;
+        }
+        if (--sharedReferences == 0) {
+            try {
+                sharedClient.close();
+                logger.info("shared docker client closed, metrics={}", sharedMetrics);
+            } catch (IOException e) {
+                logger.warn("failed to close shared docker client", e);
+            }
+            sharedClient = null;
+        }
+    }
+
+    public static synchronized int sharedReferences() {
+        return sharedReferences;
+    }
+
+    /**
+     * @return metrics of the current shared client
+     */
+    public static synchronized DockerClientMetrics sharedMetrics() {
+        return sharedMetrics;
     }
 }
@@ -0,0 +1,107 @@
+package com.github.lkq.instadocker.docker;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * request latency and connection pool utilization of a docker client created by {@link DockerClientFactory}.
+ * latency is measured until the response headers arrive, so a followed stream counts as one short request.
+ */
+public class DockerClientMetrics {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    private volatile PoolingHttpClientConnectionManager connectionManager;
+
+    void connectionManager(PoolingHttpClientConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    void record(long latencyNanos, int status) {
+        requests.increment();
+        if (status >= 400) {
+            failedRequests.increment();
+        }
+        totalLatencyNanos.add(latencyNanos);
+        maxLatencyNanos.accumulate(latencyNanos);
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of requests answered with a 4xx or 5xx status, e.g. 404 of inspecting a missing container
+     */
+    public long failedRequests() {
+        return failedRequests.sum();
+    }
+
+    public double meanLatencyMillis() {
+        long count = requests.sum();
+        return count == 0 ? 0 : totalLatencyNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double maxLatencyMillis() {
+        return maxLatencyNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return connections in use, including the ones held by followed log and event streams
+     */
+    public int leasedConnections() {
+        return poolStats().getLeased();
+    }
+
+    /**
+     * @return idle connections kept for reuse
+     */
+    public int availableConnections() {
+        return poolStats().getAvailable();
+    }
+
+    /**
+     * @return requests waiting for a connection
+     */
+    public int pendingConnections() {
+        return poolStats().getPending();
+    }
+
+    public int maxConnections() {
+        return poolStats().getMax();
+    }
+
+    /**
+     * @return leased connections over the pool size
+     */
+    public double poolUtilization() {
+        PoolStats stats = poolStats();
+        return stats.getMax() == 0 ? 0 : stats.getLeased() / (double) stats.getMax();
+    }
+
+    private PoolStats poolStats() {
+        PoolingHttpClientConnectionManager manager = connectionManager;
+        return manager == null ? new PoolStats(0, 0, 0, 0) : manager.getTotalStats();
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"requests\":" + requests() +
+                ", \"failedRequests\":" + failedRequests() +
+                ", \"meanLatencyMillis\":" + String.format("%.2f", meanLatencyMillis()) +
+                ", \"maxLatencyMillis\":" + String.format("%.2f", maxLatencyMillis()) +
+                ", \"leasedConnections\":" + leasedConnections() +
+                ", \"availableConnections\":" + availableConnections() +
+                ", \"pendingConnections\":" + pendingConnections() +
+                ", \"maxConnections\":" + maxConnections() +
+                '}';
+    }
+}
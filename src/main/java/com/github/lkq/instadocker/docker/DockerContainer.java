@@ -3,20 +3,46 @@ package com.github.lkq.instadocker.docker;
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.command.CreateContainerCmd;
 import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.HealthState;
 import com.github.dockerjava.api.command.InspectContainerResponse;
 import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.exception.NotModifiedException;
 import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Event;
 import com.github.dockerjava.api.model.ExposedPort;
+import com.github.dockerjava.api.model.Mount;
 import com.github.dockerjava.api.model.Ports;
-import com.github.dockerjava.api.model.Volume;
 import com.github.lkq.instadocker.docker.entity.PortBinding;
+import com.github.lkq.instadocker.docker.entity.ResourceLimits;
 import com.github.lkq.instadocker.docker.entity.VolumeBinding;
+import com.github.lkq.instadocker.docker.log.LogLine;
+import com.github.lkq.instadocker.docker.log.LogStore;
+import com.github.lkq.instadocker.docker.probe.Backoff;
+import com.github.lkq.instadocker.docker.probe.ProbeResult;
+import com.github.lkq.instadocker.docker.probe.ReadinessCheck;
+import com.github.lkq.instadocker.docker.probe.ReadinessProbe;
+import com.github.lkq.instadocker.docker.stats.ResourceSeries;
+import com.github.lkq.instadocker.exception.InstaDockerException;
+import com.github.lkq.instadocker.metrics.Instrumentation;
+import com.github.lkq.instadocker.metrics.Instrumentations;
 import com.github.lkq.instadocker.util.Assert;
+import com.github.lkq.instadocker.util.InstaExecutors;
 import com.github.lkq.instadocker.util.InstaUtils;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -24,7 +50,14 @@ public class DockerContainer {
 
     private static final Logger logger = getLogger(DockerContainer.class);
 
-    private final DockerClient dockerClient;
+    /**
+     * label holding the {@link #specHash()} of the spec the container was created with
+     */
+    public static final String SPEC_HASH_LABEL = "com.github.lkq.instadocker.spec-hash";
+
+    private final DockerClient baseClient;
+    private DockerClient dockerClient;
+    private Instrumentation instrumentation = Instrumentations.defaultInstrumentation();
 
     private final String imageId;
     private final String containerName;
@@ -34,10 +67,36 @@ public class DockerContainer {
 
     private final List<VolumeBinding> volumeBindings = new ArrayList<>();
     private final List<PortBinding> portBindings = new ArrayList<>();
+    private final List<PortReservation> portReservations = new ArrayList<>();
+    private final Map<ExposedPort, Integer> boundHostPorts = new ConcurrentHashMap<>();
     private final List<String> environmentVariables = new ArrayList<>();
     private final List<String> commands = new ArrayList<>();
+    private ResourceLimits resourceLimits;
+    private final Map<String, String> labels = new TreeMap<>();
+    private final Map<String, String> sessionLabels = new ConcurrentHashMap<>();
 
     private final ContainerLogger containerLogger;
+    private final DaemonCallCounter daemonCalls;
+    private LogStreamService logStreams = LogStreamService.shared();
+
+    private ContainerSnapshot lastKnownState;
+
+    private boolean watchEvents = false;
+    private int eventTimeoutInSeconds;
+    private ContainerEvents containerEvents;
+
+    private ResourceSeries resourceStats;
+    private volatile StatsSession statsSession;
+
+    private SnapshotCache snapshotCache;
+    private SeedStep seedStep;
+    private List<String> seedInputs = Collections.emptyList();
+    private String snapshotFingerprint;
+    private String snapshotImage;
+
+    private final List<ReadinessProbe> readinessProbes = new ArrayList<>();
+    private Backoff readinessBackoff = Backoff.defaultBackoff();
+    private List<ProbeResult> readinessResults = Collections.emptyList();
 
     /**
      * class for manipulating docker containers.
@@ -48,13 +107,29 @@ public class DockerContainer {
      * @param logger        the logger for outputting docker console logs, will use the DockerContainer.logger if not provided
      */
     public DockerContainer(DockerClient dockerClient, String imageId, String containerName, Logger logger) {
+        this(dockerClient, imageId, containerName, logger, new DaemonCallCounter());
+    }
+
+    /**
+     * class for manipulating docker containers.
+     *
+     * @param dockerClient  the docker-java api client
+     * @param imageId       the docker image id
+     * @param containerName the docker container name to use
+     * @param logger        the logger for outputting docker console logs, will use the DockerContainer.logger if not provided
+     * @param daemonCalls   the counter for recording daemon api calls
+     */
+    public DockerContainer(DockerClient dockerClient, String imageId, String containerName, Logger logger, DaemonCallCounter daemonCalls) {
         Objects.requireNonNull(dockerClient);
+        Objects.requireNonNull(daemonCalls, "daemonCalls is required");
         Assert.requiresNotBlank(imageId, "imageId is required");
         Assert.requiresNotBlank(containerName, "containerName is required");
-        this.dockerClient = dockerClient;
+        this.baseClient = dockerClient;
         this.imageId = imageId;
         this.containerName = containerName;
         this.containerLogger = new ContainerLogger(containerName, logger == null ? DockerContainer.logger : logger);
+        this.daemonCalls = daemonCalls;
+        this.dockerClient = InstrumentedDockerClient.wrap(baseClient, instrumentation, tags());
     }
 
     public DockerContainer hostName(String hostName) {
@@ -67,6 +142,18 @@ public class DockerContainer {
         return this;
     }
 
+    /**
+     * @param instrumentation receives the timing of the daemon calls and lifecycle phases of the container,
+     *                        {@link Instrumentations#defaultInstrumentation()} if not provided
+     * @return this container
+     */
+    public DockerContainer instrumentation(Instrumentation instrumentation) {
+        Objects.requireNonNull(instrumentation, "instrumentation is required");
+        this.instrumentation = instrumentation;
+        this.dockerClient = InstrumentedDockerClient.wrap(baseClient, instrumentation, tags());
+        return this;
+    }
+
     public DockerContainer volumeBindings(List<VolumeBinding> volumeBindings) {
         if (volumeBindings != null && volumeBindings.size() > 0) {
             this.volumeBindings.addAll(volumeBindings);
@@ -87,11 +174,48 @@ public class DockerContainer {
         return this;
     }
 
+    /**
+     * @param volumeBinding a bind mount, a named or anonymous volume, or a tmpfs mount
+     * @return this
+     */
+    public DockerContainer volumeBinding(VolumeBinding volumeBinding) {
+        Objects.requireNonNull(volumeBinding, "volumeBinding is required");
+        volumeBindings.add(volumeBinding);
+        return this;
+    }
+
+    /**
+     * mount a memory backed file system, see {@link VolumeBinding#tmpfs(String, long, int)}
+     */
+    public DockerContainer tmpfs(String containerPath, long sizeBytes) {
+        volumeBindings.add(VolumeBinding.tmpfs(containerPath, sizeBytes, 0));
+        return this;
+    }
+
     public DockerContainer portBinding(String protocol, int containerPort, int hostPort) {
         portBindings.add(new PortBinding(protocol, containerPort, hostPort));
         return this;
     }
 
+    /**
+     * bind the container port to a host port picked by the docker daemon, see {@link #hostPort(PortBinding)}
+     */
+    public DockerContainer anyHostPortBinding(String protocol, int containerPort) {
+        portBindings.add(PortBinding.anyHostPort(protocol, containerPort));
+        return this;
+    }
+
+    /**
+     * bind the container port to a reserved host port, the reservation is released once the container is started,
+     * found running, fails to be created or started, or is removed
+     */
+    public DockerContainer portBinding(String protocol, int containerPort, PortReservation reservation) {
+        Objects.requireNonNull(reservation, "reservation is required");
+        portBindings.add(new PortBinding(protocol, containerPort, reservation.port()));
+        portReservations.add(reservation);
+        return this;
+    }
+
     public DockerContainer portBindings(List<PortBinding> portBindings) {
         if (portBindings != null && portBindings.size() > 0) {
             this.portBindings.addAll(portBindings);
@@ -113,16 +237,264 @@ public class DockerContainer {
         return this;
     }
 
+    /**
+     * @param key   label key, e.g. com.example.team
+     * @param value label value
+     * @return this container
+     */
+    public DockerContainer label(String key, String value) {
+        Assert.requiresNotBlank(key, "label key is required");
+        Objects.requireNonNull(value, "label value is required");
+        labels.put(key, value);
+        return this;
+    }
+
+    /**
+     * label of the session owning the container, not part of the {@link #specHash()}, so a container of another session
+     * is still identical
+     */
+    void sessionLabel(String key, String value) {
+        sessionLabels.put(key, value);
+    }
+
+    /**
+     * @param resourceLimits cpu, memory and i/o constraints applied when the container is created
+     * @return this container
+     * @throws IllegalArgumentException if the limits are not consistent with each other
+     */
+    public DockerContainer resourceLimits(ResourceLimits resourceLimits) {
+        Objects.requireNonNull(resourceLimits, "resourceLimits is required");
+        resourceLimits.validate();
+        this.resourceLimits = resourceLimits;
+        return this;
+    }
+
+    /**
+     * add a probe to check whether the service inside the container is ready, see {@link #awaitReady(int)}
+     *
+     * @param probe the readiness probe
+     * @return this container
+     */
+    public DockerContainer readinessProbe(ReadinessProbe probe) {
+        Objects.requireNonNull(probe, "probe is required");
+        probe.attach(this);
+        readinessProbes.add(probe);
+        return this;
+    }
+
+    /**
+     * @param backoff the backoff between readiness probe attempts
+     * @return this container
+     */
+    public DockerContainer readinessBackoff(Backoff backoff) {
+        Objects.requireNonNull(backoff, "backoff is required");
+        this.readinessBackoff = backoff;
+        return this;
+    }
+
+    /**
+     * @param listener notified with every log line of the container once it's running
+     * @return this container
+     */
+    public DockerContainer logListener(Consumer<String> listener) {
+        containerLogger.addLineListener(listener);
+        return this;
+    }
+
+    /**
+     * follow the daemon event stream of this container, so that start, stop and remove are confirmed by the
+     * start, stop and destroy events as soon as the daemon reports them, instead of inspecting the container again
+     *
+     * @param timeoutInSeconds how long to wait for an event, the container will be inspected if the event doesn't arrive in time
+     * @return this container
+     */
+    public DockerContainer watchEvents(int timeoutInSeconds) {
+        Assert.requiresTrue(timeoutInSeconds > 0, "timeoutInSeconds must be positive");
+        this.watchEvents = true;
+        this.eventTimeoutInSeconds = timeoutInSeconds;
+        return this;
+    }
+
+    /**
+     * stop following the daemon event stream, lifecycle commands will be confirmed by inspecting the container again
+     */
+    public void unwatchEvents() {
+        watchEvents = false;
+        closeEvents();
+    }
+
+    /**
+     * stop following the logs, stats and events of the container without stopping it, e.g. before its docker client is closed
+     */
+    public void detach() {
+        logStreams.detach(containerName);
+        detachStats();
+        closeEvents();
+    }
+
+    /**
+     * follow the daemon stats stream while the container runs, and keep the cpu, memory, network and block io rates
+     * of the most recent samples, the daemon sends about one sample per second
+     *
+     * @param maxSamples max number of samples kept
+     * @return this container
+     */
+    public DockerContainer collectStats(int maxSamples) {
+        this.resourceStats = new ResourceSeries(maxSamples);
+        return this;
+    }
+
+    /**
+     * @return the collected resource samples, empty if {@link #collectStats(int)} is not enabled
+     */
+    public Optional<ResourceSeries> resourceStats() {
+        return Optional.ofNullable(resourceStats);
+    }
+
+    /**
+     * keep the container output in memory, e.g. to assert on it with {@link LogStore#awaitLine(java.util.regex.Pattern, long)}
+     *
+     * @param maxLines max number of lines kept
+     * @return this
+     */
+    public DockerContainer captureLogs(int maxLines) {
+        containerLogger.capture(maxLines);
+        return this;
+    }
+
+    /**
+     * @return the captured container output, empty if {@link #captureLogs(int)} is not enabled
+     */
+    public Optional<LogStore> capturedLogs() {
+        return containerLogger.captured();
+    }
+
+    /**
+     * @param logStreams the service following the container logs, defaults to {@link LogStreamService#shared()}
+     * @return this
+     */
+    public DockerContainer logStreams(LogStreamService logStreams) {
+        Objects.requireNonNull(logStreams, "logStreams is required");
+        this.logStreams = logStreams;
+        return this;
+    }
+
+    /**
+     * seed the container once and start later containers from the committed snapshot: {@link #resolveSnapshot()} before the
+     * container is created, {@link #ensureSeeded()} once it's ready. {@link com.github.lkq.instadocker.InstaDocker#start} does both.
+     * the daemon doesn't commit volumes, so the seeded data must not be in a volume, e.g. set PGDATA of postgres to a path
+     * outside /var/lib/postgresql/data.
+     *
+     * @param snapshotCache the cache of the snapshot images
+     * @param seedStep      prepares the state of the running container, only run when there is no snapshot yet
+     * @param seedInputs    everything the seeded state depends on besides the image and the container spec, e.g. a migrations version
+     * @return this
+     */
+    public DockerContainer seed(SnapshotCache snapshotCache, SeedStep seedStep, String... seedInputs) {
+        Objects.requireNonNull(snapshotCache, "snapshotCache is required");
+        Objects.requireNonNull(seedStep, "seedStep is required");
+        this.snapshotCache = snapshotCache;
+        this.seedStep = seedStep;
+        this.seedInputs = Arrays.asList(seedInputs);
+        return this;
+    }
+
+    /**
+     * look up the snapshot of the base image, the container spec and the seed inputs, the container is created from the
+     * snapshot if there is one
+     *
+     * @return true if the container is created from a snapshot
+     */
+    public boolean resolveSnapshot() {
+        if (snapshotCache == null) {
+            return false;
+        }
+        snapshotImage = null;
+        daemonCalls.record("inspectImage");
+        String baseImageId = dockerClient.inspectImageCmd(imageId).exec().getId();
+        List<String> inputs = new ArrayList<>();
+        inputs.add(specHash());
+        inputs.addAll(seedInputs);
+        snapshotFingerprint = SnapshotCache.fingerprint(baseImageId, inputs);
+        daemonCalls.record("inspectImage");
+        snapshotImage = snapshotCache.lookup(snapshotFingerprint).orElse(null);
+        return snapshotImage != null;
+    }
+
+    /**
+     * run the seed step and commit the container to a snapshot, unless the container is created from a snapshot.
+     * a failed commit is logged, the container is still seeded.
+     *
+     * @return false if the seed step fails
+     */
+    public boolean ensureSeeded() {
+        if (seedStep == null || snapshotImage != null) {
+            return true;
+        }
+        return phase("seed", this::seed);
+    }
+
+    private boolean seed() {
+        long start = System.currentTimeMillis();
+        try {
+            seedStep.seed(this);
+        } catch (Exception e) {
+            logger.error("failed to seed container, containerName={}", containerName, e);
+            return false;
+        }
+        logger.info("container seeded, containerName={}, elapsed={}ms", containerName, System.currentTimeMillis() - start);
+        if (snapshotFingerprint == null) {
+            logger.warn("container seeded without snapshot lookup, not committed, call resolveSnapshot() before creating the container, containerName={}", containerName);
+            return true;
+        }
+        try {
+            daemonCalls.record("commitContainer");
+            snapshotCache.commit(containerName, snapshotFingerprint);
+        } catch (InstaDockerException e) {
+            logger.warn("failed to snapshot seeded container, containerName={}", containerName, e);
+        }
+        return true;
+    }
+
+    /**
+     * @return the snapshot image the container is created from, empty if it's created from the image
+     */
+    public Optional<String> snapshotImage() {
+        return Optional.ofNullable(snapshotImage);
+    }
+
     public boolean ensureRunning() {
-        if (isRunning()) {
+        ContainerSnapshot snapshot = snapshot();
+        if (snapshot.running()) {
             logger.debug("container already running, containerName={}", containerName);
+            releasePortReservations();
+            resolveHostPorts(snapshot);
+            if (!logStreams.attached(containerName)) {
+                // the probes only see the logs of the current run, which started before this instance followed it
+                readinessProbes.forEach(ReadinessProbe::reset);
+                snapshot.startedAt().ifPresent(startedAt -> containerLogger.followAfter(startedAt.minusNanos(1)));
+                attachLogs();
+            }
+            attachStats();
             return true;
         }
-        if (exists()) {
+        if (snapshot.exists()) {
             logger.debug("trying to start container, containerName={}", containerName);
-            dockerClient.startContainerCmd(containerName).exec();
-            if (isRunning()) {
-                this.containerLogger.attach(dockerClient);
+            readinessProbes.forEach(ReadinessProbe::reset);
+            // a reused container would replay the logs of its previous runs
+            snapshot.finishedAt().ifPresent(containerLogger::followAfter);
+            CompletableFuture<Event> started = expectEvent(ContainerEvents.START);
+            boolean startSucceeded;
+            try {
+                startSucceeded = phase("start", () -> start(started));
+            } finally {
+                // bound by the container now, or not reserved for it any longer after a failed start
+                releasePortReservations();
+            }
+            if (startSucceeded) {
+                resolveHostPorts(null);
+                attachLogs();
+                attachStats();
                 logger.info("container started, containerName={}", containerName);
                 return true;
             } else {
@@ -135,32 +507,366 @@ public class DockerContainer {
         }
     }
 
+    private void attachLogs() {
+        phase("logAttach", () -> {
+            daemonCalls.record("logContainer");
+            logStreams.attach(dockerClient, containerLogger);
+            return true;
+        });
+    }
+
+    private boolean start(CompletableFuture<Event> started) {
+        daemonCalls.record("startContainer");
+        dockerClient.startContainerCmd(containerName).exec();
+        return awaitEvent(started) || inspect().running();
+    }
+
+    /**
+     * @param portBinding one of the port bindings of the container
+     * @return the host port bound, resolved after the container is started if the daemon picks the host port
+     * @throws IllegalStateException if the host port is picked by the daemon and the container is not started yet
+     */
+    public int hostPort(PortBinding portBinding) {
+        if (!portBinding.isAnyHostPort()) {
+            return portBinding.hostPort();
+        }
+        Integer hostPort = boundHostPorts.get(portBinding.toExposedPort());
+        if (hostPort == null) {
+            throw new IllegalStateException("host port not bound yet, start the container first, containerName=" + containerName + ", portBinding=" + portBinding);
+        }
+        return hostPort;
+    }
+
+    /**
+     * @param containerPort a tcp container port of the port bindings
+     * @return the host port bound, see {@link #hostPort(PortBinding)}
+     */
+    public int hostPort(int containerPort) {
+        for (PortBinding portBinding : portBindings) {
+            if (portBinding.containerPort() == containerPort && "TCP".equals(portBinding.protocol())) {
+                return hostPort(portBinding);
+            }
+        }
+        throw new IllegalArgumentException("no port binding for container port " + containerPort + ", containerName=" + containerName);
+    }
+
+    /**
+     * look up the host ports picked by the daemon, only inspects the container if there is any and the snapshot
+     * doesn't have them
+     */
+    private void resolveHostPorts(ContainerSnapshot snapshot) {
+        if (portBindings.stream().noneMatch(PortBinding::isAnyHostPort)) {
+            return;
+        }
+        InspectContainerResponse response = (snapshot != null ? snapshot.inspectResponse() : Optional.<InspectContainerResponse>empty())
+                .orElseGet(() -> inspect().inspectResponse().orElse(null));
+        if (response == null || response.getNetworkSettings() == null || response.getNetworkSettings().getPorts() == null) {
+            logger.warn("unable to resolve host ports, no port mapping in container state, containerName={}", containerName);
+            return;
+        }
+        Map<ExposedPort, Ports.Binding[]> bindings = response.getNetworkSettings().getPorts().getBindings();
+        for (PortBinding portBinding : portBindings) {
+            Ports.Binding[] bound = bindings.get(portBinding.toExposedPort());
+            if (portBinding.isAnyHostPort() && bound != null && bound.length > 0 && InstaUtils.isNotBlank(bound[0].getHostPortSpec())) {
+                int hostPort = Integer.parseInt(bound[0].getHostPortSpec());
+                boundHostPorts.put(portBinding.toExposedPort(), hostPort);
+                logger.info("host port bound, protocol={}, container={}, host={}, containerName={}",
+                        portBinding.protocol(), portBinding.containerPort(), hostPort, containerName);
+            }
+        }
+    }
+
+    private void releasePortReservations() {
+        portReservations.forEach(PortReservation::close);
+        portReservations.clear();
+    }
+
     public boolean isRunning() {
-        InspectContainerResponse inspectResponse = dockerClient.inspectContainerCmd(containerName).exec();
-        Boolean state = inspectResponse.getState().getRunning();
-        return state == null ? false : state;
+        return inspect().running();
+    }
+
+    /**
+     * wait for all readiness probes to become ready, returns immediately if there is no probe
+     *
+     * @param timeoutInSeconds how long to wait for all probes
+     * @return true if all probes are ready
+     */
+    public boolean awaitReady(int timeoutInSeconds) {
+        if (readinessProbes.isEmpty()) {
+            return true;
+        }
+        return phase("ready", () -> probe(timeoutInSeconds));
+    }
+
+    private boolean probe(int timeoutInSeconds) {
+        try {
+            readinessResults = new ReadinessCheck(readinessProbes, readinessBackoff).await(TimeUnit.SECONDS.toMillis(timeoutInSeconds));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("interrupted while waiting for container to be ready, containerName={}", containerName);
+            return false;
+        }
+        boolean ready = readinessResults.stream().allMatch(ProbeResult::ready);
+        logger.info("container ready={}, containerName={}, probes={}", ready, containerName, readinessResults);
+        return ready;
+    }
+
+    /**
+     * @return result of each probe from the last {@link #awaitReady(int)}
+     */
+    public List<ProbeResult> readinessResults() {
+        return readinessResults;
+    }
+
+    /**
+     * @return status of the docker HEALTHCHECK, e.g. starting, healthy or unhealthy, empty if the container has no health check
+     */
+    public Optional<String> healthStatus() {
+        return inspect().inspectResponse()
+                .map(InspectContainerResponse::getState)
+                .map(InspectContainerResponse.ContainerState::getHealth)
+                .map(HealthState::getStatus);
     }
 
     public boolean ensureStopped(int timeoutInSeconds) {
-        dockerClient.stopContainerCmd(containerName).withTimeout(timeoutInSeconds).exec();
-        if (isRunning()) {
+        return phase("stop", () -> stop(timeoutInSeconds));
+    }
+
+    private boolean stop(int timeoutInSeconds) {
+        CompletableFuture<Event> stopped = expectEvent(ContainerEvents.STOP);
+        daemonCalls.record("stopContainer");
+        try {
+            dockerClient.stopContainerCmd(containerName).withTimeout(timeoutInSeconds).exec();
+        } catch (NotModifiedException e) {
+            cancelEvent(stopped);
+            logStreams.detach(containerName);
+            detachStats();
+            logger.info("container already stopped, containerName={}", containerName);
+            return true;
+        }
+        if (awaitEvent(stopped) || !inspect().running()) {
+            logStreams.detach(containerName);
+            detachStats();
+            logger.info("container stopped, containerName={}", containerName);
+            return true;
+        } else {
             logger.info("unable to stop container, still running after stop, containerName={}", containerName);
             return false;
+        }
+    }
+
+    /**
+     * run a command in the running container, without forking a docker cli, and capture its output
+     *
+     * @param timeoutInSeconds max time to wait for the command output to end
+     * @param command          the command and its arguments
+     * @return the exit code and the stdout and stderr lines
+     * @throws InstaDockerException if the command can't be executed, e.g. the container is not running
+     */
+    public ExecResult exec(int timeoutInSeconds, String... command) {
+        return exec(null, timeoutInSeconds, command);
+    }
+
+    /**
+     * run a command in the running container, streaming its output lines to the consumer as they're received
+     *
+     * @param output           receives the stdout and stderr lines on the docker-java stream thread, null to capture them in the result
+     * @param timeoutInSeconds max time to wait for the command output to end, the command is not killed on timeout
+     * @param command          the command and its arguments
+     * @return the exit code
+     * @throws InstaDockerException if the command can't be executed, e.g. the container is not running
+     */
+    public ExecResult exec(Consumer<LogLine> output, int timeoutInSeconds, String... command) {
+        Assert.requiresTrue(timeoutInSeconds > 0, "timeoutInSeconds must be positive");
+        Assert.requiresTrue(command.length > 0, "command is required");
+        long start = System.nanoTime();
+        List<LogLine> captured = Collections.synchronizedList(new ArrayList<>());
+        boolean success = false;
+        try {
+            String execId = createExec(command);
+            ExecSession session = startExec(execId, output != null ? output : captured::add);
+            boolean completed;
+            try {
+                completed = session.finished().get(timeoutInSeconds, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                completed = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closeQuietly(session);
+                throw new InstaDockerException("interrupted while executing " + Arrays.toString(command) + " in " + containerName, e);
+            } catch (ExecutionException e) {
+                throw new InstaDockerException("failed to read the output of " + Arrays.toString(command) + " in " + containerName, e.getCause());
+            }
+            ExecResult result = execResult(execId, session, completed, start, captured, command);
+            success = result.succeeded();
+            return result;
+        } finally {
+            instrumentation.record(Instrumentation.PHASE, Instrumentations.with(tags(), Instrumentation.TAG_PHASE, "exec"), System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * asynchronous version of {@link #exec(Consumer, int, String...)} on the default executor, see {@link InstaExecutors#defaultExecutor()}
+     */
+    public CompletableFuture<ExecResult> execAsync(Consumer<LogLine> output, int timeoutInSeconds, String... command) {
+        return execAsync(output, timeoutInSeconds, InstaExecutors.defaultExecutor(), command);
+    }
+
+    /**
+     * asynchronous version of {@link #exec(Consumer, int, String...)}, no thread is blocked while the command runs,
+     * so many commands can run concurrently in the container on a shared executor, e.g. parallel seed scripts
+     *
+     * @param executor runs the create and the inspect of the exec, the output is received on the docker-java stream thread
+     * @return future completed with the exit code, or failed with {@link InstaDockerException}
+     */
+    public CompletableFuture<ExecResult> execAsync(Consumer<LogLine> output, int timeoutInSeconds, Executor executor, String... command) {
+        Assert.requiresTrue(timeoutInSeconds > 0, "timeoutInSeconds must be positive");
+        Assert.requiresTrue(command.length > 0, "command is required");
+        long start = System.nanoTime();
+        List<LogLine> captured = Collections.synchronizedList(new ArrayList<>());
+        return CompletableFuture.supplyAsync(() -> createExec(command), executor)
+                .thenCompose(execId -> {
+                    ExecSession session = startExec(execId, output != null ? output : captured::add);
+                    return InstaExecutors.completeOnTimeout(session.finished(), false, TimeUnit.SECONDS.toMillis(timeoutInSeconds))
+                            .handleAsync((completed, error) -> {
+                                if (error != null) {
+                                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                                    throw new InstaDockerException("failed to read the output of " + Arrays.toString(command) + " in " + containerName, cause);
+                                }
+                                return execResult(execId, session, completed, start, captured, command);
+                            }, executor);
+                })
+                .whenComplete((result, error) -> instrumentation.record(Instrumentation.PHASE,
+                        Instrumentations.with(tags(), Instrumentation.TAG_PHASE, "exec"), System.nanoTime() - start, result != null && result.succeeded()));
+    }
+
+    private String createExec(String... command) {
+        daemonCalls.record("execCreate");
+        try {
+            return dockerClient.execCreateCmd(containerName)
+                    .withCmd(command)
+                    .withAttachStdout(true)
+                    .withAttachStderr(true)
+                    .exec()
+                    .getId();
+        } catch (RuntimeException e) {
+            throw new InstaDockerException("failed to execute " + Arrays.toString(command) + " in " + containerName, e);
+        }
+    }
+
+    private ExecSession startExec(String execId, Consumer<LogLine> output) {
+        daemonCalls.record("execStart");
+        return dockerClient.execStartCmd(execId).exec(new ExecSession(execId, output));
+    }
+
+    private ExecResult execResult(String execId, ExecSession session, boolean completed, long start, List<LogLine> captured, String... command) {
+        Integer exitCode = null;
+        if (completed) {
+            daemonCalls.record("inspectExec");
+            exitCode = dockerClient.inspectExecCmd(execId).exec().getExitCode();
         } else {
-            logger.info("container stopped, containerName={}", containerName);
-            return true;
+            closeQuietly(session);
+            logger.warn("exec timed out, the command may still be running, containerName={}, command={}", containerName, Arrays.toString(command));
+        }
+        ExecResult result = new ExecResult(exitCode, !completed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), captured);
+        logger.debug("exec completed, containerName={}, command={}, result={}", containerName, Arrays.toString(command), result);
+        return result;
+    }
+
+    private static void closeQuietly(ExecSession session) {
+        try {
+            session.close();
+        } catch (IOException e) {
+            logger.debug("failed to close exec output", e);
         }
     }
 
     /**
-     * ensure the docker container exists
+     * stream files, directories or in-memory content into the container, as a tar archive written while it's sent,
+     * so large datasets are copied with constant memory and without a bind mount, e.g. with a remote daemon
+     *
+     * @param containerPath existing directory of the container the sources are extracted into
+     * @param sources       the content to copy, see {@link ArchiveSource}
+     * @throws InstaDockerException if the container doesn't exist or a source can't be read
+     */
+    public void copyIn(String containerPath, ArchiveSource... sources) {
+        Assert.requiresNotBlank(containerPath, "containerPath is required");
+        Assert.requiresTrue(sources.length > 0, "sources are required");
+        long start = System.currentTimeMillis();
+        daemonCalls.record("copyArchiveToContainer");
+        try (InputStream tar = Tars.pipe(Arrays.asList(sources), InstaExecutors.defaultExecutor())) {
+            dockerClient.copyArchiveToContainerCmd(containerName)
+                    .withRemotePath(containerPath)
+                    .withTarInputStream(tar)
+                    .exec();
+        } catch (IOException | RuntimeException e) {
+            throw new InstaDockerException("failed to copy " + Arrays.toString(sources) + " into " + containerName + ":" + containerPath, e);
+        }
+        logger.info("copied into container, containerName={}, containerPath={}, sources={}, elapsed={}ms",
+                containerName, containerPath, Arrays.toString(sources), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * stream a file or directory out of the container, extracted while it's received
+     *
+     * @param containerPath file or directory of the container
+     * @param hostDirectory directory it's extracted into, named as the last element of the container path
+     * @return number of bytes extracted
+     * @throws InstaDockerException if the path doesn't exist or can't be extracted
+     */
+    public long copyOut(String containerPath, Path hostDirectory) {
+        Objects.requireNonNull(hostDirectory, "hostDirectory is required");
+        long start = System.currentTimeMillis();
+        try (InputStream tar = openArchive(containerPath)) {
+            long bytes = Tars.extract(tar, hostDirectory);
+            logger.info("copied out of container, containerName={}, containerPath={}, hostDirectory={}, bytes={}, elapsed={}ms",
+                    containerName, containerPath, hostDirectory, bytes, System.currentTimeMillis() - start);
+            return bytes;
+        } catch (IOException e) {
+            throw new InstaDockerException("failed to copy " + containerName + ":" + containerPath + " to " + hostDirectory, e);
+        }
+    }
+
+    /**
+     * @param containerPath a file of the container
+     * @return the file content, read into memory
+     * @throws InstaDockerException if the path doesn't exist or is not a file
+     */
+    public byte[] readFile(String containerPath) {
+        try (InputStream tar = openArchive(containerPath)) {
+            return Tars.readFile(tar).orElseThrow(() -> new InstaDockerException("not a file: " + containerName + ":" + containerPath));
+        } catch (IOException e) {
+            throw new InstaDockerException("failed to read " + containerName + ":" + containerPath, e);
+        }
+    }
+
+    /**
+     * @param containerPath file or directory of the container
+     * @return the tar archive of the path, streamed from the daemon, to be closed by the caller
+     * @throws InstaDockerException if the path doesn't exist
+     */
+    public InputStream openArchive(String containerPath) {
+        Assert.requiresNotBlank(containerPath, "containerPath is required");
+        daemonCalls.record("copyArchiveFromContainer");
+        try {
+            return dockerClient.copyArchiveFromContainerCmd(containerName, containerPath).exec();
+        } catch (RuntimeException e) {
+            throw new InstaDockerException("failed to copy " + containerName + ":" + containerPath, e);
+        }
+    }
+
+    /**
+     * ensure the docker container exists, an existing container is left to {@link #ensureRunning()} without being
+     * inspected again
      * @return true if the container exists or being created
      */
     public boolean ensureExists() {
-        if (!exists()) {
-            return createOrReplace();
+        ContainerSnapshot snapshot = snapshot();
+        if (snapshot.exists()) {
+            lastKnownState = snapshot;
+            return true;
         }
-        return exists();
+        return create();
     }
 
     /**
@@ -170,16 +876,95 @@ public class DockerContainer {
      */
     public boolean createOrReplace() {
         logger.info("replacing container, imageId={}, containerName={}", imageId, containerName);
-        if (exists()) {
-            if (ensureNotExists()) {
+        if (snapshot().exists()) {
+            if (remove()) {
                 logger.info("removed old container, containerName={}", containerName);
             } else {
                 logger.error("unable to replace container, container exists but failed to remove, containerName={}", containerName);
                 return false;
             }
         }
-        CreateContainerCmd cmd = dockerClient.createContainerCmd(imageId);
+        return create();
+    }
+
+    /**
+     * reuse the existing container if it was created from the same spec, see {@link #specHash()},
+     * otherwise replace it. an identical container is left to {@link #ensureRunning()} without being inspected again.
+     *
+     * @return true if the container exists with the current spec
+     */
+    public boolean reuseIfIdentical() {
+        ContainerSnapshot snapshot = snapshot();
+        if (!snapshot.exists()) {
+            return create();
+        }
+        String specHash = specHash();
+        Optional<String> existingHash = snapshot.label(SPEC_HASH_LABEL);
+        if (existingHash.isPresent() && existingHash.get().equals(specHash)) {
+            lastKnownState = snapshot;
+            logger.info("reusing identical container, containerName={}, specHash={}", containerName, specHash);
+            return true;
+        }
+        logger.info("container spec changed, replacing container, containerName={}, specHash={}, existingSpecHash={}",
+                containerName, specHash, existingHash.orElse(null));
+        if (!remove()) {
+            logger.error("unable to replace container, container exists but failed to remove, containerName={}", containerName);
+            return false;
+        }
+        return create();
+    }
+
+    /**
+     * a stable hash of everything the container is created with: image, host name, network, volume and port bindings,
+     * environment variables, commands, labels and resource limits. the order of bindings and environment variables doesn't matter, the order of commands does.
+     * a reserved host port is part of the spec, so a container bound to a reserved port is only identical while the same port is reserved.
+     *
+     * @return hex encoded sha-256 of the spec
+     */
+    public String specHash() {
+        StringBuilder spec = new StringBuilder()
+                .append("image=").append(createImage()).append('\n')
+                .append("hostName=").append(hostName).append('\n')
+                .append("network=").append(network).append('\n');
+        volumeBindings.stream()
+                .map(binding -> "volume=" + binding)
+                .sorted()
+                .forEach(line -> spec.append(line).append('\n'));
+        portBindings.stream()
+                .map(binding -> "port=" + binding.protocol() + ":" + binding.hostPort() + ":" + binding.containerPort())
+                .sorted()
+                .forEach(line -> spec.append(line).append('\n'));
+        environmentVariables.stream()
+                .map(variable -> "env=" + variable)
+                .sorted()
+                .forEach(line -> spec.append(line).append('\n'));
+        commands.forEach(command -> spec.append("cmd=").append(command).append('\n'));
+        labels.forEach((key, value) -> spec.append("label=").append(key).append('=').append(value).append('\n'));
+        if (resourceLimits != null) {
+            spec.append("resources=").append(resourceLimits).append('\n');
+        }
+        return InstaUtils.sha256Hex(spec.toString());
+    }
+
+    private boolean create() {
+        boolean created = false;
+        try {
+            created = phase("create", this::doCreate);
+            return created;
+        } finally {
+            if (!created) {
+                releasePortReservations();
+            }
+        }
+    }
+
+    private boolean doCreate() {
+        CreateContainerCmd cmd = dockerClient.createContainerCmd(createImage());
         cmd.withName(containerName);
+        Map<String, String> labels = new TreeMap<>(this.labels);
+        labels.putAll(sessionLabels);
+        labels.put(SPEC_HASH_LABEL, specHash());
+        cmd.withLabels(labels);
 
         if (hostName != null) {
             cmd.withHostName(hostName);
@@ -188,13 +973,27 @@ public class DockerContainer {
             cmd.getHostConfig().withNetworkMode(network);
         }
 
-        List<Bind> binds = volumeBindings.stream().map(volumeBinding -> {
-            String containerPath = volumeBinding.containerPath();
-            String hostPath = volumeBinding.hostPath();
-            logger.info("binding volume: container={}, host={}", containerPath, hostPath);
-            return new Bind(hostPath, new Volume(containerPath));
-        }).collect(Collectors.toList());
+        List<Bind> binds = new ArrayList<>();
+        List<Mount> mounts = new ArrayList<>();
+        Map<String, String> tmpfs = new LinkedHashMap<>();
+        for (VolumeBinding volumeBinding : volumeBindings) {
+            logger.info("binding volume: type={}, container={}, host={}, readOnly={}",
+                    volumeBinding.type(), volumeBinding.containerPath(), volumeBinding.hostPath(), volumeBinding.isReadOnly());
+            if (volumeBinding.type() == VolumeBinding.Type.TMPFS) {
+                tmpfs.put(volumeBinding.containerPath(), volumeBinding.tmpfsOptions());
+            } else if (volumeBinding.isBind()) {
+                binds.add(volumeBinding.toBind());
+            } else {
+                mounts.add(volumeBinding.toMount());
+            }
+        }
         cmd.getHostConfig().withBinds(binds);
+        if (!mounts.isEmpty()) {
+            cmd.getHostConfig().withMounts(mounts);
+        }
+        if (!tmpfs.isEmpty()) {
+            cmd.getHostConfig().withTmpFs(tmpfs);
+        }
 
         if (portBindings.size() > 0) {
             List<ExposedPort> exposedPorts = new ArrayList<>();
@@ -205,11 +1004,15 @@ public class DockerContainer {
                 ExposedPort exposedPort = portBinding.toExposedPort();
                 exposedPorts.add(exposedPort);
 
-                ports.bind(exposedPort, Ports.Binding.bindPort(portBinding.hostPort()));
+                ports.bind(exposedPort, portBinding.isAnyHostPort() ? Ports.Binding.empty() : Ports.Binding.bindPort(portBinding.hostPort()));
             }
             cmd.withExposedPorts(exposedPorts);
             cmd.getHostConfig().withPortBindings(ports);
         }
+        if (resourceLimits != null) {
+            logger.info("resource limits: {}", resourceLimits);
+            resourceLimits.applyTo(cmd.getHostConfig());
+        }
         if (environmentVariables.size() > 0) {
             cmd.withEnv(environmentVariables);
         }
@@ -218,30 +1021,30 @@ public class DockerContainer {
             cmd.withCmd(commands);
         }
 
+        daemonCalls.record("createContainer");
         CreateContainerResponse createResponse = cmd.exec();
-        if (exists()) {
+        if (InstaUtils.isNotBlank(createResponse.getId())) {
+            // the daemon answered with the new container id, no need to inspect it again
+            lastKnownState = ContainerSnapshot.created(createResponse.getId(), labels);
             logger.info("container created, containerName={}, containerId={}", containerName, createResponse.getId());
             return true;
         } else {
-            logger.info("container not created, not exists after created, containerName={}", containerName);
+            logger.info("container not created, no container id returned, containerName={}", containerName);
             return false;
         }
     }
 
+    private String createImage() {
+        return snapshotImage != null ? snapshotImage : imageId;
+    }
+
     /**
      * check if the container already exists in local
      *
      * @return true if the container exists, false if the container does not exists
      */
     public boolean exists() {
-        try {
-            InspectContainerResponse inspectResponse = dockerClient.inspectContainerCmd(containerName).exec();
-            logger.debug("check container existence: inspect result={}", inspectResponse);
-            return InstaUtils.isNotBlank(inspectResponse.getId());
-        } catch (NotFoundException e) {
-            logger.debug("check container existence: container not found, containerName=" + containerName, e);
-            return false;
-        }
+        return inspect().exists();
     }
 
     /**
@@ -250,23 +1053,286 @@ public class DockerContainer {
      * @return true if the container does not exist or removed successfully
      */
     public boolean ensureNotExists() {
-        if (exists()) {
-            dockerClient.removeContainerCmd(containerName).withForce(true).exec();
-            if (exists()) {
+        releasePortReservations();
+        if (snapshot().exists()) {
+            if (remove()) {
+                logger.info("container removed, containerName={}", containerName);
+            } else {
                 logger.warn("failed to remove container, container still exists after remove, containerName={}", containerName);
                 return false;
-            } else {
-                logger.info("container removed, containerName={}", containerName);
-                return true;
             }
-        } else {
+        }
+        return true;
+    }
+
+    private boolean remove() {
+        return phase("remove", this::doRemove);
+    }
+
+    private boolean doRemove() {
+        logStreams.detach(containerName);
+        detachStats();
+        CompletableFuture<Event> destroyed = expectEvent(ContainerEvents.DESTROY);
+        daemonCalls.record("removeContainer");
+        try {
+            dockerClient.removeContainerCmd(containerName).withForce(true).withRemoveVolumes(true).exec();
+        } catch (NotFoundException e) {
+            cancelEvent(destroyed);
+            logger.debug("container already removed, containerName={}", containerName);
+            lastKnownState = ContainerSnapshot.ABSENT;
             return true;
         }
+        // a forced remove only returns after the container is gone, so without events it's not verified by another inspect
+        if (destroyed == null || awaitEvent(destroyed) || !inspect().exists()) {
+            lastKnownState = ContainerSnapshot.ABSENT;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * asynchronous version of {@link #ensureExists()}, asynchronous operations of the same container must not overlap
+     *
+     * @param executor the executor to run on, see {@link InstaExecutors#defaultExecutor()}
+     * @return future completed with true if the container exists or being created
+     */
+    public CompletableFuture<Boolean> ensureExistsAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(this::ensureExists, executor);
+    }
+
+    /**
+     * asynchronous version of {@link #reuseIfIdentical()}
+     *
+     * @param executor the executor to run on
+     * @return future completed with true if the container exists with the current spec
+     */
+    public CompletableFuture<Boolean> reuseIfIdenticalAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(this::reuseIfIdentical, executor);
+    }
+
+    /**
+     * asynchronous version of {@link #createOrReplace()}
+     *
+     * @param executor the executor to run on
+     * @return future completed with true only if the container was actually created
+     */
+    public CompletableFuture<Boolean> createOrReplaceAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(this::createOrReplace, executor);
+    }
+
+    /**
+     * asynchronous version of {@link #ensureRunning()}
+     *
+     * @param executor the executor to run on
+     * @return future completed with true if the container is running
+     */
+    public CompletableFuture<Boolean> ensureRunningAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(this::ensureRunning, executor);
+    }
+
+    /**
+     * asynchronous version of {@link #awaitReady(int)}
+     *
+     * @param timeoutInSeconds how long to wait for all probes
+     * @param executor         the executor to run on
+     * @return future completed with true if all probes are ready
+     */
+    public CompletableFuture<Boolean> awaitReadyAsync(int timeoutInSeconds, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> awaitReady(timeoutInSeconds), executor);
+    }
+
+    /**
+     * asynchronous version of {@link #resolveSnapshot()}
+     *
+     * @param executor the executor to run on
+     * @return future completed with true if the container is created from a snapshot
+     */
+    public CompletableFuture<Boolean> resolveSnapshotAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(this::resolveSnapshot, executor);
+    }
+
+    /**
+     * asynchronous version of {@link #ensureSeeded()}
+     *
+     * @param executor the executor to run on
+     * @return future completed with false if the seed step fails
+     */
+    public CompletableFuture<Boolean> ensureSeededAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(this::ensureSeeded, executor);
+    }
+
+    /**
+     * asynchronous version of {@link #ensureStopped(int)}
+     *
+     * @param timeoutInSeconds stop timeout
+     * @param executor         the executor to run on
+     * @return future completed with true if the container is stopped
+     */
+    public CompletableFuture<Boolean> ensureStoppedAsync(int timeoutInSeconds, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> ensureStopped(timeoutInSeconds), executor);
+    }
+
+    /**
+     * asynchronous version of {@link #ensureNotExists()}
+     *
+     * @param executor the executor to run on
+     * @return future completed with true if the container does not exist or removed
+     */
+    public CompletableFuture<Boolean> ensureNotExistsAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(this::ensureNotExists, executor);
+    }
+
+    public ContainerLogger containerLogger() {
+        return containerLogger;
+    }
+
+    public String containerName() {
+        return containerName;
     }
 
     public Optional<String> containerId() {
-        InspectContainerResponse inspectResponse = dockerClient.inspectContainerCmd(containerName).exec();
-        return Optional.ofNullable(inspectResponse.getId());
+        return inspect().containerId();
+    }
+
+    /**
+     * @return the counter of daemon calls issued by this container
+     */
+    public DaemonCallCounter daemonCalls() {
+        return daemonCalls;
+    }
+
+    /**
+     * register interest in the next container event with any of the given actions, before issuing the command causing it
+     *
+     * @return the future of the event, or null if events are not watched or the event stream can't be opened
+     */
+    private CompletableFuture<Event> expectEvent(String... actions) {
+        if (!watchEvents) {
+            return null;
+        }
+        if (containerEvents == null || !containerEvents.subscribed()) {
+            closeEvents();
+            containerEvents = new ContainerEvents(containerName);
+            daemonCalls.record("events");
+            if (!containerEvents.subscribe(dockerClient, eventTimeoutInSeconds)) {
+                return null;
+            }
+        }
+        return containerEvents.next(actions);
+    }
+
+    /**
+     * @return true if the event arrived in time, false if the container state has to be inspected instead
+     */
+    private boolean awaitEvent(CompletableFuture<Event> event) {
+        if (event == null) {
+            return false;
+        }
+        try {
+            event.get(eventTimeoutInSeconds, TimeUnit.SECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            logger.debug("container event not received, falling back to inspect, containerName=" + containerName, e);
+            cancelEvent(event);
+            return false;
+        }
+    }
+
+    private void cancelEvent(CompletableFuture<Event> event) {
+        if (event != null) {
+            event.cancel(false);
+        }
+    }
+
+    private void closeEvents() {
+        if (containerEvents != null) {
+            try {
+                containerEvents.close();
+            } catch (IOException e) {
+                logger.debug("failed to close container event stream, containerName=" + containerName, e);
+            }
+            containerEvents = null;
+        }
+    }
+
+    private void attachStats() {
+        if (resourceStats == null || statsSession != null) {
+            return;
+        }
+        daemonCalls.record("stats");
+        // set before the stream opens, so a stream ending right away still clears it
+        StatsSession session = new StatsSession(containerName, resourceStats, this::statsEnded);
+        statsSession = session;
+        try {
+            dockerClient.statsCmd(containerName).exec(session);
+        } catch (RuntimeException e) {
+            statsEnded(session);
+            throw e;
+        }
+    }
+
+    /**
+     * the stream ended on its own, e.g. the container was stopped by someone else, so the next start attaches again
+     */
+    private void statsEnded(StatsSession session) {
+        if (statsSession == session) {
+            statsSession = null;
+        }
+    }
+
+    /**
+     * the samples kept are left in place, so the summary is still available once the container stopped
+     */
+    private void detachStats() {
+        StatsSession session = statsSession;
+        if (session != null) {
+            statsSession = null;
+            try {
+                session.close();
+            } catch (IOException e) {
+                logger.debug("failed to close container stats stream, containerName={}", containerName, e);
+            }
+            logger.info("container resource stats, containerName={}, stats={}", containerName, resourceStats);
+        }
+    }
+
+    private boolean phase(String phase, Supplier<Boolean> action) {
+        return instrumentation.time(Instrumentation.PHASE, Instrumentations.with(tags(), Instrumentation.TAG_PHASE, phase), action);
+    }
+
+    private Map<String, String> tags() {
+        return Instrumentations.tags(imageId, containerName);
+    }
+
+    /**
+     * the container state for the current lifecycle step: the state left by the last mutating command if there is one,
+     * otherwise a fresh inspect. the state is handed out once, so a later step never acts on an outdated state.
+     */
+    private ContainerSnapshot snapshot() {
+        ContainerSnapshot snapshot = lastKnownState;
+        return snapshot != null ? consume(snapshot) : inspect();
+    }
+
+    private ContainerSnapshot consume(ContainerSnapshot snapshot) {
+        lastKnownState = null;
+        logger.debug("reusing container state, containerName={}, state={}", containerName, snapshot);
+        return snapshot;
+    }
+
+    private ContainerSnapshot inspect() {
+        lastKnownState = null;
+        daemonCalls.record("inspectContainer");
+        try {
+            InspectContainerResponse inspectResponse = dockerClient.inspectContainerCmd(containerName).exec();
+            logger.debug("inspect container: inspect result={}", inspectResponse);
+            return ContainerSnapshot.of(inspectResponse);
+        } catch (NotFoundException e) {
+            logger.debug("inspect container: container not found, containerName=" + containerName, e);
+            return ContainerSnapshot.ABSENT;
+        }
     }
 
     @Override
@@ -281,7 +1347,9 @@ public class DockerContainer {
                 ", \"portBindings\":" + portBindings +
                 ", \"environmentVariables\":" + environmentVariables +
                 ", \"commands\":" + commands +
+                ", \"resourceLimits\":" + resourceLimits +
                 ", \"containerLogger\":" + containerLogger +
+                ", \"readinessProbes\":" + readinessProbes +
                 '}';
     }
 }
@@ -4,28 +4,84 @@ import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.command.InspectImageResponse;
 import com.github.dockerjava.api.exception.DockerClientException;
 import com.github.dockerjava.api.exception.NotFoundException;
-import com.github.dockerjava.core.command.PullImageResultCallback;
+import com.github.lkq.instadocker.exception.InstaDockerException;
+import com.github.lkq.instadocker.metrics.Instrumentation;
+import com.github.lkq.instadocker.metrics.Instrumentations;
 import com.github.lkq.instadocker.util.Assert;
+import com.github.lkq.instadocker.util.InstaExecutors;
 import com.github.lkq.instadocker.util.InstaUtils;
 import org.slf4j.Logger;
 
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
 public class DockerImage {
     private static final Logger logger = getLogger(DockerImage.class);
 
+    private DockerClient baseClient;
     private DockerClient dockerClient;
 
     private String imageId;
 
+    private DaemonCallCounter daemonCalls;
+    private ImagePullCoordinator pullCoordinator;
+    private Instrumentation instrumentation = Instrumentations.defaultInstrumentation();
+    private Map<String, String> tags;
+    private ImageTarCache imageCache;
+
     public DockerImage(DockerClient dockerClient, String imageId) {
+        this(dockerClient, imageId, new DaemonCallCounter());
+    }
+
+    public DockerImage(DockerClient dockerClient, String imageId, DaemonCallCounter daemonCalls) {
+        this(dockerClient, imageId, daemonCalls, ImagePullCoordinator.shared());
+    }
+
+    /**
+     * @param dockerClient    the docker-java api client
+     * @param imageId         the docker image id
+     * @param daemonCalls     the counter for recording daemon api calls
+     * @param pullCoordinator the coordinator to deduplicate pulls with other images of the same reference
+     */
+    public DockerImage(DockerClient dockerClient, String imageId, DaemonCallCounter daemonCalls, ImagePullCoordinator pullCoordinator) {
         Objects.requireNonNull(dockerClient, "dockerClient is required");
         Assert.requiresNotBlank(imageId, "imageId is required");
-        this.dockerClient = dockerClient;
+        Objects.requireNonNull(daemonCalls, "daemonCalls is required");
+        Objects.requireNonNull(pullCoordinator, "pullCoordinator is required");
+        this.baseClient = dockerClient;
         this.imageId = imageId;
+        this.daemonCalls = daemonCalls;
+        this.pullCoordinator = pullCoordinator;
+        this.tags = Instrumentations.tags(imageId, null);
+        this.dockerClient = InstrumentedDockerClient.wrap(baseClient, instrumentation, tags);
+    }
+
+    /**
+     * @param instrumentation receives the timing of the daemon calls and the pull of the image,
+     *                        {@link Instrumentations#defaultInstrumentation()} if not provided
+     * @param containerName   the container the image is used for, tagged on the timers, null if none
+     * @return this image
+     */
+    public DockerImage instrumentation(Instrumentation instrumentation, String containerName) {
+        Objects.requireNonNull(instrumentation, "instrumentation is required");
+        this.instrumentation = instrumentation;
+        this.tags = Instrumentations.tags(imageId, containerName);
+        this.dockerClient = InstrumentedDockerClient.wrap(baseClient, instrumentation, tags);
+        return this;
+    }
+
+    /**
+     * @param imageCache the local archives to load the image from instead of pulling it, a pulled image is saved into it,
+     *                   null to always pull
+     * @return this image
+     */
+    public DockerImage imageCache(ImageTarCache imageCache) {
+        this.imageCache = imageCache;
+        return this;
     }
 
     /**
@@ -35,6 +91,7 @@ public class DockerImage {
      * @throws DockerClientException if error happens
      */
     public boolean exists() {
+        daemonCalls.record("inspectImage");
         try {
             InspectImageResponse inspectResponse = dockerClient.inspectImageCmd(imageId).exec();
             logger.debug("check image existence: inspect result={}", inspectResponse);
@@ -46,37 +103,95 @@ public class DockerImage {
     }
 
     /**
-     * ensure the image exists, if it's not already exists, pull the image from docker hub
+     * ensure the image exists, if it's not already exists, load it from the image cache if provided, otherwise pull the
+     * image from docker hub and save it into the image cache, an image which already exists isn't saved.
+     * concurrent calls for the same image share one pull, see {@link ImagePullCoordinator}
      *
      * @param timeoutInSeconds pull timeout
-     * @return true if the image exists or pulled successfully
+     * @return true if the image exists, loaded or pulled successfully
      */
     public boolean ensureExists(int timeoutInSeconds) {
-        try {
-            if (!exists()) {
-                logger.info("image not exits, pulling imageId={}", imageId);
-                boolean pulled = dockerClient.pullImageCmd(imageId).exec(new PullImageResultCallback())
-                        .awaitCompletion(timeoutInSeconds, TimeUnit.SECONDS);
-                if (!pulled) {
-                    logger.info("image not pulled, please check your network or enlarge timeout, imageId={}", imageId);
+        return instrumentation.time(Instrumentation.PHASE, pullTags(), () -> {
+            try {
+                if (imageCache != null && imageCache.lookup(imageId) && (exists() || loadFromCache())) {
+                    return true;
                 }
-                return pulled;
-            } else {
-                return true;
+                ImagePull previousPull = pullCoordinator.lastPull(imageId).orElse(null);
+                boolean exists = pullCoordinator.ensureExists(dockerClient, imageId, timeoutInSeconds, daemonCalls);
+                // only save what was just pulled, an image already on the daemon isn't worth a synchronous save on the start path
+                boolean pulled = pullCoordinator.lastPull(imageId).filter(pull -> pull != previousPull && pull.pulled()).isPresent();
+                if (exists && pulled && imageCache != null && !imageCache.contains(imageId)) {
+                    saveToCache();
+                }
+                return exists;
+            } catch (InterruptedException e) {
+                logger.warn("failed to pull image, imageId=" + imageId, e);
+                return false;
             }
-        } catch (InterruptedException e) {
-            logger.warn("failed to pull image, imageId=" + imageId, e);
+        });
+    }
+
+    private boolean loadFromCache() {
+        try {
+            daemonCalls.record("loadImage");
+            return imageCache.load(dockerClient, imageId) && exists();
+        } catch (InstaDockerException e) {
+            logger.warn("failed to load image from cache, pulling it instead, imageId=" + imageId, e);
             return false;
         }
     }
 
+    private void saveToCache() {
+        try {
+            daemonCalls.record("inspectImage");
+            daemonCalls.record("saveImage");
+            imageCache.save(dockerClient, imageId);
+        } catch (InstaDockerException e) {
+            logger.warn("failed to save image into cache, imageId=" + imageId, e);
+        }
+    }
+
+    /**
+     * asynchronous version of {@link #ensureExists(int)} running on the default executor, see {@link InstaExecutors#defaultExecutor()}
+     *
+     * @param timeoutInSeconds pull timeout
+     * @return future completed with true if the image exists or pulled successfully
+     */
+    public CompletableFuture<Boolean> ensureExistsAsync(int timeoutInSeconds) {
+        return ensureExistsAsync(timeoutInSeconds, InstaExecutors.defaultExecutor());
+    }
+
+    /**
+     * asynchronous version of {@link #ensureExists(int)}, the pull completes on the docker-java callback without blocking a thread,
+     * unless an image cache is provided, then the archive is loaded or saved on the executor
+     *
+     * @param timeoutInSeconds pull timeout
+     * @param executor         the executor to inspect the image on
+     * @return future completed with true if the image exists or pulled successfully
+     */
+    public CompletableFuture<Boolean> ensureExistsAsync(int timeoutInSeconds, Executor executor) {
+        if (imageCache != null) {
+            return CompletableFuture.supplyAsync(() -> ensureExists(timeoutInSeconds), executor);
+        }
+        long start = System.nanoTime();
+        return pullCoordinator.ensureExistsAsync(dockerClient, imageId, timeoutInSeconds, daemonCalls, executor)
+                .whenComplete((exists, error) -> instrumentation.record(Instrumentation.PHASE, pullTags(),
+                        System.nanoTime() - start, error == null && Boolean.TRUE.equals(exists)));
+    }
+
+    private Map<String, String> pullTags() {
+        return Instrumentations.with(tags, Instrumentation.TAG_PHASE, "pull");
+    }
+
     /**
      * ensure the image does not exists, if it's already exist, remove it
      *
      * @return true if the image does not exist or removed successfully
      */
     public boolean ensureNotExists() {
+        pullCoordinator.invalidate(imageId);
         if (exists()) {
+            daemonCalls.record("removeImage");
             dockerClient.removeImageCmd(imageId).withForce(true).exec();
             if (exists()) {
                 logger.warn("failed to remove image: image still exists after remove, imageId=" + imageId);
@@ -90,6 +205,13 @@ public class DockerImage {
         }
     }
 
+    /**
+     * @return the counter of daemon calls issued by this image
+     */
+    public DaemonCallCounter daemonCalls() {
+        return daemonCalls;
+    }
+
     @Override
     public String toString() {
         return "{" +
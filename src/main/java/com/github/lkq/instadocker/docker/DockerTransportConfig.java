@@ -0,0 +1,124 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.lkq.instadocker.util.Assert;
+
+/**
+ * connection pool and timeouts of the http transport of a docker client
+ */
+public class DockerTransportConfig {
+
+    private String dockerHost;
+    private int maxTotalConnections = 100;
+    private int maxPerRouteConnections = 100;
+    private int connectTimeoutMillis = 5000;
+    private int readTimeoutMillis = 0;
+    private int connectionRequestTimeoutMillis = 30000;
+    private long keepAliveMillis = 60000;
+
+    /**
+     * the defaults: 100 connections, all to the same daemon, since every followed log or event stream holds one,
+     * 5s connect timeout, no read timeout so idle log streams stay open, and idle connections kept for 60s
+     */
+    public static DockerTransportConfig defaults() {
+        return new DockerTransportConfig();
+    }
+
+    /**
+     * @param dockerHost e.g. unix:///var/run/docker.sock or tcp://localhost:2375, taken from the environment if not set
+     * @return this
+     */
+    public DockerTransportConfig dockerHost(String dockerHost) {
+        this.dockerHost = dockerHost;
+        return this;
+    }
+
+    public DockerTransportConfig maxTotalConnections(int maxTotalConnections) {
+        Assert.requiresTrue(maxTotalConnections > 0, "maxTotalConnections must be positive");
+        this.maxTotalConnections = maxTotalConnections;
+        return this;
+    }
+
+    public DockerTransportConfig maxPerRouteConnections(int maxPerRouteConnections) {
+        Assert.requiresTrue(maxPerRouteConnections > 0, "maxPerRouteConnections must be positive");
+        this.maxPerRouteConnections = maxPerRouteConnections;
+        return this;
+    }
+
+    public DockerTransportConfig connectTimeoutMillis(int connectTimeoutMillis) {
+        Assert.requiresTrue(connectTimeoutMillis >= 0, "connectTimeoutMillis must not be negative");
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param readTimeoutMillis max time without data on a connection, 0 for no timeout. a timeout drops idle log streams,
+     *                          which are then reconnected by {@link LogStreamService}
+     * @return this
+     */
+    public DockerTransportConfig readTimeoutMillis(int readTimeoutMillis) {
+        Assert.requiresTrue(readTimeoutMillis >= 0, "readTimeoutMillis must not be negative");
+        this.readTimeoutMillis = readTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param connectionRequestTimeoutMillis max time to wait for a connection from the pool
+     * @return this
+     */
+    public DockerTransportConfig connectionRequestTimeoutMillis(int connectionRequestTimeoutMillis) {
+        Assert.requiresTrue(connectionRequestTimeoutMillis >= 0, "connectionRequestTimeoutMillis must not be negative");
+        this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param keepAliveMillis how long an idle connection is kept for reuse, 0 to close connections after each request
+     * @return this
+     */
+    public DockerTransportConfig keepAliveMillis(long keepAliveMillis) {
+        Assert.requiresTrue(keepAliveMillis >= 0, "keepAliveMillis must not be negative");
+        this.keepAliveMillis = keepAliveMillis;
+        return this;
+    }
+
+    public String dockerHost() {
+        return dockerHost;
+    }
+
+    public int maxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    public int maxPerRouteConnections() {
+        return maxPerRouteConnections;
+    }
+
+    public int connectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public int readTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public int connectionRequestTimeoutMillis() {
+        return connectionRequestTimeoutMillis;
+    }
+
+    public long keepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"dockerHost\":\"" + dockerHost + "\"" +
+                ", \"maxTotalConnections\":" + maxTotalConnections +
+                ", \"maxPerRouteConnections\":" + maxPerRouteConnections +
+                ", \"connectTimeoutMillis\":" + connectTimeoutMillis +
+                ", \"readTimeoutMillis\":" + readTimeoutMillis +
+                ", \"connectionRequestTimeoutMillis\":" + connectionRequestTimeoutMillis +
+                ", \"keepAliveMillis\":" + keepAliveMillis +
+                '}';
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.model.StreamType;
+import com.github.lkq.instadocker.docker.log.LogLine;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * outcome of a command executed in a container, see {@link DockerContainer#exec(int, String...)}
+ */
+public class ExecResult {
+    private final Integer exitCode;
+    private final boolean timedOut;
+    private final long elapsedMillis;
+    private final List<LogLine> output;
+
+    ExecResult(Integer exitCode, boolean timedOut, long elapsedMillis, List<LogLine> output) {
+        this.exitCode = exitCode;
+        this.timedOut = timedOut;
+        this.elapsedMillis = elapsedMillis;
+        this.output = Collections.unmodifiableList(output);
+    }
+
+    /**
+     * @return exit code of the command, null if it timed out or the daemon didn't report it
+     */
+    public Integer exitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return true if the command exited with 0
+     */
+    public boolean succeeded() {
+        return exitCode != null && exitCode == 0;
+    }
+
+    /**
+     * @return true if the output didn't end within the timeout, the command may still be running in the container
+     */
+    public boolean timedOut() {
+        return timedOut;
+    }
+
+    public long elapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return stdout and stderr lines in the order received, empty if the output was streamed to a consumer
+     */
+    public List<LogLine> output() {
+        return output;
+    }
+
+    public String stdout() {
+        return lines(StreamType.STDOUT);
+    }
+
+    public String stderr() {
+        return lines(StreamType.STDERR);
+    }
+
+    private String lines(StreamType streamType) {
+        return output.stream()
+                .filter(line -> line.streamType() == streamType)
+                .map(LogLine::line)
+                .collect(Collectors.joining("\n"));
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"exitCode\":" + exitCode +
+                ", \"timedOut\":" + timedOut +
+                ", \"elapsedMillis\":" + elapsedMillis +
+                ", \"outputLines\":" + output.size() +
+                '}';
+    }
+}
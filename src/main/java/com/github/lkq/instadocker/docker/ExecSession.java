@@ -0,0 +1,71 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import com.github.dockerjava.core.async.ResultCallbackTemplate;
+import com.github.lkq.instadocker.docker.log.LineDecoder;
+import com.github.lkq.instadocker.docker.log.LogLine;
+import org.slf4j.Logger;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * the output of one exec, split into stdout and stderr lines with the same decoding as the container logs, see {@link LineDecoder}
+ */
+class ExecSession extends ResultCallbackTemplate<ExecSession, Frame> {
+    private static final Logger logger = getLogger(ExecSession.class);
+
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+
+    private final String execId;
+    private final Consumer<LogLine> output;
+    private final Map<StreamType, LineDecoder> decoders = new EnumMap<>(StreamType.class);
+    private final CompletableFuture<Boolean> finished = new CompletableFuture<>();
+
+    ExecSession(String execId, Consumer<LogLine> output) {
+        this.execId = execId;
+        this.output = output;
+    }
+
+    /**
+     * @return completed with true once the output ended, or exceptionally if the stream failed
+     */
+    CompletableFuture<Boolean> finished() {
+        return finished;
+    }
+
+    @Override
+    public void onNext(Frame frame) {
+        if (frame.getPayload() != null && frame.getPayload().length > 0) {
+            decoders.computeIfAbsent(frame.getStreamType(), streamType -> new LineDecoder(streamType, MAX_LINE_BYTES))
+                    .decode(frame.getPayload(), this::emit);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        logger.debug("exec output failed, execId={}", execId, throwable);
+        finished.completeExceptionally(throwable);
+        super.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        decoders.values().forEach(decoder -> decoder.flush(this::emit));
+        finished.complete(true);
+        super.onComplete();
+    }
+
+    private void emit(LogLine line) {
+        try {
+            output.accept(line);
+        } catch (RuntimeException e) {
+            logger.warn("exec output consumer failed, execId={}, line={}", execId, line, e);
+        }
+    }
+}
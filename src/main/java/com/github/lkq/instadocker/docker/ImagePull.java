@@ -0,0 +1,51 @@
+package com.github.lkq.instadocker.docker;
+
+/**
+ * outcome of an image pull issued by {@link ImagePullCoordinator}
+ */
+public class ImagePull {
+    private final String imageId;
+    private final boolean pulled;
+    private final long durationMillis;
+    private final long bytesDownloaded;
+    private final int layersDownloaded;
+
+    public ImagePull(String imageId, boolean pulled, long durationMillis, long bytesDownloaded, int layersDownloaded) {
+        this.imageId = imageId;
+        this.pulled = pulled;
+        this.durationMillis = durationMillis;
+        this.bytesDownloaded = bytesDownloaded;
+        this.layersDownloaded = layersDownloaded;
+    }
+
+    public String imageId() {
+        return imageId;
+    }
+
+    public boolean pulled() {
+        return pulled;
+    }
+
+    public long durationMillis() {
+        return durationMillis;
+    }
+
+    public long bytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    public int layersDownloaded() {
+        return layersDownloaded;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"imageId\":\"" + imageId + "\"" +
+                ", \"pulled\":" + pulled +
+                ", \"durationMillis\":" + durationMillis +
+                ", \"bytesDownloaded\":" + bytesDownloaded +
+                ", \"layersDownloaded\":" + layersDownloaded +
+                '}';
+    }
+}
@@ -0,0 +1,329 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.InspectImageResponse;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.lkq.instadocker.util.Assert;
+import com.github.lkq.instadocker.util.InstaExecutors;
+import com.github.lkq.instadocker.util.InstaUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * makes sure an image is pulled only once at a time: concurrent callers for the same image reference join the
+ * in-flight pull instead of starting their own, and images known to exist are remembered for a while,
+ * so that warm starts don't inspect the same image again and again.
+ * images are keyed by reference only, it assumes all clients talk to the same docker daemon.
+ */
+public class ImagePullCoordinator {
+    private static final Logger logger = getLogger(ImagePullCoordinator.class);
+
+    private static final ImagePullCoordinator SHARED = new ImagePullCoordinator(TimeUnit.MINUTES.toMillis(5));
+
+    private final long existsTtlMillis;
+
+    private final ConcurrentMap<String, InFlightPull> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> existsUntil = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ImagePull> lastPulls = new ConcurrentHashMap<>();
+
+    private final AtomicLong pulls = new AtomicLong();
+    private final AtomicLong joinedPulls = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong pullMillis = new AtomicLong();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+
+    /**
+     * @param existsTtlMillis how long an image found by inspect or pull is considered to exist without inspecting again
+     */
+    public ImagePullCoordinator(long existsTtlMillis) {
+        Assert.requiresTrue(existsTtlMillis >= 0, "existsTtlMillis must not be negative");
+        this.existsTtlMillis = existsTtlMillis;
+    }
+
+    /**
+     * @return the coordinator shared by all {@link DockerImage}s in this process
+     */
+    public static ImagePullCoordinator shared() {
+        return SHARED;
+    }
+
+    /**
+     * ensure the image exists, pulling it if it doesn't, or joining the pull already in flight for the same image
+     *
+     * @param dockerClient     the docker-java api client
+     * @param imageId          the image reference
+     * @param timeoutInSeconds pull timeout
+     * @param daemonCalls      counter for the daemon calls issued on behalf of the caller
+     * @return true if the image exists or pulled successfully
+     * @throws InterruptedException if interrupted while pulling or waiting for the pull
+     */
+    public boolean ensureExists(DockerClient dockerClient, String imageId, int timeoutInSeconds, DaemonCallCounter daemonCalls) throws InterruptedException {
+        // inspect on the calling thread, only the pull itself completes on the docker-java callback thread
+        CompletableFuture<Boolean> exists = ensureExistsAsync(dockerClient, imageId, timeoutInSeconds, daemonCalls, Runnable::run);
+        try {
+            return exists.get(timeoutInSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("failed to pull image: " + imageId, e.getCause());
+        } catch (TimeoutException e) {
+            logger.info("image pull not finished, please check your network or enlarge timeout, imageId={}", imageId);
+            // stop waiting now rather than on the scheduled timeout, so the pull can be cancelled if no one else waits
+            exists.complete(false);
+            return false;
+        }
+    }
+
+    /**
+     * asynchronous version of {@link #ensureExists(DockerClient, String, int, DaemonCallCounter)}, no thread is
+     * blocked while the image is being pulled
+     *
+     * @param dockerClient     the docker-java api client
+     * @param imageId          the image reference
+     * @param timeoutInSeconds pull timeout of this caller, the future completes with false when it's reached, the pull
+     *                         itself is only cancelled once no caller is waiting for it anymore
+     * @param daemonCalls      counter for the daemon calls issued on behalf of the caller
+     * @param executor         the executor to inspect the image on
+     * @return future completed with true if the image exists or pulled successfully
+     */
+    public CompletableFuture<Boolean> ensureExistsAsync(DockerClient dockerClient, String imageId, int timeoutInSeconds,
+                                                        DaemonCallCounter daemonCalls, Executor executor) {
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutInSeconds);
+        while (true) {
+            if (knownToExist(imageId)) {
+                cacheHits.incrementAndGet();
+                logger.debug("image known to exist, imageId={}", imageId);
+                return CompletableFuture.completedFuture(true);
+            }
+            InFlightPull pull = new InFlightPull(imageId);
+            InFlightPull existing = inFlight.putIfAbsent(imageId, pull);
+            if (existing != null) {
+                CompletableFuture<Boolean> joined = existing.await(timeoutMillis);
+                if (joined != null) {
+                    joinedPulls.incrementAndGet();
+                    logger.info("joining image pull in flight, imageId={}", imageId);
+                    return joined;
+                }
+                // the pull was just cancelled as nobody waited for it anymore, start over
+                inFlight.remove(imageId, existing);
+                continue;
+            }
+            CompletableFuture<Boolean> exists = pull.await(timeoutMillis);
+            pull.result.whenComplete((pulled, error) -> {
+                inFlight.remove(imageId, pull);
+                if (Boolean.TRUE.equals(pulled)) {
+                    existsUntil.put(imageId, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(existsTtlMillis));
+                }
+            });
+            try {
+                executor.execute(() -> {
+                    try {
+                        if (inspect(dockerClient, imageId, daemonCalls)) {
+                            pull.result.complete(true);
+                        } else {
+                            pull(dockerClient, imageId, daemonCalls, pull);
+                        }
+                    } catch (RuntimeException e) {
+                        pull.result.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pull.result.completeExceptionally(e);
+            }
+            return exists;
+        }
+    }
+
+    /**
+     * forget that the image exists, e.g. after it's removed
+     *
+     * @param imageId the image reference
+     */
+    public void invalidate(String imageId) {
+        existsUntil.remove(imageId);
+    }
+
+    private boolean knownToExist(String imageId) {
+        Long until = existsUntil.get(imageId);
+        if (until == null) {
+            return false;
+        }
+        if (until - System.nanoTime() > 0) {
+            return true;
+        }
+        existsUntil.remove(imageId, until);
+        return false;
+    }
+
+    private boolean inspect(DockerClient dockerClient, String imageId, DaemonCallCounter daemonCalls) {
+        daemonCalls.record("inspectImage");
+        try {
+            InspectImageResponse inspectResponse = dockerClient.inspectImageCmd(imageId).exec();
+            logger.debug("check image existence: inspect result={}", inspectResponse);
+            return InstaUtils.isNotBlank(inspectResponse.getId());
+        } catch (NotFoundException e) {
+            logger.debug("check image existence: image not found, imageId=" + imageId, e);
+            return false;
+        }
+    }
+
+    private void pull(DockerClient dockerClient, String imageId, DaemonCallCounter daemonCalls, InFlightPull pull) {
+        if (pull.result.isDone()) {
+            return;
+        }
+        logger.info("image not exits, pulling imageId={}", imageId);
+        daemonCalls.record("pullImage");
+        long start = System.nanoTime();
+        PullProgress progress = dockerClient.pullImageCmd(imageId).exec(new PullProgress());
+        if (!pull.started(progress)) {
+            cancel(imageId, progress);
+            return;
+        }
+        progress.completion().whenComplete((completed, error) -> {
+            ImagePull imagePull = new ImagePull(imageId, error == null, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    progress.bytesDownloaded(), progress.layersDownloaded());
+            pulls.incrementAndGet();
+            pullMillis.addAndGet(imagePull.durationMillis());
+            bytesDownloaded.addAndGet(imagePull.bytesDownloaded());
+            lastPulls.put(imageId, imagePull);
+            if (error == null) {
+                logger.info("image pulled: {}", imagePull);
+                pull.result.complete(true);
+            } else {
+                logger.warn("failed to pull image: " + imagePull, error);
+                pull.result.completeExceptionally(error);
+            }
+        });
+    }
+
+    /**
+     * a pull left running after every caller timed out would race the pull of the next caller for the same image
+     */
+    private static void cancel(String imageId, PullProgress progress) {
+        if (progress.completion().isDone()) {
+            return;
+        }
+        logger.info("cancelling image pull after timeout, imageId={}", imageId);
+        try {
+            progress.close();
+        } catch (IOException e) {
+            logger.debug("failed to close image pull, imageId={}", imageId, e);
+        }
+    }
+
+    /**
+     * @return number of pulls issued to the daemon
+     */
+    public long pulls() {
+        return pulls.get();
+    }
+
+    /**
+     * @return number of callers which joined a pull in flight instead of pulling
+     */
+    public long joinedPulls() {
+        return joinedPulls.get();
+    }
+
+    /**
+     * @return number of callers answered from the exists cache without calling the daemon
+     */
+    public long cacheHits() {
+        return cacheHits.get();
+    }
+
+    public long pullMillis() {
+        return pullMillis.get();
+    }
+
+    public long bytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    public Optional<ImagePull> lastPull(String imageId) {
+        return Optional.ofNullable(lastPulls.get(imageId));
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"existsTtlMillis\":" + existsTtlMillis +
+                ", \"pulls\":" + pulls.get() +
+                ", \"joinedPulls\":" + joinedPulls.get() +
+                ", \"cacheHits\":" + cacheHits.get() +
+                ", \"pullMillis\":" + pullMillis.get() +
+                ", \"bytesDownloaded\":" + bytesDownloaded.get() +
+                '}';
+    }
+
+    /**
+     * an inspect and pull of an image shared by the callers waiting for it, each caller times out on its own,
+     * the pull is cancelled once the last one stops waiting
+     */
+    private static class InFlightPull {
+        private final String imageId;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private int waiting = 0;
+        private boolean cancelled = false;
+        private PullProgress progress;
+
+        private InFlightPull(String imageId) {
+            this.imageId = imageId;
+        }
+
+        /**
+         * @return the future of a new caller, completed with false after the timeout of the caller,
+         * null if the pull is already cancelled
+         */
+        private synchronized CompletableFuture<Boolean> await(long timeoutMillis) {
+            if (cancelled) {
+                return null;
+            }
+            waiting++;
+            CompletableFuture<Boolean> caller = new CompletableFuture<>();
+            result.whenComplete((exists, error) -> {
+                if (error != null) {
+                    caller.completeExceptionally(error);
+                } else {
+                    caller.complete(exists);
+                }
+            });
+            InstaExecutors.completeOnTimeout(caller, false, timeoutMillis);
+            caller.whenComplete((exists, error) -> leave());
+            return caller;
+        }
+
+        private void leave() {
+            PullProgress running;
+            synchronized (this) {
+                if (--waiting > 0 || result.isDone()) {
+                    return;
+                }
+                cancelled = true;
+                running = progress;
+            }
+            result.complete(false);
+            if (running != null) {
+                cancel(imageId, running);
+            }
+        }
+
+        /**
+         * @return false if the pull is cancelled before the daemon pull started, which then must be cancelled as well
+         */
+        private synchronized boolean started(PullProgress progress) {
+            if (cancelled) {
+                return false;
+            }
+            this.progress = progress;
+            return true;
+        }
+    }
+}
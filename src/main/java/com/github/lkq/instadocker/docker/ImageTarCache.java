@@ -0,0 +1,271 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.InspectImageResponse;
+import com.github.lkq.instadocker.exception.InstaDockerException;
+import com.github.lkq.instadocker.util.Assert;
+import com.github.lkq.instadocker.util.InstaUtils;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * images saved as tar archives in a local directory, so a missing image is loaded from disk instead of pulled, e.g. on
+ * ephemeral or air-gapped build hosts, see {@link DockerImage#imageCache(ImageTarCache)}.
+ * archives are keyed by the image digest, with a reference file per image name pointing to it. archives are streamed
+ * between the daemon and the disk in chunks, never buffered in memory. the last use of each archive is kept as its
+ * modified time, when the archives take more than the disk budget the least recently used ones are removed.
+ */
+public class ImageTarCache {
+    private static final Logger logger = getLogger(ImageTarCache.class);
+
+    private static final String ARCHIVE_SUFFIX = ".tar";
+    private static final String REFERENCE_SUFFIX = ".ref";
+    private static final long CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private final Path directory;
+    private final long diskBudgetBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong saves = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param diskBudgetBytes max total size of the archives, kept under java.io.tmpdir/insta-docker-images
+     */
+    public ImageTarCache(long diskBudgetBytes) {
+        this(new File(System.getProperty("java.io.tmpdir"), "insta-docker-images").toPath(), diskBudgetBytes);
+    }
+
+    /**
+     * @param directory       directory of the archives, can be shared by all processes of the machine, or pre-populated on air-gapped hosts
+     * @param diskBudgetBytes max total size of the archives
+     */
+    public ImageTarCache(Path directory, long diskBudgetBytes) {
+        Objects.requireNonNull(directory, "directory is required");
+        Assert.requiresTrue(diskBudgetBytes > 0, "diskBudgetBytes must be positive");
+        this.directory = directory;
+        this.diskBudgetBytes = diskBudgetBytes;
+    }
+
+    /**
+     * @param imageId the image name
+     * @return true if an archive of the image is cached
+     */
+    public boolean contains(String imageId) {
+        return archive(imageId).isPresent();
+    }
+
+    /**
+     * {@link #contains(String)} on the path to load the image, an archive not cached counts as a miss
+     *
+     * @param imageId the image name
+     * @return true if an archive of the image is cached
+     */
+    public boolean lookup(String imageId) {
+        if (contains(imageId)) {
+            return true;
+        }
+        misses.incrementAndGet();
+        logger.debug("image archive not cached, imageId={}", imageId);
+        return false;
+    }
+
+    /**
+     * stream the cached archive of the image into the daemon, the archive is then marked as used
+     *
+     * @param dockerClient the docker-java api client
+     * @param imageId      the image name
+     * @return true if the image was loaded, false if it's not cached
+     * @throws InstaDockerException if the archive can't be read or loaded
+     */
+    public boolean load(DockerClient dockerClient, String imageId) {
+        Optional<Path> archive = archive(imageId);
+        if (!archive.isPresent()) {
+            misses.incrementAndGet();
+            logger.info("image archive not cached, imageId={}", imageId);
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(archive.get(), StandardOpenOption.READ);
+             InputStream stream = Channels.newInputStream(channel)) {
+            long size = channel.size();
+            // the stream is sent in chunks and closed by the client once sent
+            dockerClient.loadImageCmd(stream).exec();
+            hits.incrementAndGet();
+            touch(archive.get());
+            logger.info("image loaded from archive, imageId={}, archive={}, size={}, elapsed={}ms",
+                    imageId, archive.get(), size, System.currentTimeMillis() - start);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            throw new InstaDockerException("failed to load image " + imageId + " from " + archive.get(), e);
+        }
+    }
+
+    /**
+     * stream the image from the daemon into an archive keyed by its digest, then evict the least recently used archives
+     * over the disk budget. an image of an already cached digest is only referenced, not saved again.
+     *
+     * @param dockerClient the docker-java api client
+     * @param imageId      the image name, must exist in the daemon
+     * @throws InstaDockerException if the image can't be saved
+     */
+    public void save(DockerClient dockerClient, String imageId) {
+        InspectImageResponse image = dockerClient.inspectImageCmd(imageId).exec();
+        String digest = image.getId();
+        Assert.requiresNotBlank(digest, "image digest is required");
+        Path archive = directory.resolve(fileName(digest) + ARCHIVE_SUFFIX);
+        long start = System.currentTimeMillis();
+        try {
+            Files.createDirectories(directory);
+            if (!Files.exists(archive)) {
+                Path temp = Files.createTempFile(directory, fileName(digest), ".partial");
+                try (InputStream tar = dockerClient.saveImageCmd(imageId).exec();
+                     ReadableByteChannel source = Channels.newChannel(tar);
+                     FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    long position = 0;
+                    long transferred;
+                    while ((transferred = target.transferFrom(source, position, CHUNK_SIZE)) > 0) {
+                        position += transferred;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(temp);
+                    throw e;
+                }
+                // another process may have saved the same digest meanwhile, the archives are identical
+                Files.move(temp, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                saves.incrementAndGet();
+                logger.info("image saved to archive, imageId={}, archive={}, size={}, elapsed={}ms",
+                        imageId, archive, Files.size(archive), System.currentTimeMillis() - start);
+            }
+            Files.write(reference(imageId), digest.getBytes(StandardCharsets.UTF_8));
+            touch(archive);
+        } catch (IOException | RuntimeException e) {
+            throw new InstaDockerException("failed to save image " + imageId + " to " + archive, e);
+        }
+        evict(archive);
+    }
+
+    /**
+     * remove the least recently used archives until the total size is within the disk budget
+     *
+     * @param keep archive never evicted, e.g. the one just saved
+     */
+    void evict(Path keep) {
+        List<Path> archives = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(ARCHIVE_SUFFIX)).forEach(archives::add);
+        } catch (IOException e) {
+            logger.warn("failed to list image archives, directory={}", directory, e);
+            return;
+        }
+        long total = archives.stream().mapToLong(ImageTarCache::size).sum();
+        if (total <= diskBudgetBytes) {
+            return;
+        }
+        archives.remove(keep);
+        archives.sort(Comparator.comparingLong(ImageTarCache::lastUsed));
+        for (Path archive : archives) {
+            if (total <= diskBudgetBytes) {
+                break;
+            }
+            long size = size(archive);
+            try {
+                // references to the archive are left dangling and ignored on lookup
+                Files.deleteIfExists(archive);
+                total -= size;
+                evictions.incrementAndGet();
+                logger.info("image archive evicted, archive={}, size={}, total={}, budget={}", archive, size, total, diskBudgetBytes);
+            } catch (IOException e) {
+                logger.warn("failed to evict image archive, archive={}", archive, e);
+            }
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long saves() {
+        return saves.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    private Optional<Path> archive(String imageId) {
+        try {
+            String digest = new String(Files.readAllBytes(reference(imageId)), StandardCharsets.UTF_8).trim();
+            Path archive = directory.resolve(fileName(digest) + ARCHIVE_SUFFIX);
+            return Files.exists(archive) ? Optional.of(archive) : Optional.empty();
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            logger.warn("failed to read image reference, imageId={}", imageId, e);
+            return Optional.empty();
+        }
+    }
+
+    private Path reference(String imageId) {
+        return directory.resolve(InstaUtils.sha256Hex(imageId) + REFERENCE_SUFFIX);
+    }
+
+    private static String fileName(String digest) {
+        return digest.replace(':', '-');
+    }
+
+    private static void touch(Path archive) {
+        try {
+            Files.setLastModifiedTime(archive, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            logger.warn("failed to record image archive use, archive={}", archive, e);
+        }
+    }
+
+    private static long lastUsed(Path archive) {
+        try {
+            return Files.getLastModifiedTime(archive).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long size(Path archive) {
+        try {
+            return Files.size(archive);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"directory\":\"" + directory + "\"" +
+                ", \"diskBudgetBytes\":" + diskBudgetBytes +
+                ", \"hits\":" + hits +
+                ", \"misses\":" + misses +
+                ", \"saves\":" + saves +
+                ", \"evictions\":" + evictions +
+                '}';
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.DockerCmd;
+import com.github.lkq.instadocker.metrics.Instrumentation;
+import com.github.lkq.instadocker.metrics.Instrumentations;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * times the exec of every command created by a docker client as a {@link Instrumentation#DAEMON_CALL}, tagged with the command,
+ * e.g. inspectContainer. an asynchronous exec, e.g. a pull or a log stream, is timed until the request is sent.
+ */
+class InstrumentedDockerClient {
+
+    private InstrumentedDockerClient() {
+    }
+
+    /**
+     * @return the client timing its commands, the client itself if nothing is recorded
+     */
+    static DockerClient wrap(DockerClient dockerClient, Instrumentation instrumentation, Map<String, String> tags) {
+        if (Instrumentations.isNoop(instrumentation) || Proxy.isProxyClass(dockerClient.getClass())
+                && Proxy.getInvocationHandler(dockerClient) instanceof ClientHandler) {
+            return dockerClient;
+        }
+        return proxy(DockerClient.class, new ClientHandler(dockerClient, instrumentation, tags));
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(InstrumentedDockerClient.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static boolean isCommand(Class<?> type) {
+        return type.isInterface() && DockerCmd.class.isAssignableFrom(type);
+    }
+
+    private static class ClientHandler implements InvocationHandler {
+        private final DockerClient dockerClient;
+        private final Instrumentation instrumentation;
+        private final Map<String, String> tags;
+
+        private ClientHandler(DockerClient dockerClient, Instrumentation instrumentation, Map<String, String> tags) {
+            this.dockerClient = dockerClient;
+            this.instrumentation = instrumentation;
+            this.tags = tags;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = InstrumentedDockerClient.invoke(dockerClient, method, args);
+            if (result != null && isCommand(method.getReturnType())) {
+                String call = method.getName().replaceFirst("Cmd$", "");
+                return proxy(method.getReturnType(), new CommandHandler(result, instrumentation, Instrumentations.with(tags, Instrumentation.TAG_CALL, call)));
+            }
+            return result;
+        }
+    }
+
+    private static class CommandHandler implements InvocationHandler {
+        private final Object command;
+        private final Instrumentation instrumentation;
+        private final Map<String, String> tags;
+
+        private CommandHandler(Object command, Instrumentation instrumentation, Map<String, String> tags) {
+            this.command = command;
+            this.instrumentation = instrumentation;
+            this.tags = tags;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!"exec".equals(method.getName())) {
+                Object result = InstrumentedDockerClient.invoke(command, method, args);
+                // keep the fluent withXxx calls on the proxy
+                return result == command ? proxy : result;
+            }
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                Object result = InstrumentedDockerClient.invoke(command, method, args);
+                success = true;
+                return result;
+            } finally {
+                instrumentation.record(Instrumentation.DAEMON_CALL, tags, System.nanoTime() - start, success);
+            }
+        }
+    }
+}
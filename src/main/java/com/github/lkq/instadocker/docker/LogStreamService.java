@@ -0,0 +1,281 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.LogContainerCmd;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.core.async.ResultCallbackTemplate;
+import com.github.lkq.instadocker.docker.log.LogStats;
+import com.github.lkq.instadocker.docker.probe.Backoff;
+import com.github.lkq.instadocker.util.Assert;
+import com.github.lkq.instadocker.util.InstaExecutors;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * follows the logs of all attached containers. streams are opened and their lines written to the sinks on a shared executor,
+ * closed when the container is detached, and reconnected with a since timestamp when they drop while the container is still running,
+ * so the history is not replayed. note the docker-java jaxrs transport still reads each open stream on its own
+ * dockerjava-jaxrs-async thread, so a followed container costs one thread until it's detached.
+ */
+public class LogStreamService implements Closeable {
+    private static final Logger logger = getLogger(LogStreamService.class);
+
+    private static volatile LogStreamService shared;
+
+    private final Executor executor;
+    private final Backoff reconnectBackoff;
+    private final int maxReconnects;
+
+    private final Map<String, Stream> streams = new ConcurrentHashMap<>();
+
+    /**
+     * @return the service shared by all containers of the jvm
+     */
+    public static LogStreamService shared() {
+        if (shared == null) {
+            synchronized (LogStreamService.class) {
+                if (shared == null) {
+                    shared = new LogStreamService(InstaExecutors.defaultExecutor(), Backoff.defaultBackoff(), 5);
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * @param executor         opens the streams and writes the logs to the sinks
+     * @param reconnectBackoff delay between reconnects of a dropped stream
+     * @param maxReconnects    max number of reconnects without receiving any frame in between
+     */
+    public LogStreamService(Executor executor, Backoff reconnectBackoff, int maxReconnects) {
+        Objects.requireNonNull(executor, "executor is required");
+        Objects.requireNonNull(reconnectBackoff, "reconnectBackoff is required");
+        Assert.requiresTrue(maxReconnects >= 0, "maxReconnects must not be negative");
+        this.executor = executor;
+        this.reconnectBackoff = reconnectBackoff;
+        this.maxReconnects = maxReconnects;
+    }
+
+    /**
+     * start following the logs of a container, does nothing if the container is already attached
+     *
+     * @param dockerClient    the docker-java api client
+     * @param containerLogger receives the logs
+     */
+    public void attach(DockerClient dockerClient, ContainerLogger containerLogger) {
+        Objects.requireNonNull(dockerClient, "dockerClient is required");
+        Objects.requireNonNull(containerLogger, "containerLogger is required");
+        Stream stream = new Stream(dockerClient, containerLogger);
+        if (streams.putIfAbsent(containerLogger.containerName(), stream) != null) {
+            logger.debug("container logs already attached, containerName={}", containerLogger.containerName());
+            return;
+        }
+        containerLogger.executor(executor);
+        containerLogger.timestamped(true);
+        executor.execute(() -> connect(stream));
+    }
+
+    /**
+     * stop following the logs of a container and write the remaining lines, e.g. when the container is stopped or removed
+     *
+     * @param containerName the container name
+     * @return true if the container was attached
+     */
+    public boolean detach(String containerName) {
+        Stream stream = streams.remove(containerName);
+        if (stream == null) {
+            return false;
+        }
+        stream.close();
+        logger.debug("container logs detached, containerName={}", containerName);
+        return true;
+    }
+
+    public boolean attached(String containerName) {
+        return streams.containsKey(containerName);
+    }
+
+    /**
+     * @return log stats of each attached container
+     */
+    public Map<String, LogStats> stats() {
+        Map<String, LogStats> stats = new LinkedHashMap<>();
+        streams.forEach((containerName, stream) -> stats.put(containerName, stream.containerLogger.stats()));
+        return stats;
+    }
+
+    /**
+     * @return how long after it was written by the container the last line of each attached container reached the sink
+     */
+    public Map<String, Long> lagMillis() {
+        Map<String, Long> lag = new LinkedHashMap<>();
+        stats().forEach((containerName, stats) -> lag.put(containerName, stats.lagMillis()));
+        return lag;
+    }
+
+    /**
+     * detach all containers
+     */
+    @Override
+    public void close() {
+        new ArrayList<>(streams.keySet()).forEach(this::detach);
+    }
+
+    private void connect(Stream stream) {
+        if (stream.closed) {
+            return;
+        }
+        ContainerLogger containerLogger = stream.containerLogger;
+        LogContainerCmd cmd = stream.dockerClient.logContainerCmd(containerLogger.containerName())
+                .withStdOut(true)
+                .withStdErr(true)
+                .withFollowStream(true)
+                .withTimestamps(true);
+        Instant since = containerLogger.lastTimestamp();
+        if (since != null) {
+            containerLogger.resumeAfter(since);
+            cmd.withSince((int) since.getEpochSecond());
+        } else {
+            cmd.withTailAll();
+        }
+        Connection connection = new Connection(stream);
+        stream.connection = connection;
+        try {
+            cmd.exec(connection);
+        } catch (RuntimeException e) {
+            connection.onError(e);
+        }
+    }
+
+    private void streamEnded(Stream stream, Throwable error) {
+        if (stream.closed) {
+            return;
+        }
+        String containerName = stream.containerLogger.containerName();
+        if (clientClosed(error)) {
+            logger.debug("docker client closed, stop following container logs, containerName={}", containerName);
+            if (streams.remove(containerName, stream)) {
+                stream.close();
+            }
+            return;
+        }
+        if (error == null && !running(stream)) {
+            logger.debug("container log stream ended, containerName={}", containerName);
+            if (streams.remove(containerName, stream)) {
+                stream.close();
+            }
+            return;
+        }
+        int attempt = ++stream.reconnects;
+        if (attempt > maxReconnects) {
+            logger.warn("failed to follow container logs, giving up after {} reconnects, containerName={}", maxReconnects, containerName, error);
+            if (streams.remove(containerName, stream)) {
+                stream.close();
+            }
+            return;
+        }
+        long delay = reconnectBackoff.delayMillis(attempt);
+        logger.debug("container log stream dropped, reconnecting in {}ms, containerName={}, attempt={}", delay, containerName, attempt);
+        InstaExecutors.scheduler().schedule(() -> executor.execute(() -> connect(stream)), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * a closed jersey client rejects every request, reconnecting would only fail again
+     */
+    private static boolean clientClosed(Throwable error) {
+        return error instanceof IllegalStateException && String.valueOf(error.getMessage()).contains("has been closed");
+    }
+
+    private boolean running(Stream stream) {
+        try {
+            Boolean running = stream.dockerClient.inspectContainerCmd(stream.containerLogger.containerName()).exec().getState().getRunning();
+            return Boolean.TRUE.equals(running);
+        } catch (NotFoundException e) {
+            return false;
+        } catch (RuntimeException e) {
+            logger.debug("failed to inspect container after log stream ended, containerName={}", stream.containerLogger.containerName(), e);
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"reconnectBackoff\":" + reconnectBackoff +
+                ", \"maxReconnects\":" + maxReconnects +
+                ", \"attached\":" + Collections.unmodifiableSet(streams.keySet()) +
+                '}';
+    }
+
+    private static class Stream {
+        private final DockerClient dockerClient;
+        private final ContainerLogger containerLogger;
+        private volatile Connection connection;
+        private volatile boolean closed = false;
+        private volatile int reconnects = 0;
+
+        private Stream(DockerClient dockerClient, ContainerLogger containerLogger) {
+            this.dockerClient = dockerClient;
+            this.containerLogger = containerLogger;
+        }
+
+        private void close() {
+            closed = true;
+            Connection current = connection;
+            if (current != null) {
+                current.closeQuietly();
+            }
+            containerLogger.onComplete();
+        }
+    }
+
+    /**
+     * one log request of a stream, a dropped stream is reconnected with a new connection
+     */
+    private class Connection extends ResultCallbackTemplate<Connection, Frame> {
+        private final Stream stream;
+
+        private Connection(Stream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void onNext(Frame frame) {
+            stream.reconnects = 0;
+            stream.containerLogger.onNext(frame);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            closeQuietly();
+            streamEnded(stream, throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            closeQuietly();
+            streamEnded(stream, null);
+        }
+
+        private void closeQuietly() {
+            try {
+                close();
+            } catch (Exception e) {
+                logger.debug("failed to close container log stream, containerName={}", stream.containerLogger.containerName(), e);
+            }
+        }
+    }
+}
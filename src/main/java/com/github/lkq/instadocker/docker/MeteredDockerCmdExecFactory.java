@@ -0,0 +1,92 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.core.DockerClientConfig;
+import com.github.dockerjava.jaxrs.JerseyDockerCmdExecFactory;
+import com.github.lkq.instadocker.util.InstaExecutors;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * jersey transport configured from a {@link DockerTransportConfig}, recording {@link DockerClientMetrics}
+ * and closing connections idle for longer than the keep alive
+ */
+class MeteredDockerCmdExecFactory extends JerseyDockerCmdExecFactory {
+
+    private static final String START_NANOS = MeteredDockerCmdExecFactory.class.getName() + ".startNanos";
+
+    private final DockerTransportConfig config;
+    private final DockerClientMetrics metrics;
+    private ScheduledFuture<?> idleEviction;
+
+    MeteredDockerCmdExecFactory(DockerTransportConfig config, DockerClientMetrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+        withMaxTotalConnections(config.maxTotalConnections());
+        withMaxPerRouteConnections(config.maxPerRouteConnections());
+        withConnectTimeout(config.connectTimeoutMillis());
+        withReadTimeout(config.readTimeoutMillis());
+        withConnectionRequestTimeout(config.connectionRequestTimeoutMillis());
+        withClientRequestFilters((ClientRequestFilter) request -> {
+            request.setProperty(START_NANOS, System.nanoTime());
+            if (config.keepAliveMillis() == 0) {
+                request.getHeaders().putSingle("Connection", "close");
+            }
+        });
+        withClientResponseFilters(new LatencyFilter(metrics));
+    }
+
+    @Override
+    public void init(DockerClientConfig dockerClientConfig) {
+        super.init(dockerClientConfig);
+        Object connectionManager = getBaseResource().getConfiguration().getProperty(ApacheClientProperties.CONNECTION_MANAGER);
+        if (connectionManager instanceof PoolingHttpClientConnectionManager) {
+            PoolingHttpClientConnectionManager pool = (PoolingHttpClientConnectionManager) connectionManager;
+            metrics.connectionManager(pool);
+            long keepAlive = config.keepAliveMillis();
+            if (keepAlive > 0) {
+                idleEviction = InstaExecutors.scheduler().scheduleWithFixedDelay(() -> {
+                    pool.closeExpiredConnections();
+                    pool.closeIdleConnections(keepAlive, TimeUnit.MILLISECONDS);
+                }, keepAlive, keepAlive, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (idleEviction != null) {
+            idleEviction.cancel(false);
+        }
+        super.close();
+    }
+
+    /**
+     * response filters run in descending priority, so this one sees error responses before docker-java turns them into exceptions
+     */
+    @Priority(Priorities.USER + 1000)
+    private static class LatencyFilter implements ClientResponseFilter {
+        private final DockerClientMetrics metrics;
+
+        LatencyFilter(DockerClientMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void filter(ClientRequestContext request, ClientResponseContext response) {
+            Object start = request.getProperty(START_NANOS);
+            if (start instanceof Long) {
+                metrics.record(System.nanoTime() - (Long) start, response.getStatus());
+            }
+        }
+    }
+}
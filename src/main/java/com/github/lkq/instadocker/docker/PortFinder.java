@@ -4,15 +4,15 @@ import javax.ws.rs.NotFoundException;
 import java.io.IOException;
 import java.net.ServerSocket;
 
+/**
+ * finds a port which is free at the time of the call, another process may still take it before it's bound,
+ * prefer {@link com.github.lkq.instadocker.docker.entity.PortBinding#anyHostPort(String, int)} or {@link PortReservations}
+ */
 public class PortFinder {
     public static int find(int retries) {
-        int port = 0;
-        while (port == 0 && retries-- > 0) {
-            try {
-                ServerSocket socket = new ServerSocket(0);
-                port = socket.getLocalPort();
-                socket.close();
-                return port;
+        for (int attempt = 0; attempt < retries; attempt++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                return socket.getLocalPort();
             } catch (IOException ignored) {
             }
         }
@@ -0,0 +1,17 @@
+package com.github.lkq.instadocker.docker;
+
+import java.io.Closeable;
+
+/**
+ * a host port held by {@link PortReservations} until released
+ */
+public interface PortReservation extends Closeable {
+
+    int port();
+
+    /**
+     * release the port, e.g. once the container has bound it, does nothing if already released
+     */
+    @Override
+    void close();
+}
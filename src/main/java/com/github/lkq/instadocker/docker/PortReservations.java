@@ -0,0 +1,191 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.lkq.instadocker.exception.InstaDockerException;
+import com.github.lkq.instadocker.util.Assert;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * reserves host ports under file locks in a directory shared by all processes of the machine, so parallel test jvms,
+ * e.g. surefire forks, using the same registry never pick the same port. a port stays reserved until it's released,
+ * which {@link DockerContainer} does once the container has bound it.
+ */
+public class PortReservations {
+    private static final Logger logger = getLogger(PortReservations.class);
+
+    private static volatile PortReservations shared;
+
+    private final Path lockDirectory;
+    private final int maxAttempts;
+    private final Set<Integer> reserved = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return the registry locking ports under java.io.tmpdir/insta-docker-ports
+     */
+    public static PortReservations shared() {
+        if (shared == null) {
+            synchronized (PortReservations.class) {
+                if (shared == null) {
+                    shared = new PortReservations(new File(System.getProperty("java.io.tmpdir"), "insta-docker-ports").toPath(), 20);
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * @param lockDirectory directory of the lock files, must be the same for all processes sharing the ports
+     * @param maxAttempts   max number of ports tried before giving up
+     */
+    public PortReservations(Path lockDirectory, int maxAttempts) {
+        Assert.requiresTrue(maxAttempts > 0, "maxAttempts must be positive");
+        this.lockDirectory = lockDirectory;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return a free host port, reserved until the reservation is closed
+     */
+    public PortReservation reserve() {
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            int port = freePort();
+            if (port > 0) {
+                PortReservation reservation = tryReserve(port);
+                if (reservation != null) {
+                    return reservation;
+                }
+            }
+        }
+        throw new InstaDockerException("can't reserve a port after " + maxAttempts + " attempts");
+    }
+
+    /**
+     * @param port the port
+     * @return the reservation, null if the port is reserved by this or another process
+     */
+    PortReservation tryReserve(int port) {
+        if (!reserved.add(port)) {
+            return null;
+        }
+        FileLockReservation reservation = tryLock(port);
+        if (reservation == null) {
+            reserved.remove(port);
+            return null;
+        }
+        logger.debug("port reserved, port={}", port);
+        return reservation;
+    }
+
+    /**
+     * @param port the port
+     * @return true if the port is reserved by this jvm
+     */
+    public boolean reserved(int port) {
+        return reserved.contains(port);
+    }
+
+    private void createLockDirectory() {
+        try {
+            Files.createDirectories(lockDirectory);
+        } catch (IOException e) {
+            throw new InstaDockerException("failed to create port lock directory, directory=" + lockDirectory, e);
+        }
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private FileLockReservation tryLock(int port) {
+        createLockDirectory();
+        Path lockFile = lockDirectory.resolve(port + ".lock");
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return new FileLockReservation(port, channel, lock);
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            logger.debug("failed to lock port, port={}", port, e);
+        }
+        closeQuietly(channel);
+        return null;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"lockDirectory\":\"" + lockDirectory + "\"" +
+                ", \"reserved\":" + reserved +
+                '}';
+    }
+
+    private class FileLockReservation implements PortReservation {
+        private final int port;
+        private final FileChannel channel;
+        private final FileLock lock;
+        private boolean released = false;
+
+        private FileLockReservation(int port, FileChannel channel, FileLock lock) {
+            this.port = port;
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        @Override
+        public int port() {
+            return port;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            try {
+                lock.release();
+            } catch (IOException e) {
+                logger.debug("failed to release port lock, port={}", port, e);
+            }
+            closeQuietly(channel);
+            reserved.remove(port);
+            logger.debug("port released, port={}", port);
+        }
+
+        @Override
+        public String toString() {
+            return "{" +
+                    "\"port\":" + port +
+                    ", \"released\":" + released +
+                    '}';
+        }
+    }
+}
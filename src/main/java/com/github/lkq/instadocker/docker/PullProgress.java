@@ -0,0 +1,77 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.model.PullResponseItem;
+import com.github.dockerjava.api.model.ResponseItem;
+import com.github.dockerjava.core.command.PullImageResultCallback;
+import com.github.lkq.instadocker.exception.InstaDockerException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * pull callback which keeps track of the bytes downloaded for each layer from the progress frames,
+ * and completes a future when the pull finishes, so callers don't need to block on it.
+ * the daemon reports a failed pull, e.g. of a missing tag, as error frames of a successful response, so the pull
+ * only succeeds if its last frame indicates it
+ */
+class PullProgress extends PullImageResultCallback {
+
+    private static final String DOWNLOADING = "Downloading";
+
+    private final Map<String, Long> layerBytes = new ConcurrentHashMap<>();
+    private final CompletableFuture<PullProgress> completion = new CompletableFuture<>();
+    private volatile PullResponseItem lastItem;
+
+    @Override
+    public void onNext(PullResponseItem item) {
+        ResponseItem.ProgressDetail progress = item.getProgressDetail();
+        if (item.getId() != null && DOWNLOADING.equals(item.getStatus()) && progress != null) {
+            // the last frame of a layer doesn't reach its total, count the total if the daemon reports it
+            Long bytes = progress.getTotal() != null && progress.getTotal() > 0 ? progress.getTotal() : progress.getCurrent();
+            if (bytes != null) {
+                layerBytes.merge(item.getId(), bytes, Math::max);
+            }
+        }
+        lastItem = item;
+        super.onNext(item);
+    }
+
+    @Override
+    public void onComplete() {
+        super.onComplete();
+        PullResponseItem last = lastItem;
+        if (last != null && last.isPullSuccessIndicated()) {
+            completion.complete(this);
+        } else {
+            completion.completeExceptionally(new InstaDockerException("image pull didn't indicate success, last frame: "
+                    + (last == null ? "none" : last.isErrorIndicated() ? errorMessage(last) : last.getStatus())));
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        try {
+            super.onError(throwable);
+        } finally {
+            completion.completeExceptionally(throwable);
+        }
+    }
+
+    private static String errorMessage(PullResponseItem item) {
+        ResponseItem.ErrorDetail errorDetail = item.getErrorDetail();
+        return errorDetail != null ? errorDetail.getMessage() : null;
+    }
+
+    CompletableFuture<PullProgress> completion() {
+        return completion;
+    }
+
+    long bytesDownloaded() {
+        return layerBytes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    int layersDownloaded() {
+        return layerBytes.size();
+    }
+}
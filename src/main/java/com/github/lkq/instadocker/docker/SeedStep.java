@@ -0,0 +1,14 @@
+package com.github.lkq.instadocker.docker;
+
+/**
+ * prepares the state of a running container before it's committed to a snapshot image, e.g. runs migrations and loads fixtures
+ */
+@FunctionalInterface
+public interface SeedStep {
+
+    /**
+     * @param container the running and ready container
+     * @throws Exception if the container can't be seeded, the container is not committed then
+     */
+    void seed(DockerContainer container) throws Exception;
+}
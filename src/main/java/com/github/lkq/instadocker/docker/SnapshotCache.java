@@ -0,0 +1,247 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.ConflictException;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Image;
+import com.github.lkq.instadocker.exception.InstaDockerException;
+import com.github.lkq.instadocker.util.Assert;
+import com.github.lkq.instadocker.util.InstaUtils;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * images committed from seeded containers, tagged by the fingerprint of the base image and the seed inputs, see
+ * {@link DockerContainer#seed(SnapshotCache, SeedStep, String...)}.
+ * the last use of each snapshot is kept as the modified time of a marker file in a directory shared by all processes of
+ * the machine, when the snapshots take more than the disk budget the least recently used ones are removed.
+ */
+public class SnapshotCache {
+    private static final Logger logger = getLogger(SnapshotCache.class);
+
+    public static final String DEFAULT_REPOSITORY = "insta-docker-snapshot";
+
+    private final DockerClient dockerClient;
+    private final String repository;
+    private final long diskBudgetBytes;
+    private final Path usageDirectory;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param dockerClient    the docker-java api client
+     * @param diskBudgetBytes max total size of the snapshot images, usage is tracked under java.io.tmpdir/insta-docker-snapshots
+     */
+    public SnapshotCache(DockerClient dockerClient, long diskBudgetBytes) {
+        this(dockerClient, DEFAULT_REPOSITORY, diskBudgetBytes, new File(System.getProperty("java.io.tmpdir"), "insta-docker-snapshots").toPath());
+    }
+
+    /**
+     * @param dockerClient    the docker-java api client
+     * @param repository      repository of the snapshot images, tagged by fingerprint
+     * @param diskBudgetBytes max total size of the snapshot images. the size reported by the daemon includes the base image layers,
+     *                        which are shared between snapshots, so the budget is conservative.
+     * @param usageDirectory  directory of the last use markers, must be the same for all processes sharing the snapshots
+     */
+    public SnapshotCache(DockerClient dockerClient, String repository, long diskBudgetBytes, Path usageDirectory) {
+        Objects.requireNonNull(dockerClient, "dockerClient is required");
+        Assert.requiresNotBlank(repository, "repository is required");
+        Assert.requiresTrue(diskBudgetBytes > 0, "diskBudgetBytes must be positive");
+        Objects.requireNonNull(usageDirectory, "usageDirectory is required");
+        this.dockerClient = dockerClient;
+        this.repository = repository;
+        this.diskBudgetBytes = diskBudgetBytes;
+        this.usageDirectory = usageDirectory;
+    }
+
+    /**
+     * @param baseImageId the id of the image the container is created from, so a newly pulled base image invalidates its snapshots
+     * @param inputs      everything the seeded state depends on, e.g. the container spec and the migration scripts version
+     * @return the fingerprint used as the snapshot tag
+     */
+    public static String fingerprint(String baseImageId, List<String> inputs) {
+        Assert.requiresNotBlank(baseImageId, "baseImageId is required");
+        StringBuilder value = new StringBuilder(baseImageId);
+        inputs.forEach(input -> value.append('\n').append(input));
+        return InstaUtils.sha256Hex(value.toString());
+    }
+
+    /**
+     * @param fingerprint the snapshot fingerprint
+     * @return the snapshot image name
+     */
+    public String image(String fingerprint) {
+        return repository + ":" + fingerprint;
+    }
+
+    /**
+     * @param fingerprint the snapshot fingerprint
+     * @return the snapshot image name if the snapshot exists, which is then marked as used
+     */
+    public Optional<String> lookup(String fingerprint) {
+        String image = image(fingerprint);
+        try {
+            dockerClient.inspectImageCmd(image).exec();
+        } catch (NotFoundException e) {
+            misses.incrementAndGet();
+            logger.info("snapshot not found, image={}", image);
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        touch(fingerprint);
+        logger.info("snapshot found, image={}", image);
+        return Optional.of(image);
+    }
+
+    /**
+     * commit the container to a snapshot image, then evict the least recently used snapshots over the disk budget
+     *
+     * @param containerName the seeded container, paused while it's committed
+     * @param fingerprint   the snapshot fingerprint
+     * @return the snapshot image name
+     * @throws InstaDockerException if the container can't be committed
+     */
+    public String commit(String containerName, String fingerprint) {
+        String image = image(fingerprint);
+        long start = System.currentTimeMillis();
+        try {
+            String imageId = dockerClient.commitCmd(containerName)
+                    .withRepository(repository)
+                    .withTag(fingerprint)
+                    .withPause(true)
+                    .exec();
+            logger.info("container committed to snapshot, containerName={}, image={}, imageId={}, elapsed={}ms",
+                    containerName, image, imageId, System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            throw new InstaDockerException("failed to commit container " + containerName + " to " + image, e);
+        }
+        touch(fingerprint);
+        evict(fingerprint);
+        return image;
+    }
+
+    /**
+     * remove the least recently used snapshots until the total size is within the disk budget, snapshots used by a container are kept
+     *
+     * @param keep fingerprint never evicted, e.g. the snapshot just committed
+     */
+    void evict(String keep) {
+        List<Image> snapshots = dockerClient.listImagesCmd().withImageNameFilter(repository).exec();
+        Map<String, Long> sizes = new HashMap<>();
+        for (Image snapshot : snapshots) {
+            for (String tag : tags(snapshot)) {
+                sizes.put(tag, snapshot.getSize() == null ? 0L : snapshot.getSize());
+            }
+        }
+        long total = sizes.values().stream().mapToLong(Long::longValue).sum();
+        if (total <= diskBudgetBytes) {
+            return;
+        }
+        List<String> leastRecentlyUsed = new ArrayList<>(sizes.keySet());
+        leastRecentlyUsed.remove(keep);
+        leastRecentlyUsed.sort(Comparator.comparingLong(this::lastUsed));
+        for (String fingerprint : leastRecentlyUsed) {
+            if (total <= diskBudgetBytes) {
+                break;
+            }
+            try {
+                dockerClient.removeImageCmd(image(fingerprint)).exec();
+                total -= sizes.get(fingerprint);
+                evictions.incrementAndGet();
+                deleteMarker(fingerprint);
+                logger.info("snapshot evicted, image={}, size={}, total={}, budget={}", image(fingerprint), sizes.get(fingerprint), total, diskBudgetBytes);
+            } catch (ConflictException e) {
+                logger.debug("snapshot in use, not evicted, image={}", image(fingerprint), e);
+            } catch (NotFoundException e) {
+                total -= sizes.get(fingerprint);
+                deleteMarker(fingerprint);
+            }
+        }
+        if (total > diskBudgetBytes) {
+            logger.warn("snapshots over disk budget, all other snapshots are in use, total={}, budget={}", total, diskBudgetBytes);
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    private List<String> tags(Image image) {
+        List<String> tags = new ArrayList<>();
+        if (image.getRepoTags() != null) {
+            String prefix = repository + ":";
+            for (String repoTag : image.getRepoTags()) {
+                if (repoTag.startsWith(prefix)) {
+                    tags.add(repoTag.substring(prefix.length()));
+                }
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * @return the last use of the snapshot, 0 if it was never used on this machine
+     */
+    private long lastUsed(String fingerprint) {
+        try {
+            return Files.getLastModifiedTime(marker(fingerprint)).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void touch(String fingerprint) {
+        Path marker = marker(fingerprint);
+        try {
+            Files.createDirectories(usageDirectory);
+            if (!Files.exists(marker)) {
+                Files.createFile(marker);
+            }
+            Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            logger.warn("failed to record snapshot use, marker={}", marker, e);
+        }
+    }
+
+    private void deleteMarker(String fingerprint) {
+        try {
+            Files.deleteIfExists(marker(fingerprint));
+        } catch (IOException e) {
+            logger.debug("failed to delete snapshot marker, fingerprint={}", fingerprint, e);
+        }
+    }
+
+    private Path marker(String fingerprint) {
+        return usageDirectory.resolve(repository.replace('/', '_') + "-" + fingerprint + ".used");
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"repository\":\"" + repository + "\"" +
+                ", \"diskBudgetBytes\":" + diskBudgetBytes +
+                ", \"hits\":" + hits +
+                ", \"misses\":" + misses +
+                ", \"evictions\":" + evictions +
+                '}';
+    }
+}
@@ -0,0 +1,194 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.model.BlkioStatEntry;
+import com.github.dockerjava.api.model.CpuStatsConfig;
+import com.github.dockerjava.api.model.MemoryStatsConfig;
+import com.github.dockerjava.api.model.StatisticNetworksConfig;
+import com.github.dockerjava.api.model.Statistics;
+import com.github.dockerjava.core.async.ResultCallbackTemplate;
+import com.github.lkq.instadocker.docker.stats.ResourceSample;
+import com.github.lkq.instadocker.docker.stats.ResourceSeries;
+import org.slf4j.Logger;
+
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * the daemon stats stream of one container, turns the cumulative counters of consecutive samples into rates.
+ * the first sample only sets the baseline, so does every sample following a counter reset, e.g. a restart
+ */
+class StatsSession extends ResultCallbackTemplate<StatsSession, Statistics> {
+    private static final Logger logger = getLogger(StatsSession.class);
+
+    private final String containerName;
+    private final ResourceSeries series;
+    private final Consumer<StatsSession> ended;
+    private Counters previous;
+
+    /**
+     * @param ended called once the stream ends, e.g. when the container stops
+     */
+    StatsSession(String containerName, ResourceSeries series, Consumer<StatsSession> ended) {
+        this.containerName = containerName;
+        this.series = series;
+        this.ended = ended;
+    }
+
+    @Override
+    public void onNext(Statistics statistics) {
+        Counters current = Counters.of(statistics);
+        if (current == null) {
+            return;
+        }
+        if (previous != null && current.timestamp.isAfter(previous.timestamp) && !current.resetSince(previous)) {
+            series.add(current.rates(previous));
+        }
+        previous = current;
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        logger.debug("stats stream failed, containerName={}", containerName, throwable);
+        super.onError(throwable);
+        ended.accept(this);
+    }
+
+    @Override
+    public void onComplete() {
+        super.onComplete();
+        ended.accept(this);
+    }
+
+    private static class Counters {
+        private final Instant timestamp;
+        private final long cpuUsage;
+        private final long systemCpuUsage;
+        private final long onlineCpus;
+        private final long memoryRss;
+        private final long memoryLimit;
+        private final long networkRx;
+        private final long networkTx;
+        private final long blockRead;
+        private final long blockWrite;
+
+        private Counters(Instant timestamp, long cpuUsage, long systemCpuUsage, long onlineCpus, long memoryRss, long memoryLimit,
+                         long networkRx, long networkTx, long blockRead, long blockWrite) {
+            this.timestamp = timestamp;
+            this.cpuUsage = cpuUsage;
+            this.systemCpuUsage = systemCpuUsage;
+            this.onlineCpus = onlineCpus;
+            this.memoryRss = memoryRss;
+            this.memoryLimit = memoryLimit;
+            this.networkRx = networkRx;
+            this.networkTx = networkTx;
+            this.blockRead = blockRead;
+            this.blockWrite = blockWrite;
+        }
+
+        /**
+         * @return null if the sample has no read time, e.g. the zero sample sent for a stopped container
+         */
+        private static Counters of(Statistics statistics) {
+            Instant timestamp;
+            try {
+                timestamp = statistics.getRead() == null ? null : Instant.parse(statistics.getRead());
+            } catch (DateTimeParseException e) {
+                timestamp = null;
+            }
+            if (timestamp == null || timestamp.getEpochSecond() <= 0) {
+                return null;
+            }
+            CpuStatsConfig cpu = statistics.getCpuStats();
+            MemoryStatsConfig memory = statistics.getMemoryStats();
+            long networkRx = 0;
+            long networkTx = 0;
+            Map<String, StatisticNetworksConfig> networks = statistics.getNetworks();
+            if (networks != null) {
+                for (StatisticNetworksConfig network : networks.values()) {
+                    networkRx += orZero(network.getRxBytes());
+                    networkTx += orZero(network.getTxBytes());
+                }
+            }
+            long blockRead = 0;
+            long blockWrite = 0;
+            List<BlkioStatEntry> blkio = statistics.getBlkioStats() == null ? null : statistics.getBlkioStats().getIoServiceBytesRecursive();
+            if (blkio != null) {
+                for (BlkioStatEntry entry : blkio) {
+                    if ("read".equalsIgnoreCase(entry.getOp())) {
+                        blockRead += orZero(entry.getValue());
+                    } else if ("write".equalsIgnoreCase(entry.getOp())) {
+                        blockWrite += orZero(entry.getValue());
+                    }
+                }
+            }
+            return new Counters(timestamp,
+                    cpu == null || cpu.getCpuUsage() == null ? 0 : orZero(cpu.getCpuUsage().getTotalUsage()),
+                    cpu == null ? 0 : orZero(cpu.getSystemCpuUsage()),
+                    onlineCpus(cpu),
+                    memory == null ? 0 : rss(memory),
+                    memory == null ? 0 : orZero(memory.getLimit()),
+                    networkRx, networkTx, blockRead, blockWrite);
+        }
+
+        private boolean resetSince(Counters previous) {
+            return cpuUsage < previous.cpuUsage || networkRx < previous.networkRx || networkTx < previous.networkTx
+                    || blockRead < previous.blockRead || blockWrite < previous.blockWrite;
+        }
+
+        private ResourceSample rates(Counters previous) {
+            double seconds = (TimeUnit.SECONDS.toNanos(timestamp.getEpochSecond() - previous.timestamp.getEpochSecond())
+                    + timestamp.getNano() - previous.timestamp.getNano()) / (double) TimeUnit.SECONDS.toNanos(1);
+            long systemDelta = systemCpuUsage - previous.systemCpuUsage;
+            // same as docker stats: the share of the host cpu time, scaled to the number of cpus
+            double cpuPercent = systemDelta > 0 ? (cpuUsage - previous.cpuUsage) / (double) systemDelta * onlineCpus * 100 : 0;
+            return new ResourceSample(timestamp, cpuPercent, memoryRss, memoryLimit,
+                    (networkRx - previous.networkRx) / seconds,
+                    (networkTx - previous.networkTx) / seconds,
+                    (blockRead - previous.blockRead) / seconds,
+                    (blockWrite - previous.blockWrite) / seconds);
+        }
+
+        private static long onlineCpus(CpuStatsConfig cpu) {
+            if (cpu == null) {
+                return 1;
+            }
+            if (cpu.getOnlineCpus() != null && cpu.getOnlineCpus() > 0) {
+                return cpu.getOnlineCpus();
+            }
+            List<Long> perCpu = cpu.getCpuUsage() == null ? null : cpu.getCpuUsage().getPercpuUsage();
+            return perCpu == null || perCpu.isEmpty() ? 1 : perCpu.size();
+        }
+
+        /**
+         * the detailed memory stats are a package-private type in docker-java, so rss is read reflectively,
+         * falling back to the usage which includes the page cache
+         */
+        private static long rss(MemoryStatsConfig memory) {
+            Object stats = memory.getStats();
+            if (stats != null) {
+                try {
+                    Method getRss = stats.getClass().getMethod("getRss");
+                    getRss.setAccessible(true);
+                    Long rss = (Long) getRss.invoke(stats);
+                    if (rss != null) {
+                        return rss;
+                    }
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    logger.debug("unable to read rss from memory stats", e);
+                }
+            }
+            return orZero(memory.getUsage());
+        }
+
+        private static long orZero(Long value) {
+            return value == null ? 0 : value;
+        }
+    }
+}
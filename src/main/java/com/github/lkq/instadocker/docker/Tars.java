@@ -0,0 +1,165 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.lkq.instadocker.exception.InstaDockerException;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * tar archives streamed to and from the daemon with constant memory: archives are written on the fly into a pipe and
+ * extracted entry by entry while they're read, never staged on disk or in memory.
+ */
+final class Tars {
+    private static final Logger logger = getLogger(Tars.class);
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private Tars() {
+    }
+
+    /**
+     * @param sources  the entries of the archive
+     * @param executor runs the writer of the archive, which blocks until the reader takes the previous chunk
+     * @return the archive, written while it's read, failing the read if an entry can't be written
+     */
+    static InputStream pipe(List<ArchiveSource> sources, Executor executor) {
+        Pipe pipe = new Pipe();
+        PipedOutputStream out;
+        try {
+            out = new PipedOutputStream(pipe);
+        } catch (IOException e) {
+            throw new InstaDockerException("failed to open archive pipe", e);
+        }
+        executor.execute(() -> {
+            try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new BufferedOutputStream(out, BUFFER_SIZE))) {
+                tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+                tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+                for (ArchiveSource source : sources) {
+                    source.write(tar);
+                }
+                tar.finish();
+                tar.flush();
+                pipe.written.complete(null);
+            } catch (Exception e) {
+                // the reader fails on the end of the pipe, rather than sending a truncated archive
+                pipe.written.completeExceptionally(e);
+                logger.debug("failed to write archive, sources={}", sources, e);
+                closeQuietly(out);
+            }
+        });
+        return pipe;
+    }
+
+    /**
+     * @param tar       the archive, read entry by entry
+     * @param directory where the entries are extracted, entries resolving outside of it are rejected
+     * @return number of bytes extracted
+     * @throws IOException if the archive can't be read or an entry can't be written
+     */
+    static long extract(InputStream tar, Path directory) throws IOException {
+        Path root = directory.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        long bytes = 0;
+        try (TarArchiveInputStream entries = new TarArchiveInputStream(new BufferedInputStream(tar, BUFFER_SIZE))) {
+            TarArchiveEntry entry;
+            while ((entry = entries.getNextTarEntry()) != null) {
+                Path target = root.resolve(entry.getName()).normalize();
+                if (!target.startsWith(root)) {
+                    throw new IOException("archive entry outside of the target directory: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                } else if (entry.isFile()) {
+                    Files.createDirectories(target.getParent());
+                    try (OutputStream file = Files.newOutputStream(target)) {
+                        bytes += copy(entries, file, Long.MAX_VALUE);
+                    }
+                } else {
+                    logger.debug("archive entry skipped, not a file or directory, name={}", entry.getName());
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @param tar the archive of a single file
+     * @return the content of the first file of the archive, empty if it has no file
+     * @throws IOException if the archive can't be read
+     */
+    static Optional<byte[]> readFile(InputStream tar) throws IOException {
+        try (TarArchiveInputStream entries = new TarArchiveInputStream(new BufferedInputStream(tar, BUFFER_SIZE))) {
+            TarArchiveEntry entry;
+            while ((entry = entries.getNextTarEntry()) != null) {
+                if (entry.isFile()) {
+                    ByteArrayOutputStream content = new ByteArrayOutputStream((int) Math.min(entry.getSize(), BUFFER_SIZE));
+                    copy(entries, content, Long.MAX_VALUE);
+                    return Optional.of(content.toByteArray());
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return number of bytes copied, at most the limit
+     */
+    static long copy(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(limit, 1))];
+        long copied = 0;
+        int read;
+        while (copied < limit && (read = in.read(buffer, 0, (int) Math.min(buffer.length, limit - copied))) != -1) {
+            out.write(buffer, 0, read);
+            copied += read;
+        }
+        return copied;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            logger.debug("failed to close archive pipe", e);
+        }
+    }
+
+    private static class Pipe extends PipedInputStream {
+        private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        private Pipe() {
+            super(BUFFER_SIZE);
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            return checkWritten(super.read());
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            return checkWritten(super.read(b, off, len));
+        }
+
+        private int checkWritten(int read) throws IOException {
+            if (read == -1 && written.isCompletedExceptionally()) {
+                try {
+                    written.join();
+                } catch (RuntimeException e) {
+                    throw new IOException("failed to write archive", e.getCause() != null ? e.getCause() : e);
+                }
+            }
+            return read;
+        }
+    }
+}
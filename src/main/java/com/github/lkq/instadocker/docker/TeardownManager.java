@@ -0,0 +1,386 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Container;
+import com.github.lkq.instadocker.util.Assert;
+import com.github.lkq.instadocker.util.InstaExecutors;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * removes the containers of a session, i.e. of a jvm, in parallel when the jvm exits, and reaps the containers of
+ * sessions that ended without removing theirs, e.g. a crashed jvm.
+ * containers are labelled with the session id and the host. a session holds a file lock under the session directory while
+ * it's alive, so the sessions of the same host are reaped once their lock is released. the sessions of other hosts sharing
+ * the daemon are reaped once their containers are older than the max age.
+ */
+public class TeardownManager implements Closeable {
+    private static final Logger logger = getLogger(TeardownManager.class);
+
+    public static final String SESSION_LABEL = "com.github.lkq.instadocker.session";
+    public static final String HOST_LABEL = "com.github.lkq.instadocker.host";
+
+    private static volatile TeardownManager shared;
+
+    private final String sessionId = UUID.randomUUID().toString();
+    private final String host = hostName();
+    private final Path sessionDirectory;
+    private final int maxConcurrency;
+    private final int stopTimeoutInSeconds;
+    private long maxAgeMillis = TimeUnit.HOURS.toMillis(6);
+
+    private final Set<DockerContainer> containers = ConcurrentHashMap.newKeySet();
+    private FileChannel sessionChannel;
+    private FileLock sessionLock;
+    private Thread shutdownHook;
+    private ScheduledFuture<?> reaper;
+
+    /**
+     * @return the manager of this jvm, removing its containers on exit, 8 at a time, stopped with a 1 second timeout,
+     * sessions are locked under java.io.tmpdir/insta-docker-sessions
+     */
+    public static TeardownManager shared() {
+        if (shared == null) {
+            synchronized (TeardownManager.class) {
+                if (shared == null) {
+                    shared = new TeardownManager(new File(System.getProperty("java.io.tmpdir"), "insta-docker-sessions").toPath(), 8, 1);
+                    shared.shutdownHook(true);
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * @param sessionDirectory     directory of the session lock files, must be the same for all processes of the host
+     * @param maxConcurrency       max number of containers stopped and removed at the same time
+     * @param stopTimeoutInSeconds how long a container is given to stop before it's killed, 0 to kill it right away
+     */
+    public TeardownManager(Path sessionDirectory, int maxConcurrency, int stopTimeoutInSeconds) {
+        Objects.requireNonNull(sessionDirectory, "sessionDirectory is required");
+        Assert.requiresTrue(maxConcurrency > 0, "maxConcurrency must be positive");
+        Assert.requiresTrue(stopTimeoutInSeconds >= 0, "stopTimeoutInSeconds must not be negative");
+        this.sessionDirectory = sessionDirectory;
+        this.maxConcurrency = maxConcurrency;
+        this.stopTimeoutInSeconds = stopTimeoutInSeconds;
+        lockSession();
+    }
+
+    /**
+     * @param maxAgeMillis age after which containers of another host, or of a session without lock file, are reaped
+     * @return this
+     */
+    public TeardownManager maxAge(long maxAgeMillis) {
+        Assert.requiresTrue(maxAgeMillis >= 0, "maxAgeMillis must not be negative");
+        this.maxAgeMillis = maxAgeMillis;
+        return this;
+    }
+
+    /**
+     * @param enabled true to tear down the registered containers when the jvm exits
+     * @return this
+     */
+    public synchronized TeardownManager shutdownHook(boolean enabled) {
+        if (enabled && shutdownHook == null) {
+            shutdownHook = new Thread(this::teardown, "insta-docker-teardown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } else if (!enabled && shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                logger.debug("jvm already shutting down", e);
+            }
+            shutdownHook = null;
+        }
+        return this;
+    }
+
+    public String sessionId() {
+        return sessionId;
+    }
+
+    /**
+     * label the container with the session, to be created after, and remove it on {@link #teardown()}
+     *
+     * @param container the container
+     */
+    public void register(DockerContainer container) {
+        container.sessionLabel(SESSION_LABEL, sessionId);
+        container.sessionLabel(HOST_LABEL, host);
+        containers.add(container);
+    }
+
+    public void unregister(DockerContainer container) {
+        containers.remove(container);
+    }
+
+    /**
+     * stop and remove all registered containers, in parallel up to the max concurrency
+     *
+     * @return number of containers removed
+     */
+    public int teardown() {
+        List<DockerContainer> toRemove = new ArrayList<>(containers);
+        if (toRemove.isEmpty()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxConcurrency, toRemove.size()), InstaExecutors.daemonThreadFactory("insta-docker-teardown"));
+        int removed = 0;
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (DockerContainer container : toRemove) {
+                tasks.add(() -> remove(container));
+            }
+            // a stop takes up to the stop timeout, the remove after is quick
+            long timeoutSeconds = (stopTimeoutInSeconds + 30L) * ((toRemove.size() + maxConcurrency - 1) / maxConcurrency);
+            for (Future<Boolean> result : executor.invokeAll(tasks, timeoutSeconds, TimeUnit.SECONDS)) {
+                if (!result.isCancelled() && result.get()) {
+                    removed++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("interrupted while tearing down containers, session={}", sessionId);
+        } catch (ExecutionException e) {
+            // remove() doesn't throw
+            logger.warn("failed to tear down containers, session={}", sessionId, e);
+        } finally {
+            executor.shutdownNow();
+        }
+        logger.info("containers torn down, session={}, removed={}, registered={}, elapsed={}ms",
+                sessionId, removed, toRemove.size(), System.currentTimeMillis() - start);
+        return removed;
+    }
+
+    private boolean remove(DockerContainer container) {
+        try {
+            if (stopTimeoutInSeconds > 0) {
+                try {
+                    container.ensureStopped(stopTimeoutInSeconds);
+                } catch (NotFoundException e) {
+                    logger.debug("container already removed, containerName={}", container.containerName());
+                }
+            }
+            boolean removed = container.ensureNotExists();
+            if (removed) {
+                containers.remove(container);
+            }
+            return removed;
+        } catch (RuntimeException e) {
+            logger.warn("failed to tear down container, containerName={}", container.containerName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * remove the containers of ended sessions, listed with a single call.
+     * containers registered to this manager are kept, even if created by another session, e.g. reused by {@link DockerContainer#reuseIfIdentical()}
+     *
+     * @param dockerClient the client of the daemon
+     * @return number of containers removed
+     */
+    public int reap(DockerClient dockerClient) {
+        // filtered here rather than by the daemon, docker-java encodes label filters with jaxb, which is not on the classpath since java 11
+        List<Container> allContainers = dockerClient.listContainersCmd().withShowAll(true).exec();
+        Set<String> registered = new HashSet<>();
+        containers.forEach(container -> registered.add(container.containerName()));
+        Map<String, Boolean> sessionEnded = new HashMap<>();
+        Set<String> failedSessions = new HashSet<>();
+        int removed = 0;
+        for (Container container : allContainers) {
+            Map<String, String> labels = container.getLabels() == null ? Collections.emptyMap() : container.getLabels();
+            String session = labels.get(SESSION_LABEL);
+            if (session == null || sessionId.equals(session) || isRegistered(container, registered)) {
+                continue;
+            }
+            boolean stale = sessionEnded.computeIfAbsent(session, key -> sessionEnded(key, labels.get(HOST_LABEL)))
+                    || isOlderThanMaxAge(container);
+            if (stale) {
+                try {
+                    dockerClient.removeContainerCmd(container.getId()).withForce(true).withRemoveVolumes(true).exec();
+                    removed++;
+                    logger.info("orphan container reaped, containerId={}, names={}, session={}", container.getId(), Arrays.toString(container.getNames()), session);
+                } catch (NotFoundException e) {
+                    logger.debug("orphan container already removed, containerId={}", container.getId());
+                } catch (RuntimeException e) {
+                    // e.g. a removal already in progress, the rest of the orphans are still reaped
+                    failedSessions.add(session);
+                    logger.warn("failed to reap orphan container, containerId={}, session={}", container.getId(), session, e);
+                }
+            }
+        }
+        sessionEnded.forEach((session, ended) -> {
+            // the lock file of a session with a container left tells the next reap the session has ended
+            if (ended && !failedSessions.contains(session)) {
+                deleteLockFile(session);
+            }
+        });
+        return removed;
+    }
+
+    /**
+     * reap the containers of ended sessions periodically in the background, see {@link #reap(DockerClient)}
+     *
+     * @param dockerClient   the client of the daemon
+     * @param intervalMillis time between reaps, the first reap runs right away
+     */
+    public synchronized void startReaper(DockerClient dockerClient, long intervalMillis) {
+        Assert.requiresTrue(intervalMillis > 0, "intervalMillis must be positive");
+        stopReaper();
+        reaper = InstaExecutors.scheduler().scheduleWithFixedDelay(() -> {
+            // the scheduler is shared by timeouts, the reap mustn't block it
+            InstaExecutors.defaultExecutor().execute(() -> {
+                try {
+                    reap(dockerClient);
+                } catch (RuntimeException e) {
+                    logger.warn("failed to reap orphan containers", e);
+                }
+            });
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopReaper() {
+        if (reaper != null) {
+            reaper.cancel(false);
+            reaper = null;
+        }
+    }
+
+    /**
+     * stop the reaper and end the session, without tearing down the containers
+     */
+    @Override
+    public synchronized void close() {
+        stopReaper();
+        shutdownHook(false);
+        try {
+            if (sessionLock != null) {
+                sessionLock.release();
+            }
+            if (sessionChannel != null) {
+                sessionChannel.close();
+            }
+            deleteLockFile(sessionId);
+        } catch (IOException e) {
+            logger.debug("failed to release session lock, session={}", sessionId, e);
+        }
+    }
+
+    private boolean isRegistered(Container container, Set<String> registered) {
+        if (container.getNames() == null) {
+            return false;
+        }
+        return Arrays.stream(container.getNames()).anyMatch(name -> registered.contains(name.replaceFirst("^/", "")));
+    }
+
+    private boolean isOlderThanMaxAge(Container container) {
+        return container.getCreated() != null
+                && System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(container.getCreated()) > maxAgeMillis;
+    }
+
+    /**
+     * @return true if the session of this host has released its lock, false if it's alive or can't be told, e.g. of another host
+     */
+    private boolean sessionEnded(String session, String sessionHost) {
+        if (session == null || !host.equals(sessionHost)) {
+            return false;
+        }
+        Path lockFile = lockFile(session);
+        if (!Files.exists(lockFile)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return false;
+            }
+            lock.release();
+            return true;
+        } catch (OverlappingFileLockException e) {
+            // locked by another session of this jvm
+            return false;
+        } catch (IOException e) {
+            logger.debug("unable to check session lock, session={}", session, e);
+            return false;
+        }
+    }
+
+    private void lockSession() {
+        try {
+            Files.createDirectories(sessionDirectory);
+            sessionChannel = FileChannel.open(lockFile(sessionId), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            sessionLock = sessionChannel.tryLock();
+            if (sessionLock == null) {
+                logger.warn("session lock held by another process, session={}, directory={}", sessionId, sessionDirectory);
+                unlockSession();
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            logger.warn("failed to lock session, session={}, directory={}", sessionId, sessionDirectory, e);
+            unlockSession();
+        }
+    }
+
+    /**
+     * an unlocked lock file would tell the reapers of other jvms that this session has ended, without a lock file
+     * the session is only reaped by age
+     */
+    private void unlockSession() {
+        try {
+            if (sessionChannel != null) {
+                sessionChannel.close();
+            }
+        } catch (IOException e) {
+            logger.debug("failed to close session lock file, session={}", sessionId, e);
+        }
+        sessionChannel = null;
+        sessionLock = null;
+        deleteLockFile(sessionId);
+    }
+
+    private void deleteLockFile(String session) {
+        try {
+            Files.deleteIfExists(lockFile(session));
+        } catch (IOException e) {
+            logger.debug("failed to delete session lock file, session={}", session, e);
+        }
+    }
+
+    private Path lockFile(String session) {
+        return sessionDirectory.resolve(session + ".lock");
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"sessionId\":\"" + sessionId + "\"" +
+                ", \"host\":\"" + host + "\"" +
+                ", \"containers\":" + containers.size() +
+                ", \"maxConcurrency\":" + maxConcurrency +
+                ", \"stopTimeoutInSeconds\":" + stopTimeoutInSeconds +
+                '}';
+    }
+}
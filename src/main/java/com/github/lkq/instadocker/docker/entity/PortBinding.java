@@ -5,6 +5,11 @@ import com.github.dockerjava.api.model.InternetProtocol;
 import com.github.lkq.instadocker.exception.InstaDockerException;
 
 public class PortBinding {
+    /**
+     * host port value to let the docker daemon pick a free host port
+     */
+    public static final int ANY_HOST_PORT = 0;
+
     private String protocol;
     private int containerPort;
     private int hostPort;
@@ -19,6 +24,22 @@ public class PortBinding {
         this(InternetProtocol.TCP.name(), port, port);
     }
 
+    /**
+     * bind the container port to a host port picked by the docker daemon, so no other process can grab the port
+     * between finding and binding it, see DockerContainer#hostPort(PortBinding) for the port actually bound
+     *
+     * @param protocol      TCP or UDP
+     * @param containerPort the container port
+     * @return the port binding
+     */
+    public static PortBinding anyHostPort(String protocol, int containerPort) {
+        return new PortBinding(protocol, containerPort, ANY_HOST_PORT);
+    }
+
+    public boolean isAnyHostPort() {
+        return hostPort == ANY_HOST_PORT;
+    }
+
     public ExposedPort toExposedPort() {
         switch (protocol) {
             case "UDP":
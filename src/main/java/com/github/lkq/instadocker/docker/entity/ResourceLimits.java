@@ -0,0 +1,190 @@
+package com.github.lkq.instadocker.docker.entity;
+
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.lkq.instadocker.util.Assert;
+
+import java.util.regex.Pattern;
+
+/**
+ * cpu, memory and i/o constraints of a container, a limit not set is left to the daemon default
+ */
+public class ResourceLimits {
+
+    private static final Pattern CPU_SET = Pattern.compile("^\\d+(-\\d+)?(,\\d+(-\\d+)?)*$");
+    private static final long MIN_MEMORY_BYTES = 6L * 1024 * 1024;
+    private static final long DEFAULT_CPU_PERIOD_MICROS = 100_000;
+
+    private Long cpuPeriodMicros;
+    private Long cpuQuotaMicros;
+    private Integer cpuShares;
+    private String cpusetCpus;
+    private String cpusetMems;
+    private Long memoryBytes;
+    private Long memoryReservationBytes;
+    private Long memorySwapBytes;
+    private Long pidsLimit;
+    private Long shmSizeBytes;
+    private Integer blkioWeight;
+
+    /**
+     * limit the cpu time to a number of cpus, e.g. 1.5 for one and a half cpu, with the default period of 100ms
+     */
+    public ResourceLimits cpus(double cpus) {
+        Assert.requiresTrue(cpus >= 0.01, "cpus must be at least 0.01");
+        return cpuQuota(Math.round(cpus * DEFAULT_CPU_PERIOD_MICROS), DEFAULT_CPU_PERIOD_MICROS);
+    }
+
+    /**
+     * @param quotaMicros  cpu time the container may use in each period
+     * @param periodMicros the cfs scheduler period, between 1ms and 1s
+     * @return this
+     */
+    public ResourceLimits cpuQuota(long quotaMicros, long periodMicros) {
+        Assert.requiresTrue(periodMicros >= 1000 && periodMicros <= 1_000_000, "cpu period must be between 1000 and 1000000 microseconds");
+        Assert.requiresTrue(quotaMicros >= 1000, "cpu quota must be at least 1000 microseconds");
+        this.cpuQuotaMicros = quotaMicros;
+        this.cpuPeriodMicros = periodMicros;
+        return this;
+    }
+
+    /**
+     * @param cpuShares relative weight when cpus are contended, 1024 by default
+     * @return this
+     */
+    public ResourceLimits cpuShares(int cpuShares) {
+        Assert.requiresTrue(cpuShares >= 2, "cpu shares must be at least 2");
+        this.cpuShares = cpuShares;
+        return this;
+    }
+
+    /**
+     * @param cpusetCpus cpus the container runs on, e.g. 0-3 or 2,3
+     * @return this
+     */
+    public ResourceLimits cpusetCpus(String cpusetCpus) {
+        Assert.requiresTrue(cpusetCpus != null && CPU_SET.matcher(cpusetCpus).matches(), "invalid cpu set: " + cpusetCpus);
+        this.cpusetCpus = cpusetCpus;
+        return this;
+    }
+
+    /**
+     * @param cpusetMems numa nodes the container allocates memory from, e.g. 0 or 0-1
+     * @return this
+     */
+    public ResourceLimits cpusetMems(String cpusetMems) {
+        Assert.requiresTrue(cpusetMems != null && CPU_SET.matcher(cpusetMems).matches(), "invalid memory node set: " + cpusetMems);
+        this.cpusetMems = cpusetMems;
+        return this;
+    }
+
+    /**
+     * @param memoryBytes hard memory limit, at least 6MB
+     * @return this
+     */
+    public ResourceLimits memory(long memoryBytes) {
+        Assert.requiresTrue(memoryBytes >= MIN_MEMORY_BYTES, "memory must be at least 6MB");
+        this.memoryBytes = memoryBytes;
+        return this;
+    }
+
+    /**
+     * @param memoryReservationBytes soft memory limit enforced when the host is short of memory, below the memory limit
+     * @return this
+     */
+    public ResourceLimits memoryReservation(long memoryReservationBytes) {
+        Assert.requiresTrue(memoryReservationBytes >= MIN_MEMORY_BYTES, "memory reservation must be at least 6MB");
+        this.memoryReservationBytes = memoryReservationBytes;
+        return this;
+    }
+
+    /**
+     * @param memorySwapBytes memory plus swap limit, -1 for unlimited swap, equal to the memory limit to disable swap.
+     *                        requires a memory limit
+     * @return this
+     */
+    public ResourceLimits memorySwap(long memorySwapBytes) {
+        Assert.requiresTrue(memorySwapBytes == -1 || memorySwapBytes >= MIN_MEMORY_BYTES, "memory swap must be -1 or at least 6MB");
+        this.memorySwapBytes = memorySwapBytes;
+        return this;
+    }
+
+    /**
+     * @param pidsLimit max number of processes, -1 for unlimited
+     * @return this
+     */
+    public ResourceLimits pidsLimit(long pidsLimit) {
+        Assert.requiresTrue(pidsLimit == -1 || pidsLimit > 0, "pids limit must be -1 or positive");
+        this.pidsLimit = pidsLimit;
+        return this;
+    }
+
+    /**
+     * @param shmSizeBytes size of /dev/shm, 64MB by default, e.g. postgres parallel queries need more
+     * @return this
+     */
+    public ResourceLimits shmSize(long shmSizeBytes) {
+        Assert.requiresTrue(shmSizeBytes > 0, "shm size must be positive");
+        this.shmSizeBytes = shmSizeBytes;
+        return this;
+    }
+
+    /**
+     * @param blkioWeight relative block i/o weight between 10 and 1000
+     * @return this
+     */
+    public ResourceLimits blkioWeight(int blkioWeight) {
+        Assert.requiresTrue(blkioWeight >= 10 && blkioWeight <= 1000, "blkio weight must be between 10 and 1000");
+        this.blkioWeight = blkioWeight;
+        return this;
+    }
+
+    /**
+     * check the limits are consistent with each other, the daemon rejects the container otherwise
+     *
+     * @throws IllegalArgumentException if they are not
+     */
+    public void validate() {
+        if (memoryReservationBytes != null && memoryBytes != null) {
+            Assert.requiresTrue(memoryReservationBytes <= memoryBytes, "memory reservation must not be above the memory limit");
+        }
+        if (memorySwapBytes != null) {
+            Assert.requiresTrue(memoryBytes != null, "memory swap requires a memory limit");
+            Assert.requiresTrue(memorySwapBytes == -1 || memorySwapBytes >= memoryBytes, "memory swap must not be below the memory limit");
+        }
+    }
+
+    /**
+     * @param hostConfig the host config of the container to create
+     */
+    public void applyTo(HostConfig hostConfig) {
+        validate();
+        hostConfig.withCpuPeriod(cpuPeriodMicros)
+                .withCpuQuota(cpuQuotaMicros)
+                .withCpuShares(cpuShares)
+                .withCpusetCpus(cpusetCpus)
+                .withCpusetMems(cpusetMems)
+                .withMemory(memoryBytes)
+                .withMemoryReservation(memoryReservationBytes)
+                .withMemorySwap(memorySwapBytes)
+                .withPidsLimit(pidsLimit)
+                .withShmSize(shmSizeBytes)
+                .withBlkioWeight(blkioWeight);
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"cpuPeriodMicros\":" + cpuPeriodMicros +
+                ", \"cpuQuotaMicros\":" + cpuQuotaMicros +
+                ", \"cpuShares\":" + cpuShares +
+                ", \"cpusetCpus\":\"" + cpusetCpus + "\"" +
+                ", \"cpusetMems\":\"" + cpusetMems + "\"" +
+                ", \"memoryBytes\":" + memoryBytes +
+                ", \"memoryReservationBytes\":" + memoryReservationBytes +
+                ", \"memorySwapBytes\":" + memorySwapBytes +
+                ", \"pidsLimit\":" + pidsLimit +
+                ", \"shmSizeBytes\":" + shmSizeBytes +
+                ", \"blkioWeight\":" + blkioWeight +
+                '}';
+    }
+}
@@ -1,27 +1,176 @@
 package com.github.lkq.instadocker.docker.entity;
 
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Mount;
+import com.github.dockerjava.api.model.MountType;
+import com.github.dockerjava.api.model.Volume;
+import com.github.lkq.instadocker.util.Assert;
+
+/**
+ * a host path bind mount, a named or anonymous volume, or a tmpfs mount of a container
+ */
 public class VolumeBinding {
+
+    public enum Type {
+        BIND, VOLUME, TMPFS
+    }
+
+    /**
+     * how closely the mount is kept in sync with the host, only effective on docker desktop for mac,
+     * see https://docs.docker.com/storage/bind-mounts/#configure-mount-consistency-for-macos
+     */
+    public enum Consistency {
+        CONSISTENT, CACHED, DELEGATED
+    }
+
+    private final Type type;
     private String containerPath;
     private String hostPath;
+    private boolean readOnly = false;
+    private Consistency consistency;
+    private long tmpfsSizeBytes = 0;
+    private int tmpfsMode = 0;
 
+    /**
+     * bind mount the host path
+     */
     public VolumeBinding(String containerPath, String hostPath) {
+        this(Type.BIND, containerPath, hostPath);
+        Assert.requiresNotBlank(hostPath, "hostPath is required");
+    }
+
+    private VolumeBinding(Type type, String containerPath, String hostPath) {
+        Assert.requiresNotBlank(containerPath, "containerPath is required");
+        this.type = type;
         this.containerPath = containerPath;
         this.hostPath = hostPath;
     }
 
+    /**
+     * mount the named volume, created by the daemon if it doesn't exist, and kept after the container is removed
+     */
+    public static VolumeBinding namedVolume(String name, String containerPath) {
+        Assert.requiresNotBlank(name, "name is required");
+        return new VolumeBinding(Type.VOLUME, containerPath, name);
+    }
+
+    /**
+     * mount a new volume, removed with the container when it's removed by {@link com.github.lkq.instadocker.docker.DockerContainer}
+     */
+    public static VolumeBinding anonymousVolume(String containerPath) {
+        return new VolumeBinding(Type.VOLUME, containerPath, null);
+    }
+
+    /**
+     * mount a memory backed file system, e.g. for the data directory of a database which doesn't need to survive the container
+     *
+     * @param containerPath the mount point
+     * @param sizeBytes     max size, 0 for unlimited, i.e. up to half of the memory of the host
+     * @param mode          file mode of the mount point, e.g. 01777, 0 for the docker default 1777
+     */
+    public static VolumeBinding tmpfs(String containerPath, long sizeBytes, int mode) {
+        Assert.requiresTrue(sizeBytes >= 0, "sizeBytes must not be negative");
+        Assert.requiresTrue(mode >= 0 && mode <= 07777, "mode must be a file mode");
+        VolumeBinding binding = new VolumeBinding(Type.TMPFS, containerPath, null);
+        binding.tmpfsSizeBytes = sizeBytes;
+        binding.tmpfsMode = mode;
+        return binding;
+    }
+
+    public VolumeBinding readOnly() {
+        this.readOnly = true;
+        return this;
+    }
+
+    /**
+     * @param consistency consistency of a bind mount or a named volume
+     * @return this
+     */
+    public VolumeBinding consistency(Consistency consistency) {
+        Assert.requiresTrue(type == Type.BIND || (type == Type.VOLUME && hostPath != null), "consistency only applies to bind mounts and named volumes");
+        this.consistency = consistency;
+        return this;
+    }
+
+    public Type type() {
+        return type;
+    }
+
     public String containerPath() {
         return containerPath;
     }
 
+    /**
+     * @return the host path of a bind mount, the name of a named volume, null otherwise
+     */
     public String hostPath() {
         return hostPath;
     }
 
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * @return true if it's mounted as a host config bind, i.e. a bind mount or a named volume
+     */
+    public boolean isBind() {
+        return type == Type.BIND || (type == Type.VOLUME && hostPath != null);
+    }
+
+    /**
+     * @return the bind of a bind mount or a named volume
+     */
+    public Bind toBind() {
+        Assert.requiresTrue(isBind(), "not a bind mount or named volume: " + this);
+        AccessMode accessMode = readOnly ? AccessMode.ro : AccessMode.rw;
+        if (consistency == null) {
+            return new Bind(hostPath, new Volume(containerPath), accessMode);
+        }
+        String mode = consistency.name().toLowerCase();
+        // the bind model of docker-java has no consistency, it's appended to the access mode in the bind spec
+        return new Bind(hostPath, new Volume(containerPath), accessMode) {
+            @Override
+            public String toString() {
+                return super.toString() + "," + mode;
+            }
+        };
+    }
+
+    /**
+     * @return the mount of an anonymous volume
+     */
+    public Mount toMount() {
+        Assert.requiresTrue(type == Type.VOLUME && hostPath == null, "not an anonymous volume: " + this);
+        return new Mount().withType(MountType.VOLUME).withTarget(containerPath).withReadOnly(readOnly);
+    }
+
+    /**
+     * @return the host config tmpfs options of a tmpfs mount, e.g. rw,size=268435456,mode=1777
+     */
+    public String tmpfsOptions() {
+        Assert.requiresTrue(type == Type.TMPFS, "not a tmpfs mount: " + this);
+        StringBuilder options = new StringBuilder(readOnly ? "ro" : "rw");
+        if (tmpfsSizeBytes > 0) {
+            options.append(",size=").append(tmpfsSizeBytes);
+        }
+        if (tmpfsMode > 0) {
+            options.append(",mode=").append(Integer.toOctalString(tmpfsMode));
+        }
+        return options.toString();
+    }
+
     @Override
     public String toString() {
         return "{" +
-                "\"containerPath\":\"" + containerPath + "\"" +
+                "\"type\":\"" + type + "\"" +
+                ", \"containerPath\":\"" + containerPath + "\"" +
                 ", \"hostPath\":\"" + hostPath + "\"" +
+                ", \"readOnly\":" + readOnly +
+                ", \"consistency\":\"" + consistency + "\"" +
+                ", \"tmpfsSizeBytes\":" + tmpfsSizeBytes +
+                ", \"tmpfsMode\":" + tmpfsMode +
                 '}';
     }
 }
@@ -0,0 +1,151 @@
+package com.github.lkq.instadocker.docker.log;
+
+import com.github.dockerjava.api.model.StreamType;
+import com.github.lkq.instadocker.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.function.Consumer;
+
+/**
+ * splits the payloads of one output stream into lines. bytes are accumulated in a reusable buffer,
+ * so a line spread over several frames is emitted once complete, and a frame holding several lines emits all of them.
+ * not thread safe, frames of a stream are delivered by a single thread.
+ */
+public class LineDecoder {
+
+    private final StreamType streamType;
+    private final int maxLineBytes;
+
+    private byte[] buffer = new byte[256];
+    private int length = 0;
+
+    private boolean timestamped = false;
+    private Instant skipUntil;
+    private volatile Instant lastTimestamp;
+
+    /**
+     * @param streamType   the stream decoded
+     * @param maxLineBytes lines longer than this are split, so a stream without line breaks can't grow the buffer forever
+     */
+    public LineDecoder(StreamType streamType, int maxLineBytes) {
+        Assert.requiresTrue(maxLineBytes > 0, "maxLineBytes must be positive");
+        this.streamType = streamType;
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    /**
+     * @param payload  bytes of a frame
+     * @param consumer receives the lines completed by this payload
+     */
+    public void decode(byte[] payload, Consumer<LogLine> consumer) {
+        int start = 0;
+        for (int i = 0; i < payload.length; i++) {
+            if (payload[i] == '\n') {
+                append(payload, start, i - start, consumer);
+                emit(consumer);
+                start = i + 1;
+            }
+        }
+        append(payload, start, payload.length - start, consumer);
+    }
+
+    /**
+     * emit the incomplete line left in the buffer, if any, e.g. when the stream ends
+     *
+     * @param consumer receives the last line
+     */
+    public void flush(Consumer<LogLine> consumer) {
+        if (length > 0) {
+            emit(consumer);
+        }
+    }
+
+    /**
+     * @param timestamped true if every line starts with the docker timestamp, which is then removed from the line
+     *                    and used as the line timestamp
+     */
+    public void timestamped(boolean timestamped) {
+        this.timestamped = timestamped;
+    }
+
+    /**
+     * discard the incomplete line and skip the timestamped lines up to the given time, used when the stream is
+     * reconnected with a since timestamp, which replays the lines of the last second
+     *
+     * @param since timestamp of the last line received
+     */
+    public void resumeAfter(Instant since) {
+        this.length = 0;
+        this.skipUntil = since;
+    }
+
+    /**
+     * @return docker timestamp of the last line emitted, null if none or the stream is not timestamped
+     */
+    public Instant lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * @return number of bytes of the incomplete line held in the buffer
+     */
+    public int pendingBytes() {
+        return length;
+    }
+
+    private void append(byte[] payload, int offset, int count, Consumer<LogLine> consumer) {
+        while (count > 0) {
+            int chunk = Math.min(count, maxLineBytes - length);
+            ensureCapacity(length + chunk);
+            System.arraycopy(payload, offset, buffer, length, chunk);
+            length += chunk;
+            offset += chunk;
+            count -= chunk;
+            if (length == maxLineBytes) {
+                emit(consumer);
+            }
+        }
+    }
+
+    private void emit(Consumer<LogLine> consumer) {
+        int end = length;
+        if (end > 0 && buffer[end - 1] == '\r') {
+            end--;
+        }
+        String line = new String(buffer, 0, end, StandardCharsets.UTF_8);
+        length = 0;
+        long timestampMillis = System.currentTimeMillis();
+        if (timestamped) {
+            int space = line.indexOf(' ');
+            Instant timestamp = space > 0 ? parseTimestamp(line.substring(0, space)) : null;
+            if (timestamp != null) {
+                if (skipUntil != null && !timestamp.isAfter(skipUntil)) {
+                    return;
+                }
+                skipUntil = null;
+                lastTimestamp = timestamp;
+                timestampMillis = timestamp.toEpochMilli();
+                line = line.substring(space + 1);
+            }
+        }
+        consumer.accept(new LogLine(streamType, line, timestampMillis));
+    }
+
+    private static Instant parseTimestamp(String text) {
+        try {
+            return Instant.parse(text);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            byte[] grown = new byte[Math.min(maxLineBytes, Math.max(capacity, buffer.length * 2))];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+}
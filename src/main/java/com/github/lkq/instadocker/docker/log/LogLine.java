@@ -0,0 +1,42 @@
+package com.github.lkq.instadocker.docker.log;
+
+import com.github.dockerjava.api.model.StreamType;
+
+/**
+ * a complete line of container output
+ */
+public class LogLine {
+    private final StreamType streamType;
+    private final String line;
+    private final long timestampMillis;
+
+    public LogLine(StreamType streamType, String line, long timestampMillis) {
+        this.streamType = streamType;
+        this.line = line;
+        this.timestampMillis = timestampMillis;
+    }
+
+    public StreamType streamType() {
+        return streamType;
+    }
+
+    public String line() {
+        return line;
+    }
+
+    /**
+     * @return when the line was written by the container if the stream is timestamped, otherwise when it was received
+     */
+    public long timestampMillis() {
+        return timestampMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"streamType\":\"" + streamType + "\"" +
+                ", \"line\":\"" + line + "\"" +
+                ", \"timestampMillis\":" + timestampMillis +
+                '}';
+    }
+}
@@ -0,0 +1,226 @@
+package com.github.lkq.instadocker.docker.log;
+
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import com.github.lkq.instadocker.util.Assert;
+import org.slf4j.Logger;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * moves container output from the log stream to a sink: frames are split into lines on the stream thread,
+ * buffered in a bounded ring buffer, and written to the sink in batches by a drain task on a shared executor,
+ * so a slow sink never holds up the docker-java callback unless the overflow policy is {@link OverflowPolicy#BLOCK},
+ * and an idle container doesn't hold a thread
+ */
+public class LogPipeline {
+    private static final Logger logger = getLogger(LogPipeline.class);
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final int MAX_LINE_BYTES = 64 * 1024;
+
+    private final String containerName;
+    private final LogRingBuffer buffer;
+    private final LogSink sink;
+    private final int batchSize;
+
+    private final Map<StreamType, LineDecoder> decoders = new EnumMap<>(StreamType.class);
+    private final Consumer<LogLine> enqueue = this::enqueue;
+
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong writtenLines = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+
+    private final List<LogLine> batch = new ArrayList<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final CountDownLatch drained = new CountDownLatch(1);
+
+    private volatile Consumer<LogLine> tap = line -> {
+    };
+    private boolean timestamped = false;
+    private volatile Executor executor;
+
+    /**
+     * @param containerName the container producing the output
+     * @param buffer        the buffer between the stream and the sink
+     * @param sink          where the lines go
+     * @param batchSize     max number of lines written to the sink at once
+     */
+    public LogPipeline(String containerName, LogRingBuffer buffer, LogSink sink, int batchSize) {
+        Assert.requiresNotBlank(containerName, "containerName is required");
+        Objects.requireNonNull(buffer, "buffer is required");
+        Objects.requireNonNull(sink, "sink is required");
+        Assert.requiresTrue(batchSize > 0, "batchSize must be positive");
+        this.containerName = containerName;
+        this.buffer = buffer;
+        this.sink = sink;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param tap notified with every line on the stream thread before it's buffered, lines seen by the tap are never dropped
+     */
+    public void tap(Consumer<LogLine> tap) {
+        this.tap = Objects.requireNonNull(tap, "tap is required");
+    }
+
+    /**
+     * @param timestamped true if the stream is requested with timestamps, see {@link LineDecoder#timestamped(boolean)}
+     */
+    public void timestamped(boolean timestamped) {
+        this.timestamped = timestamped;
+        decoders.values().forEach(decoder -> decoder.timestamped(timestamped));
+    }
+
+    /**
+     * prepare for the frames of a reconnected stream, see {@link LineDecoder#resumeAfter(Instant)}
+     *
+     * @param since timestamp of the last line received
+     */
+    public void resumeAfter(Instant since) {
+        for (StreamType streamType : new StreamType[]{StreamType.STDOUT, StreamType.STDERR, StreamType.RAW}) {
+            decoder(streamType).resumeAfter(since);
+        }
+    }
+
+    /**
+     * @return docker timestamp of the last line received, null if none or the stream is not timestamped
+     */
+    public Instant lastTimestamp() {
+        Instant last = null;
+        for (LineDecoder decoder : decoders.values()) {
+            Instant timestamp = decoder.lastTimestamp();
+            if (timestamp != null && (last == null || timestamp.isAfter(last))) {
+                last = timestamp;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * start writing the buffered lines to the sink
+     *
+     * @param executor runs the drain tasks, one task at a time per pipeline, so a small pool serves many pipelines
+     */
+    public void start(Executor executor) {
+        Objects.requireNonNull(executor, "executor is required");
+        this.executor = executor;
+        scheduleDrain();
+    }
+
+    /**
+     * called by the stream thread for every frame received
+     *
+     * @param frame the frame
+     */
+    public void accept(Frame frame) {
+        byte[] payload = frame.getPayload();
+        bytes.addAndGet(payload.length);
+        decoder(frame.getStreamType()).decode(payload, enqueue);
+    }
+
+    /**
+     * emit the incomplete lines and let the consumer finish once the buffer is drained
+     */
+    public void close() {
+        decoders.values().forEach(decoder -> decoder.flush(enqueue));
+        buffer.close();
+        scheduleDrain();
+    }
+
+    /**
+     * wait for all buffered lines to be written after {@link #close()}
+     *
+     * @param timeoutMillis how long to wait
+     * @return true if all lines are written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitDrained(long timeoutMillis) throws InterruptedException {
+        return drained.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public LogStats stats() {
+        return new LogStats(lines.get(), bytes.get(), buffer.dropped(), writtenLines.get(), lagMillis.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    private LineDecoder decoder(StreamType streamType) {
+        return decoders.computeIfAbsent(streamType == null ? StreamType.RAW : streamType, type -> {
+            LineDecoder decoder = new LineDecoder(type, MAX_LINE_BYTES);
+            decoder.timestamped(timestamped);
+            return decoder;
+        });
+    }
+
+    private void enqueue(LogLine line) {
+        lines.incrementAndGet();
+        tap.accept(line);
+        try {
+            buffer.offer(line);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        Executor current = executor;
+        if (current != null && draining.compareAndSet(false, true)) {
+            current.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            do {
+                while (buffer.drainTo(batch, batchSize, 0) > 0) {
+                    write(batch);
+                    batch.clear();
+                }
+                draining.set(false);
+            } while (buffer.size() > 0 && draining.compareAndSet(false, true));
+        } catch (InterruptedException e) {
+            draining.set(false);
+            Thread.currentThread().interrupt();
+        }
+        if (buffer.isClosed() && buffer.size() == 0) {
+            drained.countDown();
+        }
+    }
+
+    private void write(List<LogLine> batch) {
+        try {
+            sink.write(containerName, batch);
+            writtenLines.addAndGet(batch.size());
+            lagMillis.set(System.currentTimeMillis() - batch.get(batch.size() - 1).timestampMillis());
+        } catch (RuntimeException e) {
+            logger.warn("failed to write container logs, containerName=" + containerName, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"containerName\":\"" + containerName + "\"" +
+                ", \"buffer\":" + buffer +
+                ", \"sink\":" + sink +
+                ", \"stats\":" + stats() +
+                '}';
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.lkq.instadocker.docker.log;
+
+import com.github.lkq.instadocker.util.Assert;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * bounded buffer of log lines between the log stream and the log consumer, with an explicit overflow policy
+ */
+public class LogRingBuffer {
+
+    private final LogLine[] entries;
+    private final OverflowPolicy overflowPolicy;
+    private final int sampleRate;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int head = 0;
+    private int size = 0;
+    private long overflowed = 0;
+    private boolean closed = false;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity       max number of buffered lines
+     * @param overflowPolicy what to do when the buffer is full
+     * @param sampleRate     keep one of every sampleRate lines while full, only used by {@link OverflowPolicy#SAMPLE}
+     */
+    public LogRingBuffer(int capacity, OverflowPolicy overflowPolicy, int sampleRate) {
+        Assert.requiresTrue(capacity > 0, "capacity must be positive");
+        Objects.requireNonNull(overflowPolicy, "overflowPolicy is required");
+        Assert.requiresTrue(sampleRate > 0, "sampleRate must be positive");
+        this.entries = new LogLine[capacity];
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @param line the line to buffer
+     * @return true if the line is buffered, false if it's dropped
+     * @throws InterruptedException if interrupted while blocked by {@link OverflowPolicy#BLOCK}
+     */
+    public boolean offer(LogLine line) throws InterruptedException {
+        lock.lock();
+        try {
+            if (closed) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (size == entries.length) {
+                switch (overflowPolicy) {
+                    case BLOCK:
+                        while (size == entries.length && !closed) {
+                            notFull.await();
+                        }
+                        if (closed) {
+                            dropped.incrementAndGet();
+                            return false;
+                        }
+                        break;
+                    case SAMPLE:
+                        if (overflowed++ % sampleRate != 0) {
+                            dropped.incrementAndGet();
+                            return false;
+                        }
+                        dropOldest();
+                        break;
+                    default:
+                        dropOldest();
+                }
+            } else {
+                overflowed = 0;
+            }
+            entries[(head + size) % entries.length] = line;
+            size++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * move buffered lines to the batch, waiting for at least one line unless the buffer is closed
+     *
+     * @param batch         receives the lines
+     * @param maxLines      max number of lines to move
+     * @param timeoutMillis how long to wait for the first line
+     * @return number of lines moved, -1 if the buffer is closed and empty
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int drainTo(List<LogLine> batch, int maxLines, long timeoutMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (size == 0) {
+                if (closed) {
+                    return -1;
+                }
+                if (remaining <= 0) {
+                    return 0;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            int count = Math.min(size, maxLines);
+            for (int i = 0; i < count; i++) {
+                batch.add(entries[head]);
+                entries[head] = null;
+                head = (head + 1) % entries.length;
+            }
+            size -= count;
+            notFull.signalAll();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * stop accepting lines, buffered lines can still be drained
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    private void dropOldest() {
+        entries[head] = null;
+        head = (head + 1) % entries.length;
+        size--;
+        dropped.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"capacity\":" + entries.length +
+                ", \"overflowPolicy\":\"" + overflowPolicy + "\"" +
+                ", \"size\":" + size() +
+                ", \"dropped\":" + dropped.get() +
+                '}';
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.lkq.instadocker.docker.log;
+
+import java.util.List;
+
+/**
+ * destination of container log lines, receives the lines in batches from the log consumer thread
+ */
+public interface LogSink {
+
+    /**
+     * @param containerName the container which produced the lines
+     * @param batch         the lines in the order received, the list is reused after the call returns
+     */
+    void write(String containerName, List<LogLine> batch);
+}
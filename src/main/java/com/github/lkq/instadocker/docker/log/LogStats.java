@@ -0,0 +1,86 @@
+package com.github.lkq.instadocker.docker.log;
+
+/**
+ * throughput of a log pipeline since it started
+ */
+public class LogStats {
+    private final long lines;
+    private final long bytes;
+    private final long droppedLines;
+    private final long writtenLines;
+    private final long lagMillis;
+    private final long elapsedMillis;
+
+    public LogStats(long lines, long bytes, long droppedLines, long writtenLines, long lagMillis, long elapsedMillis) {
+        this.lines = lines;
+        this.bytes = bytes;
+        this.droppedLines = droppedLines;
+        this.writtenLines = writtenLines;
+        this.lagMillis = lagMillis;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return number of lines received from the container
+     */
+    public long lines() {
+        return lines;
+    }
+
+    /**
+     * @return number of payload bytes received from the container
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return number of lines dropped by the overflow policy
+     */
+    public long droppedLines() {
+        return droppedLines;
+    }
+
+    /**
+     * @return number of lines written to the sink
+     */
+    public long writtenLines() {
+        return writtenLines;
+    }
+
+    /**
+     * @return how long after it was written by the container the last line reached the sink
+     */
+    public long lagMillis() {
+        return lagMillis;
+    }
+
+    public long elapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double linesPerSecond() {
+        return perSecond(lines);
+    }
+
+    public double bytesPerSecond() {
+        return perSecond(bytes);
+    }
+
+    private double perSecond(long count) {
+        return elapsedMillis == 0 ? 0 : count * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"lines\":" + lines +
+                ", \"bytes\":" + bytes +
+                ", \"droppedLines\":" + droppedLines +
+                ", \"writtenLines\":" + writtenLines +
+                ", \"lagMillis\":" + lagMillis +
+                ", \"linesPerSecond\":" + String.format("%.1f", linesPerSecond()) +
+                ", \"bytesPerSecond\":" + String.format("%.1f", bytesPerSecond()) +
+                '}';
+    }
+}
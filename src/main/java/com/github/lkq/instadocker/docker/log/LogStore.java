@@ -0,0 +1,262 @@
+package com.github.lkq.instadocker.docker.log;
+
+import com.github.lkq.instadocker.util.Assert;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * captured container output for assertions, kept in fixed size segments. when the store is full the oldest segment
+ * is dropped as a whole, so memory stays capped however long the container runs. waiters are checked against each
+ * new line as it arrives instead of rescanning the store.
+ */
+public class LogStore {
+
+    public static final int DEFAULT_SEGMENT_LINES = 1024;
+
+    private final int segmentLines;
+    private final int maxSegments;
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final List<Waiter> waiters = new ArrayList<>();
+    private long nextSequence = 0;
+    private long evictedLines = 0;
+
+    /**
+     * @param maxLines max number of lines kept, rounded up to whole segments
+     */
+    public LogStore(int maxLines) {
+        this(segmentLines(maxLines), (maxLines + segmentLines(maxLines) - 1) / segmentLines(maxLines));
+    }
+
+    /**
+     * @param segmentLines number of lines in a segment
+     * @param maxSegments  max number of segments kept
+     */
+    public LogStore(int segmentLines, int maxSegments) {
+        Assert.requiresTrue(segmentLines > 0, "segmentLines must be positive");
+        Assert.requiresTrue(maxSegments > 0, "maxSegments must be positive");
+        this.segmentLines = segmentLines;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * @param line the line to keep, and to complete the waiters it matches
+     */
+    public void append(LogLine line) {
+        List<Waiter> matched = null;
+        synchronized (this) {
+            Segment last = segments.peekLast();
+            if (last == null || last.full()) {
+                if (segments.size() == maxSegments) {
+                    evictedLines += segments.removeFirst().count;
+                }
+                last = new Segment(nextSequence, segmentLines);
+                segments.addLast(last);
+            }
+            last.add(line);
+            nextSequence++;
+            for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+                Waiter waiter = it.next();
+                if (waiter.result.isDone()) {
+                    it.remove();
+                } else if (waiter.matches(line)) {
+                    it.remove();
+                    if (matched == null) {
+                        matched = new ArrayList<>();
+                    }
+                    matched.add(waiter);
+                }
+            }
+        }
+        if (matched != null) {
+            matched.forEach(waiter -> waiter.result.complete(line));
+        }
+    }
+
+    /**
+     * @param pattern the pattern to find in a line
+     * @return a future completed with the first kept or future line matching the pattern
+     */
+    public CompletableFuture<LogLine> awaitLineAsync(Pattern pattern) {
+        Objects.requireNonNull(pattern, "pattern is required");
+        Waiter waiter = new Waiter(pattern);
+        synchronized (this) {
+            Optional<LogLine> kept = first(waiter::matches);
+            if (kept.isPresent()) {
+                waiter.result.complete(kept.get());
+            } else {
+                waiters.add(waiter);
+            }
+        }
+        return waiter.result;
+    }
+
+    /**
+     * wait for a line matching the pattern, lines already kept are checked first
+     *
+     * @param pattern       the pattern to find in a line
+     * @param timeoutMillis how long to wait
+     * @return the first matching line, empty if no line matches within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Optional<LogLine> awaitLine(Pattern pattern, long timeoutMillis) throws InterruptedException {
+        CompletableFuture<LogLine> result = awaitLineAsync(pattern);
+        try {
+            return Optional.of(result.get(timeoutMillis, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            result.cancel(false);
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to wait for log line", e.getCause());
+        }
+    }
+
+    /**
+     * @param since the time to start from, inclusive
+     * @return kept lines with a timestamp not before the given time
+     */
+    public synchronized List<LogLine> lines(Instant since) {
+        long sinceMillis = since.toEpochMilli();
+        List<LogLine> lines = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.lastMillis < sinceMillis) {
+                continue;
+            }
+            for (int i = 0; i < segment.count; i++) {
+                if (segment.lines[i].timestampMillis() >= sinceMillis) {
+                    lines.add(segment.lines[i]);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @param sequence sequence number of the first line, lines are numbered from 0 in the order received
+     * @return kept lines from the given sequence number, use {@link #nextSequence()} as a cursor to read only new lines
+     */
+    public synchronized List<LogLine> lines(long sequence) {
+        List<LogLine> lines = new ArrayList<>();
+        for (Segment segment : segments) {
+            long end = segment.firstSequence + segment.count;
+            for (long i = Math.max(sequence, segment.firstSequence); i < end; i++) {
+                lines.add(segment.lines[(int) (i - segment.firstSequence)]);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @param pattern the pattern to find
+     * @return kept lines containing the pattern
+     */
+    public synchronized List<LogLine> grep(Pattern pattern) {
+        Objects.requireNonNull(pattern, "pattern is required");
+        List<LogLine> lines = new ArrayList<>();
+        for (Segment segment : segments) {
+            for (int i = 0; i < segment.count; i++) {
+                if (pattern.matcher(segment.lines[i].line()).find()) {
+                    lines.add(segment.lines[i]);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return sequence number of the next line
+     */
+    public synchronized long nextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * @return number of lines kept
+     */
+    public synchronized int size() {
+        return (int) (nextSequence - evictedLines);
+    }
+
+    /**
+     * @return number of lines dropped to keep memory capped
+     */
+    public synchronized long evictedLines() {
+        return evictedLines;
+    }
+
+    public int capacity() {
+        return segmentLines * maxSegments;
+    }
+
+    private static int segmentLines(int maxLines) {
+        Assert.requiresTrue(maxLines > 0, "maxLines must be positive");
+        return Math.min(maxLines, DEFAULT_SEGMENT_LINES);
+    }
+
+    private Optional<LogLine> first(Predicate<LogLine> predicate) {
+        for (Segment segment : segments) {
+            for (int i = 0; i < segment.count; i++) {
+                if (predicate.test(segment.lines[i])) {
+                    return Optional.of(segment.lines[i]);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "{" +
+                "\"capacity\":" + capacity() +
+                ", \"size\":" + size() +
+                ", \"evictedLines\":" + evictedLines +
+                ", \"waiters\":" + waiters.size() +
+                '}';
+    }
+
+    private static class Segment {
+        private final long firstSequence;
+        private final LogLine[] lines;
+        private int count = 0;
+        private long lastMillis = Long.MIN_VALUE;
+
+        private Segment(long firstSequence, int size) {
+            this.firstSequence = firstSequence;
+            this.lines = new LogLine[size];
+        }
+
+        private boolean full() {
+            return count == lines.length;
+        }
+
+        private void add(LogLine line) {
+            lines[count++] = line;
+            lastMillis = Math.max(lastMillis, line.timestampMillis());
+        }
+    }
+
+    private static class Waiter {
+        private final Pattern pattern;
+        private final CompletableFuture<LogLine> result = new CompletableFuture<>();
+
+        private Waiter(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        private boolean matches(LogLine line) {
+            return pattern.matcher(line.line()).find();
+        }
+    }
+}
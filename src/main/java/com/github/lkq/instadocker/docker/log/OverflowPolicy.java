@@ -0,0 +1,19 @@
+package com.github.lkq.instadocker.docker.log;
+
+/**
+ * what to do with a new log line when the log buffer is full
+ */
+public enum OverflowPolicy {
+    /**
+     * drop the oldest buffered line to make room for the new one
+     */
+    DROP_OLDEST,
+    /**
+     * block the log stream until the consumer makes room, slows down the container output instead of losing lines
+     */
+    BLOCK,
+    /**
+     * keep only every n-th new line while the buffer is full, replacing the oldest one, drop the others
+     */
+    SAMPLE
+}
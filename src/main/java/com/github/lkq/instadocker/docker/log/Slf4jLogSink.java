@@ -0,0 +1,36 @@
+package com.github.lkq.instadocker.docker.log;
+
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * writes container log lines to a slf4j logger
+ */
+public class Slf4jLogSink implements LogSink {
+
+    private final Logger logger;
+
+    public Slf4jLogSink(Logger logger) {
+        Objects.requireNonNull(logger, "logger is required");
+        this.logger = logger;
+    }
+
+    @Override
+    public void write(String containerName, List<LogLine> batch) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        for (LogLine line : batch) {
+            logger.info("[{}] - {}", containerName, line.line());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"logger\":\"" + logger.getName() + "\"" +
+                '}';
+    }
+}
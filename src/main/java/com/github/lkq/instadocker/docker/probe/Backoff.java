@@ -0,0 +1,61 @@
+package com.github.lkq.instadocker.docker.probe;
+
+import com.github.lkq.instadocker.util.Assert;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * exponential backoff with jitter between readiness checks, so that probes check often while the service is
+ * starting up, without many containers probing in lock step
+ */
+public class Backoff {
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final double multiplier;
+    private final double jitter;
+
+    /**
+     * @param initialDelayMillis delay before the second attempt
+     * @param maxDelayMillis     upper bound of the delay
+     * @param multiplier         growth factor of the delay between attempts
+     * @param jitter             fraction of the delay to randomize, from 0 (no jitter) to 1 (full jitter)
+     */
+    public Backoff(long initialDelayMillis, long maxDelayMillis, double multiplier, double jitter) {
+        Assert.requiresTrue(initialDelayMillis > 0, "initialDelayMillis must be positive");
+        Assert.requiresTrue(maxDelayMillis >= initialDelayMillis, "maxDelayMillis must not be less than initialDelayMillis");
+        Assert.requiresTrue(multiplier >= 1, "multiplier must not be less than 1");
+        Assert.requiresTrue(jitter >= 0 && jitter <= 1, "jitter must be between 0 and 1");
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+    }
+
+    /**
+     * 50ms doubling up to 2s, with half of the delay randomized
+     */
+    public static Backoff defaultBackoff() {
+        return new Backoff(50, 2000, 2, 0.5);
+    }
+
+    /**
+     * @param attempt the number of attempts made so far, starting from 1
+     * @return delay before the next attempt
+     */
+    public long delayMillis(int attempt) {
+        double delay = Math.min(maxDelayMillis, initialDelayMillis * Math.pow(multiplier, Math.max(0, attempt - 1)));
+        double randomized = delay * jitter * ThreadLocalRandom.current().nextDouble();
+        return Math.max(1, (long) (delay - randomized));
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"initialDelayMillis\":" + initialDelayMillis +
+                ", \"maxDelayMillis\":" + maxDelayMillis +
+                ", \"multiplier\":" + multiplier +
+                ", \"jitter\":" + jitter +
+                '}';
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.lkq.instadocker.docker.probe;
+
+import com.github.lkq.instadocker.docker.DockerContainer;
+import com.github.lkq.instadocker.exception.InstaDockerException;
+import com.github.lkq.instadocker.util.Assert;
+
+import java.util.Arrays;
+
+/**
+ * ready once the command executed inside the container exits with 0, e.g. pg_isready.
+ * the command runs through {@link DockerContainer#exec(int, String...)}, so it's counted and timed with the other daemon calls
+ */
+public class ExecProbe implements ReadinessProbe {
+
+    private final String[] command;
+    private final int timeoutInSeconds;
+
+    private DockerContainer container;
+
+    public ExecProbe(int timeoutInSeconds, String... command) {
+        Assert.requiresTrue(command.length > 0, "command is required");
+        Assert.requiresTrue(timeoutInSeconds > 0, "timeoutInSeconds must be positive");
+        this.command = command;
+        this.timeoutInSeconds = timeoutInSeconds;
+    }
+
+    @Override
+    public String name() {
+        return "exec " + Arrays.toString(command);
+    }
+
+    @Override
+    public void attach(DockerContainer container) {
+        this.container = container;
+    }
+
+    @Override
+    public boolean ready() {
+        if (container == null) {
+            throw new InstaDockerException("exec probe is not attached to a container");
+        }
+        return container.exec(timeoutInSeconds, command).succeeded();
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"command\":" + Arrays.toString(command) +
+                ", \"containerName\":\"" + (container == null ? null : container.containerName()) + "\"" +
+                ", \"timeoutInSeconds\":" + timeoutInSeconds +
+                '}';
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.lkq.instadocker.docker.probe;
+
+import com.github.lkq.instadocker.docker.DockerContainer;
+import com.github.lkq.instadocker.exception.InstaDockerException;
+
+/**
+ * ready once the docker HEALTHCHECK of the container reports healthy
+ */
+public class HealthCheckProbe implements ReadinessProbe {
+
+    private static final String HEALTHY = "healthy";
+
+    private DockerContainer container;
+
+    @Override
+    public String name() {
+        return "docker healthcheck";
+    }
+
+    @Override
+    public void attach(DockerContainer container) {
+        this.container = container;
+    }
+
+    @Override
+    public boolean ready() {
+        if (container == null) {
+            throw new InstaDockerException("health check probe is not attached to a container");
+        }
+        return container.healthStatus().map(HEALTHY::equals).orElse(false);
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"name\":\"" + name() + "\"" +
+                '}';
+    }
+}
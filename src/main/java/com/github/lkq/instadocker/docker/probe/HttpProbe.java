@@ -0,0 +1,54 @@
+package com.github.lkq.instadocker.docker.probe;
+
+import com.github.lkq.instadocker.util.Assert;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * ready once a http GET to the given url answers with a 2xx or 3xx status
+ */
+public class HttpProbe implements ReadinessProbe {
+
+    private final String url;
+    private final int timeoutMillis;
+
+    public HttpProbe(String url, int timeoutMillis) {
+        Assert.requiresNotBlank(url, "url is required");
+        this.url = url;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public HttpProbe(String url) {
+        this(url, 1000);
+    }
+
+    @Override
+    public String name() {
+        return "http GET " + url;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setInstanceFollowRedirects(false);
+            int status = connection.getResponseCode();
+            return status >= 200 && status < 400;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"url\":\"" + url + "\"" +
+                ", \"timeoutMillis\":" + timeoutMillis +
+                '}';
+    }
+}
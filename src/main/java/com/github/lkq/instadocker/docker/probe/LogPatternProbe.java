@@ -0,0 +1,67 @@
+package com.github.lkq.instadocker.docker.probe;
+
+import com.github.lkq.instadocker.docker.DockerContainer;
+import com.github.lkq.instadocker.util.Assert;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * ready once the container logged lines matching the pattern the given number of times in its current run,
+ * e.g. postgres logs "ready to accept connections" twice, the first time before running the init scripts
+ */
+public class LogPatternProbe implements ReadinessProbe, Consumer<String> {
+
+    private final Pattern pattern;
+    private final int times;
+    private final AtomicInteger matches = new AtomicInteger();
+
+    public LogPatternProbe(Pattern pattern, int times) {
+        Objects.requireNonNull(pattern, "pattern is required");
+        Assert.requiresTrue(times > 0, "times must be positive");
+        this.pattern = pattern;
+        this.times = times;
+    }
+
+    public LogPatternProbe(String regex) {
+        this(Pattern.compile(regex), 1);
+    }
+
+    @Override
+    public String name() {
+        return "log /" + pattern + "/ x" + times;
+    }
+
+    @Override
+    public void attach(DockerContainer container) {
+        container.logListener(this);
+    }
+
+    @Override
+    public void reset() {
+        matches.set(0);
+    }
+
+    @Override
+    public void accept(String line) {
+        if (matches.get() < times && pattern.matcher(line).find()) {
+            matches.incrementAndGet();
+        }
+    }
+
+    @Override
+    public boolean ready() {
+        return matches.get() >= times;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"pattern\":\"" + pattern + "\"" +
+                ", \"times\":" + times +
+                ", \"matches\":" + matches.get() +
+                '}';
+    }
+}
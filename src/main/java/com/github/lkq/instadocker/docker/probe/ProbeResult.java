@@ -0,0 +1,47 @@
+package com.github.lkq.instadocker.docker.probe;
+
+/**
+ * outcome of a readiness probe
+ */
+public class ProbeResult {
+    private final String name;
+    private final boolean ready;
+    private final int attempts;
+    private final long elapsedMillis;
+
+    public ProbeResult(String name, boolean ready, int attempts, long elapsedMillis) {
+        this.name = name;
+        this.ready = ready;
+        this.attempts = attempts;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public boolean ready() {
+        return ready;
+    }
+
+    public int attempts() {
+        return attempts;
+    }
+
+    /**
+     * @return time taken to become ready, or the time spent before giving up if not ready
+     */
+    public long elapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"name\":\"" + name + "\"" +
+                ", \"ready\":" + ready +
+                ", \"attempts\":" + attempts +
+                ", \"elapsedMillis\":" + elapsedMillis +
+                '}';
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.lkq.instadocker.docker.probe;
+
+import com.github.lkq.instadocker.util.Assert;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * polls a set of readiness probes until all of them are ready or the timeout is reached.
+ * probes are checked in rounds, so the time reported by each probe is measured from the start of the check.
+ */
+public class ReadinessCheck {
+    private static final Logger logger = getLogger(ReadinessCheck.class);
+
+    private final List<ReadinessProbe> probes;
+    private final Backoff backoff;
+
+    public ReadinessCheck(List<ReadinessProbe> probes, Backoff backoff) {
+        Objects.requireNonNull(probes, "probes is required");
+        Objects.requireNonNull(backoff, "backoff is required");
+        this.probes = new ArrayList<>(probes);
+        this.backoff = backoff;
+    }
+
+    /**
+     * @param timeoutMillis how long to wait for all probes to become ready
+     * @return result of each probe, in the order of the probes
+     * @throws InterruptedException if interrupted while waiting between attempts
+     */
+    public List<ProbeResult> await(long timeoutMillis) throws InterruptedException {
+        Assert.requiresTrue(timeoutMillis >= 0, "timeoutMillis must not be negative");
+        long start = System.nanoTime();
+        long deadline = start + timeoutMillis * 1_000_000;
+        ProbeResult[] results = new ProbeResult[probes.size()];
+        int[] attempts = new int[probes.size()];
+        int pending = probes.size();
+        int round = 0;
+
+        while (pending > 0) {
+            round++;
+            for (int i = 0; i < probes.size(); i++) {
+                if (results[i] != null) {
+                    continue;
+                }
+                attempts[i]++;
+                if (check(probes.get(i))) {
+                    results[i] = new ProbeResult(probes.get(i).name(), true, attempts[i], elapsedMillis(start));
+                    logger.info("probe ready: {}", results[i]);
+                    pending--;
+                }
+            }
+            long remainingMillis = (deadline - System.nanoTime()) / 1_000_000;
+            if (pending == 0 || remainingMillis <= 0) {
+                break;
+            }
+            Thread.sleep(Math.min(remainingMillis, backoff.delayMillis(round)));
+        }
+
+        List<ProbeResult> probeResults = new ArrayList<>();
+        for (int i = 0; i < probes.size(); i++) {
+            if (results[i] == null) {
+                results[i] = new ProbeResult(probes.get(i).name(), false, attempts[i], elapsedMillis(start));
+                logger.warn("probe not ready before timeout: {}", results[i]);
+            }
+            probeResults.add(results[i]);
+        }
+        return probeResults;
+    }
+
+    private boolean check(ReadinessProbe probe) {
+        try {
+            return probe.ready();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            logger.debug("probe not ready: " + probe.name(), e);
+            return false;
+        }
+    }
+
+    private long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"probes\":" + probes.size() +
+                ", \"backoff\":" + backoff +
+                '}';
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.lkq.instadocker.docker.probe;
+
+import com.github.lkq.instadocker.docker.DockerContainer;
+
+/**
+ * checks whether the service inside a container is ready to be used, polled by {@link ReadinessCheck} until it's ready
+ */
+public interface ReadinessProbe {
+
+    /**
+     * @return name of the probe for logging and reporting
+     */
+    String name();
+
+    /**
+     * called once when the probe is added to a container, before the container starts
+     *
+     * @param container the container being probed
+     */
+    default void attach(DockerContainer container) {
+    }
+
+    /**
+     * called each time the container starts, or is found running before its logs are followed,
+     * so that nothing observed in a previous run counts for the current one
+     */
+    default void reset() {
+    }
+
+    /**
+     * @return true if the service is ready
+     * @throws Exception if the check fails, which is treated as not ready
+     */
+    boolean ready() throws Exception;
+}
@@ -0,0 +1,85 @@
+package com.github.lkq.instadocker.docker.probe;
+
+import com.github.lkq.instadocker.docker.DockerContainer;
+import com.github.lkq.instadocker.docker.entity.PortBinding;
+import com.github.lkq.instadocker.util.Assert;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * ready once a tcp connection can be opened to the given host port.
+ * note that the docker userland proxy may accept connections before the service inside the container does.
+ */
+public class TcpProbe implements ReadinessProbe {
+
+    private final String host;
+    private final int connectTimeoutMillis;
+    private final PortBinding portBinding;
+    private final int port;
+    /**
+     * the host port probed last, the daemon picks another one each time the container is recreated
+     */
+    private volatile int resolvedPort;
+    private DockerContainer container;
+
+    public TcpProbe(String host, int port, int connectTimeoutMillis) {
+        Assert.requiresNotBlank(host, "host is required");
+        Assert.requiresTrue(port > 0, "port must be positive");
+        this.host = host;
+        this.port = port;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.portBinding = null;
+    }
+
+    /**
+     * @param portBinding the port binding, if the daemon picks the host port it's resolved from the container the probe is attached to
+     */
+    public TcpProbe(PortBinding portBinding) {
+        this.host = "localhost";
+        this.port = portBinding.hostPort();
+        this.connectTimeoutMillis = 1000;
+        this.portBinding = portBinding;
+    }
+
+    @Override
+    public void attach(DockerContainer container) {
+        this.container = container;
+    }
+
+    @Override
+    public String name() {
+        int probed = port != PortBinding.ANY_HOST_PORT ? port : resolvedPort;
+        return "tcp://" + host + ":" + (probed > 0 ? String.valueOf(probed) : "*");
+    }
+
+    @Override
+    public void reset() {
+        resolvedPort = PortBinding.ANY_HOST_PORT;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        int probed = port;
+        if (probed == PortBinding.ANY_HOST_PORT) {
+            if (container == null) {
+                throw new IllegalStateException("probe of a daemon picked host port must be attached to the container, portBinding=" + portBinding);
+            }
+            probed = container.hostPort(portBinding);
+            resolvedPort = probed;
+        }
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, probed), connectTimeoutMillis);
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"name\":\"" + name() + "\"" +
+                ", \"connectTimeoutMillis\":" + connectTimeoutMillis +
+                '}';
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.lkq.instadocker.docker.stats;
+
+import java.time.Instant;
+
+/**
+ * resource usage of a container between two consecutive samples of the daemon stats stream
+ */
+public class ResourceSample {
+    private final Instant timestamp;
+    private final double cpuPercent;
+    private final long memoryRssBytes;
+    private final long memoryLimitBytes;
+    private final double networkRxBytesPerSecond;
+    private final double networkTxBytesPerSecond;
+    private final double blockReadBytesPerSecond;
+    private final double blockWriteBytesPerSecond;
+
+    public ResourceSample(Instant timestamp, double cpuPercent, long memoryRssBytes, long memoryLimitBytes,
+                          double networkRxBytesPerSecond, double networkTxBytesPerSecond,
+                          double blockReadBytesPerSecond, double blockWriteBytesPerSecond) {
+        this.timestamp = timestamp;
+        this.cpuPercent = cpuPercent;
+        this.memoryRssBytes = memoryRssBytes;
+        this.memoryLimitBytes = memoryLimitBytes;
+        this.networkRxBytesPerSecond = networkRxBytesPerSecond;
+        this.networkTxBytesPerSecond = networkTxBytesPerSecond;
+        this.blockReadBytesPerSecond = blockReadBytesPerSecond;
+        this.blockWriteBytesPerSecond = blockWriteBytesPerSecond;
+    }
+
+    /**
+     * @return when the daemon read the sample
+     */
+    public Instant timestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return cpu usage as docker stats shows it, 100 per fully used cpu
+     */
+    public double cpuPercent() {
+        return cpuPercent;
+    }
+
+    /**
+     * @return resident memory of the container, the memory usage if the daemon doesn't report rss
+     */
+    public long memoryRssBytes() {
+        return memoryRssBytes;
+    }
+
+    /**
+     * @return memory limit of the container, the host memory if it's not limited
+     */
+    public long memoryLimitBytes() {
+        return memoryLimitBytes;
+    }
+
+    /**
+     * @return bytes received per second over all network interfaces
+     */
+    public double networkRxBytesPerSecond() {
+        return networkRxBytesPerSecond;
+    }
+
+    /**
+     * @return bytes sent per second over all network interfaces
+     */
+    public double networkTxBytesPerSecond() {
+        return networkTxBytesPerSecond;
+    }
+
+    /**
+     * @return bytes read per second from block devices
+     */
+    public double blockReadBytesPerSecond() {
+        return blockReadBytesPerSecond;
+    }
+
+    /**
+     * @return bytes written per second to block devices
+     */
+    public double blockWriteBytesPerSecond() {
+        return blockWriteBytesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"timestamp\":\"" + timestamp + '\"' +
+                ", \"cpuPercent\":" + String.format("%.2f", cpuPercent) +
+                ", \"memoryRssBytes\":" + memoryRssBytes +
+                ", \"memoryLimitBytes\":" + memoryLimitBytes +
+                ", \"networkRxBytesPerSecond\":" + String.format("%.0f", networkRxBytesPerSecond) +
+                ", \"networkTxBytesPerSecond\":" + String.format("%.0f", networkTxBytesPerSecond) +
+                ", \"blockReadBytesPerSecond\":" + String.format("%.0f", blockReadBytesPerSecond) +
+                ", \"blockWriteBytesPerSecond\":" + String.format("%.0f", blockWriteBytesPerSecond) +
+                '}';
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.lkq.instadocker.docker.stats;
+
+import com.github.lkq.instadocker.util.Assert;
+import com.github.lkq.instadocker.util.RingBuffer;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * the most recent resource samples of a container in a fixed size ring, the oldest sample is overwritten when it's full
+ */
+public class ResourceSeries {
+    private final RingBuffer<ResourceSample> samples;
+    private long recorded = 0;
+
+    /**
+     * @param maxSamples number of recent samples kept
+     */
+    public ResourceSeries(int maxSamples) {
+        Assert.requiresTrue(maxSamples > 0, "maxSamples must be positive");
+        this.samples = new RingBuffer<>(maxSamples);
+    }
+
+    public synchronized void add(ResourceSample sample) {
+        samples.add(sample);
+        recorded++;
+    }
+
+    /**
+     * @return the samples kept, oldest first
+     */
+    public synchronized List<ResourceSample> samples() {
+        return samples.values();
+    }
+
+    public synchronized Optional<ResourceSample> latest() {
+        return samples.latest();
+    }
+
+    /**
+     * @return number of samples recorded, including the ones overwritten
+     */
+    public synchronized long recorded() {
+        return recorded;
+    }
+
+    /**
+     * @return distributions over the samples kept
+     */
+    public ResourceSummary summary() {
+        return new ResourceSummary(samples());
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"recorded\":" + recorded() +
+                ", \"summary\":" + summary() +
+                '}';
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.lkq.instadocker.docker.stats;
+
+import com.github.lkq.instadocker.metrics.Distribution;
+
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * distributions of the resource usage over the samples kept, e.g. to assert on a resource budget once the container stopped
+ */
+public class ResourceSummary {
+    private final int samples;
+    private final Distribution cpuPercent;
+    private final Distribution memoryRssBytes;
+    private final Distribution networkRxBytesPerSecond;
+    private final Distribution networkTxBytesPerSecond;
+    private final Distribution blockReadBytesPerSecond;
+    private final Distribution blockWriteBytesPerSecond;
+
+    ResourceSummary(List<ResourceSample> samples) {
+        this.samples = samples.size();
+        this.cpuPercent = distribution(samples, ResourceSample::cpuPercent);
+        this.memoryRssBytes = distribution(samples, ResourceSample::memoryRssBytes);
+        this.networkRxBytesPerSecond = distribution(samples, ResourceSample::networkRxBytesPerSecond);
+        this.networkTxBytesPerSecond = distribution(samples, ResourceSample::networkTxBytesPerSecond);
+        this.blockReadBytesPerSecond = distribution(samples, ResourceSample::blockReadBytesPerSecond);
+        this.blockWriteBytesPerSecond = distribution(samples, ResourceSample::blockWriteBytesPerSecond);
+    }
+
+    private static Distribution distribution(List<ResourceSample> samples, ToDoubleFunction<ResourceSample> metric) {
+        return new Distribution(samples.stream().mapToDouble(metric).toArray());
+    }
+
+    /**
+     * @return number of samples summarized
+     */
+    public int samples() {
+        return samples;
+    }
+
+    public Distribution cpuPercent() {
+        return cpuPercent;
+    }
+
+    public Distribution memoryRssBytes() {
+        return memoryRssBytes;
+    }
+
+    public Distribution networkRxBytesPerSecond() {
+        return networkRxBytesPerSecond;
+    }
+
+    public Distribution networkTxBytesPerSecond() {
+        return networkTxBytesPerSecond;
+    }
+
+    public Distribution blockReadBytesPerSecond() {
+        return blockReadBytesPerSecond;
+    }
+
+    public Distribution blockWriteBytesPerSecond() {
+        return blockWriteBytesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"samples\":" + samples +
+                ", \"cpuPercent\":" + cpuPercent +
+                ", \"memoryRssBytes\":" + memoryRssBytes +
+                ", \"networkRxBytesPerSecond\":" + networkRxBytesPerSecond +
+                ", \"networkTxBytesPerSecond\":" + networkTxBytesPerSecond +
+                ", \"blockReadBytesPerSecond\":" + blockReadBytesPerSecond +
+                ", \"blockWriteBytesPerSecond\":" + blockWriteBytesPerSecond +
+                '}';
+    }
+}
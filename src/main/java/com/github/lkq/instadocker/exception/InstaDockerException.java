@@ -4,4 +4,8 @@ public class InstaDockerException extends RuntimeException {
     public InstaDockerException(String message) {
         super(message);
     }
+
+    public InstaDockerException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
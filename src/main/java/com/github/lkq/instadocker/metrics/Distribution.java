@@ -0,0 +1,61 @@
+package com.github.lkq.instadocker.metrics;
+
+import java.util.Arrays;
+
+/**
+ * min, mean, max and nearest rank percentiles of a set of values, e.g. the recent durations of a {@link Timer}
+ * or the samples of one resource metric
+ */
+public class Distribution {
+    private final double[] sorted;
+    private final double mean;
+
+    public Distribution(double[] values) {
+        this.sorted = values.clone();
+        Arrays.sort(sorted);
+        this.mean = sorted.length == 0 ? 0 : Arrays.stream(sorted).sum() / sorted.length;
+    }
+
+    public int count() {
+        return sorted.length;
+    }
+
+    public double min() {
+        return sorted.length == 0 ? 0 : sorted[0];
+    }
+
+    public double mean() {
+        return mean;
+    }
+
+    public double max() {
+        return sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.95
+     * @return the value of the quantile, nearest rank, 0 if there are no values
+     */
+    public double percentile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1");
+        }
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"min\":" + String.format("%.2f", min()) +
+                ", \"mean\":" + String.format("%.2f", mean()) +
+                ", \"p50\":" + String.format("%.2f", percentile(0.5)) +
+                ", \"p95\":" + String.format("%.2f", percentile(0.95)) +
+                ", \"p99\":" + String.format("%.2f", percentile(0.99)) +
+                ", \"max\":" + String.format("%.2f", max()) +
+                '}';
+    }
+}
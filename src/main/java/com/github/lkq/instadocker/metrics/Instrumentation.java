@@ -0,0 +1,54 @@
+package com.github.lkq.instadocker.metrics;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * receives the timing of every daemon call and lifecycle phase of insta-docker, tagged with the image and the container.
+ * implementations found by {@link java.util.ServiceLoader} are used by default, see {@link Instrumentations#defaultInstrumentation()},
+ * e.g. an adapter forwarding the timings to a metrics registry.
+ */
+public interface Instrumentation {
+
+    /**
+     * timer of a docker daemon api call, tagged with {@link #TAG_CALL}, e.g. inspectContainer
+     */
+    String DAEMON_CALL = "insta.docker.daemon.call";
+
+    /**
+     * timer of a lifecycle phase, tagged with {@link #TAG_PHASE}, e.g. pull, create, start, logAttach, ready or total
+     */
+    String PHASE = "insta.docker.phase";
+
+    String TAG_CALL = "call";
+    String TAG_PHASE = "phase";
+    String TAG_IMAGE = "image";
+    String TAG_CONTAINER = "container";
+
+    /**
+     * @param name          the timer name, {@link #DAEMON_CALL} or {@link #PHASE}
+     * @param tags          the tags of the timer
+     * @param durationNanos how long it took
+     * @param success       false if it failed or returned false
+     */
+    void record(String name, Map<String, String> tags, long durationNanos, boolean success);
+
+    /**
+     * run and time the action, it fails if it throws or returns false
+     */
+    default <T> T time(String name, Map<String, String> tags, Supplier<T> action) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = action.get();
+            success = !Boolean.FALSE.equals(result);
+            return result;
+        } finally {
+            record(name, tags, System.nanoTime() - start, success);
+        }
+    }
+
+    static Instrumentation noop() {
+        return Instrumentations.NOOP;
+    }
+}
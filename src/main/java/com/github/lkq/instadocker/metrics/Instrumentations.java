@@ -0,0 +1,93 @@
+package com.github.lkq.instadocker.metrics;
+
+import org.slf4j.Logger;
+
+import java.util.*;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * the default and combined instrumentations
+ */
+public final class Instrumentations {
+    private static final Logger logger = getLogger(Instrumentations.class);
+
+    static final Instrumentation NOOP = (name, tags, durationNanos, success) -> {
+    };
+
+    private static volatile Instrumentation defaultInstrumentation;
+
+    private Instrumentations() {
+    }
+
+    /**
+     * @return the instrumentations registered in META-INF/services/com.github.lkq.instadocker.metrics.Instrumentation,
+     * a no-op instrumentation if there is none
+     */
+    public static Instrumentation defaultInstrumentation() {
+        if (defaultInstrumentation == null) {
+            synchronized (Instrumentations.class) {
+                if (defaultInstrumentation == null) {
+                    List<Instrumentation> loaded = new ArrayList<>();
+                    for (Instrumentation instrumentation : ServiceLoader.load(Instrumentation.class)) {
+                        logger.info("instrumentation loaded: {}", instrumentation.getClass().getName());
+                        loaded.add(instrumentation);
+                    }
+                    defaultInstrumentation = composite(loaded);
+                }
+            }
+        }
+        return defaultInstrumentation;
+    }
+
+    /**
+     * @return an instrumentation recording to all of the given ones
+     */
+    public static Instrumentation composite(List<Instrumentation> instrumentations) {
+        List<Instrumentation> all = new ArrayList<>();
+        for (Instrumentation instrumentation : instrumentations) {
+            if (instrumentation != NOOP) {
+                all.add(Objects.requireNonNull(instrumentation, "instrumentation is required"));
+            }
+        }
+        if (all.isEmpty()) {
+            return NOOP;
+        }
+        if (all.size() == 1) {
+            return all.get(0);
+        }
+        return (name, tags, durationNanos, success) -> {
+            for (Instrumentation instrumentation : all) {
+                instrumentation.record(name, tags, durationNanos, success);
+            }
+        };
+    }
+
+    /**
+     * @return true if nothing is recorded, so callers can skip measuring
+     */
+    public static boolean isNoop(Instrumentation instrumentation) {
+        return instrumentation == NOOP;
+    }
+
+    /**
+     * @return tags of the image and the container, the container is left out if null
+     */
+    public static Map<String, String> tags(String image, String container) {
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put(Instrumentation.TAG_IMAGE, image);
+        if (container != null) {
+            tags.put(Instrumentation.TAG_CONTAINER, container);
+        }
+        return Collections.unmodifiableMap(tags);
+    }
+
+    /**
+     * @return the tags with one more tag
+     */
+    public static Map<String, String> with(Map<String, String> tags, String key, String value) {
+        Map<String, String> result = new LinkedHashMap<>(tags);
+        result.put(key, value);
+        return Collections.unmodifiableMap(result);
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.lkq.instadocker.metrics;
+
+import org.slf4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * registers every timer as a {@link TimerMXBean}, e.g. com.github.lkq.instadocker:type=phase,phase=start,image="postgres:latest",container="pg",
+ * so the startup latency can be watched with jconsole or scraped by a jmx exporter
+ */
+public class JmxInstrumentation extends TimerRegistry implements Closeable {
+    private static final Logger logger = getLogger(JmxInstrumentation.class);
+
+    public static final String DOMAIN = "com.github.lkq.instadocker";
+
+    private final MBeanServer mBeanServer;
+    private final List<ObjectName> registered = new CopyOnWriteArrayList<>();
+
+    public JmxInstrumentation() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxInstrumentation(MBeanServer mBeanServer) {
+        this.mBeanServer = mBeanServer;
+    }
+
+    @Override
+    protected void registered(TimerId id, Timer timer) {
+        try {
+            ObjectName objectName = objectName(id);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(new TimerBean(timer), objectName);
+                registered.add(objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("failed to register timer mbean, timer={}", id, e);
+        }
+    }
+
+    /**
+     * @return the object name of the timer, the type is the timer name without the insta.docker prefix
+     */
+    public static ObjectName objectName(TimerId id) throws JMException {
+        StringBuilder name = new StringBuilder(DOMAIN).append(":type=").append(id.name().replaceFirst("^insta\\.docker\\.", ""));
+        for (Map.Entry<String, String> tag : id.tags().entrySet()) {
+            name.append(',').append(tag.getKey()).append('=').append(ObjectName.quote(String.valueOf(tag.getValue())));
+        }
+        return new ObjectName(name.toString());
+    }
+
+    /**
+     * unregister the mbeans
+     */
+    @Override
+    public void close() {
+        for (ObjectName objectName : registered) {
+            try {
+                mBeanServer.unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.debug("failed to unregister timer mbean, objectName={}", objectName, e);
+            }
+        }
+        registered.clear();
+    }
+
+    private static class TimerBean implements TimerMXBean {
+        private final Timer timer;
+
+        private TimerBean(Timer timer) {
+            this.timer = timer;
+        }
+
+        @Override
+        public long getCount() {
+            return timer.count();
+        }
+
+        @Override
+        public long getFailures() {
+            return timer.failures();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return timer.meanMillis();
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return timer.maxMillis();
+        }
+
+        @Override
+        public double getP50Millis() {
+            return timer.percentileMillis(0.5);
+        }
+
+        @Override
+        public double getP95Millis() {
+            return timer.percentileMillis(0.95);
+        }
+
+        @Override
+        public double getP99Millis() {
+            return timer.percentileMillis(0.99);
+        }
+    }
+}
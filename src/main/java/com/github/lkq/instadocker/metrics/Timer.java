@@ -0,0 +1,88 @@
+package com.github.lkq.instadocker.metrics;
+
+import com.github.lkq.instadocker.util.RingBuffer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * count, mean, max and percentiles of the durations recorded, the percentiles are taken from the most recent samples
+ */
+public class Timer {
+
+    public static final int DEFAULT_SAMPLES = 1024;
+
+    private final RingBuffer<Long> samples;
+    private long count = 0;
+    private long failures = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+
+    public Timer() {
+        this(DEFAULT_SAMPLES);
+    }
+
+    /**
+     * @param maxSamples number of recent durations kept for the percentiles
+     */
+    public Timer(int maxSamples) {
+        if (maxSamples <= 0) {
+            throw new IllegalArgumentException("maxSamples must be positive");
+        }
+        this.samples = new RingBuffer<>(maxSamples);
+    }
+
+    public synchronized void record(long durationNanos, boolean success) {
+        samples.add(durationNanos);
+        count++;
+        if (!success) {
+            failures++;
+        }
+        totalNanos += durationNanos;
+        maxNanos = Math.max(maxNanos, durationNanos);
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    public synchronized long failures() {
+        return failures;
+    }
+
+    public synchronized double meanMillis() {
+        return count == 0 ? 0 : toMillis(totalNanos) / count;
+    }
+
+    public synchronized double maxMillis() {
+        return toMillis(maxNanos);
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return the duration of the quantile among the recent samples, nearest rank
+     */
+    public double percentileMillis(double quantile) {
+        List<Long> recent;
+        synchronized (this) {
+            recent = samples.values();
+        }
+        return new Distribution(recent.stream().mapToDouble(Timer::toMillis).toArray()).percentile(quantile);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "\"count\":" + count() +
+                ", \"failures\":" + failures() +
+                ", \"meanMillis\":" + String.format("%.2f", meanMillis()) +
+                ", \"p50Millis\":" + String.format("%.2f", percentileMillis(0.5)) +
+                ", \"p99Millis\":" + String.format("%.2f", percentileMillis(0.99)) +
+                ", \"maxMillis\":" + String.format("%.2f", maxMillis()) +
+                '}';
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.lkq.instadocker.metrics;
+
+/**
+ * a {@link Timer} exposed over jmx by {@link JmxInstrumentation}
+ */
+public interface TimerMXBean {
+
+    long getCount();
+
+    long getFailures();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+}
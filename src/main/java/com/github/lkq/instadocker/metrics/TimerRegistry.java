@@ -0,0 +1,108 @@
+package com.github.lkq.instadocker.metrics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * keeps a {@link Timer} per name and tags in memory
+ */
+public class TimerRegistry implements Instrumentation {
+
+    private final ConcurrentMap<TimerId, Timer> timers = new ConcurrentHashMap<>();
+
+    @Override
+    public void record(String name, Map<String, String> tags, long durationNanos, boolean success) {
+        TimerId id = new TimerId(name, tags);
+        Timer timer = timers.get(id);
+        if (timer == null) {
+            Timer created = new Timer();
+            timer = timers.putIfAbsent(id, created);
+            if (timer == null) {
+                timer = created;
+                registered(id, timer);
+            }
+        }
+        timer.record(durationNanos, success);
+    }
+
+    /**
+     * called once for each new timer
+     */
+    protected void registered(TimerId id, Timer timer) {
+    }
+
+    /**
+     * @return the timer of the name and tags, empty if nothing is recorded yet
+     */
+    public Optional<Timer> timer(String name, Map<String, String> tags) {
+        return Optional.ofNullable(timers.get(new TimerId(name, tags)));
+    }
+
+    /**
+     * @return the timers with the name whose tags include all of the given tags
+     */
+    public Map<TimerId, Timer> timers(String name, Map<String, String> tags) {
+        Map<TimerId, Timer> result = new TreeMap<>(Comparator.comparing(TimerId::toString));
+        timers.forEach((id, timer) -> {
+            if (id.name().equals(name) && id.tags().entrySet().containsAll(tags.entrySet())) {
+                result.put(id, timer);
+            }
+        });
+        return result;
+    }
+
+    public Map<TimerId, Timer> timers() {
+        Map<TimerId, Timer> result = new TreeMap<>(Comparator.comparing(TimerId::toString));
+        result.putAll(timers);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return timers().toString();
+    }
+
+    /**
+     * the name and the tags of a timer, tags are ordered by key
+     */
+    public static final class TimerId {
+        private final String name;
+        private final SortedMap<String, String> tags;
+
+        TimerId(String name, Map<String, String> tags) {
+            this.name = Objects.requireNonNull(name, "name is required");
+            this.tags = Collections.unmodifiableSortedMap(new TreeMap<>(tags));
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public SortedMap<String, String> tags() {
+            return tags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            TimerId timerId = (TimerId) o;
+            return name.equals(timerId.name) && tags.equals(timerId.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, tags);
+        }
+
+        @Override
+        public String toString() {
+            return name + tags;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.lkq.instadocker.util;
+
+import org.slf4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * executors for the asynchronous api
+ */
+public class InstaExecutors {
+    private static final Logger logger = getLogger(InstaExecutors.class);
+
+    private static volatile ExecutorService defaultExecutor;
+    private static volatile ScheduledExecutorService scheduler;
+
+    /**
+     * @return the executor shared by the asynchronous api when no executor is provided,
+     * a virtual thread per task executor if the jvm supports it, otherwise a cached pool of daemon threads
+     */
+    public static ExecutorService defaultExecutor() {
+        if (defaultExecutor == null) {
+            synchronized (InstaExecutors.class) {
+                if (defaultExecutor == null) {
+                    defaultExecutor = newVirtualThreadExecutor();
+                    if (defaultExecutor == null) {
+                        defaultExecutor = Executors.newCachedThreadPool(daemonThreadFactory("insta-docker-async"));
+                    }
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * @return a new virtual thread per task executor, or null if the jvm doesn't support virtual threads
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            logger.debug("virtual threads not available", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the scheduler for timeouts of asynchronous operations, timeouts must not block
+     */
+    public static ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            synchronized (InstaExecutors.class) {
+                if (scheduler == null) {
+                    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("insta-docker-timer"));
+                    executor.setRemoveOnCancelPolicy(true);
+                    scheduler = executor;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * complete the future with the given value if it's not completed within the timeout
+     *
+     * @param future        the future
+     * @param value         the value to complete with on timeout
+     * @param timeoutMillis the timeout
+     * @param <T>           type of the value
+     * @return the future
+     */
+    public static <T> CompletableFuture<T> completeOnTimeout(CompletableFuture<T> future, T value, long timeoutMillis) {
+        if (!future.isDone()) {
+            ScheduledFuture<?> timeout = scheduler().schedule(() -> future.complete(value), timeoutMillis, TimeUnit.MILLISECONDS);
+            future.whenComplete((result, error) -> timeout.cancel(false));
+        }
+        return future;
+    }
+
+    public static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.lkq.instadocker.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * the most recent values in a fixed size ring, the oldest value is overwritten when it's full.
+ * not thread safe, guarded by its owner
+ *
+ * @param <T> type of the values
+ */
+public class RingBuffer<T> {
+    private final Object[] values;
+    private int next = 0;
+    private int size = 0;
+
+    /**
+     * @param capacity number of recent values kept
+     */
+    public RingBuffer(int capacity) {
+        Assert.requiresTrue(capacity > 0, "capacity must be positive");
+        this.values = new Object[capacity];
+    }
+
+    public void add(T value) {
+        values[next] = value;
+        next = (next + 1) % values.length;
+        size = Math.min(size + 1, values.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the values kept, oldest first
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> values() {
+        List<T> copy = new ArrayList<>(size);
+        int first = (next - size + values.length) % values.length;
+        for (int i = 0; i < size; i++) {
+            copy.add((T) values[(first + i) % values.length]);
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Optional<T> latest() {
+        return size == 0 ? Optional.empty() : Optional.of((T) values[(next - 1 + values.length) % values.length]);
+    }
+}
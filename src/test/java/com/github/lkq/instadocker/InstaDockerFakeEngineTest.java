@@ -0,0 +1,199 @@
+package com.github.lkq.instadocker;
+
+import com.github.dockerjava.api.model.InternetProtocol;
+import com.github.lkq.instadocker.docker.FakeDockerEngine;
+import com.github.lkq.instadocker.docker.ImagePullCoordinator;
+import com.github.lkq.instadocker.docker.LogStreamService;
+import com.github.lkq.instadocker.docker.SnapshotCache;
+import com.github.lkq.instadocker.docker.log.LogStore;
+import com.github.lkq.instadocker.docker.probe.LogPatternProbe;
+import com.github.lkq.instadocker.metrics.Instrumentation;
+import com.github.lkq.instadocker.metrics.Instrumentations;
+import com.github.lkq.instadocker.metrics.Timer;
+import com.github.lkq.instadocker.metrics.TimerRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * runs insta-docker through a real docker-java client against {@link FakeDockerEngine}
+ */
+class InstaDockerFakeEngineTest {
+
+    private static final String IMAGE = "postgres:latest";
+
+    private final FakeDockerEngine engine = new FakeDockerEngine();
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    void startsPullingImageAndFollowsLogs() throws InterruptedException {
+        engine.startupLogs("database system is ready to accept connections");
+        InstaDocker subject = instaDocker("fake-engine-pg");
+        subject.container().captureLogs(100).anyHostPortBinding(InternetProtocol.TCP.name(), 5432);
+
+        subject.start(true, 10);
+
+        assertTrue(engine.containerRunning("fake-engine-pg"), "container should be running");
+        assertEquals(1, engine.requests("pullImage"));
+        assertEquals(49153, subject.container().hostPort(5432));
+        LogStore logs = subject.container().capturedLogs().get();
+        assertTrue(logs.awaitLine(Pattern.compile("ready to accept connections"), 5000).isPresent(), "startup log should be followed");
+
+        engine.log("fake-engine-pg", "checkpoint complete");
+        assertTrue(logs.awaitLine(Pattern.compile("checkpoint"), 5000).isPresent(), "new log line should be followed");
+
+        assertTrue(subject.container().ensureStopped(1), "container should stop");
+        assertFalse(engine.containerRunning("fake-engine-pg"));
+    }
+
+    @Test
+    void closeStopsFollowingContainerLogs() {
+        InstaDocker subject = instaDocker("fake-engine-close");
+        subject.start(true, 10);
+        assertTrue(LogStreamService.shared().attached("fake-engine-close"));
+
+        subject.close();
+
+        assertFalse(LogStreamService.shared().attached("fake-engine-close"), "logs should be detached before the client is released");
+        assertTrue(engine.containerRunning("fake-engine-close"), "container should be left running");
+    }
+
+    @Test
+    void startsManyContainersConcurrently() throws Exception {
+        engine.image(IMAGE).latency(1, 5);
+        List<CompletableFuture<Void>> starts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            starts.add(instaDocker("fake-engine-concurrent-" + i).startAsync(true, 30));
+        }
+
+        CompletableFuture.allOf(starts.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+
+        assertEquals(100, engine.runningContainers());
+        assertEquals(100, engine.requests("createContainer"));
+    }
+
+    @Test
+    void failsStartOnInjectedDaemonError() {
+        engine.image(IMAGE).failNext("createContainer", 500, 1);
+        InstaDocker subject = instaDocker("fake-engine-failure");
+
+        assertThrows(RuntimeException.class, () -> subject.start(true, 10));
+        assertFalse(engine.containerRunning("fake-engine-failure"));
+
+        subject.start(true, 10);
+        assertTrue(engine.containerRunning("fake-engine-failure"), "container should start once the daemon recovers");
+    }
+
+    @Test
+    void reusesIdenticalContainerAndReplacesOnDrift() {
+        engine.image(IMAGE);
+        InstaDocker first = instaDocker("fake-engine-reuse");
+        first.start(StartMode.REUSE_IF_IDENTICAL, 10);
+        assertTrue(first.container().ensureStopped(1), "container should be stopped");
+
+        InstaDocker identical = instaDocker("fake-engine-reuse");
+        identical.start(StartMode.REUSE_IF_IDENTICAL, 10);
+
+        assertTrue(engine.containerRunning("fake-engine-reuse"), "container should be running");
+        assertEquals(1, engine.requests("createContainer"));
+        assertEquals(2, engine.requests("startContainer"));
+
+        InstaDocker changed = instaDocker("fake-engine-reuse");
+        changed.container().environmentVariables(Collections.singletonList("POSTGRES_PASSWORD=changed"));
+        changed.start(StartMode.REUSE_IF_IDENTICAL, 10);
+
+        assertEquals(1, engine.requests("removeContainer"));
+        assertEquals(2, engine.requests("createContainer"));
+    }
+
+    @Test
+    void startsFromSnapshotOnceSeeded() throws IOException {
+        engine.image(IMAGE);
+        SnapshotCache snapshots = new SnapshotCache(engine.client(), "fake-engine-snapshot", 1024, Files.createTempDirectory("fake-engine-snapshots"));
+        AtomicInteger seeded = new AtomicInteger();
+
+        InstaDocker first = instaDocker("fake-engine-seeded");
+        first.container().seed(snapshots, container -> seeded.incrementAndGet(), "migrations-v1");
+        first.start(StartMode.REPLACE, 10);
+
+        assertEquals(1, seeded.get());
+        assertFalse(first.container().snapshotImage().isPresent(), "first container should be created from the image");
+        assertEquals(1, engine.requests("commitContainer"));
+
+        InstaDocker second = instaDocker("fake-engine-seeded");
+        second.container().seed(snapshots, container -> seeded.incrementAndGet(), "migrations-v1");
+        second.start(StartMode.REPLACE, 10);
+
+        assertEquals(1, seeded.get(), "seed step should be skipped");
+        assertTrue(second.container().snapshotImage().isPresent(), "second container should be created from the snapshot");
+        assertEquals(1, engine.requests("commitContainer"));
+        assertEquals(1, snapshots.hits());
+
+        InstaDocker changed = instaDocker("fake-engine-seeded");
+        changed.container().seed(snapshots, container -> seeded.incrementAndGet(), "migrations-v2");
+        changed.start(StartMode.REPLACE, 10);
+
+        assertEquals(2, seeded.get(), "changed seed inputs should seed again");
+    }
+
+    @Test
+    void timesDaemonCallsAndPhases() {
+        engine.startupLogs("ready");
+        TimerRegistry timers = new TimerRegistry();
+        InstaDocker subject = new InstaDocker(IMAGE, "fake-engine-timed")
+                .dockerClient(engine.client())
+                .pullCoordinator(new ImagePullCoordinator(0))
+                .instrumentation(timers)
+                .init();
+        subject.container().readinessProbe(new LogPatternProbe(Pattern.compile("ready"), 1));
+
+        subject.start(true, 10);
+
+        Map<String, String> tags = Instrumentations.tags(IMAGE, "fake-engine-timed");
+        for (String phase : Arrays.asList("pull", "create", "start", "logAttach", "ready", "total")) {
+            Optional<Timer> timer = timers.timer(Instrumentation.PHASE, Instrumentations.with(tags, Instrumentation.TAG_PHASE, phase));
+            assertTrue(timer.isPresent(), "phase should be timed: " + phase + ", timers=" + timers);
+            assertEquals(0, timer.get().failures(), "phase should succeed: " + phase);
+        }
+        Optional<Timer> created = timers.timer(Instrumentation.DAEMON_CALL, Instrumentations.with(tags, Instrumentation.TAG_CALL, "createContainer"));
+        assertEquals(1, created.map(Timer::count).orElse(0L).longValue());
+        long failedInspects = timers.timers(Instrumentation.DAEMON_CALL, Instrumentations.with(tags, Instrumentation.TAG_CALL, "inspectContainer"))
+                .values().stream().mapToLong(Timer::failures).sum();
+        assertEquals(1, failedInspects, "inspecting the missing container should be a failed call");
+    }
+
+    @Test
+    void delaysRequestsByInjectedLatency() {
+        engine.image(IMAGE).latency(50, 50);
+
+        long start = System.nanoTime();
+        engine.client().inspectImageCmd(IMAGE).exec();
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50, "request should be delayed");
+    }
+
+    private InstaDocker instaDocker(String containerName) {
+        return new InstaDocker(IMAGE, containerName)
+                .dockerClient(engine.client())
+                .pullCoordinator(new ImagePullCoordinator(0))
+                .init();
+    }
+}
@@ -2,7 +2,10 @@ package com.github.lkq.instadocker;
 
 import com.github.dockerjava.api.model.InternetProtocol;
 import com.github.lkq.instadocker.docker.DockerClientFactory;
+import com.github.lkq.instadocker.docker.ImagePullCoordinator;
 import com.github.lkq.instadocker.docker.PortFinder;
+import com.github.lkq.instadocker.docker.StubDockerClient;
+import com.github.lkq.instadocker.docker.probe.TcpProbe;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -10,9 +13,14 @@ import org.slf4j.Logger;
 
 import java.sql.*;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -27,6 +35,54 @@ class InstaDockerTest {
     void setUp() {
     }
 
+    @Test
+    void coldStartIssuesMinimalDaemonCalls() {
+        StubDockerClient stubClient = new StubDockerClient().imageExists(true);
+        subject = new InstaDocker("busybox:latest", "insta-docker-daemon-calls-test")
+                .dockerClient(stubClient.client())
+                .pullCoordinator(new ImagePullCoordinator(0))
+                .init();
+
+        subject.start(true, 10);
+
+        // inspect image, inspect container, create, start, inspect container, attach logs
+        assertEquals(6, subject.lastStartDaemonCalls());
+        assertTrue(stubClient.containerRunning(), "container should be running");
+    }
+
+    @Test
+    void canStartAsynchronously() throws Exception {
+        StubDockerClient stubClient = new StubDockerClient().imageExists(false);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            subject = new InstaDocker("busybox:latest", "insta-docker-async-test")
+                    .dockerClient(stubClient.client())
+                    .pullCoordinator(new ImagePullCoordinator(0))
+                    .asyncExecutor(executor)
+                    .init();
+
+            subject.startAsync(true, 10).get(10, TimeUnit.SECONDS);
+
+            assertTrue(stubClient.containerRunning(), "container should be running");
+            assertEquals(1, subject.daemonCalls().count("pullImage"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failsAsynchronousStartWhenContainerIsNotReady() {
+        StubDockerClient stubClient = new StubDockerClient().imageExists(true);
+        subject = new InstaDocker("busybox:latest", "insta-docker-async-test")
+                .dockerClient(stubClient.client())
+                .init();
+        subject.container().readinessProbe(new TcpProbe("localhost", PortFinder.find(10), 100));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> subject.startAsync(true, 1).get(10, TimeUnit.SECONDS));
+
+        assertTrue(e.getCause() instanceof IllegalStateException, "should fail with IllegalStateException");
+    }
+
     @Tag("integration")
     @Test
     void canStartPGContainer() throws SQLException, InterruptedException {
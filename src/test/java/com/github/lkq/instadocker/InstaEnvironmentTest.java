@@ -0,0 +1,135 @@
+package com.github.lkq.instadocker;
+
+import com.github.lkq.instadocker.docker.StubDockerClient;
+import com.github.lkq.instadocker.docker.probe.ReadinessProbe;
+import com.github.lkq.instadocker.metrics.Instrumentation;
+import com.github.lkq.instadocker.metrics.Instrumentations;
+import com.github.lkq.instadocker.metrics.Timer;
+import com.github.lkq.instadocker.metrics.TimerRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstaEnvironmentTest {
+
+    private final Map<String, StubDockerClient> stubClients = new HashMap<>();
+
+    @Test
+    void ordersContainersAfterTheirDependencies() {
+        InstaEnvironment subject = new InstaEnvironment(4)
+                .add("service", instaDocker("service"), "db", "cache")
+                .add("cache", instaDocker("cache"))
+                .add("db", instaDocker("db"));
+
+        List<String> order = subject.startOrder();
+
+        assertEquals(Arrays.asList("cache", "db", "service"), order);
+    }
+
+    @Test
+    void rejectsUnknownAndCyclicDependencies() {
+        InstaEnvironment unknown = new InstaEnvironment(2).add("service", instaDocker("service"), "db");
+        assertThrows(IllegalArgumentException.class, unknown::startOrder);
+
+        InstaEnvironment cyclic = new InstaEnvironment(2)
+                .add("a", instaDocker("a"), "b")
+                .add("b", instaDocker("b"), "a");
+        assertThrows(IllegalArgumentException.class, cyclic::startOrder);
+    }
+
+    @Test
+    void startsDependenciesBeforeDependents() {
+        InstaDocker db = instaDocker("db");
+        InstaDocker service = instaDocker("service");
+        // the service would never become ready if it was started before the db
+        boolean[] dbRunningWhenServiceStarted = new boolean[1];
+        service.container().readinessProbe(probe(() -> {
+            dbRunningWhenServiceStarted[0] = stubClients.get("db").containerRunning();
+            return true;
+        }));
+        InstaEnvironment subject = new InstaEnvironment(2)
+                .add("service", service, "db")
+                .add("db", db)
+                .add("cache", instaDocker("cache"));
+
+        subject.start(true, 5);
+
+        assertTrue(dbRunningWhenServiceStarted[0], "db should be running before service is started");
+        stubClients.values().forEach(stub -> assertTrue(stub.containerRunning(), "all containers should be running"));
+
+        subject.stop(1);
+
+        stubClients.values().forEach(stub -> assertFalse(stub.containerRunning(), "all containers should be stopped"));
+    }
+
+    @Test
+    void pullsImagesWithoutStartingContainers() {
+        InstaEnvironment subject = new InstaEnvironment(2)
+                .add("db", instaDocker("db"))
+                .add("service", instaDocker("service"), "db");
+
+        subject.pull(5);
+
+        stubClients.values().forEach(stub -> assertFalse(stub.containerExists(), "no container should be created"));
+    }
+
+    @Test
+    void timesTotalPhaseOfEachContainer() {
+        TimerRegistry timers = new TimerRegistry();
+        StubDockerClient stubClient = new StubDockerClient().imageExists(true);
+        stubClients.put("db", stubClient);
+        InstaDocker db = new InstaDocker("busybox:latest", "insta-environment-db")
+                .dockerClient(stubClient.client())
+                .instrumentation(timers)
+                .init();
+        InstaEnvironment subject = new InstaEnvironment(2).add("db", db);
+
+        subject.start(true, 5);
+
+        Map<String, String> tags = Instrumentations.with(Instrumentations.tags("busybox:latest", "insta-environment-db"), Instrumentation.TAG_PHASE, "total");
+        assertEquals(1, timers.timer(Instrumentation.PHASE, tags).map(Timer::count).orElse(0L).longValue(), "total phase should be timed");
+        assertTrue(db.lastStartDaemonCalls() > 0, "daemon calls of the start should be counted");
+    }
+
+    @Test
+    void failsWhenAnyContainerFailsToStart() {
+        InstaDocker db = instaDocker("db");
+        db.container().readinessProbe(probe(() -> false));
+        InstaEnvironment subject = new InstaEnvironment(2)
+                .add("db", db)
+                .add("service", instaDocker("service"), "db");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> subject.start(true, 1));
+
+        assertTrue(e.getMessage().endsWith(": db"), "should report the failed container: " + e.getMessage());
+        assertFalse(stubClients.get("service").containerExists(), "dependent should not be created");
+    }
+
+    private InstaDocker instaDocker(String name) {
+        StubDockerClient stubClient = new StubDockerClient().imageExists(true);
+        stubClients.put(name, stubClient);
+        return new InstaDocker("busybox:latest", "insta-environment-" + name)
+                .dockerClient(stubClient.client())
+                .init();
+    }
+
+    private ReadinessProbe probe(BooleanSupplier ready) {
+        return new ReadinessProbe() {
+            @Override
+            public String name() {
+                return "test probe";
+            }
+
+            @Override
+            public boolean ready() {
+                return ready.getAsBoolean();
+            }
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.model.Event;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContainerEventsTest {
+
+    private StubDockerClient stubClient;
+    private DockerContainer subject;
+
+    @BeforeEach
+    void setUp() {
+        stubClient = new StubDockerClient().imageExists(true);
+        subject = new DockerContainer(stubClient.client(), "busybox:latest", "container-events-test", null)
+                .watchEvents(1);
+    }
+
+    @Test
+    void completesFutureOnMatchingEventOnly() throws Exception {
+        ContainerEvents events = new ContainerEvents("container-events-test");
+        assertTrue(events.subscribe(stubClient.client(), 1), "event stream should be opened");
+
+        CompletableFuture<Event> destroyed = events.next(ContainerEvents.DESTROY);
+        events.onNext(new Event().withAction(ContainerEvents.START));
+        assertFalse(destroyed.isDone(), "should not complete on other events");
+
+        events.onNext(new Event().withAction(ContainerEvents.DESTROY));
+        assertEquals(ContainerEvents.DESTROY, destroyed.get().getAction());
+    }
+
+    @Test
+    void failsPendingFuturesWhenClosed() throws Exception {
+        ContainerEvents events = new ContainerEvents("container-events-test");
+        events.subscribe(stubClient.client(), 1);
+        CompletableFuture<Event> started = events.next(ContainerEvents.START);
+
+        events.close();
+
+        assertThrows(ExecutionException.class, started::get);
+        assertFalse(events.subscribed(), "should not be subscribed after close");
+    }
+
+    @Test
+    void confirmsLifecycleByEventsInsteadOfInspect() {
+        assertTrue(subject.createOrReplace(), "container should be created");
+        assertTrue(subject.ensureRunning(), "container should be running");
+        assertTrue(subject.ensureStopped(1), "container should be stopped");
+        assertTrue(subject.ensureNotExists(), "container should be removed");
+
+        assertFalse(stubClient.containerExists(), "container should be removed");
+        // one before create, one before remove, none after start, stop or remove
+        assertEquals(2, subject.daemonCalls().count("inspectContainer"));
+        assertEquals(1, subject.daemonCalls().count("events"));
+    }
+
+    @Test
+    void fallsBackToInspectWhenEventsDoNotArrive() {
+        stubClient.emitEvents(false);
+
+        assertTrue(subject.createOrReplace(), "container should be created");
+        assertTrue(subject.ensureRunning(), "container should be running");
+        assertTrue(subject.ensureStopped(1), "container should be stopped");
+
+        assertEquals(3, subject.daemonCalls().count("inspectContainer"));
+    }
+
+    @Test
+    void treatsNotModifiedStopAsStopped() {
+        stubClient.existingContainer(false);
+
+        assertTrue(subject.ensureStopped(1), "container should be stopped");
+        assertEquals(0, subject.daemonCalls().count("inspectContainer"));
+    }
+
+    @Test
+    void closesEventStreamWhenUnwatched() {
+        assertTrue(subject.createOrReplace(), "container should be created");
+        assertTrue(subject.ensureRunning(), "container should be running");
+        assertEquals(1, stubClient.eventSubscribers());
+
+        subject.unwatchEvents();
+
+        assertEquals(0, stubClient.eventSubscribers());
+    }
+}
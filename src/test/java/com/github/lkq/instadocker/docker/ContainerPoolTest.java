@@ -0,0 +1,182 @@
+package com.github.lkq.instadocker.docker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContainerPoolTest {
+
+    private final Map<String, StubDockerClient> stubClients = new ConcurrentHashMap<>();
+    private ContainerPool subject;
+
+    @AfterEach
+    void tearDown() {
+        if (subject != null) {
+            subject.close();
+        }
+    }
+
+    @Test
+    void prefillsAndHandsOutRunningContainers() throws Exception {
+        subject = pool().size(2).start();
+        await(() -> subject.idleCount() == 2);
+
+        DockerContainer container = subject.checkout(0);
+
+        assertTrue(stubClients.get(container.containerName()).containerRunning(), "checked out container should be running");
+        assertEquals(1, subject.checkedOutCount());
+        await(() -> subject.idleCount() == 2);
+    }
+
+    @Test
+    void reusesContainerWhenResetSucceeds() throws Exception {
+        subject = pool().size(1).refillPolicy(ContainerPool.RefillPolicy.LAZY).reset(container -> true).start();
+
+        DockerContainer container = subject.checkout(5000);
+        subject.release(container);
+        await(() -> subject.idleCount() == 1);
+
+        assertSame(container, subject.checkout(0), "reset container should be reused");
+    }
+
+    @Test
+    void eagerPoolReusesResetContainersWithoutGrowing() throws Exception {
+        subject = pool().size(2).reset(container -> true).start();
+        await(() -> subject.idleCount() == 2);
+
+        for (int i = 0; i < 5; i++) {
+            DockerContainer container = subject.checkout(5000);
+            subject.release(container);
+            await(() -> subject.idleCount() == 2);
+        }
+
+        assertEquals(2, stubClients.size(), "no container should be created while reset ones come back");
+    }
+
+    @Test
+    void eagerPoolReplacesContainerWhenResetFails() throws Exception {
+        subject = pool().size(1).reset(container -> false).start();
+
+        DockerContainer container = subject.checkout(5000);
+        assertEquals(0, subject.idleCount(), "a container expected back should not be replaced at checkout");
+        subject.release(container);
+        await(() -> subject.idleCount() == 1);
+
+        assertEquals(2, stubClients.size());
+        assertFalse(stubClients.get(container.containerName()).containerExists(), "container failing the reset should be removed");
+    }
+
+    @Test
+    void recyclesContainerWithoutReset() throws Exception {
+        subject = pool().size(1).refillPolicy(ContainerPool.RefillPolicy.LAZY).start();
+
+        DockerContainer container = subject.checkout(5000);
+        subject.release(container);
+        await(() -> subject.idleCount() == 1);
+
+        assertFalse(stubClients.get(container.containerName()).containerExists(), "returned container should be removed");
+        assertNotSame(container, subject.checkout(0), "a new container should be handed out");
+    }
+
+    @Test
+    void evictsIdleContainers() {
+        subject = pool().size(2).refillPolicy(ContainerPool.RefillPolicy.LAZY).idleTimeout(20).start();
+        await(() -> stubClients.size() == 2);
+
+        await(() -> subject.idleCount() == 0 && stubClients.values().stream().noneMatch(StubDockerClient::containerExists));
+    }
+
+    @Test
+    void eagerPoolShrinksToMinIdleWithoutReplacingEvictedContainers() throws Exception {
+        subject = pool().size(3).minIdle(1).idleTimeout(20).start();
+        await(() -> stubClients.size() == 3);
+
+        await(() -> subject.idleCount() == 1);
+        Thread.sleep(100);
+
+        assertEquals(1, subject.idleCount());
+        assertEquals(3, stubClients.size(), "evicted containers should not be replaced");
+        assertEquals(1, stubClients.values().stream().filter(StubDockerClient::containerExists).count());
+    }
+
+    @Test
+    void timesOutWhenNoContainerBecomesReady() {
+        subject = new ContainerPool("pool-test", name -> {
+            throw new IllegalStateException("cannot create container");
+        }).start();
+
+        assertThrows(TimeoutException.class, () -> subject.checkout(50));
+        await(() -> !subject.toString().contains("\"failedCreates\":0"));
+    }
+
+    @Test
+    void removesAllContainersOnClose() throws Exception {
+        subject = pool().size(2).start();
+        DockerContainer container = subject.checkout(5000);
+        await(() -> subject.idleCount() == 2);
+
+        subject.close();
+
+        assertFalse(stubClients.get(container.containerName()).containerExists(), "checked out container should be removed");
+        stubClients.values().forEach(stub -> assertFalse(stub.containerExists(), "idle containers should be removed"));
+    }
+
+    @Test
+    void removesContainerResetWhileClosing() throws Exception {
+        CountDownLatch resetStarted = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        subject = pool().size(1).refillPolicy(ContainerPool.RefillPolicy.LAZY).reset(container -> {
+            resetStarted.countDown();
+            // close() interrupts the pool threads, keep resetting until resumed
+            boolean interrupted = false;
+            while (resume.getCount() > 0) {
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }).start();
+        DockerContainer container = subject.checkout(5000);
+
+        subject.release(container);
+        assertTrue(resetStarted.await(5, TimeUnit.SECONDS), "reset should start");
+        subject.close();
+        resume.countDown();
+
+        await(() -> !stubClients.get(container.containerName()).containerExists());
+        assertEquals(0, subject.idleCount());
+    }
+
+    private ContainerPool pool() {
+        return new ContainerPool("pool-test", name -> {
+            StubDockerClient stubClient = new StubDockerClient().imageExists(true);
+            stubClients.put(name, stubClient);
+            return new DockerContainer(stubClient.client(), "redis:latest", name, null);
+        });
+    }
+
+    private void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
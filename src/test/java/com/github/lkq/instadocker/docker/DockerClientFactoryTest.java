@@ -0,0 +1,81 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DockerClientFactoryTest {
+
+    private final FakeDockerEngine engine = new FakeDockerEngine().image("busybox:latest");
+
+    @AfterEach
+    void tearDown() {
+        DockerClientFactory.configureShared(DockerTransportConfig.defaults());
+        engine.close();
+    }
+
+    @Test
+    void recordsLatencyAndPoolUtilization() throws IOException {
+        DockerClientMetrics metrics = new DockerClientMetrics();
+        DockerTransportConfig config = DockerTransportConfig.defaults().dockerHost(engine.dockerHost()).maxTotalConnections(8);
+        engine.latency(5, 5);
+
+        try (DockerClient client = DockerClientFactory.newClient(config, metrics)) {
+            client.inspectImageCmd("busybox:latest").exec();
+            assertThrows(NotFoundException.class, () -> client.inspectContainerCmd("missing").exec());
+
+            assertEquals(2, metrics.requests());
+            assertEquals(1, metrics.failedRequests());
+            assertTrue(metrics.meanLatencyMillis() >= 5, "latency should include the engine latency: " + metrics);
+            assertTrue(metrics.maxLatencyMillis() >= metrics.meanLatencyMillis());
+            assertEquals(8, metrics.maxConnections());
+            assertEquals(0, metrics.leasedConnections());
+            assertEquals(1, metrics.availableConnections(), "connection should be kept alive for reuse");
+        }
+    }
+
+    @Test
+    void closesConnectionsWithoutKeepAlive() throws IOException {
+        DockerClientMetrics metrics = new DockerClientMetrics();
+        DockerTransportConfig config = DockerTransportConfig.defaults().dockerHost(engine.dockerHost()).keepAliveMillis(0);
+
+        try (DockerClient client = DockerClientFactory.newClient(config, metrics)) {
+            client.inspectImageCmd("busybox:latest").exec();
+
+            assertEquals(1, metrics.requests());
+            assertEquals(0, metrics.availableConnections());
+        }
+    }
+
+    @Test
+    void sharesClientUntilLastRelease() {
+        DockerClientFactory.configureShared(DockerTransportConfig.defaults().dockerHost(engine.dockerHost()));
+
+        DockerClient first = DockerClientFactory.acquireShared();
+        DockerClient second = DockerClientFactory.acquireShared();
+        assertSame(first, second);
+        assertEquals(2, DockerClientFactory.sharedReferences());
+        assertThrows(IllegalStateException.class, () -> DockerClientFactory.configureShared(DockerTransportConfig.defaults()));
+
+        first.inspectImageCmd("busybox:latest").exec();
+        assertEquals(1, DockerClientFactory.sharedMetrics().requests());
+
+        DockerClientFactory.releaseShared(first);
+        second.inspectImageCmd("busybox:latest").exec();
+        DockerClientFactory.releaseShared(second);
+        assertEquals(0, DockerClientFactory.sharedReferences());
+
+        DockerClient third = DockerClientFactory.acquireShared();
+        try {
+            assertNotSame(first, third);
+            assertEquals(0, DockerClientFactory.sharedMetrics().requests());
+        } finally {
+            DockerClientFactory.releaseShared(third);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.lkq.instadocker.exception.InstaDockerException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DockerContainerCopyTest {
+
+    private final FakeDockerEngine engine = new FakeDockerEngine().image("postgres:latest");
+    private final DockerContainer subject = new DockerContainer(engine.client(), "postgres:latest", "copy-test", null);
+
+    @BeforeEach
+    void setUp() {
+        assertTrue(subject.createOrReplace(), "container should be created");
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    void copiesDirectoriesAndInMemoryContent() throws IOException {
+        Path fixtures = Files.createTempDirectory("copy-test").resolve("fixtures");
+        Files.createDirectories(fixtures.resolve("users"));
+        Files.write(fixtures.resolve("schema.sql"), "create table users".getBytes(StandardCharsets.UTF_8));
+        Files.write(fixtures.resolve("users/1.json"), "{\"id\":1}".getBytes(StandardCharsets.UTF_8));
+
+        subject.copyIn("/docker-entrypoint-initdb.d",
+                ArchiveSource.path(fixtures),
+                ArchiveSource.bytes("init/seed.sql", "insert into users".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("create table users", file("/docker-entrypoint-initdb.d/fixtures/schema.sql"));
+        assertEquals("{\"id\":1}", file("/docker-entrypoint-initdb.d/fixtures/users/1.json"));
+        assertEquals("insert into users", file("/docker-entrypoint-initdb.d/init/seed.sql"));
+    }
+
+    @Test
+    void streamsLargeContentThroughThePipe() {
+        long size = 32L * 1024 * 1024;
+
+        subject.copyIn("/data", ArchiveSource.stream("dataset.bin", size, () -> new GeneratedStream(size)));
+
+        byte[] copied = engine.containerFile("copy-test", "/data/dataset.bin").orElseThrow(AssertionError::new);
+        assertEquals(size, copied.length);
+        assertEquals((byte) ((size - 1) % 251), copied[copied.length - 1]);
+    }
+
+    @Test
+    void failsInsteadOfSendingTruncatedArchive() {
+        InstaDockerException e = assertThrows(InstaDockerException.class,
+                () -> subject.copyIn("/data", ArchiveSource.stream("short.bin", 1024, () -> new GeneratedStream(10))));
+
+        assertTrue(e.getMessage().contains("short.bin"), e.getMessage());
+        assertFalse(engine.containerFile("copy-test", "/data/short.bin").isPresent(), "truncated file should not be copied");
+    }
+
+    @Test
+    void copiesFilesOut() throws IOException {
+        engine.containerFile("copy-test", "/var/log/app/server.log", "started".getBytes(StandardCharsets.UTF_8));
+        engine.containerFile("copy-test", "/var/log/app/gc/gc.log", "gc".getBytes(StandardCharsets.UTF_8));
+        Path target = Files.createTempDirectory("copy-test");
+
+        assertEquals(9, subject.copyOut("/var/log/app", target));
+
+        assertEquals("started", new String(Files.readAllBytes(target.resolve("app/server.log")), StandardCharsets.UTF_8));
+        assertEquals("gc", new String(Files.readAllBytes(target.resolve("app/gc/gc.log")), StandardCharsets.UTF_8));
+        assertEquals("started", new String(subject.readFile("/var/log/app/server.log"), StandardCharsets.UTF_8));
+        assertThrows(InstaDockerException.class, () -> subject.readFile("/var/log/missing.log"));
+    }
+
+    private String file(String path) {
+        return new String(engine.containerFile("copy-test", path).orElseThrow(() -> new AssertionError("no such file: " + path)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * content generated while it's read, never held in memory
+     */
+    private static class GeneratedStream extends InputStream {
+        private final long size;
+        private long position;
+
+        private GeneratedStream(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            return position < size ? (int) (position++ % 251) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= size) {
+                return -1;
+            }
+            int count = (int) Math.min(len, size - position);
+            for (int i = 0; i < count; i++) {
+                b[off + i] = (byte) (position++ % 251);
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.lkq.instadocker.docker;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DockerContainerDaemonCallsTest {
+
+    private StubDockerClient stubClient;
+    private DockerContainer subject;
+
+    @BeforeEach
+    void setUp() {
+        stubClient = new StubDockerClient().imageExists(true);
+        subject = new DockerContainer(stubClient.client(), "busybox:latest", "daemon-calls-test", null);
+    }
+
+    @Test
+    void ensureExistsInspectsOnceWhenContainerExists() {
+        stubClient.existingContainer(false);
+
+        assertTrue(subject.ensureExists(), "container should exist");
+
+        assertEquals(1, subject.daemonCalls().total());
+    }
+
+    @Test
+    void ensureRunningReusesStateFromEnsureExists() {
+        stubClient.existingContainer(true);
+
+        assertTrue(subject.ensureExists(), "container should exist");
+        assertTrue(subject.ensureRunning(), "container should be running");
+
+        assertEquals(1, subject.daemonCalls().count("inspectContainer"));
+        assertEquals(0, subject.daemonCalls().count("startContainer"));
+    }
+
+    @Test
+    void ensureExistsTrustsCreateResponse() {
+        assertTrue(subject.ensureExists(), "container should be created");
+
+        assertTrue(stubClient.containerExists(), "container should be created");
+        assertEquals(1, subject.daemonCalls().count("inspectContainer"));
+        assertEquals(1, subject.daemonCalls().count("createContainer"));
+    }
+
+    @Test
+    void createOrReplaceRemovesWithoutReInspecting() {
+        stubClient.existingContainer(true);
+
+        assertTrue(subject.createOrReplace(), "container should be replaced");
+
+        assertEquals(1, subject.daemonCalls().count("inspectContainer"));
+        assertEquals(1, subject.daemonCalls().count("removeContainer"));
+        assertEquals(1, subject.daemonCalls().count("createContainer"));
+    }
+
+    @Test
+    void ensureRunningReusesStateFromCreate() {
+        assertTrue(subject.createOrReplace(), "container should be created");
+        assertTrue(subject.ensureRunning(), "container should be running");
+
+        assertTrue(stubClient.containerRunning(), "container should be running");
+        // one before create, one to verify the container is running after start
+        assertEquals(2, subject.daemonCalls().count("inspectContainer"));
+    }
+
+    @Test
+    void inspectsAgainForLaterSteps() {
+        assertTrue(subject.createOrReplace(), "container should be created");
+        assertTrue(subject.ensureRunning(), "container should be running");
+        assertTrue(subject.ensureStopped(1), "container should be stopped");
+        assertFalse(subject.isRunning(), "container should not be running");
+        assertTrue(subject.ensureRunning(), "container should be running again");
+
+        assertEquals(6, subject.daemonCalls().count("inspectContainer"));
+        assertEquals(2, subject.daemonCalls().count("startContainer"));
+    }
+
+    @Test
+    void reuseIfIdenticalStartsExistingContainerWithoutRecreating() {
+        assertTrue(subject.reuseIfIdentical(), "container should be created");
+        DockerContainer nextRun = new DockerContainer(stubClient.client(), "busybox:latest", "daemon-calls-test", null);
+
+        assertTrue(nextRun.reuseIfIdentical(), "container should be reused");
+        assertTrue(nextRun.ensureRunning(), "container should be running");
+
+        assertEquals(0, nextRun.daemonCalls().count("removeContainer"));
+        assertEquals(0, nextRun.daemonCalls().count("createContainer"));
+        // one to read the spec hash, one to verify the container is running after start
+        assertEquals(2, nextRun.daemonCalls().count("inspectContainer"));
+        assertEquals(1, nextRun.daemonCalls().count("startContainer"));
+    }
+
+    @Test
+    void reuseIfIdenticalReplacesContainerOnDrift() {
+        assertTrue(subject.reuseIfIdentical(), "container should be created");
+        String createdId = stubClient.containerId();
+
+        subject.environmentVariables(Collections.singletonList("MODE=changed"));
+        assertTrue(subject.reuseIfIdentical(), "container should be replaced");
+
+        assertEquals(1, subject.daemonCalls().count("removeContainer"));
+        assertEquals(2, subject.daemonCalls().count("createContainer"));
+        assertNotEquals(createdId, stubClient.containerId());
+    }
+
+    @Test
+    void reuseIfIdenticalReplacesContainerWithoutSpecHash() {
+        stubClient.existingContainer(true);
+
+        assertTrue(subject.reuseIfIdentical(), "container should be replaced");
+
+        assertEquals(1, subject.daemonCalls().count("removeContainer"));
+        assertEquals(1, subject.daemonCalls().count("createContainer"));
+    }
+
+    @Test
+    void ensureNotExistsRemovesExistingContainer() {
+        stubClient.existingContainer(true);
+
+        assertTrue(subject.ensureNotExists(), "container should be removed");
+        assertTrue(subject.ensureNotExists(), "container should not exist");
+
+        assertFalse(stubClient.containerExists(), "container should be removed");
+        assertEquals(1, subject.daemonCalls().count("removeContainer"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.model.StreamType;
+import com.github.lkq.instadocker.docker.log.LogLine;
+import com.github.lkq.instadocker.exception.InstaDockerException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DockerContainerExecTest {
+
+    private final FakeDockerEngine engine = new FakeDockerEngine().image("postgres:latest");
+    private final DockerContainer subject = new DockerContainer(engine.client(), "postgres:latest", "exec-test", null);
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    void capturesOutputAndExitCode() {
+        engine.execScript("psql -f seed.sql", 3, 0, "CREATE TABLE", "stderr:ERROR: relation exists");
+        start();
+
+        ExecResult result = subject.exec(5, "psql", "-f", "seed.sql");
+
+        assertEquals(Integer.valueOf(3), result.exitCode());
+        assertFalse(result.succeeded());
+        assertFalse(result.timedOut());
+        assertEquals("CREATE TABLE", result.stdout());
+        assertEquals("ERROR: relation exists", result.stderr());
+        assertEquals(1, subject.daemonCalls().count("execCreate"));
+    }
+
+    @Test
+    void streamsOutputLinesToConsumer() {
+        engine.execScript("seed.sh", 0, 0, "step 1", "step 2", "stderr:warning");
+        start();
+        List<LogLine> lines = new CopyOnWriteArrayList<>();
+
+        ExecResult result = subject.exec(lines::add, 5, "seed.sh");
+
+        assertTrue(result.succeeded());
+        assertTrue(result.output().isEmpty(), "streamed output should not be captured");
+        assertEquals(3, lines.size());
+        assertEquals("step 1", lines.get(0).line());
+        assertEquals(StreamType.STDERR, lines.get(2).streamType());
+    }
+
+    @Test
+    void timesOutWithoutExitCode() {
+        engine.execScript("sleep 10", 0, 3000);
+        start();
+
+        ExecResult result = subject.exec(1, "sleep", "10");
+
+        assertTrue(result.timedOut());
+        assertNull(result.exitCode());
+    }
+
+    @Test
+    void runsExecsConcurrently() {
+        engine.execScript("load.sh", 0, 500, "loaded");
+        start();
+
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<ExecResult>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(subject.execAsync(null, 5, "load.sh"));
+        }
+        results.forEach(result -> assertTrue(result.join().succeeded()));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(8, engine.maxActiveExecs(), "all execs should run at the same time");
+        assertTrue(elapsed < 3000, "execs should run concurrently, took " + elapsed + "ms");
+    }
+
+    @Test
+    void failsWhenContainerNotRunning() {
+        assertTrue(subject.createOrReplace());
+
+        assertThrows(InstaDockerException.class, () -> subject.exec(5, "ls"));
+    }
+
+    private void start() {
+        assertTrue(subject.createOrReplace(), "container should be created");
+        assertTrue(subject.ensureRunning(), "container should be running");
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.model.InternetProtocol;
+import com.github.lkq.instadocker.docker.entity.PortBinding;
+import com.github.lkq.instadocker.docker.probe.TcpProbe;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DockerContainerPortBindingTest {
+
+    private final StubDockerClient stubClient = new StubDockerClient().imageExists(true);
+    private final DockerContainer subject = new DockerContainer(stubClient.client(), "busybox:latest", "port-binding-test", null);
+
+    @Test
+    void resolvesHostPortPickedByDaemonAfterStart() {
+        subject.anyHostPortBinding(InternetProtocol.TCP.name(), 8080)
+                .portBinding(InternetProtocol.TCP.name(), 8081, 18081);
+        assertThrows(IllegalStateException.class, () -> subject.hostPort(8080));
+
+        assertTrue(subject.createOrReplace(), "container should be created");
+        assertTrue(subject.ensureRunning(), "container should be running");
+
+        assertEquals(49153, subject.hostPort(8080));
+        assertEquals(49153, subject.hostPort(PortBinding.anyHostPort(InternetProtocol.TCP.name(), 8080)));
+        assertEquals(18081, subject.hostPort(8081));
+    }
+
+    @Test
+    void tcpProbeFollowsHostPortOfRecreatedContainer() {
+        PortBinding portBinding = PortBinding.anyHostPort(InternetProtocol.TCP.name(), 8080);
+        TcpProbe probe = new TcpProbe(portBinding);
+        subject.portBindings(Collections.singletonList(portBinding)).readinessProbe(probe);
+
+        assertTrue(subject.createOrReplace() && subject.ensureRunning(), "container should be running");
+        probeQuietly(probe);
+        assertEquals("tcp://localhost:49153", probe.name());
+
+        assertTrue(subject.createOrReplace() && subject.ensureRunning(), "container should be running again");
+        probeQuietly(probe);
+        assertEquals("tcp://localhost:49154", probe.name(), "probe should dial the port bound to the new container");
+    }
+
+    private static void probeQuietly(TcpProbe probe) {
+        try {
+            probe.ready();
+        } catch (IOException e) {
+            // nothing listens on the stubbed port
+        }
+    }
+
+    @Test
+    void releasesReservedPortOnceContainerIsStarted() throws Exception {
+        Path lockDirectory = Files.createTempDirectory("insta-docker-ports");
+        PortReservations reservations = new PortReservations(lockDirectory, 10);
+        PortReservation reservation = reservations.reserve();
+        subject.portBinding(InternetProtocol.TCP.name(), 8080, reservation);
+
+        assertTrue(subject.createOrReplace(), "container should be created");
+        assertTrue(reservations.reserved(reservation.port()), "port should be reserved until the container is started");
+        assertTrue(subject.ensureRunning(), "container should be running");
+
+        assertFalse(reservations.reserved(reservation.port()), "port should be released after start");
+        assertEquals(reservation.port(), subject.hostPort(8080));
+    }
+
+    @Test
+    void releasesReservedPortWhenCreateOrStartFails() throws Exception {
+        PortReservations reservations = new PortReservations(Files.createTempDirectory("insta-docker-ports"), 10);
+        try (FakeDockerEngine engine = new FakeDockerEngine().image("busybox:latest")) {
+            PortReservation createReservation = reservations.reserve();
+            DockerContainer createFails = new DockerContainer(engine.client(), "busybox:latest", "port-create-fails", null)
+                    .portBinding(InternetProtocol.TCP.name(), 8080, createReservation);
+            engine.failNext("createContainer", 500, 1);
+            assertThrows(RuntimeException.class, createFails::createOrReplace);
+            assertFalse(reservations.reserved(createReservation.port()), "port should be released after a failed create");
+
+            PortReservation startReservation = reservations.reserve();
+            DockerContainer startFails = new DockerContainer(engine.client(), "busybox:latest", "port-start-fails", null)
+                    .portBinding(InternetProtocol.TCP.name(), 8080, startReservation);
+            assertTrue(startFails.createOrReplace());
+            engine.failNext("startContainer", 500, 1);
+            assertThrows(RuntimeException.class, startFails::ensureRunning);
+            assertFalse(reservations.reserved(startReservation.port()), "port should be released after a failed start");
+            startFails.ensureNotExists();
+        }
+    }
+
+    @Test
+    void releasesReservedPortWhenContainerIsRunningOrRemoved() throws Exception {
+        PortReservations reservations = new PortReservations(Files.createTempDirectory("insta-docker-ports"), 10);
+        PortReservation runningReservation = reservations.reserve();
+        PortReservation removedReservation = reservations.reserve();
+        stubClient.existingContainer(true);
+        DockerContainer running = new DockerContainer(stubClient.client(), "busybox:latest", "port-binding-test", null)
+                .portBinding(InternetProtocol.TCP.name(), 8080, runningReservation);
+        DockerContainer removed = new DockerContainer(stubClient.client(), "busybox:latest", "port-binding-test", null)
+                .portBinding(InternetProtocol.TCP.name(), 8080, removedReservation);
+
+        assertTrue(running.ensureRunning(), "container should be running");
+        assertFalse(reservations.reserved(runningReservation.port()), "port should be released when the container is already running");
+
+        assertTrue(removed.ensureNotExists());
+        assertFalse(reservations.reserved(removedReservation.port()), "port should be released when the container is removed");
+    }
+}
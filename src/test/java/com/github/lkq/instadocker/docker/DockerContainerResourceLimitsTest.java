@@ -0,0 +1,82 @@
+package com.github.lkq.instadocker.docker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.lkq.instadocker.docker.entity.ResourceLimits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DockerContainerResourceLimitsTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private final FakeDockerEngine engine = new FakeDockerEngine().image("busybox:latest");
+    private final DockerContainer subject = new DockerContainer(engine.client(), "busybox:latest", "resource-limits-test", null);
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    void appliesLimitsToHostConfig() {
+        subject.resourceLimits(new ResourceLimits()
+                .cpus(1.5)
+                .cpuShares(512)
+                .cpusetCpus("2,3")
+                .cpusetMems("0")
+                .memory(512 * MB)
+                .memoryReservation(256 * MB)
+                .memorySwap(512 * MB)
+                .pidsLimit(256)
+                .shmSize(128 * MB)
+                .blkioWeight(500));
+
+        assertTrue(subject.createOrReplace(), "container should be created");
+
+        JsonNode hostConfig = engine.hostConfig("resource-limits-test");
+        assertEquals(150000, hostConfig.path("CpuQuota").asLong());
+        assertEquals(100000, hostConfig.path("CpuPeriod").asLong());
+        assertEquals(512, hostConfig.path("CpuShares").asInt());
+        assertEquals("2,3", hostConfig.path("CpusetCpus").asText());
+        assertEquals("0", hostConfig.path("CpusetMems").asText());
+        assertEquals(512 * MB, hostConfig.path("Memory").asLong());
+        assertEquals(256 * MB, hostConfig.path("MemoryReservation").asLong());
+        assertEquals(512 * MB, hostConfig.path("MemorySwap").asLong());
+        assertEquals(256, hostConfig.path("PidsLimit").asLong());
+        assertEquals(128 * MB, hostConfig.path("ShmSize").asLong());
+        assertEquals(500, hostConfig.path("BlkioWeight").asInt());
+    }
+
+    @Test
+    void leavesUnsetLimitsToDaemon() {
+        subject.resourceLimits(new ResourceLimits().memory(64 * MB));
+
+        assertTrue(subject.createOrReplace(), "container should be created");
+
+        JsonNode hostConfig = engine.hostConfig("resource-limits-test");
+        assertEquals(64 * MB, hostConfig.path("Memory").asLong());
+        assertTrue(hostConfig.path("CpuQuota").isMissingNode() || hostConfig.path("CpuQuota").isNull(), "cpu quota should not be set");
+    }
+
+    @Test
+    void rejectsInvalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new ResourceLimits().cpusetCpus("0-"));
+        assertThrows(IllegalArgumentException.class, () -> new ResourceLimits().memory(MB));
+        assertThrows(IllegalArgumentException.class, () -> new ResourceLimits().blkioWeight(5));
+        assertThrows(IllegalArgumentException.class, () -> new ResourceLimits().cpuQuota(50000, 10));
+        assertThrows(IllegalArgumentException.class, () -> subject.resourceLimits(new ResourceLimits().memorySwap(64 * MB)));
+        assertThrows(IllegalArgumentException.class, () -> subject.resourceLimits(new ResourceLimits().memory(64 * MB).memoryReservation(128 * MB)));
+        assertThrows(IllegalArgumentException.class, () -> subject.resourceLimits(new ResourceLimits().memory(128 * MB).memorySwap(64 * MB)));
+    }
+
+    @Test
+    void limitsArePartOfSpecHash() {
+        String specHash = subject.specHash();
+
+        subject.resourceLimits(new ResourceLimits().cpusetCpus("0"));
+
+        assertNotEquals(specHash, subject.specHash());
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.lkq.instadocker.docker.stats.ResourceSample;
+import com.github.lkq.instadocker.docker.stats.ResourceSeries;
+import com.github.lkq.instadocker.docker.stats.ResourceSummary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DockerContainerStatsTest {
+
+    private final FakeDockerEngine engine = new FakeDockerEngine().image("postgres:latest")
+            .statsInterval(50)
+            .resourceUsage(150, 64L * 1024 * 1024, 10_000, 4_000);
+    private final DockerContainer subject = new DockerContainer(engine.client(), "postgres:latest", "stats-test", null);
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    void turnsCountersIntoRates() throws InterruptedException {
+        subject.collectStats(100);
+        start();
+
+        ResourceSeries series = awaitSamples(5);
+        ResourceSample sample = series.latest().orElseThrow(AssertionError::new);
+
+        assertEquals(150, sample.cpuPercent(), 1);
+        assertEquals(64L * 1024 * 1024, sample.memoryRssBytes());
+        assertEquals(10_000, sample.networkRxBytesPerSecond(), 100);
+        assertEquals(5_000, sample.networkTxBytesPerSecond(), 100);
+        assertEquals(4_000, sample.blockReadBytesPerSecond(), 100);
+        assertEquals(2_000, sample.blockWriteBytesPerSecond(), 100);
+        assertEquals(1, subject.daemonCalls().count("stats"));
+    }
+
+    @Test
+    void keepsSummaryAfterStop() throws InterruptedException {
+        subject.collectStats(3);
+        start();
+        awaitSamples(6);
+
+        assertTrue(subject.ensureStopped(1));
+        long recorded = subject.resourceStats().get().recorded();
+        Thread.sleep(200);
+
+        ResourceSeries series = subject.resourceStats().get();
+        assertEquals(recorded, series.recorded(), "no samples should be recorded once stopped");
+        assertEquals(3, series.samples().size());
+        ResourceSummary summary = series.summary();
+        assertEquals(3, summary.samples());
+        assertEquals(150, summary.cpuPercent().percentile(0.95), 1);
+        assertEquals(64L * 1024 * 1024, summary.memoryRssBytes().max(), 0.001);
+    }
+
+    @Test
+    void attachesAgainAfterStreamEnded() throws InterruptedException {
+        subject.collectStats(100);
+        start();
+        awaitSamples(2);
+
+        engine.client().stopContainerCmd("stats-test").exec();
+        engine.client().startContainerCmd("stats-test").exec();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (subject.daemonCalls().count("stats") < 2 && System.currentTimeMillis() < deadline) {
+            assertTrue(subject.ensureRunning(), "container should be running");
+            Thread.sleep(20);
+        }
+
+        assertEquals(2, subject.daemonCalls().count("stats"), "stats should be followed again once the stream ended");
+        long recorded = subject.resourceStats().get().recorded();
+        awaitSamples((int) recorded + 2);
+    }
+
+    @Test
+    void doesNotFollowStatsUnlessEnabled() {
+        start();
+
+        assertFalse(subject.resourceStats().isPresent());
+        assertEquals(0, engine.requests("stats"));
+    }
+
+    private ResourceSeries awaitSamples(int samples) throws InterruptedException {
+        ResourceSeries series = subject.resourceStats().orElseThrow(AssertionError::new);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (series.recorded() < samples && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(series.recorded() >= samples, "expected " + samples + " samples, got " + series.recorded());
+        return series;
+    }
+
+    private void start() {
+        assertTrue(subject.createOrReplace(), "container should be created");
+        assertTrue(subject.ensureRunning(), "container should be running");
+    }
+}
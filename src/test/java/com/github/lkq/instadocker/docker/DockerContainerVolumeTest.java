@@ -0,0 +1,72 @@
+package com.github.lkq.instadocker.docker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.lkq.instadocker.docker.entity.VolumeBinding;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DockerContainerVolumeTest {
+
+    private final FakeDockerEngine engine = new FakeDockerEngine().image("postgres:latest");
+    private final DockerContainer subject = new DockerContainer(engine.client(), "postgres:latest", "volume-test", null);
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    void mountsTmpfsWithSizeAndMode() {
+        subject.volumeBinding(VolumeBinding.tmpfs("/var/lib/postgresql/data", 256L * 1024 * 1024, 0700))
+                .tmpfs("/tmp", 0);
+
+        assertTrue(subject.createOrReplace(), "container should be created");
+
+        JsonNode tmpfs = engine.hostConfig("volume-test").path("Tmpfs");
+        assertEquals("rw,size=268435456,mode=700", tmpfs.path("/var/lib/postgresql/data").asText());
+        assertEquals("rw", tmpfs.path("/tmp").asText());
+    }
+
+    @Test
+    void bindsNamedVolumesAndHostPaths() {
+        subject.volumeBinding(VolumeBinding.namedVolume("pg-data", "/var/lib/postgresql/data"))
+                .volumeBinding(new VolumeBinding("/docker-entrypoint-initdb.d", "/tmp/init").readOnly().consistency(VolumeBinding.Consistency.CACHED));
+
+        assertTrue(subject.createOrReplace(), "container should be created");
+
+        JsonNode binds = engine.hostConfig("volume-test").path("Binds");
+        assertEquals(2, binds.size());
+        assertEquals("pg-data:/var/lib/postgresql/data:rw", binds.get(0).asText());
+        assertEquals("/tmp/init:/docker-entrypoint-initdb.d:ro,cached", binds.get(1).asText());
+    }
+
+    @Test
+    void mountsAnonymousVolumes() {
+        subject.volumeBinding(VolumeBinding.anonymousVolume("/var/lib/kafka").readOnly());
+
+        assertTrue(subject.createOrReplace(), "container should be created");
+
+        JsonNode mount = engine.hostConfig("volume-test").path("Mounts").get(0);
+        assertEquals("volume", mount.path("Type").asText());
+        assertEquals("/var/lib/kafka", mount.path("Target").asText());
+        assertTrue(mount.path("ReadOnly").asBoolean());
+        assertFalse(mount.has("Source") && !mount.path("Source").isNull(), "anonymous volume should have no source");
+    }
+
+    @Test
+    void rejectsConsistencyOfTmpfs() {
+        assertThrows(IllegalArgumentException.class, () -> VolumeBinding.tmpfs("/tmp", 0, 0).consistency(VolumeBinding.Consistency.DELEGATED));
+        assertThrows(IllegalArgumentException.class, () -> VolumeBinding.anonymousVolume("/data").consistency(VolumeBinding.Consistency.CACHED));
+    }
+
+    @Test
+    void volumesArePartOfSpecHash() {
+        String specHash = subject.specHash();
+
+        subject.tmpfs("/var/lib/postgresql/data", 0);
+
+        assertNotEquals(specHash, subject.specHash());
+    }
+}
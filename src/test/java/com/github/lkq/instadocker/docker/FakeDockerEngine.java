@@ -0,0 +1,1146 @@
+package com.github.lkq.instadocker.docker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientBuilder;
+import com.github.dockerjava.jaxrs.JerseyDockerCmdExecFactory;
+import com.github.lkq.instadocker.util.InstaExecutors;
+import com.sun.net.httpserver.HttpExchange;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * an in-process server speaking the subset of the docker engine http api used by insta-docker: image inspect, pull, list
+ * and remove, container list, inspect, create, start, stop, remove, commit and logs, and events. it runs with a real docker-java client, so the
+ * whole stack is tested without a daemon, with configurable latency and failures to reproduce a slow or flaky daemon.
+ * it listens on a local tcp port, the jdk http server has no unix socket support.
+ */
+public class FakeDockerEngine implements Closeable {
+    private static final Logger logger = getLogger(FakeDockerEngine.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Pattern VERSION_PREFIX = Pattern.compile("^/v\\d+\\.\\d+");
+    private static final Pattern IMAGE_INSPECT = Pattern.compile("^/images/(.+)/json$");
+    private static final Pattern IMAGE_SAVE = Pattern.compile("^/images/(.+)/get$");
+    private static final Pattern CONTAINER_ACTION = Pattern.compile("^/containers/([^/]+)/(json|start|stop|logs|stats)$");
+    private static final Pattern CONTAINER_EXEC = Pattern.compile("^/containers/([^/]+)/exec$");
+    private static final Pattern EXEC_ACTION = Pattern.compile("^/exec/([^/]+)/(start|json)$");
+    private static final Pattern CONTAINER_ARCHIVE = Pattern.compile("^/containers/([^/]+)/archive$");
+    private static final Pattern CONTAINER = Pattern.compile("^/containers/([^/]+)$");
+    private static final Pattern IMAGE = Pattern.compile("^/images/(.+)$");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(InstaExecutors.daemonThreadFactory("fake-docker-engine"));
+
+    private final Set<String> images = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> imageSizes = new ConcurrentHashMap<>();
+    private final Map<String, Container> containers = new ConcurrentHashMap<>();
+    private final Map<String, ExecScript> execScripts = new ConcurrentHashMap<>();
+    private final Map<String, Exec> execs = new ConcurrentHashMap<>();
+    private final AtomicInteger activeExecs = new AtomicInteger();
+    private final AtomicInteger maxActiveExecs = new AtomicInteger();
+    private final List<EventStream> eventStreams = new CopyOnWriteArrayList<>();
+    private final List<String> startupLogs = new CopyOnWriteArrayList<>();
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final Map<String, Failure> failures = new ConcurrentHashMap<>();
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final AtomicInteger nextHostPort = new AtomicInteger(49153);
+
+    private volatile long minLatencyMillis = 0;
+    private volatile long maxLatencyMillis = 0;
+    private volatile double failureRate = 0;
+    private volatile long commitSize = 100;
+    private volatile int archiveSize = 1024;
+    private volatile long statsIntervalMillis = 1000;
+    private volatile ResourceUsage resourceUsage = new ResourceUsage(0, 0, 0, 0);
+    private volatile DockerClient client;
+
+    public FakeDockerEngine() {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 512);
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to start fake docker engine", e);
+        }
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        logger.info("fake docker engine started, dockerHost={}", dockerHost());
+    }
+
+    public String dockerHost() {
+        return "tcp://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return a docker-java client connected to this engine, with a connection pool large enough for hundreds of containers
+     * following their logs
+     */
+    public synchronized DockerClient client() {
+        if (client == null) {
+            DefaultDockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
+                    .withDockerHost(dockerHost())
+                    .withDockerTlsVerify(false)
+                    .build();
+            client = DockerClientBuilder.getInstance(config)
+                    .withDockerCmdExecFactory(new JerseyDockerCmdExecFactory()
+                            .withMaxTotalConnections(2048)
+                            .withMaxPerRouteConnections(2048))
+                    .build();
+        }
+        return client;
+    }
+
+    public FakeDockerEngine image(String image) {
+        images.add(normalize(image));
+        return this;
+    }
+
+    public boolean imageExists(String image) {
+        return images.contains(normalize(image));
+    }
+
+    /**
+     * @param commitSize size of the images committed from containers, as reported by the image list
+     * @return this
+     */
+    public FakeDockerEngine commitSize(long commitSize) {
+        this.commitSize = commitSize;
+        return this;
+    }
+
+    /**
+     * @param archiveSize size of the archives of saved images
+     * @return this
+     */
+    public FakeDockerEngine archiveSize(int archiveSize) {
+        this.archiveSize = archiveSize;
+        return this;
+    }
+
+    /**
+     * @param statsIntervalMillis time between the samples of the stats streams, the daemon sends one per second
+     * @return this
+     */
+    public FakeDockerEngine statsInterval(long statsIntervalMillis) {
+        this.statsIntervalMillis = statsIntervalMillis;
+        return this;
+    }
+
+    /**
+     * @param cpuPercent             cpu usage of the running containers, 100 per fully used cpu of the 2 cpus
+     * @param rssBytes               resident memory of the running containers
+     * @param networkBytesPerSecond  bytes received and sent per second
+     * @param blockIoBytesPerSecond  bytes read and written per second
+     * @return this
+     */
+    public FakeDockerEngine resourceUsage(double cpuPercent, long rssBytes, long networkBytesPerSecond, long blockIoBytesPerSecond) {
+        this.resourceUsage = new ResourceUsage(cpuPercent, rssBytes, networkBytesPerSecond, blockIoBytesPerSecond);
+        return this;
+    }
+
+    /**
+     * @param command     the command line executed, arguments separated by spaces
+     * @param exitCode    exit code of the command
+     * @param delayMillis time the command runs before its output ends
+     * @param lines       output of the command, lines starting with stderr: go to stderr, others to stdout.
+     *                    commands not scripted echo their command line and exit with 0
+     * @return this
+     */
+    public FakeDockerEngine execScript(String command, int exitCode, long delayMillis, String... lines) {
+        execScripts.put(command, new ExecScript(exitCode, delayMillis, Arrays.asList(lines)));
+        return this;
+    }
+
+    /**
+     * @return max number of execs running at the same time
+     */
+    public int maxActiveExecs() {
+        return maxActiveExecs.get();
+    }
+
+    /**
+     * @param minMillis min delay before each request is handled
+     * @param maxMillis max delay before each request is handled
+     * @return this
+     */
+    public FakeDockerEngine latency(long minMillis, long maxMillis) {
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = Math.max(minMillis, maxMillis);
+        return this;
+    }
+
+    /**
+     * @param failureRate fraction of the requests answered with a 500, streams excluded
+     * @return this
+     */
+    public FakeDockerEngine failureRate(double failureRate) {
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /**
+     * @param operation the operation, e.g. createContainer, see {@link #requests(String)}
+     * @param status    the status to answer with
+     * @param times     number of requests to fail
+     * @return this
+     */
+    public FakeDockerEngine failNext(String operation, int status, int times) {
+        failures.put(operation, new Failure(status, times));
+        return this;
+    }
+
+    /**
+     * @param lines lines logged by every container when it's started
+     * @return this
+     */
+    public FakeDockerEngine startupLogs(String... lines) {
+        startupLogs.addAll(Arrays.asList(lines));
+        return this;
+    }
+
+    /**
+     * @param containerName the container
+     * @param line          a line logged by the container
+     */
+    public void log(String containerName, String line) {
+        container(containerName).orElseThrow(() -> new IllegalArgumentException("no such container: " + containerName)).log(line);
+    }
+
+    /**
+     * @param operation one of inspectImage, pullImage, listImages, removeImage, inspectContainer, createContainer, startContainer,
+     *                  stopContainer, removeContainer, listContainers, commitContainer, logContainer, events
+     * @return number of requests received for the operation
+     */
+    public int requests(String operation) {
+        AtomicInteger count = requests.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    public int requests() {
+        return requests.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    /**
+     * @return number of log and event streams open
+     */
+    public int activeStreams() {
+        return activeStreams.get();
+    }
+
+    /**
+     * @return the host config the container was created with, as sent by the client
+     */
+    public JsonNode hostConfig(String containerName) {
+        return container(containerName).orElseThrow(() -> new IllegalArgumentException("no such container: " + containerName)).config.path("HostConfig");
+    }
+
+    public boolean containerExists(String containerName) {
+        return container(containerName).isPresent();
+    }
+
+    /**
+     * @return content of a file copied into the container, empty if there's no such file
+     */
+    public Optional<byte[]> containerFile(String containerName, String path) {
+        return container(containerName).map(container -> container.files.get(path));
+    }
+
+    /**
+     * @param path the file path in the container
+     * @param content the file content, as if created by the container
+     */
+    public void containerFile(String containerName, String path, byte[] content) {
+        container(containerName).orElseThrow(() -> new IllegalArgumentException("no such container: " + containerName)).files.put(path, content);
+    }
+
+    public boolean containerRunning(String containerName) {
+        return container(containerName).map(container -> container.running).orElse(false);
+    }
+
+    public long runningContainers() {
+        return containers.values().stream().filter(container -> container.running).count();
+    }
+
+    @Override
+    public void close() {
+        DockerClient current = client;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+            }
+        }
+        containers.values().forEach(Container::stop);
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = VERSION_PREFIX.matcher(exchange.getRequestURI().getPath()).replaceFirst("");
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+            Matcher imageInspect = IMAGE_INSPECT.matcher(path);
+            Matcher imageSave = IMAGE_SAVE.matcher(path);
+            Matcher containerAction = CONTAINER_ACTION.matcher(path);
+            Matcher containerArchive = CONTAINER_ARCHIVE.matcher(path);
+            Matcher containerExec = CONTAINER_EXEC.matcher(path);
+            Matcher execAction = EXEC_ACTION.matcher(path);
+            Matcher container = CONTAINER.matcher(path);
+            Matcher imageRemove = IMAGE.matcher(path);
+            if ("/_ping".equals(path)) {
+                respond(exchange, 200, "OK");
+            } else if ("/version".equals(path)) {
+                json(exchange, 200, mapOf("Version", "18.09.0", "ApiVersion", "1.39"));
+            } else if ("/images/json".equals(path) && "GET".equals(method)) {
+                operation(exchange, "listImages", body -> listImages(exchange, query));
+            } else if (imageInspect.matches() && "GET".equals(method)) {
+                String image = imageInspect.group(1);
+                operation(exchange, "inspectImage", body -> inspectImage(exchange, image));
+            } else if (imageSave.matches() && "GET".equals(method)) {
+                String image = imageSave.group(1);
+                operation(exchange, "saveImage", body -> saveImage(exchange, image));
+            } else if ("/images/load".equals(path) && "POST".equals(method)) {
+                operation(exchange, "loadImage", body -> loadImage(exchange, body));
+            } else if ("/images/create".equals(path) && "POST".equals(method)) {
+                operation(exchange, "pullImage", body -> pullImage(exchange, query));
+            } else if ("/containers/json".equals(path) && "GET".equals(method)) {
+                operation(exchange, "listContainers", body -> listContainers(exchange, query));
+            } else if ("/containers/create".equals(path) && "POST".equals(method)) {
+                operation(exchange, "createContainer", body -> createContainer(exchange, query, body));
+            } else if (containerAction.matches()) {
+                String id = containerAction.group(1);
+                switch (containerAction.group(2)) {
+                    case "json":
+                        operation(exchange, "inspectContainer", body -> inspectContainer(exchange, id));
+                        break;
+                    case "start":
+                        operation(exchange, "startContainer", body -> startContainer(exchange, id));
+                        break;
+                    case "stop":
+                        operation(exchange, "stopContainer", body -> stopContainer(exchange, id));
+                        break;
+                    case "stats":
+                        operation(exchange, "stats", body -> stats(exchange, id));
+                        break;
+                    default:
+                        operation(exchange, "logContainer", body -> logs(exchange, id, query));
+                }
+            } else if (containerExec.matches() && "POST".equals(method)) {
+                String id = containerExec.group(1);
+                operation(exchange, "execCreate", body -> createExec(exchange, id, body));
+            } else if (execAction.matches() && "start".equals(execAction.group(2))) {
+                String id = execAction.group(1);
+                operation(exchange, "execStart", body -> startExec(exchange, id));
+            } else if (execAction.matches()) {
+                String id = execAction.group(1);
+                operation(exchange, "inspectExec", body -> inspectExec(exchange, id));
+            } else if (containerArchive.matches() && "PUT".equals(method)) {
+                String id = containerArchive.group(1);
+                operation(exchange, "copyArchiveToContainer", body -> putArchive(exchange, id, query));
+            } else if (containerArchive.matches() && "GET".equals(method)) {
+                String id = containerArchive.group(1);
+                operation(exchange, "copyArchiveFromContainer", body -> getArchive(exchange, id, query));
+            } else if (container.matches() && "DELETE".equals(method)) {
+                String id = container.group(1);
+                operation(exchange, "removeContainer", body -> removeContainer(exchange, id));
+            } else if (imageRemove.matches() && "DELETE".equals(method)) {
+                String name = imageRemove.group(1);
+                operation(exchange, "removeImage", body -> removeImage(exchange, name));
+            } else if ("/commit".equals(path) && "POST".equals(method)) {
+                operation(exchange, "commitContainer", body -> commitContainer(exchange, query));
+            } else if ("/events".equals(path)) {
+                operation(exchange, "events", body -> events(exchange, query));
+            } else {
+                error(exchange, 404, "page not found: " + method + " " + path);
+            }
+        } catch (IOException e) {
+            logger.debug("fake docker engine failed to respond, uri={}", exchange.getRequestURI(), e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void operation(HttpExchange exchange, String operation, Handler handler) throws IOException {
+        requests.computeIfAbsent(operation, key -> new AtomicInteger()).incrementAndGet();
+        // archives are read by the handler as they're streamed
+        String body = "copyArchiveToContainer".equals(operation) ? null : readBody(exchange.getRequestBody());
+        delay();
+        Failure failure = failures.get(operation);
+        if (failure != null && failure.remaining.getAndDecrement() > 0) {
+            error(exchange, failure.status, "injected failure of " + operation);
+            return;
+        }
+        boolean stream = "logContainer".equals(operation) || "events".equals(operation) || "stats".equals(operation);
+        if (!stream && failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            error(exchange, 500, "injected random failure of " + operation);
+            return;
+        }
+        handler.handle(body);
+    }
+
+    private void inspectImage(HttpExchange exchange, String image) throws IOException {
+        if (images.contains(normalize(image))) {
+            json(exchange, 200, mapOf("Id", "sha256:" + Integer.toHexString(normalize(image).hashCode()), "RepoTags", Collections.singletonList(normalize(image))));
+        } else {
+            error(exchange, 404, "No such image: " + image);
+        }
+    }
+
+    private void listImages(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String filter = query.get("filter");
+        List<Object> list = new ArrayList<>();
+        for (String image : images) {
+            if (filter == null || image.substring(0, image.lastIndexOf(':')).equals(filter)) {
+                list.add(mapOf("Id", "sha256:" + Integer.toHexString(image.hashCode()),
+                        "RepoTags", Collections.singletonList(image),
+                        "Size", imageSizes.getOrDefault(image, 0L),
+                        "Created", Instant.now().getEpochSecond()));
+            }
+        }
+        json(exchange, 200, list);
+    }
+
+    /**
+     * the archive is the image name on the first line, padded to the archive size
+     */
+    private void saveImage(HttpExchange exchange, String image) throws IOException {
+        String name = normalize(image);
+        if (!images.contains(name)) {
+            error(exchange, 404, "No such image: " + image);
+            return;
+        }
+        StringBuilder archive = new StringBuilder(name).append('\n');
+        while (archive.length() < archiveSize) {
+            archive.append('x');
+        }
+        byte[] bytes = archive.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/x-tar");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private void loadImage(HttpExchange exchange, String archive) throws IOException {
+        int nameEnd = archive.indexOf('\n');
+        if (nameEnd <= 0) {
+            error(exchange, 400, "invalid image archive");
+            return;
+        }
+        String name = archive.substring(0, nameEnd);
+        images.add(name);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        writeJsonLine(exchange.getResponseBody(), mapOf("stream", "Loaded image: " + name + "\n"));
+    }
+
+    private void removeImage(HttpExchange exchange, String image) throws IOException {
+        String name = normalize(image);
+        if (!images.contains(name)) {
+            error(exchange, 404, "No such image: " + image);
+        } else if (containers.values().stream().anyMatch(container -> normalize(container.image).equals(name))) {
+            error(exchange, 409, "conflict: unable to remove repository reference \"" + image + "\", image is being used by a container");
+        } else {
+            images.remove(name);
+            imageSizes.remove(name);
+            json(exchange, 200, Collections.singletonList(mapOf("Untagged", name)));
+        }
+    }
+
+    private void commitContainer(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String id = query.get("container");
+        if (!container(id).isPresent()) {
+            error(exchange, 404, "No such container: " + id);
+            return;
+        }
+        String image = normalize(query.get("repo") + (query.containsKey("tag") ? ":" + query.get("tag") : ""));
+        images.add(image);
+        imageSizes.put(image, commitSize);
+        json(exchange, 201, mapOf("Id", "sha256:" + Integer.toHexString(image.hashCode())));
+    }
+
+    private void pullImage(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String image = query.get("fromImage");
+        if (query.containsKey("tag") && !query.get("tag").isEmpty()) {
+            image = image + ":" + query.get("tag");
+        }
+        image = normalize(image);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        writeJsonLine(body, mapOf("status", "Pulling from " + image));
+        writeJsonLine(body, mapOf("status", "Downloading", "id", "layer0", "progressDetail", mapOf("current", 1024, "total", 1024)));
+        images.add(image);
+        writeJsonLine(body, mapOf("status", "Status: Downloaded newer image for " + image));
+    }
+
+    private void createContainer(HttpExchange exchange, Map<String, String> query, String body) throws IOException {
+        JsonNode config = objectMapper.readTree(body);
+        String name = query.get("name");
+        if (name == null || name.isEmpty()) {
+            name = "fake-" + UUID.randomUUID().toString().substring(0, 8);
+        }
+        String image = config.path("Image").asText();
+        if (!images.contains(normalize(image))) {
+            error(exchange, 404, "No such image: " + image);
+            return;
+        }
+        Container container = new Container(name, image, config);
+        synchronized (containers) {
+            if (containers.containsKey(name)) {
+                error(exchange, 409, "Conflict. The container name \"/" + name + "\" is already in use");
+                return;
+            }
+            containers.put(name, container);
+        }
+        json(exchange, 201, mapOf("Id", container.id, "Warnings", Collections.emptyList()));
+    }
+
+    /**
+     * lists the containers with all the labels of the label filter, a label filter is either key or key=value
+     */
+    private void listContainers(HttpExchange exchange, Map<String, String> query) throws IOException {
+        List<String> labelFilters = new ArrayList<>();
+        if (query.containsKey("filters")) {
+            objectMapper.readTree(query.get("filters")).path("label").forEach(filter -> labelFilters.add(filter.asText()));
+        }
+        boolean all = "1".equals(query.get("all")) || "true".equals(query.get("all"));
+        List<Object> list = new ArrayList<>();
+        for (Container container : new ArrayList<>(containers.values())) {
+            Map<String, String> labels = container.labels();
+            boolean matches = labelFilters.stream().allMatch(filter -> {
+                int separator = filter.indexOf('=');
+                return separator < 0 ? labels.containsKey(filter) : filter.substring(separator + 1).equals(labels.get(filter.substring(0, separator)));
+            });
+            if (matches && (all || container.running)) {
+                list.add(mapOf("Id", container.id,
+                        "Names", Collections.singletonList("/" + container.name),
+                        "Image", container.image,
+                        "Labels", labels,
+                        "Created", container.created,
+                        "State", container.running ? "running" : "exited"));
+            }
+        }
+        json(exchange, 200, list);
+    }
+
+    private void createExec(HttpExchange exchange, String id, String body) throws IOException {
+        Optional<Container> container = container(id);
+        if (!container.isPresent()) {
+            error(exchange, 404, "No such container: " + id);
+        } else if (!container.get().running) {
+            error(exchange, 409, "Container " + id + " is not running");
+        } else {
+            List<String> command = new ArrayList<>();
+            objectMapper.readTree(body).path("Cmd").forEach(argument -> command.add(argument.asText()));
+            Exec exec = new Exec(String.join(" ", command));
+            execs.put(exec.id, exec);
+            json(exchange, 201, mapOf("Id", exec.id));
+        }
+    }
+
+    private void startExec(HttpExchange exchange, String id) throws IOException {
+        Exec exec = execs.get(id);
+        if (exec == null) {
+            error(exchange, 404, "No such exec instance: " + id);
+            return;
+        }
+        ExecScript script = execScripts.getOrDefault(exec.command, new ExecScript(0, 0, Collections.singletonList(exec.command)));
+        int active = activeExecs.incrementAndGet();
+        maxActiveExecs.accumulateAndGet(active, Math::max);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/vnd.docker.raw-stream");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+            for (String line : script.lines) {
+                if (line.startsWith("stderr:")) {
+                    writeFrame(body, 2, line.substring("stderr:".length()) + "\n");
+                } else {
+                    writeFrame(body, 1, line + "\n");
+                }
+            }
+            Thread.sleep(script.delayMillis);
+            exec.exitCode = script.exitCode;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            activeExecs.decrementAndGet();
+        }
+    }
+
+    private void inspectExec(HttpExchange exchange, String id) throws IOException {
+        Exec exec = execs.get(id);
+        if (exec == null) {
+            error(exchange, 404, "No such exec instance: " + id);
+        } else {
+            json(exchange, 200, mapOf("ID", exec.id, "Running", exec.exitCode == null, "ExitCode", exec.exitCode));
+        }
+    }
+
+    private void putArchive(HttpExchange exchange, String id, Map<String, String> query) throws IOException {
+        Optional<Container> container = container(id);
+        if (!container.isPresent()) {
+            readBody(exchange.getRequestBody());
+            error(exchange, 404, "No such container: " + id);
+            return;
+        }
+        String directory = query.getOrDefault("path", "/").replaceFirst("/$", "");
+        // the request stream of the http server skips past the chunk encoding, skips must read through it
+        InputStream body = exchange.getRequestBody();
+        InputStream readOnly = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return body.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return body.read(b, off, len);
+            }
+        };
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(readOnly)) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                if (entry.isFile()) {
+                    ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[65536];
+                    int read;
+                    while ((read = tar.read(buffer)) != -1) {
+                        content.write(buffer, 0, read);
+                    }
+                    container.get().files.put(directory + "/" + entry.getName(), content.toByteArray());
+                }
+            }
+        }
+        respond(exchange, 200, "");
+    }
+
+    /**
+     * the archive of a file, or of all files under a directory, named from the last element of the path like the daemon does
+     */
+    private void getArchive(HttpExchange exchange, String id, Map<String, String> query) throws IOException {
+        Optional<Container> container = container(id);
+        String path = query.getOrDefault("path", "/").replaceFirst("/$", "");
+        Map<String, byte[]> files = new TreeMap<>();
+        container.ifPresent(found -> found.files.forEach((file, content) -> {
+            if (file.equals(path) || file.startsWith(path + "/")) {
+                files.put(file, content);
+            }
+        }));
+        if (files.isEmpty()) {
+            error(exchange, 404, "Could not find the file " + path + " in container " + id);
+            return;
+        }
+        String parent = path.substring(0, path.lastIndexOf('/') + 1);
+        exchange.getResponseHeaders().set("Content-Type", "application/x-tar");
+        exchange.sendResponseHeaders(200, 0);
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(exchange.getResponseBody())) {
+            tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                TarArchiveEntry entry = new TarArchiveEntry(file.getKey().substring(parent.length()));
+                entry.setSize(file.getValue().length);
+                tar.putArchiveEntry(entry);
+                tar.write(file.getValue());
+                tar.closeArchiveEntry();
+            }
+        }
+    }
+
+    private void inspectContainer(HttpExchange exchange, String id) throws IOException {
+        Optional<Container> container = container(id);
+        if (container.isPresent()) {
+            json(exchange, 200, container.get().inspect());
+        } else {
+            error(exchange, 404, "No such container: " + id);
+        }
+    }
+
+    private void startContainer(HttpExchange exchange, String id) throws IOException {
+        Optional<Container> container = container(id);
+        if (!container.isPresent()) {
+            error(exchange, 404, "No such container: " + id);
+        } else if (!container.get().start()) {
+            respond(exchange, 304, null);
+        } else {
+            respond(exchange, 204, null);
+        }
+    }
+
+    private void stopContainer(HttpExchange exchange, String id) throws IOException {
+        Optional<Container> container = container(id);
+        if (!container.isPresent()) {
+            error(exchange, 404, "No such container: " + id);
+        } else if (!container.get().stop()) {
+            respond(exchange, 304, null);
+        } else {
+            respond(exchange, 204, null);
+        }
+    }
+
+    private void removeContainer(HttpExchange exchange, String id) throws IOException {
+        Optional<Container> container = container(id);
+        if (!container.isPresent()) {
+            error(exchange, 404, "No such container: " + id);
+            return;
+        }
+        container.get().remove();
+        respond(exchange, 204, null);
+    }
+
+    private void logs(HttpExchange exchange, String id, Map<String, String> query) throws IOException {
+        Optional<Container> found = container(id);
+        if (!found.isPresent()) {
+            error(exchange, 404, "No such container: " + id);
+            return;
+        }
+        Container container = found.get();
+        boolean follow = Boolean.parseBoolean(query.get("follow")) || "1".equals(query.get("follow"));
+        boolean timestamps = Boolean.parseBoolean(query.get("timestamps")) || "1".equals(query.get("timestamps"));
+        long since = query.containsKey("since") ? Long.parseLong(query.get("since")) : 0;
+
+        exchange.getResponseHeaders().set("Content-Type", "application/vnd.docker.raw-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        activeStreams.incrementAndGet();
+        try {
+            int next = 0;
+            while (true) {
+                List<LogEntry> entries;
+                boolean running;
+                synchronized (container) {
+                    if (next == container.logs.size() && follow && container.running && !container.removed) {
+                        try {
+                            container.wait(100);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                    entries = new ArrayList<>(container.logs.subList(next, container.logs.size()));
+                    running = container.running && !container.removed;
+                }
+                for (LogEntry entry : entries) {
+                    if (entry.timestamp.getEpochSecond() >= since) {
+                        writeFrame(body, (timestamps ? entry.timestamp + " " : "") + entry.line + "\n");
+                    }
+                }
+                next += entries.size();
+                if (!follow || (!running && entries.isEmpty())) {
+                    break;
+                }
+            }
+        } finally {
+            activeStreams.decrementAndGet();
+        }
+    }
+
+    /**
+     * streams samples while the container runs, the counters grow at the configured resource usage since the stream opened
+     */
+    private void stats(HttpExchange exchange, String id) throws IOException {
+        Optional<Container> found = container(id);
+        if (!found.isPresent()) {
+            error(exchange, 404, "No such container: " + id);
+            return;
+        }
+        Container container = found.get();
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        activeStreams.incrementAndGet();
+        try {
+            Instant opened = Instant.now();
+            Map<String, Object> previousCpu = mapOf("cpu_usage", mapOf("total_usage", 0), "system_cpu_usage", 0, "online_cpus", 2);
+            while (!executor.isShutdown()) {
+                Instant read = Instant.now();
+                ResourceUsage usage = resourceUsage;
+                long elapsedNanos = Duration.between(opened, read).toNanos();
+                double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+                long networkBytes = (long) (usage.networkBytesPerSecond * elapsedSeconds);
+                long blockBytes = (long) (usage.blockIoBytesPerSecond * elapsedSeconds);
+                Map<String, Object> cpu = mapOf(
+                        "cpu_usage", mapOf("total_usage", (long) (usage.cpuPercent / 100 * elapsedNanos), "percpu_usage", Arrays.asList(0, 0)),
+                        "system_cpu_usage", 2 * elapsedNanos,
+                        "online_cpus", 2);
+                writeJsonLine(body, mapOf(
+                        "read", read.toString(),
+                        "cpu_stats", cpu,
+                        "precpu_stats", previousCpu,
+                        "memory_stats", mapOf("usage", usage.rssBytes * 2, "limit", 8L * 1024 * 1024 * 1024, "stats", mapOf("rss", usage.rssBytes)),
+                        "networks", mapOf("eth0", mapOf("rx_bytes", networkBytes, "tx_bytes", networkBytes / 2)),
+                        "blkio_stats", mapOf("io_service_bytes_recursive", Arrays.asList(
+                                mapOf("major", 8, "minor", 0, "op", "Read", "value", blockBytes),
+                                mapOf("major", 8, "minor", 0, "op", "Write", "value", blockBytes / 2)))));
+                previousCpu = cpu;
+                synchronized (container) {
+                    if (!container.running || container.removed) {
+                        break;
+                    }
+                    try {
+                        container.wait(statsIntervalMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        } finally {
+            activeStreams.decrementAndGet();
+        }
+    }
+
+    private void events(HttpExchange exchange, Map<String, String> query) throws IOException {
+        JsonNode filters = objectMapper.readTree(query.getOrDefault("filters", "{}"));
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        EventStream stream = new EventStream(filters);
+        eventStreams.add(stream);
+        activeStreams.incrementAndGet();
+        OutputStream body = exchange.getResponseBody();
+        try {
+            body.flush();
+            while (!executor.isShutdown()) {
+                Map<String, Object> event = stream.events.poll(100, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    writeJsonLine(body, event);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            eventStreams.remove(stream);
+            activeStreams.decrementAndGet();
+        }
+    }
+
+    private void emit(Container container, String action) {
+        Instant now = Instant.now();
+        Map<String, Object> event = mapOf(
+                "status", action,
+                "id", container.id,
+                "from", container.image,
+                "Type", "container",
+                "Action", action,
+                "Actor", mapOf("ID", container.id, "Attributes", mapOf("name", container.name, "image", container.image)),
+                "time", now.getEpochSecond(),
+                "timeNano", TimeUnit.SECONDS.toNanos(now.getEpochSecond()) + now.getNano());
+        for (EventStream stream : eventStreams) {
+            if (stream.accepts(container, action)) {
+                stream.events.offer(event);
+            }
+        }
+    }
+
+    private Optional<Container> container(String idOrName) {
+        Container container = containers.get(idOrName);
+        if (container != null) {
+            return Optional.of(container);
+        }
+        return containers.values().stream().filter(candidate -> candidate.id.startsWith(idOrName)).findFirst();
+    }
+
+    private void delay() {
+        long max = maxLatencyMillis;
+        if (max > 0) {
+            long min = minLatencyMillis;
+            try {
+                Thread.sleep(min == max ? min : ThreadLocalRandom.current().nextLong(min, max + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String readBody(InputStream requestBody) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = requestBody.read(buffer)) >= 0) {
+            body.write(buffer, 0, read);
+        }
+        return body.size() == 0 ? "{}" : new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        if (text == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void json(HttpExchange exchange, int status, Object value) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(value);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        json(exchange, status, mapOf("message", message));
+    }
+
+    private static void writeJsonLine(OutputStream body, Object value) throws IOException {
+        body.write(objectMapper.writeValueAsBytes(value));
+        body.write('\n');
+        body.flush();
+    }
+
+    private static void writeFrame(OutputStream body, String payload) throws IOException {
+        writeFrame(body, 1, payload);
+    }
+
+    /**
+     * @param stream 1 for stdout, 2 for stderr
+     */
+    private static void writeFrame(OutputStream body, int stream, String payload) throws IOException {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        byte[] header = new byte[]{(byte) stream, 0, 0, 0, (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length};
+        body.write(header);
+        body.write(bytes);
+        body.flush();
+    }
+
+    private static Map<String, String> query(String rawQuery) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = URLDecoder.decode(separator < 0 ? pair : pair.substring(0, separator), "UTF-8");
+            String value = separator < 0 ? "" : URLDecoder.decode(pair.substring(separator + 1), "UTF-8");
+            query.put(key, value);
+        }
+        return query;
+    }
+
+    private static String normalize(String image) {
+        int slash = image.lastIndexOf('/');
+        return image.indexOf(':', slash + 1) < 0 && !image.contains("@") ? image + ":latest" : image;
+    }
+
+    private static Map<String, Object> mapOf(Object... keysAndValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+    private interface Handler {
+        void handle(String body) throws IOException;
+    }
+
+    private static class ExecScript {
+        private final int exitCode;
+        private final long delayMillis;
+        private final List<String> lines;
+
+        private ExecScript(int exitCode, long delayMillis, List<String> lines) {
+            this.exitCode = exitCode;
+            this.delayMillis = delayMillis;
+            this.lines = lines;
+        }
+    }
+
+    private static class Exec {
+        private final String id = UUID.randomUUID().toString().replace("-", "");
+        private final String command;
+        private volatile Integer exitCode;
+
+        private Exec(String command) {
+            this.command = command;
+        }
+    }
+
+    private static class ResourceUsage {
+        private final double cpuPercent;
+        private final long rssBytes;
+        private final long networkBytesPerSecond;
+        private final long blockIoBytesPerSecond;
+
+        private ResourceUsage(double cpuPercent, long rssBytes, long networkBytesPerSecond, long blockIoBytesPerSecond) {
+            this.cpuPercent = cpuPercent;
+            this.rssBytes = rssBytes;
+            this.networkBytesPerSecond = networkBytesPerSecond;
+            this.blockIoBytesPerSecond = blockIoBytesPerSecond;
+        }
+    }
+
+    private static class Failure {
+        private final int status;
+        private final AtomicInteger remaining;
+
+        private Failure(int status, int times) {
+            this.status = status;
+            this.remaining = new AtomicInteger(times);
+        }
+    }
+
+    private static class LogEntry {
+        private final Instant timestamp;
+        private final String line;
+
+        private LogEntry(Instant timestamp, String line) {
+            this.timestamp = timestamp;
+            this.line = line;
+        }
+    }
+
+    private static class EventStream {
+        private final Set<String> containers = new HashSet<>();
+        private final Set<String> actions = new HashSet<>();
+        private final BlockingQueue<Map<String, Object>> events = new LinkedBlockingQueue<>();
+
+        private EventStream(JsonNode filters) {
+            filters.path("container").forEach(node -> containers.add(node.asText()));
+            filters.path("event").forEach(node -> actions.add(node.asText()));
+        }
+
+        private boolean accepts(Container container, String action) {
+            return (containers.isEmpty() || containers.contains(container.name) || containers.contains(container.id))
+                    && (actions.isEmpty() || actions.contains(action));
+        }
+    }
+
+    private class Container {
+        private final String id = (UUID.randomUUID().toString() + UUID.randomUUID().toString()).replace("-", "");
+        private final String name;
+        private final String image;
+        private final JsonNode config;
+        private final long created = Instant.now().getEpochSecond();
+        private final Map<String, Object> boundPorts = new LinkedHashMap<>();
+        private final List<LogEntry> logs = new ArrayList<>();
+        private final Map<String, byte[]> files = new ConcurrentSkipListMap<>();
+        private final AtomicLong startedAt = new AtomicLong();
+        private volatile Instant finishedAt = Instant.EPOCH;
+        private volatile boolean running = false;
+        private volatile boolean removed = false;
+
+        private Container(String name, String image, JsonNode config) {
+            this.name = name;
+            this.image = image;
+            this.config = config;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, String> labels() {
+            return config.has("Labels") ? objectMapper.convertValue(config.get("Labels"), Map.class) : Collections.emptyMap();
+        }
+
+        private boolean start() {
+            synchronized (this) {
+                if (running) {
+                    return false;
+                }
+                running = true;
+                startedAt.set(System.currentTimeMillis());
+                bindPorts();
+                startupLogs.forEach(line -> logs.add(new LogEntry(Instant.now(), line)));
+                notifyAll();
+            }
+            emit(this, "start");
+            return true;
+        }
+
+        private boolean stop() {
+            synchronized (this) {
+                if (!running) {
+                    return false;
+                }
+                running = false;
+                finishedAt = Instant.now();
+                notifyAll();
+            }
+            emit(this, "die");
+            emit(this, "stop");
+            return true;
+        }
+
+        private void remove() {
+            if (running) {
+                emit(this, "kill");
+                stop();
+            }
+            synchronized (this) {
+                removed = true;
+                notifyAll();
+            }
+            containers.remove(name, this);
+            emit(this, "destroy");
+        }
+
+        private synchronized void log(String line) {
+            logs.add(new LogEntry(Instant.now(), line));
+            notifyAll();
+        }
+
+        private void bindPorts() {
+            boundPorts.clear();
+            Iterator<Map.Entry<String, JsonNode>> bindings = config.path("HostConfig").path("PortBindings").fields();
+            while (bindings.hasNext()) {
+                Map.Entry<String, JsonNode> binding = bindings.next();
+                List<Map<String, Object>> hostBindings = new ArrayList<>();
+                for (JsonNode hostBinding : binding.getValue()) {
+                    String hostPort = hostBinding.path("HostPort").asText("");
+                    hostBindings.add(mapOf("HostIp", "0.0.0.0", "HostPort", hostPort.isEmpty() ? String.valueOf(nextHostPort.getAndIncrement()) : hostPort));
+                }
+                boundPorts.put(binding.getKey(), hostBindings);
+            }
+        }
+
+        private synchronized Map<String, Object> inspect() {
+            return mapOf(
+                    "Id", id,
+                    "Name", "/" + name,
+                    "Image", image,
+                    "Created", Instant.now().toString(),
+                    "State", mapOf(
+                            "Status", running ? "running" : "exited",
+                            "Running", running,
+                            "StartedAt", Instant.ofEpochMilli(startedAt.get()).toString(),
+                            "FinishedAt", finishedAt.toString()),
+                    "Config", mapOf(
+                            "Image", image,
+                            "Labels", labels()),
+                    "NetworkSettings", mapOf("Ports", running ? boundPorts : Collections.emptyMap()));
+        }
+    }
+}
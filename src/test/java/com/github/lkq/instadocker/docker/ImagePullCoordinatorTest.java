@@ -0,0 +1,171 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.model.PullResponseItem;
+import com.github.dockerjava.api.model.ResponseItem;
+import com.github.lkq.instadocker.exception.InstaDockerException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ImagePullCoordinatorTest {
+
+    private static final String IMAGE = "postgres:latest";
+
+    private final ImagePullCoordinator subject = new ImagePullCoordinator(TimeUnit.MINUTES.toMillis(1));
+
+    @Test
+    void concurrentCallersShareOnePull() throws Exception {
+        CountDownLatch pullGate = new CountDownLatch(1);
+        StubDockerClient stubClient = new StubDockerClient().imageExists(false).pullGate(pullGate);
+        DaemonCallCounter daemonCalls = new DaemonCallCounter();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> subject.ensureExists(stubClient.client(), IMAGE, 10, daemonCalls)));
+            }
+            while (subject.joinedPulls() < 7) {
+                Thread.sleep(1);
+            }
+            pullGate.countDown();
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(10, TimeUnit.SECONDS), "image should exist");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, subject.pulls());
+        assertEquals(1, daemonCalls.count("pullImage"));
+        assertEquals(1, daemonCalls.count("inspectImage"));
+    }
+
+    @Test
+    void asynchronousPullDoesNotBlockTheCaller() throws Exception {
+        CountDownLatch pullGate = new CountDownLatch(1);
+        StubDockerClient stubClient = new StubDockerClient().imageExists(false).pullGate(pullGate);
+
+        CompletableFuture<Boolean> exists = subject.ensureExistsAsync(stubClient.client(), IMAGE, 10, new DaemonCallCounter(), Runnable::run);
+
+        assertFalse(exists.isDone(), "should return before the pull completes");
+        pullGate.countDown();
+        assertTrue(exists.get(10, TimeUnit.SECONDS), "image should be pulled");
+    }
+
+    @Test
+    void asynchronousPullCompletesWithFalseOnTimeout() throws Exception {
+        StubDockerClient stubClient = new StubDockerClient().imageExists(false).pullGate(new CountDownLatch(1));
+
+        CompletableFuture<Boolean> exists = subject.ensureExistsAsync(stubClient.client(), IMAGE, 0, new DaemonCallCounter(), Runnable::run);
+
+        assertFalse(exists.get(10, TimeUnit.SECONDS), "should not be pulled before timeout");
+    }
+
+    @Test
+    void cancelsPullOnTimeout() throws Exception {
+        StubDockerClient stubClient = new StubDockerClient().imageExists(false).pullGate(new CountDownLatch(1));
+
+        assertFalse(subject.ensureExists(stubClient.client(), IMAGE, 1, new DaemonCallCounter()), "should not be pulled before timeout");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stubClient.pullsCancelled() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, stubClient.pullsCancelled(), "timed out pull should be cancelled");
+    }
+
+    @Test
+    void callerTimeoutDoesNotFailOrCancelThePullForOtherCallers() throws Exception {
+        CountDownLatch pullGate = new CountDownLatch(1);
+        StubDockerClient stubClient = new StubDockerClient().imageExists(false).pullGate(pullGate);
+
+        CompletableFuture<Boolean> patient = subject.ensureExistsAsync(stubClient.client(), IMAGE, 10, new DaemonCallCounter(), Runnable::run);
+        CompletableFuture<Boolean> impatient = subject.ensureExistsAsync(stubClient.client(), IMAGE, 0, new DaemonCallCounter(), Runnable::run);
+
+        assertFalse(impatient.get(10, TimeUnit.SECONDS), "should time out on its own timeout");
+        assertFalse(patient.isDone(), "should still wait for the pull");
+        assertEquals(0, stubClient.pullsCancelled(), "pull should not be cancelled while a caller waits");
+        pullGate.countDown();
+        assertTrue(patient.get(10, TimeUnit.SECONDS), "image should be pulled");
+        assertEquals(1, subject.pulls());
+    }
+
+    @Test
+    void failsWhenLastFrameDoesNotIndicateSuccess() throws Exception {
+        StubDockerClient stubClient = new StubDockerClient().imageExists(false).pullFails(true);
+        DaemonCallCounter daemonCalls = new DaemonCallCounter();
+
+        InstaDockerException e = assertThrows(InstaDockerException.class, () -> subject.ensureExists(stubClient.client(), IMAGE, 10, daemonCalls));
+        assertTrue(e.getMessage().contains("manifest unknown"), e.getMessage());
+        assertFalse(subject.lastPull(IMAGE).orElseThrow(IllegalStateException::new).pulled());
+
+        assertThrows(InstaDockerException.class, () -> subject.ensureExists(stubClient.client(), IMAGE, 10, daemonCalls));
+        assertEquals(2, daemonCalls.count("inspectImage"), "failed pull should not be remembered as existing");
+    }
+
+    @Test
+    void remembersExistingImageUntilInvalidated() throws Exception {
+        StubDockerClient stubClient = new StubDockerClient().imageExists(true);
+        DaemonCallCounter daemonCalls = new DaemonCallCounter();
+
+        assertTrue(subject.ensureExists(stubClient.client(), IMAGE, 10, daemonCalls), "image should exist");
+        assertTrue(subject.ensureExists(stubClient.client(), IMAGE, 10, daemonCalls), "image should exist");
+        assertEquals(1, daemonCalls.total());
+        assertEquals(1, subject.cacheHits());
+
+        subject.invalidate(IMAGE);
+        assertTrue(subject.ensureExists(stubClient.client(), IMAGE, 10, daemonCalls), "image should exist");
+        assertEquals(2, daemonCalls.total());
+    }
+
+    @Test
+    void expiredEntriesAreInspectedAgain() throws Exception {
+        ImagePullCoordinator noCache = new ImagePullCoordinator(0);
+        StubDockerClient stubClient = new StubDockerClient().imageExists(true);
+        DaemonCallCounter daemonCalls = new DaemonCallCounter();
+
+        noCache.ensureExists(stubClient.client(), IMAGE, 10, daemonCalls);
+        noCache.ensureExists(stubClient.client(), IMAGE, 10, daemonCalls);
+
+        assertEquals(2, daemonCalls.count("inspectImage"));
+    }
+
+    @Test
+    void measuresBytesDownloadedFromProgressFrames() throws Exception {
+        StubDockerClient stubClient = new StubDockerClient().imageExists(false).pullProgress(Arrays.asList(
+                progress("layer1", "Downloading", 100L, 600L),
+                progress("layer2", "Downloading", 300L, null),
+                progress("layer1", "Downloading", 500L, 600L),
+                progress("layer1", "Download complete", null, null),
+                progress("layer2", "Extracting", 200L, 300L)));
+
+        assertTrue(subject.ensureExists(stubClient.client(), IMAGE, 10, new DaemonCallCounter()), "image should be pulled");
+
+        ImagePull pull = subject.lastPull(IMAGE).orElseThrow(IllegalStateException::new);
+        assertTrue(pull.pulled(), "image should be pulled");
+        assertEquals(900, pull.bytesDownloaded(), "layer1 should count its total, layer2 its largest current");
+        assertEquals(2, pull.layersDownloaded());
+        assertEquals(900, subject.bytesDownloaded());
+    }
+
+    private PullResponseItem progress(String layer, String status, Long current, Long total) {
+        PullResponseItem item = mock(PullResponseItem.class);
+        ResponseItem.ProgressDetail detail = mock(ResponseItem.ProgressDetail.class);
+        when(detail.getCurrent()).thenReturn(current);
+        when(detail.getTotal()).thenReturn(total);
+        when(item.getId()).thenReturn(layer);
+        when(item.getStatus()).thenReturn(status);
+        when(item.getProgressDetail()).thenReturn(detail);
+        return item;
+    }
+}
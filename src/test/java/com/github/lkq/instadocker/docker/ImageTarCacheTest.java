@@ -0,0 +1,106 @@
+package com.github.lkq.instadocker.docker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageTarCacheTest {
+
+    private final FakeDockerEngine engine = new FakeDockerEngine().archiveSize(100);
+    private Path directory;
+    private ImageTarCache subject;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("image-tar-cache-test");
+        subject = new ImageTarCache(directory, 250);
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    void loadsSavedImage() {
+        engine.image("busybox:latest");
+        subject.save(engine.client(), "busybox:latest");
+        engine.client().removeImageCmd("busybox:latest").exec();
+
+        assertTrue(subject.contains("busybox:latest"));
+        assertTrue(subject.load(engine.client(), "busybox:latest"));
+
+        assertTrue(engine.imageExists("busybox:latest"));
+        assertFalse(subject.load(engine.client(), "alpine:latest"));
+        assertEquals(1, subject.hits());
+        assertEquals(1, subject.misses());
+        assertEquals(1, subject.saves());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverBudget() throws InterruptedException {
+        engine.image("a:1").image("b:1").image("c:1");
+        subject.save(engine.client(), "a:1");
+        Thread.sleep(10);
+        subject.save(engine.client(), "b:1");
+        Thread.sleep(10);
+        subject.load(engine.client(), "a:1");
+        Thread.sleep(10);
+
+        subject.save(engine.client(), "c:1");
+
+        assertTrue(subject.contains("a:1"), "recently used archive should be kept");
+        assertFalse(subject.contains("b:1"), "least recently used archive should be evicted");
+        assertTrue(subject.contains("c:1"), "saved archive should be kept");
+        assertEquals(1, subject.evictions());
+    }
+
+    @Test
+    void imageLoadedFromCacheInsteadOfPulled() {
+        DaemonCallCounter daemonCalls = new DaemonCallCounter();
+        DockerImage image = new DockerImage(engine.client(), "busybox:latest", daemonCalls, new ImagePullCoordinator(0))
+                .imageCache(subject);
+
+        assertTrue(image.ensureExists(10));
+        assertEquals(1, engine.requests("pullImage"));
+        assertEquals(1, engine.requests("saveImage"));
+
+        engine.client().removeImageCmd("busybox:latest").exec();
+        assertTrue(image.ensureExists(10));
+
+        assertTrue(engine.imageExists("busybox:latest"));
+        assertEquals(1, engine.requests("pullImage"), "cached image should not be pulled");
+        assertEquals(1, engine.requests("loadImage"));
+        assertEquals(1, daemonCalls.count("loadImage"));
+    }
+
+    @Test
+    void countsMissWhenImageIsNotCachedOnTheStartPath() {
+        DockerImage image = new DockerImage(engine.client(), "busybox:latest", new DaemonCallCounter(), new ImagePullCoordinator(0))
+                .imageCache(subject);
+
+        assertTrue(image.ensureExists(10));
+
+        assertEquals(1, subject.misses());
+        assertEquals(0, subject.hits());
+    }
+
+    @Test
+    void existingImageNotSavedOnStartPath() {
+        engine.image("busybox:latest");
+        DockerImage image = new DockerImage(engine.client(), "busybox:latest", new DaemonCallCounter(), new ImagePullCoordinator(0))
+                .imageCache(subject);
+
+        assertTrue(image.ensureExists(10));
+
+        assertEquals(0, engine.requests("pullImage"));
+        assertEquals(0, engine.requests("saveImage"), "an image which wasn't pulled should not be saved");
+        assertFalse(subject.contains("busybox:latest"));
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import com.github.lkq.instadocker.docker.probe.Backoff;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogStreamServiceTest {
+
+    private final StubDockerClient stub = new StubDockerClient().existingContainer(true);
+    private final LogStreamService service = new LogStreamService(Runnable::run, new Backoff(1, 5, 2, 0), 3);
+    private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+    private ContainerLogger containerLogger;
+
+    @BeforeEach
+    void setUp() {
+        containerLogger = new ContainerLogger("stub", null)
+                .sink((containerName, batch) -> batch.forEach(line -> written.add(line.line())));
+    }
+
+    @Test
+    void multiplexesAttachedContainersUntilDetached() {
+        service.attach(stub.client(), containerLogger);
+        service.attach(stub.client(), containerLogger);
+
+        assertEquals(1, stub.logStreams().size(), "container should be attached once");
+        assertNull(stub.logStreams().get(0).since(), "first stream should replay the whole history");
+
+        send(0, "2019-01-01T00:00:01.5Z hello\n");
+        assertEquals(Collections.singleton("stub"), service.lagMillis().keySet());
+
+        assertTrue(service.detach("stub"));
+        assertFalse(service.attached("stub"));
+        assertTrue(stub.logStreams().get(0).closed(), "stream should be closed");
+        assertEquals(Collections.singletonList("hello"), written);
+    }
+
+    @Test
+    void reconnectsSinceLastLineWhenStreamDrops() {
+        service.attach(stub.client(), containerLogger);
+        send(0, "2019-01-01T00:00:01.5Z hello\n");
+
+        stub.logStreams().get(0).callback().onError(new IOException("connection reset"));
+        awaitTrue(() -> stub.logStreams().size() == 2);
+
+        assertEquals(Integer.valueOf((int) Instant.parse("2019-01-01T00:00:01Z").getEpochSecond()), stub.logStreams().get(1).since());
+        send(1, "2019-01-01T00:00:01.5Z hello\n2019-01-01T00:00:02.1Z world\n");
+        assertEquals(Arrays.asList("hello", "world"), written);
+        assertTrue(service.attached("stub"));
+    }
+
+    @Test
+    void detachesWhenStreamEndsAfterContainerStops() {
+        service.attach(stub.client(), containerLogger);
+        send(0, "2019-01-01T00:00:01.5Z bye\n");
+
+        stub.client().stopContainerCmd("stub").exec();
+        stub.logStreams().get(0).callback().onComplete();
+
+        assertFalse(service.attached("stub"));
+        assertEquals(1, stub.logStreams().size(), "stream of a stopped container should not be reconnected");
+        assertEquals(Collections.singletonList("bye"), written);
+    }
+
+    @Test
+    void stopsReconnectingOnceClientClosed() {
+        service.attach(stub.client(), containerLogger);
+
+        stub.logStreams().get(0).callback().onError(new IllegalStateException("Client instance has been closed."));
+
+        assertFalse(service.attached("stub"));
+        assertEquals(1, stub.logStreams().size(), "stream of a closed client should not be reconnected");
+    }
+
+    private void send(int stream, String payload) {
+        stub.logStreams().get(stream).callback().onNext(new Frame(StreamType.STDOUT, payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.yield();
+        }
+    }
+}
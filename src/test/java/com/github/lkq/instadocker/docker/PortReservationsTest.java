@@ -0,0 +1,42 @@
+package com.github.lkq.instadocker.docker;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortReservationsTest {
+
+    @Test
+    void holdsPortUntilReleased() throws Exception {
+        Path lockDirectory = Files.createTempDirectory("insta-docker-ports");
+        PortReservations reservations = new PortReservations(lockDirectory, 10);
+        PortReservations otherFork = new PortReservations(lockDirectory, 10);
+
+        PortReservation reservation = reservations.reserve();
+        int port = reservation.port();
+
+        assertTrue(port > 0, "port should be valid");
+        assertTrue(reservations.reserved(port));
+        assertNull(reservations.tryReserve(port), "port should not be reserved twice");
+        assertNull(otherFork.tryReserve(port), "port should be locked for other registries");
+
+        reservation.close();
+
+        assertFalse(reservations.reserved(port));
+        PortReservation reservedAgain = otherFork.tryReserve(port);
+        assertNotNull(reservedAgain, "released port should be reserved again");
+        reservedAgain.close();
+    }
+
+    @Test
+    void reservesDistinctPorts() throws Exception {
+        PortReservations reservations = new PortReservations(Files.createTempDirectory("insta-docker-ports"), 10);
+
+        try (PortReservation first = reservations.reserve(); PortReservation second = reservations.reserve()) {
+            assertNotEquals(first.port(), second.port());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.lkq.instadocker.docker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotCacheTest {
+
+    private final FakeDockerEngine engine = new FakeDockerEngine().image("busybox:latest").commitSize(100);
+    private SnapshotCache subject;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        subject = new SnapshotCache(engine.client(), "snapshot-test", 250, Files.createTempDirectory("snapshot-cache-test"));
+        engine.client().createContainerCmd("busybox:latest").withName("seeded").exec();
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    void findsCommittedSnapshot() {
+        assertEquals(Optional.empty(), subject.lookup("a"));
+
+        assertEquals("snapshot-test:a", subject.commit("seeded", "a"));
+
+        assertEquals(Optional.of("snapshot-test:a"), subject.lookup("a"));
+        assertEquals(1, subject.hits());
+        assertEquals(1, subject.misses());
+    }
+
+    @Test
+    void fingerprintDependsOnBaseImageAndInputs() {
+        String fingerprint = SnapshotCache.fingerprint("sha256:1", Arrays.asList("spec", "v1"));
+
+        assertEquals(fingerprint, SnapshotCache.fingerprint("sha256:1", Arrays.asList("spec", "v1")));
+        assertNotEquals(fingerprint, SnapshotCache.fingerprint("sha256:2", Arrays.asList("spec", "v1")));
+        assertNotEquals(fingerprint, SnapshotCache.fingerprint("sha256:1", Arrays.asList("spec", "v2")));
+        assertNotEquals(fingerprint, SnapshotCache.fingerprint("sha256:1", Collections.singletonList("spec\nv1x")));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverBudget() throws InterruptedException {
+        subject.commit("seeded", "a");
+        Thread.sleep(10);
+        subject.commit("seeded", "b");
+        Thread.sleep(10);
+        subject.lookup("a");
+        Thread.sleep(10);
+
+        subject.commit("seeded", "c");
+
+        assertTrue(engine.imageExists("snapshot-test:a"), "recently used snapshot should be kept");
+        assertFalse(engine.imageExists("snapshot-test:b"), "least recently used snapshot should be evicted");
+        assertTrue(engine.imageExists("snapshot-test:c"), "committed snapshot should be kept");
+        assertEquals(1, subject.evictions());
+    }
+
+    @Test
+    void keepsSnapshotsInUse() throws InterruptedException {
+        subject.commit("seeded", "a");
+        engine.client().createContainerCmd("snapshot-test:a").withName("from-snapshot").exec();
+        Thread.sleep(10);
+        subject.commit("seeded", "b");
+        Thread.sleep(10);
+
+        subject.commit("seeded", "c");
+
+        assertTrue(engine.imageExists("snapshot-test:a"), "snapshot in use should be kept");
+        assertFalse(engine.imageExists("snapshot-test:b"), "least recently used snapshot not in use should be evicted");
+        assertEquals(1, subject.evictions());
+    }
+}
@@ -0,0 +1,361 @@
+package com.github.lkq.instadocker.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.*;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.exception.NotModifiedException;
+import com.github.dockerjava.api.model.ContainerConfig;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventType;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.ExposedPort;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.NetworkSettings;
+import com.github.dockerjava.api.model.Ports;
+import com.github.dockerjava.api.model.PullResponseItem;
+import com.github.dockerjava.api.model.ResponseItem;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * a mocked docker client backed by an in-memory image and container state, for testing without a docker daemon
+ */
+public class StubDockerClient {
+
+    private final DockerClient dockerClient = mock(DockerClient.class);
+
+    private volatile boolean imageExists;
+    private volatile String containerId;
+    private volatile boolean running;
+    private volatile HostConfig hostConfig = new HostConfig();
+    private volatile Map<String, String> labels = Collections.emptyMap();
+    private volatile Ports boundPorts = new Ports();
+    private int nextHostPort = 49153;
+
+    private volatile CountDownLatch pullGate = new CountDownLatch(0);
+    private volatile List<PullResponseItem> pullProgress = Collections.emptyList();
+    private final PullResponseItem pullSucceeded = mock(PullResponseItem.class);
+    private final PullResponseItem pullStarted = mock(PullResponseItem.class);
+    private final PullResponseItem pullFailed = mock(PullResponseItem.class);
+    private volatile boolean pullFails = false;
+    private final AtomicInteger pullsCancelled = new AtomicInteger();
+
+    private final List<ResultCallback<Event>> eventSubscribers = new CopyOnWriteArrayList<>();
+    private volatile boolean emitEvents = true;
+
+    private final List<LogStream> logStreams = new CopyOnWriteArrayList<>();
+
+    public StubDockerClient() {
+        when(pullSucceeded.getStatus()).thenReturn("Status: Downloaded newer image");
+        when(pullSucceeded.isPullSuccessIndicated()).thenReturn(true);
+        when(pullStarted.getStatus()).thenReturn("Pulling from library/postgres");
+        ResponseItem.ErrorDetail pullError = mock(ResponseItem.ErrorDetail.class);
+        when(pullError.getMessage()).thenReturn("manifest unknown");
+        when(pullFailed.getErrorDetail()).thenReturn(pullError);
+        when(pullFailed.isErrorIndicated()).thenReturn(true);
+        when(dockerClient.inspectImageCmd(anyString())).thenAnswer(invocation -> {
+            InspectImageCmd cmd = mock(InspectImageCmd.class);
+            when(cmd.exec()).thenAnswer(exec -> {
+                if (!imageExists) {
+                    throw new NotFoundException("image not found");
+                }
+                return new InspectImageResponse().withId("sha256:" + invocation.getArgument(0));
+            });
+            return cmd;
+        });
+        when(dockerClient.pullImageCmd(anyString())).thenAnswer(invocation -> {
+            PullImageCmd cmd = mock(PullImageCmd.class, RETURNS_SELF);
+            when(cmd.exec(any())).thenAnswer(exec -> {
+                ResultCallback<PullResponseItem> callback = exec.getArgument(0);
+                Thread pull = new Thread(() -> {
+                    try {
+                        pullGate.await();
+                    } catch (InterruptedException e) {
+                        callback.onError(e);
+                        return;
+                    }
+                    pullProgress.forEach(callback::onNext);
+                    if (pullFails) {
+                        callback.onNext(pullStarted);
+                        callback.onNext(pullFailed);
+                    } else {
+                        callback.onNext(pullSucceeded);
+                        imageExists = true;
+                    }
+                    callback.onComplete();
+                }, "stub-pull");
+                pull.setDaemon(true);
+                callback.onStart(() -> {
+                    pullsCancelled.incrementAndGet();
+                    pull.interrupt();
+                });
+                pull.start();
+                return callback;
+            });
+            return cmd;
+        });
+        when(dockerClient.inspectContainerCmd(anyString())).thenAnswer(invocation -> {
+            InspectContainerCmd cmd = mock(InspectContainerCmd.class);
+            when(cmd.exec()).thenAnswer(exec -> inspectContainer());
+            return cmd;
+        });
+        when(dockerClient.createContainerCmd(anyString())).thenAnswer(invocation -> {
+            CreateContainerCmd cmd = mock(CreateContainerCmd.class, RETURNS_SELF);
+            HostConfig hostConfig = new HostConfig();
+            when(cmd.getHostConfig()).thenReturn(hostConfig);
+            Map<String, String> labels = new HashMap<>();
+            when(cmd.withLabels(anyMap())).thenAnswer(withLabels -> {
+                labels.putAll(withLabels.getArgument(0));
+                return cmd;
+            });
+            when(cmd.exec()).thenAnswer(exec -> {
+                containerId = UUID.randomUUID().toString();
+                running = false;
+                this.hostConfig = hostConfig;
+                this.labels = labels;
+                CreateContainerResponse response = new CreateContainerResponse();
+                response.setId(containerId);
+                return response;
+            });
+            return cmd;
+        });
+        when(dockerClient.startContainerCmd(anyString())).thenAnswer(invocation -> {
+            StartContainerCmd cmd = mock(StartContainerCmd.class);
+            when(cmd.exec()).thenAnswer(exec -> {
+                requireContainer();
+                running = true;
+                bindPorts();
+                emit("start");
+                return null;
+            });
+            return cmd;
+        });
+        when(dockerClient.stopContainerCmd(anyString())).thenAnswer(invocation -> {
+            StopContainerCmd cmd = mock(StopContainerCmd.class, RETURNS_SELF);
+            doAnswer(exec -> {
+                requireContainer();
+                if (!running) {
+                    throw new NotModifiedException("container already stopped");
+                }
+                running = false;
+                emit("die", "stop");
+                return null;
+            }).when(cmd).exec();
+            return cmd;
+        });
+        when(dockerClient.removeContainerCmd(anyString())).thenAnswer(invocation -> {
+            RemoveContainerCmd cmd = mock(RemoveContainerCmd.class, RETURNS_SELF);
+            doAnswer(exec -> {
+                requireContainer();
+                if (running) {
+                    emit("kill", "die");
+                }
+                containerId = null;
+                running = false;
+                emit("destroy");
+                return null;
+            }).when(cmd).exec();
+            return cmd;
+        });
+        when(dockerClient.eventsCmd()).thenAnswer(invocation -> {
+            EventsCmd cmd = mock(EventsCmd.class, RETURNS_SELF);
+            when(cmd.exec(any())).thenAnswer(exec -> {
+                ResultCallback<Event> callback = exec.getArgument(0);
+                callback.onStart(() -> eventSubscribers.remove(callback));
+                eventSubscribers.add(callback);
+                return callback;
+            });
+            return cmd;
+        });
+        when(dockerClient.logContainerCmd(anyString())).thenAnswer(invocation -> {
+            LogContainerCmd cmd = mock(LogContainerCmd.class, RETURNS_SELF);
+            Integer[] since = new Integer[1];
+            when(cmd.withSince(any())).thenAnswer(withSince -> {
+                since[0] = withSince.getArgument(0);
+                return cmd;
+            });
+            when(cmd.exec(any())).thenAnswer(exec -> {
+                ResultCallback<Frame> callback = exec.getArgument(0);
+                LogStream stream = new LogStream(callback, since[0]);
+                callback.onStart(() -> stream.closed = true);
+                logStreams.add(stream);
+                return callback;
+            });
+            return cmd;
+        });
+    }
+
+    /**
+     * @return the log streams opened, in order
+     */
+    public List<LogStream> logStreams() {
+        return logStreams;
+    }
+
+    public DockerClient client() {
+        return dockerClient;
+    }
+
+    public StubDockerClient imageExists(boolean imageExists) {
+        this.imageExists = imageExists;
+        return this;
+    }
+
+    /**
+     * @param running whether the existing container is running
+     */
+    public StubDockerClient existingContainer(boolean running) {
+        this.containerId = UUID.randomUUID().toString();
+        this.running = running;
+        this.labels = Collections.emptyMap();
+        return this;
+    }
+
+    public String containerId() {
+        return containerId;
+    }
+
+    /**
+     * @param pullGate pulls only complete after the gate is opened
+     * @return this stub
+     */
+    public StubDockerClient pullGate(CountDownLatch pullGate) {
+        this.pullGate = pullGate;
+        return this;
+    }
+
+    /**
+     * @param pullFails true to end pulls with an error frame instead of a success frame, as the daemon does for a missing tag
+     * @return this stub
+     */
+    public StubDockerClient pullFails(boolean pullFails) {
+        this.pullFails = pullFails;
+        return this;
+    }
+
+    /**
+     * @return number of pulls closed by the client before they completed
+     */
+    public int pullsCancelled() {
+        return pullsCancelled.get();
+    }
+
+    /**
+     * @param pullProgress progress frames sent to the pull callback before it completes
+     * @return this stub
+     */
+    public StubDockerClient pullProgress(List<PullResponseItem> pullProgress) {
+        this.pullProgress = pullProgress;
+        return this;
+    }
+
+    /**
+     * @param emitEvents false to keep the event streams open but silent, as if the daemon events are delayed
+     * @return this stub
+     */
+    public StubDockerClient emitEvents(boolean emitEvents) {
+        this.emitEvents = emitEvents;
+        return this;
+    }
+
+    public int eventSubscribers() {
+        return eventSubscribers.size();
+    }
+
+    public boolean containerExists() {
+        return containerId != null;
+    }
+
+    public boolean containerRunning() {
+        return running;
+    }
+
+    private InspectContainerResponse inspectContainer() {
+        requireContainer();
+        InspectContainerResponse response = mock(InspectContainerResponse.class);
+        InspectContainerResponse.ContainerState state = mock(InspectContainerResponse.ContainerState.class);
+        when(state.getRunning()).thenReturn(running);
+        when(response.getId()).thenReturn(containerId);
+        when(response.getState()).thenReturn(state);
+        NetworkSettings networkSettings = mock(NetworkSettings.class);
+        when(networkSettings.getPorts()).thenReturn(boundPorts);
+        when(response.getNetworkSettings()).thenReturn(networkSettings);
+        ContainerConfig config = mock(ContainerConfig.class);
+        when(config.getLabels()).thenReturn(labels);
+        when(response.getConfig()).thenReturn(config);
+        return response;
+    }
+
+    /**
+     * bind the ports of the created container, an empty host port gets the next port from 49153, like the daemon does
+     */
+    private synchronized void bindPorts() {
+        Ports ports = new Ports();
+        if (hostConfig.getPortBindings() != null) {
+            for (Map.Entry<ExposedPort, Ports.Binding[]> entry : hostConfig.getPortBindings().getBindings().entrySet()) {
+                for (Ports.Binding binding : entry.getValue()) {
+                    String hostPort = binding.getHostPortSpec();
+                    ports.bind(entry.getKey(), Ports.Binding.bindPort(hostPort == null || hostPort.isEmpty() ? nextHostPort++ : Integer.parseInt(hostPort)));
+                }
+            }
+        }
+        boundPorts = ports;
+    }
+
+    private void emit(String... actions) {
+        if (!emitEvents) {
+            return;
+        }
+        for (String action : actions) {
+            Event event = new Event(action, containerId, "busybox:latest", System.currentTimeMillis() / 1000)
+                    .withType(EventType.CONTAINER)
+                    .withAction(action);
+            eventSubscribers.forEach(subscriber -> subscriber.onNext(event));
+        }
+    }
+
+    private void requireContainer() {
+        if (containerId == null) {
+            throw new NotFoundException("container not found");
+        }
+    }
+
+    public static class LogStream {
+        private final ResultCallback<Frame> callback;
+        private final Integer since;
+        private volatile boolean closed = false;
+
+        private LogStream(ResultCallback<Frame> callback, Integer since) {
+            this.callback = callback;
+            this.since = since;
+        }
+
+        public ResultCallback<Frame> callback() {
+            return callback;
+        }
+
+        /**
+         * @return the since parameter of the log request, null if not set
+         */
+        public Integer since() {
+            return since;
+        }
+
+        public boolean closed() {
+            return closed;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.lkq.instadocker.docker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TeardownManagerTest {
+
+    private final FakeDockerEngine engine = new FakeDockerEngine().image("busybox:latest").latency(50, 50);
+    private Path sessionDirectory;
+    private TeardownManager subject;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        sessionDirectory = Files.createTempDirectory("teardown-manager-test");
+        subject = new TeardownManager(sessionDirectory, 8, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        subject.close();
+        engine.close();
+    }
+
+    @Test
+    void removesRegisteredContainersInParallel() {
+        List<DockerContainer> containers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            DockerContainer container = new DockerContainer(engine.client(), "busybox:latest", "teardown-" + i, LoggerFactory.getLogger(TeardownManagerTest.class));
+            subject.register(container);
+            container.ensureExists();
+            container.ensureRunning();
+            containers.add(container);
+        }
+
+        long start = System.currentTimeMillis();
+        assertEquals(8, subject.teardown());
+        long elapsed = System.currentTimeMillis() - start;
+
+        for (DockerContainer container : containers) {
+            assertFalse(engine.containerExists(container.containerName()));
+        }
+        // stop, inspect and remove of 8 containers at 50ms each take 1.2s in sequence
+        assertTrue(elapsed < 800, "teardown should run in parallel, took " + elapsed + "ms");
+        assertEquals(0, subject.teardown());
+    }
+
+    @Test
+    void labelsContainersWithSession() {
+        DockerContainer container = new DockerContainer(engine.client(), "busybox:latest", "labelled", LoggerFactory.getLogger(TeardownManagerTest.class));
+        subject.register(container);
+        container.ensureExists();
+
+        Map<String, String> labels = engine.client().inspectContainerCmd("labelled").exec().getConfig().getLabels();
+        assertEquals(subject.sessionId(), labels.get(TeardownManager.SESSION_LABEL));
+        assertNotNull(labels.get(TeardownManager.HOST_LABEL));
+    }
+
+    @Test
+    void reapsContainersOfEndedSessions() throws IOException {
+        TeardownManager ended = new TeardownManager(sessionDirectory, 8, 1);
+        createContainer("ended", ended.sessionId(), localHost());
+        ended.close();
+        Files.createFile(sessionDirectory.resolve(ended.sessionId() + ".lock"));
+
+        assertEquals(1, subject.reap(engine.client()));
+
+        assertFalse(engine.containerExists("ended"));
+        assertFalse(Files.exists(sessionDirectory.resolve(ended.sessionId() + ".lock")), "lock file of ended session should be deleted");
+    }
+
+    @Test
+    void reapContinuesWhenRemovingAContainerFails() throws IOException {
+        Map<String, String> sessions = new HashMap<>();
+        for (String name : Arrays.asList("first", "second")) {
+            TeardownManager ended = new TeardownManager(sessionDirectory, 8, 1);
+            createContainer(name, ended.sessionId(), localHost());
+            ended.close();
+            Files.createFile(sessionDirectory.resolve(ended.sessionId() + ".lock"));
+            sessions.put(name, ended.sessionId());
+        }
+        engine.failNext("removeContainer", 409, 1);
+
+        assertEquals(1, subject.reap(engine.client()));
+
+        String failed = engine.containerExists("first") ? "first" : "second";
+        String reaped = "first".equals(failed) ? "second" : "first";
+        assertFalse(engine.containerExists(reaped));
+        assertFalse(Files.exists(sessionDirectory.resolve(sessions.get(reaped) + ".lock")), "lock file of reaped session should be deleted");
+        assertTrue(Files.exists(sessionDirectory.resolve(sessions.get(failed) + ".lock")), "lock file should be kept to retry the next reap");
+
+        assertEquals(1, subject.reap(engine.client()));
+        assertFalse(engine.containerExists(failed));
+    }
+
+    @Test
+    void keepsContainersOfAliveSessions() throws IOException {
+        try (TeardownManager alive = new TeardownManager(sessionDirectory, 8, 1)) {
+            createContainer("alive", alive.sessionId(), localHost());
+            createContainer("own", subject.sessionId(), localHost());
+
+            assertEquals(0, subject.reap(engine.client()));
+
+            assertTrue(engine.containerExists("alive"));
+            assertTrue(engine.containerExists("own"));
+        }
+    }
+
+    @Test
+    void reapsContainersOfOtherHostsByAge() throws InterruptedException {
+        createContainer("other-host", "other-session", "other-host");
+
+        assertEquals(0, subject.reap(engine.client()));
+        assertTrue(engine.containerExists("other-host"));
+
+        Thread.sleep(10);
+        assertEquals(1, subject.maxAge(0).reap(engine.client()));
+        assertFalse(engine.containerExists("other-host"));
+    }
+
+    @Test
+    void keepsRegisteredContainersOfOtherSessions() throws InterruptedException {
+        createContainer("reused", "other-session", "other-host");
+        subject.register(new DockerContainer(engine.client(), "busybox:latest", "reused", LoggerFactory.getLogger(TeardownManagerTest.class)));
+
+        Thread.sleep(10);
+        assertEquals(0, subject.maxAge(0).reap(engine.client()));
+        assertTrue(engine.containerExists("reused"));
+    }
+
+    private void createContainer(String name, String session, String host) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put(TeardownManager.SESSION_LABEL, session);
+        labels.put(TeardownManager.HOST_LABEL, host);
+        engine.client().createContainerCmd("busybox:latest").withName(name).withLabels(labels).exec();
+    }
+
+    private static String localHost() throws IOException {
+        return InetAddress.getLocalHost().getHostName();
+    }
+}
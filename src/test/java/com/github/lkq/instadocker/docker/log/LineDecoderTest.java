@@ -0,0 +1,68 @@
+package com.github.lkq.instadocker.docker.log;
+
+import com.github.dockerjava.api.model.StreamType;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LineDecoderTest {
+
+    private final List<String> lines = new ArrayList<>();
+    private final LineDecoder decoder = new LineDecoder(StreamType.STDOUT, 8);
+
+    @Test
+    void joinsLinesSplitAcrossFrames() {
+        decode("hel");
+        decode("lo\nwor");
+        decode("ld\n");
+
+        assertEquals(Arrays.asList("hello", "world"), lines);
+        assertEquals(0, decoder.pendingBytes());
+    }
+
+    @Test
+    void emitsEveryLineOfAFrame() {
+        decode("one\r\ntwo\n\nthree");
+
+        assertEquals(Arrays.asList("one", "two", ""), lines);
+        assertEquals(5, decoder.pendingBytes());
+
+        decoder.flush(line -> lines.add(line.line()));
+        assertEquals(Arrays.asList("one", "two", "", "three"), lines);
+    }
+
+    @Test
+    void splitsLinesLongerThanTheLimit() {
+        decode("0123456789abcdef01\n");
+
+        assertEquals(Arrays.asList("01234567", "89abcdef", "01"), lines);
+    }
+
+    @Test
+    void stripsTimestampsAndSkipsReplayedLines() {
+        List<Long> timestamps = new ArrayList<>();
+        LineDecoder decoder = new LineDecoder(StreamType.STDOUT, 1024);
+        decoder.timestamped(true);
+        decoder.decode("2019-01-01T00:00:01.5Z a\n".getBytes(StandardCharsets.UTF_8), line -> {
+            lines.add(line.line());
+            timestamps.add(line.timestampMillis());
+        });
+        assertEquals(Instant.parse("2019-01-01T00:00:01.5Z"), decoder.lastTimestamp());
+
+        decoder.resumeAfter(decoder.lastTimestamp());
+        decoder.decode("2019-01-01T00:00:01.5Z a\n2019-01-01T00:00:02Z b\n".getBytes(StandardCharsets.UTF_8), line -> lines.add(line.line()));
+
+        assertEquals(Arrays.asList("a", "b"), lines);
+        assertEquals(Instant.parse("2019-01-01T00:00:01.5Z").toEpochMilli(), (long) timestamps.get(0));
+    }
+
+    private void decode(String payload) {
+        decoder.decode(payload.getBytes(StandardCharsets.UTF_8), line -> lines.add(line.line()));
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.lkq.instadocker.docker.log;
+
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import com.github.lkq.instadocker.util.InstaExecutors;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogPipelineTest {
+
+    @Test
+    void writesLinesToSinkInBatches() throws InterruptedException {
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        LogPipeline pipeline = new LogPipeline("stub", new LogRingBuffer(16, OverflowPolicy.BLOCK, 1), (containerName, batch) -> {
+            batchSizes.add(batch.size());
+            batch.forEach(line -> written.add(line.line()));
+        }, 2);
+        List<String> tapped = new ArrayList<>();
+        pipeline.tap(line -> tapped.add(line.line()));
+
+        pipeline.accept(frame(StreamType.STDOUT, "one\ntwo\nthr"));
+        pipeline.accept(frame(StreamType.STDERR, "err\n"));
+        pipeline.accept(frame(StreamType.STDOUT, "ee\nlast"));
+        pipeline.start(InstaExecutors.defaultExecutor());
+        pipeline.close();
+        assertTrue(pipeline.awaitDrained(1000), "pipeline should be drained");
+
+        assertEquals(Arrays.asList("one", "two", "err", "three", "last"), tapped);
+        assertEquals(tapped, written);
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 2), "batches should not exceed batch size");
+        LogStats stats = pipeline.stats();
+        assertEquals(5, stats.lines());
+        assertEquals(5, stats.writtenLines());
+        assertEquals(22, stats.bytes());
+        assertEquals(0, stats.droppedLines());
+    }
+
+    private static Frame frame(StreamType streamType, String payload) {
+        return new Frame(streamType, payload.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.lkq.instadocker.docker.log;
+
+import com.github.dockerjava.api.model.StreamType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogRingBufferTest {
+
+    @Test
+    void dropsOldestLinesWhenFull() throws InterruptedException {
+        LogRingBuffer buffer = new LogRingBuffer(2, OverflowPolicy.DROP_OLDEST, 1);
+
+        offer(buffer, "a", "b", "c");
+
+        assertEquals(Arrays.asList("b", "c"), drain(buffer));
+        assertEquals(1, buffer.dropped());
+    }
+
+    @Test
+    void samplesLinesWhenFull() throws InterruptedException {
+        LogRingBuffer buffer = new LogRingBuffer(2, OverflowPolicy.SAMPLE, 2);
+
+        offer(buffer, "a", "b", "c", "d", "e");
+
+        assertEquals(Arrays.asList("c", "e"), drain(buffer));
+        assertEquals(3, buffer.dropped());
+    }
+
+    @Test
+    void blocksUntilConsumerMakesRoom() throws InterruptedException {
+        LogRingBuffer buffer = new LogRingBuffer(1, OverflowPolicy.BLOCK, 1);
+        offer(buffer, "a");
+        CountDownLatch offered = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                offer(buffer, "b");
+                offered.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        producer.start();
+
+        assertFalse(offered.await(50, TimeUnit.MILLISECONDS), "producer should be blocked");
+        assertEquals(Arrays.asList("a"), drain(buffer));
+        assertTrue(offered.await(1, TimeUnit.SECONDS), "producer should be released");
+        assertEquals(Arrays.asList("b"), drain(buffer));
+        assertEquals(0, buffer.dropped());
+    }
+
+    @Test
+    void drainsRemainingLinesAfterClose() throws InterruptedException {
+        LogRingBuffer buffer = new LogRingBuffer(4, OverflowPolicy.DROP_OLDEST, 1);
+        offer(buffer, "a");
+        buffer.close();
+
+        assertFalse(buffer.offer(new LogLine(StreamType.STDOUT, "b", 0)), "closed buffer should reject lines");
+        assertEquals(Arrays.asList("a"), drain(buffer));
+        assertEquals(-1, buffer.drainTo(new ArrayList<>(), 10, 10));
+    }
+
+    private static void offer(LogRingBuffer buffer, String... lines) throws InterruptedException {
+        for (String line : lines) {
+            buffer.offer(new LogLine(StreamType.STDOUT, line, 0));
+        }
+    }
+
+    private static List<String> drain(LogRingBuffer buffer) throws InterruptedException {
+        List<LogLine> batch = new ArrayList<>();
+        buffer.drainTo(batch, 100, 0);
+        return batch.stream().map(LogLine::line).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.lkq.instadocker.docker.log;
+
+import com.github.dockerjava.api.model.StreamType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogStoreTest {
+
+    private final LogStore store = new LogStore(2, 2);
+
+    @Test
+    void completesWaiterWhenMatchingLineArrives() throws Exception {
+        append(1, "starting");
+        CompletableFuture<LogLine> ready = store.awaitLineAsync(Pattern.compile("ready to accept connections"));
+        assertFalse(ready.isDone(), "waiter should not match earlier lines");
+
+        append(2, "database system is ready to accept connections");
+
+        assertEquals("database system is ready to accept connections", ready.get().line());
+    }
+
+    @Test
+    void findsLineAlreadyCaptured() throws InterruptedException {
+        append(1, "ready to accept connections");
+
+        Optional<LogLine> line = store.awaitLine(Pattern.compile("ready"), 0);
+
+        assertTrue(line.isPresent(), "captured line should match");
+    }
+
+    @Test
+    void timesOutWhenNoLineMatches() throws InterruptedException {
+        append(1, "starting");
+
+        assertFalse(store.awaitLine(Pattern.compile("ready"), 10).isPresent());
+    }
+
+    @Test
+    void dropsOldestSegmentWhenFull() {
+        append(1, "a");
+        append(2, "b");
+        append(3, "c");
+        append(4, "d");
+        append(5, "e");
+
+        assertEquals(Arrays.asList("c", "d", "e"), text(store.lines(0L)));
+        assertEquals(2, store.evictedLines());
+        assertEquals(3, store.size());
+        assertEquals(Arrays.asList("d", "e"), text(store.lines(3L)));
+        assertEquals(Arrays.asList("d", "e"), text(store.lines(Instant.ofEpochMilli(4))));
+    }
+
+    @Test
+    void grepsCapturedLines() {
+        append(1, "INFO started");
+        append(2, "WARN slow query");
+        append(3, "INFO ready");
+
+        assertEquals(Arrays.asList("INFO started", "INFO ready"), text(store.grep(Pattern.compile("^INFO"))));
+    }
+
+    private void append(long timestampMillis, String line) {
+        store.append(new LogLine(StreamType.STDOUT, line, timestampMillis));
+    }
+
+    private static List<String> text(List<LogLine> lines) {
+        return lines.stream().map(LogLine::line).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,175 @@
+package com.github.lkq.instadocker.docker.probe;
+
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import com.github.lkq.instadocker.docker.DockerContainer;
+import com.github.lkq.instadocker.docker.FakeDockerEngine;
+import com.github.lkq.instadocker.docker.LogStreamService;
+import com.github.lkq.instadocker.docker.StubDockerClient;
+import org.junit.jupiter.api.Test;
+
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadinessCheckTest {
+
+    private final Backoff fastBackoff = new Backoff(1, 5, 2, 0.5);
+
+    @Test
+    void waitsUntilAllProbesAreReady() throws InterruptedException {
+        ReadinessCheck check = new ReadinessCheck(Arrays.asList(readyAfter("fast", 1), readyAfter("slow", 4)), fastBackoff);
+
+        List<ProbeResult> results = check.await(5000);
+
+        assertTrue(results.get(0).ready(), "fast probe should be ready");
+        assertEquals(1, results.get(0).attempts());
+        assertTrue(results.get(1).ready(), "slow probe should be ready");
+        assertEquals(4, results.get(1).attempts());
+        assertTrue(results.get(1).elapsedMillis() >= results.get(0).elapsedMillis(), "slow probe should take longer");
+    }
+
+    @Test
+    void reportsNotReadyAfterTimeout() throws InterruptedException {
+        ReadinessCheck check = new ReadinessCheck(Collections.singletonList(readyAfter("never", Integer.MAX_VALUE)), fastBackoff);
+
+        List<ProbeResult> results = check.await(50);
+
+        assertFalse(results.get(0).ready(), "probe should not be ready");
+        assertTrue(results.get(0).attempts() > 1, "probe should be retried");
+    }
+
+    @Test
+    void treatsFailingProbeAsNotReady() throws InterruptedException {
+        ReadinessProbe failing = new ReadinessProbe() {
+            @Override
+            public String name() {
+                return "failing";
+            }
+
+            @Override
+            public boolean ready() {
+                throw new IllegalStateException("connection refused");
+            }
+        };
+
+        assertFalse(new ReadinessCheck(Collections.singletonList(failing), fastBackoff).await(20).get(0).ready());
+    }
+
+    @Test
+    void backoffGrowsExponentiallyWithinBounds() {
+        Backoff backoff = new Backoff(100, 1000, 2, 0.5);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(backoff.delayMillis(1) >= 50 && backoff.delayMillis(1) <= 100, "first delay out of range");
+            assertTrue(backoff.delayMillis(3) >= 200 && backoff.delayMillis(3) <= 400, "third delay out of range");
+            assertTrue(backoff.delayMillis(20) >= 500 && backoff.delayMillis(20) <= 1000, "delay should be capped");
+        }
+    }
+
+    @Test
+    void tcpProbeIsReadyWhenPortIsListening() throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+            assertTrue(new TcpProbe("localhost", port, 500).ready(), "port should be listening");
+        }
+        int closedPort = port;
+        assertThrows(Exception.class, () -> new TcpProbe("localhost", closedPort, 500).ready());
+    }
+
+    @Test
+    void logPatternProbeMatchesContainerLogLines() {
+        DockerContainer container = new DockerContainer(new StubDockerClient().client(), "postgres:latest", "log-probe-test", null);
+        LogPatternProbe probe = new LogPatternProbe(Pattern.compile("ready to accept connections"), 2);
+        container.readinessProbe(probe);
+
+        log(container, "database system is ready to accept connections\n");
+        assertFalse(probe.ready(), "should wait for the second match");
+        log(container, "running init scripts\n");
+        log(container, "database system is ready to accept connections\n");
+        assertTrue(probe.ready(), "should be ready after the second match");
+    }
+
+    @Test
+    void logPatternProbeIgnoresPreviousRunsOfReusedContainer() throws InterruptedException {
+        try (FakeDockerEngine engine = new FakeDockerEngine().image("postgres:latest")) {
+            DockerContainer firstRun = new DockerContainer(engine.client(), "postgres:latest", "log-probe-reuse", null)
+                    .readinessProbe(new LogPatternProbe("ready to accept connections"));
+            assertTrue(firstRun.createOrReplace() && firstRun.ensureRunning());
+            engine.log("log-probe-reuse", "database system is ready to accept connections");
+            assertTrue(firstRun.awaitReady(5), "first run should be ready");
+            assertTrue(firstRun.ensureStopped(1));
+            Thread.sleep(10);
+
+            DockerContainer reused = new DockerContainer(engine.client(), "postgres:latest", "log-probe-reuse", null)
+                    .readinessProbe(new LogPatternProbe("ready to accept connections"));
+            assertTrue(reused.ensureRunning());
+
+            assertFalse(reused.awaitReady(1), "logs of the previous run should not count");
+            engine.log("log-probe-reuse", "database system is ready to accept connections");
+            assertTrue(reused.awaitReady(5), "should be ready once the current run logged the line");
+            reused.ensureNotExists();
+        }
+    }
+
+    @Test
+    void logPatternProbeFollowsAlreadyRunningContainer() {
+        try (FakeDockerEngine engine = new FakeDockerEngine().image("postgres:latest")) {
+            DockerContainer starter = new DockerContainer(engine.client(), "postgres:latest", "log-probe-running", null)
+                    .logStreams(new LogStreamService(Runnable::run, fastBackoff, 0));
+            assertTrue(starter.createOrReplace() && starter.ensureRunning());
+            engine.log("log-probe-running", "database system is ready to accept connections");
+
+            DockerContainer reused = new DockerContainer(engine.client(), "postgres:latest", "log-probe-running", null)
+                    .readinessProbe(new LogPatternProbe("ready to accept connections"));
+            assertTrue(reused.ensureRunning());
+
+            assertTrue(reused.awaitReady(5), "should see the logs of the current run of a running container");
+            reused.ensureNotExists();
+        }
+    }
+
+    @Test
+    void execProbeRunsThroughContainerExec() {
+        try (FakeDockerEngine engine = new FakeDockerEngine().image("postgres:latest")) {
+            engine.execScript("pg_isready", 0, 0);
+            engine.execScript("pg_isready -d missing", 2, 0);
+            DockerContainer container = new DockerContainer(engine.client(), "postgres:latest", "exec-probe-test", null);
+            assertTrue(container.createOrReplace() && container.ensureRunning());
+            ExecProbe ready = new ExecProbe(5, "pg_isready");
+            ExecProbe notReady = new ExecProbe(5, "pg_isready", "-d", "missing");
+            container.readinessProbe(ready).readinessProbe(notReady);
+
+            assertTrue(ready.ready());
+            assertFalse(notReady.ready());
+            assertEquals(2, container.daemonCalls().count("execCreate"));
+            container.ensureNotExists();
+        }
+    }
+
+    private void log(DockerContainer container, String line) {
+        container.containerLogger().onNext(new Frame(StreamType.STDOUT, line.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private ReadinessProbe readyAfter(String name, int attempts) {
+        AtomicInteger count = new AtomicInteger();
+        return new ReadinessProbe() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public boolean ready() {
+                return count.incrementAndGet() >= attempts;
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.lkq.instadocker.docker.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourceSeriesTest {
+
+    @Test
+    void overwritesOldestSamplesWhenFull() {
+        ResourceSeries series = new ResourceSeries(3);
+        for (int i = 1; i <= 5; i++) {
+            series.add(sample(i));
+        }
+
+        List<ResourceSample> samples = series.samples();
+        assertEquals(3, samples.size());
+        assertEquals(3, samples.get(0).cpuPercent(), 0.001);
+        assertEquals(5, samples.get(2).cpuPercent(), 0.001);
+        assertEquals(5, series.latest().get().cpuPercent(), 0.001);
+        assertEquals(5, series.recorded());
+    }
+
+    @Test
+    void summarizesPercentilesOfSamplesKept() {
+        ResourceSeries series = new ResourceSeries(100);
+        for (int i = 1; i <= 100; i++) {
+            series.add(sample(i));
+        }
+
+        ResourceSummary summary = series.summary();
+
+        assertEquals(100, summary.samples());
+        assertEquals(50, summary.cpuPercent().percentile(0.5), 0.001);
+        assertEquals(95, summary.cpuPercent().percentile(0.95), 0.001);
+        assertEquals(1, summary.cpuPercent().min(), 0.001);
+        assertEquals(50.5, summary.cpuPercent().mean(), 0.001);
+        assertEquals(100 * 1024, summary.memoryRssBytes().max(), 0.001);
+    }
+
+    @Test
+    void summarizesEmptySeries() {
+        ResourceSummary summary = new ResourceSeries(10).summary();
+
+        assertEquals(0, summary.samples());
+        assertEquals(0, summary.cpuPercent().percentile(0.99), 0.001);
+        assertFalse(new ResourceSeries(10).latest().isPresent());
+    }
+
+    private static ResourceSample sample(int i) {
+        return new ResourceSample(Instant.ofEpochSecond(i), i, i * 1024L, 1L << 30, i, i, i, i);
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.lkq.instadocker.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JmxInstrumentationTest {
+
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    private final JmxInstrumentation subject = new JmxInstrumentation(mBeanServer);
+
+    @AfterEach
+    void tearDown() {
+        subject.close();
+    }
+
+    @Test
+    void registersTimerPerNameAndTags() throws Exception {
+        Map<String, String> tags = Instrumentations.with(Instrumentations.tags("postgres:latest", "jmx-pg"), Instrumentation.TAG_PHASE, "start");
+        subject.record(Instrumentation.PHASE, tags, TimeUnit.MILLISECONDS.toNanos(20), true);
+        subject.record(Instrumentation.PHASE, tags, TimeUnit.MILLISECONDS.toNanos(40), false);
+
+        ObjectName objectName = new ObjectName("com.github.lkq.instadocker:type=phase,phase=\"start\",image=\"postgres:latest\",container=\"jmx-pg\"");
+        assertTrue(mBeanServer.isRegistered(objectName), "timer mbean should be registered");
+        assertEquals(2L, mBeanServer.getAttribute(objectName, "Count"));
+        assertEquals(1L, mBeanServer.getAttribute(objectName, "Failures"));
+        assertEquals(30.0, (Double) mBeanServer.getAttribute(objectName, "MeanMillis"), 0.001);
+        assertEquals(40.0, (Double) mBeanServer.getAttribute(objectName, "P99Millis"), 0.001);
+
+        subject.close();
+        assertFalse(mBeanServer.isRegistered(objectName), "timer mbean should be unregistered");
+    }
+
+    @Test
+    void combinesInstrumentations() {
+        TimerRegistry other = new TimerRegistry();
+        Instrumentation composite = Instrumentations.composite(Arrays.asList(subject, Instrumentation.noop(), other));
+        Map<String, String> tags = Instrumentations.tags("busybox:latest", null);
+
+        assertTrue(composite.time(Instrumentation.PHASE, tags, () -> true));
+        assertFalse(composite.time(Instrumentation.PHASE, tags, () -> false));
+
+        assertEquals(2, subject.timer(Instrumentation.PHASE, tags).map(Timer::count).orElse(0L).longValue());
+        assertEquals(1, other.timer(Instrumentation.PHASE, tags).map(Timer::failures).orElse(0L).longValue());
+        assertTrue(Instrumentations.isNoop(Instrumentations.composite(Collections.emptyList())));
+    }
+}
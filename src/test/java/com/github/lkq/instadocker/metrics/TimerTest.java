@@ -0,0 +1,46 @@
+package com.github.lkq.instadocker.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimerTest {
+
+    @Test
+    void computesPercentilesOfRecentSamples() {
+        Timer subject = new Timer(100);
+        for (int i = 1; i <= 100; i++) {
+            subject.record(TimeUnit.MILLISECONDS.toNanos(i), i != 100);
+        }
+
+        assertEquals(100, subject.count());
+        assertEquals(1, subject.failures());
+        assertEquals(50.5, subject.meanMillis(), 0.001);
+        assertEquals(50, subject.percentileMillis(0.5), 0.001);
+        assertEquals(99, subject.percentileMillis(0.99), 0.001);
+        assertEquals(100, subject.maxMillis(), 0.001);
+    }
+
+    @Test
+    void percentilesForgetOldSamplesButMaxDoesNot() {
+        Timer subject = new Timer(10);
+        subject.record(TimeUnit.SECONDS.toNanos(10), true);
+        for (int i = 0; i < 10; i++) {
+            subject.record(TimeUnit.MILLISECONDS.toNanos(1), true);
+        }
+
+        assertEquals(1, subject.percentileMillis(1), 0.001);
+        assertEquals(10000, subject.maxMillis(), 0.001);
+        assertEquals(11, subject.count());
+    }
+
+    @Test
+    void emptyTimerReportsZero() {
+        Timer subject = new Timer();
+
+        assertEquals(0, subject.percentileMillis(0.99), 0.001);
+        assertEquals(0, subject.meanMillis(), 0.001);
+    }
+}